@@ -0,0 +1,52 @@
+USE IrrigationDB;
+GO
+
+/* =========================
+   Compact dbo.pump_decisions (one row per reading) into dbo.pump_decision_runs.
+   Run once, after creating dbo.pump_decision_runs / dbo.v_pump_decisions (see irrigation_DB.sql),
+   with the core stopped. Consecutive rows with the same (mode, pump_cmd) become one run.
+   The old free-text reasons are not kept: MANUAL runs get reason_code 8, AUTO runs 0 (UNKNOWN).
+   ========================= */
+SET XACT_ABORT ON;
+BEGIN TRANSACTION;
+
+WITH marked AS (
+  SELECT device_id, mode, pump_cmd, created_utc, id,
+         CASE WHEN LAG(mode)     OVER (PARTITION BY device_id ORDER BY created_utc, id) = mode
+               AND LAG(pump_cmd) OVER (PARTITION BY device_id ORDER BY created_utc, id) = pump_cmd
+              THEN 0 ELSE 1 END AS is_start
+  FROM dbo.pump_decisions
+),
+grouped AS (
+  SELECT device_id, mode, pump_cmd, created_utc,
+         SUM(is_start) OVER (PARTITION BY device_id ORDER BY created_utc, id
+                             ROWS UNBOUNDED PRECEDING) AS run_no
+  FROM marked
+)
+INSERT INTO dbo.pump_decision_runs
+  (device_id, mode, pump_cmd, reason_code, started_utc, last_utc, run_count)
+SELECT device_id,
+       MIN(mode),
+       CAST(MIN(CAST(pump_cmd AS INT)) AS BIT),
+       CASE WHEN MIN(mode) = 'MANUAL' THEN 8 ELSE 0 END,
+       MIN(created_utc),
+       MAX(created_utc),
+       COUNT(*)
+FROM grouped
+GROUP BY device_id, run_no;
+
+-- keep the old rows until the new journal has been checked, then drop them
+EXEC sp_rename 'dbo.pump_decisions', 'pump_decisions_legacy';
+
+COMMIT;
+GO
+
+-- check: rows vs runs per device
+SELECT l.device_id, l.rows_before, r.runs, r.decisions
+FROM (SELECT device_id, COUNT(*) AS rows_before FROM dbo.pump_decisions_legacy GROUP BY device_id) l
+JOIN (SELECT device_id, COUNT(*) AS runs, SUM(run_count) AS decisions FROM dbo.pump_decision_runs GROUP BY device_id) r
+  ON r.device_id = l.device_id
+ORDER BY l.device_id;
+GO
+
+-- DROP TABLE dbo.pump_decisions_legacy;
@@ -7,7 +7,8 @@ GO
 CREATE TABLE dbo.devices (
   device_id      VARCHAR(64) NOT NULL PRIMARY KEY,
   created_utc    DATETIME2(3) NOT NULL DEFAULT SYSUTCDATETIME(),
-  last_seen_utc  DATETIME2(3) NULL
+  last_seen_utc  DATETIME2(3) NULL,
+  zone           VARCHAR(64) NULL            -- crop / zone profile (see irrigation_profiles)
 );
 GO
 
@@ -44,20 +45,43 @@ CREATE TABLE dbo.readings (
 GO
 
 /* =========================
-   4) PUMP DECISIONS (RMI BRAIN LOG)
+   4) PUMP DECISIONS (RMI BRAIN LOG, CHANGE-ONLY)
+   one row per run of identical (mode, pump_cmd) decisions;
+   existing DB with dbo.pump_decisions: run docs/compact_pump_decisions.sql
    ========================= */
-CREATE TABLE dbo.pump_decisions (
+CREATE TABLE dbo.pump_decision_runs (
   id          BIGINT IDENTITY(1,1) NOT NULL PRIMARY KEY,
   device_id   VARCHAR(64) NOT NULL,
   mode        VARCHAR(10) NOT NULL,
   pump_cmd    BIT NOT NULL,
-  reason      NVARCHAR(200) NOT NULL,
-  created_utc DATETIME2(3) NOT NULL DEFAULT SYSUTCDATETIME(),
-  CONSTRAINT FK_pump_decisions_device
+  reason_code TINYINT NOT NULL,        -- core.logic.DecisionReason: 0 UNKNOWN, 1 MISSING_INPUT, 2 RAINING, 3 TANK_LOW,
+                                       -- 4 SOIL_DRY, 5 SOIL_TREND, 6 SOIL_WET, 7 HOLD, 8 MANUAL
+  started_utc DATETIME2(3) NOT NULL,   -- created_utc of the reading that opened the run
+  last_utc    DATETIME2(3) NOT NULL,   -- flushed in batches (may lag a few readings)
+  run_count   INT NOT NULL,
+  CONSTRAINT FK_pump_decision_runs_device
     FOREIGN KEY (device_id) REFERENCES dbo.devices(device_id)
 );
 GO
 
+CREATE INDEX IX_pump_decision_runs_device_started
+  ON dbo.pump_decision_runs (device_id, started_utc)
+  INCLUDE (mode, pump_cmd, reason_code);
+GO
+
+-- per-reading decisions on demand: each reading gets the run open at its created_utc
+CREATE VIEW dbo.v_pump_decisions AS
+SELECT r.id AS reading_id, r.device_id, r.created_utc, d.mode, d.pump_cmd, d.reason_code
+FROM dbo.readings r
+CROSS APPLY (
+  SELECT TOP 1 x.mode, x.pump_cmd, x.reason_code
+  FROM dbo.pump_decision_runs x
+  WHERE x.device_id = r.device_id
+    AND x.started_utc <= r.created_utc
+  ORDER BY x.started_utc DESC, x.id DESC
+) d;
+GO
+
 /* =========================
    5) CONTROL EVENTS (MODE / MANUAL)
    ========================= */
@@ -80,7 +104,7 @@ GO
 CREATE TABLE dbo.alerts (
   id          BIGINT IDENTITY(1,1) NOT NULL PRIMARY KEY,
   device_id   VARCHAR(64) NOT NULL,
-  alert_type  VARCHAR(30) NOT NULL,   -- OFFLINE, TANK_LOW, RAINING, SENSOR_MISSING
+  alert_type  VARCHAR(30) NOT NULL,   -- OFFLINE, ONLINE, TANK_LOW, RAINING, SENSOR_MISSING
   severity    VARCHAR(10) NOT NULL,   -- INFO, WARN, CRIT
   message     NVARCHAR(200) NOT NULL,
   created_utc DATETIME2(3) NOT NULL DEFAULT SYSUTCDATETIME(),
@@ -88,3 +112,96 @@ CREATE TABLE dbo.alerts (
     FOREIGN KEY (device_id) REFERENCES dbo.devices(device_id)
 );
 GO
+
+/* =========================
+   7) IRRIGATION PROFILES (PUMP / TANK THRESHOLDS)
+   existing DB: ALTER TABLE dbo.devices ADD zone VARCHAR(64) NULL;
+                ALTER TABLE dbo.irrigation_profiles ADD lookahead_min INT NULL;
+   ========================= */
+CREATE TABLE dbo.irrigation_profiles (
+  scope         VARCHAR(10) NOT NULL,   -- DEVICE / ZONE / DEFAULT
+  scope_key     VARCHAR(64) NOT NULL,   -- device_id / zone name / '*'
+  moisture_on   INT NULL,               -- NULL = inherit: device -> zone -> default -> built-in (30/40/10/15)
+  moisture_off  INT NULL,
+  tank_low      INT NULL,
+  tank_recover  INT NULL,
+  lookahead_min INT NULL,               -- >0: start pump on the projected soil trend (minutes ahead)
+  updated_utc   DATETIME2(3) NOT NULL DEFAULT SYSUTCDATETIME(),
+  CONSTRAINT PK_irrigation_profiles PRIMARY KEY (scope, scope_key)
+);
+GO
+
+/* =========================
+   8) HOURLY ROLLUP OF READINGS (written by core.db.RetentionService before raw rows are purged)
+   ========================= */
+CREATE TABLE dbo.readings_hourly (
+  device_id     VARCHAR(64) NOT NULL,
+  hour_utc      DATETIME2(0) NOT NULL,
+  samples       INT NOT NULL,
+  soil_min      INT NULL,
+  soil_avg      FLOAT NULL,
+  soil_max      INT NULL,
+  tank_min      INT NULL,
+  tank_avg      FLOAT NULL,
+  tank_max      INT NULL,
+  rain_samples  INT NOT NULL,
+  pump_samples  INT NOT NULL,
+  temp_avg      FLOAT NULL,
+  humidity_avg  FLOAT NULL,
+  last_id       BIGINT NULL,   -- highest dbo.readings.id folded in (late rows above it are merged later)
+  CONSTRAINT PK_readings_hourly PRIMARY KEY (device_id, hour_utc)
+);
+GO
+
+/* =========================
+   9) RETENTION INDEXES (age-bounded DELETE TOP batches seek instead of scanning)
+   ========================= */
+CREATE INDEX IX_readings_created ON dbo.readings (created_utc);
+CREATE INDEX IX_alerts_created ON dbo.alerts (created_utc);
+CREATE INDEX IX_control_events_created ON dbo.control_events (created_utc);
+CREATE INDEX IX_pump_decision_runs_last ON dbo.pump_decision_runs (last_utc);
+GO
+
+/* =========================
+   10) COVERING INDEXES FOR THE HOT READS
+   getLatest / getHistory / getAlerts seek on (device_id, created_utc) and read
+   every selected column from the index (no key lookups into the clustered PK).
+   The core applies sections 7-12 itself on startup (MigrationRunner, recorded in
+   dbo.schema_version) and logs "[DB] plan check" if one of these still scans.
+   ========================= */
+CREATE INDEX IX_readings_device_created
+  ON dbo.readings (device_id, created_utc)
+  INCLUDE (soil, water_tank, raining, pump_reported, temp_c, humidity);
+CREATE INDEX IX_alerts_device_created
+  ON dbo.alerts (device_id, created_utc)
+  INCLUDE (alert_type, severity, message);
+GO
+
+/* =========================
+   11) BULK IMPORT STAGING (core.db.bulk.BulkReadingImporter)
+   heap on purpose: no keys or indexes, so parallel bulk copies with TABLOCK
+   load side by side; emptied after every import
+   ========================= */
+CREATE TABLE dbo.readings_import (
+  device_id     VARCHAR(64) NOT NULL,
+  soil          INT NULL,
+  water_tank    INT NULL,
+  raining       BIT NULL,
+  pump_reported BIT NULL,
+  temp_c        FLOAT NULL,
+  humidity      FLOAT NULL,
+  created_utc   DATETIME2(3) NOT NULL
+);
+GO
+
+/* =========================
+   12) READ REPLICA HEARTBEAT (core.db.ReadReplica)
+   with -Dirrigation.db.readUrl each core stamps its row here on the primary and
+   reads it back on the replica; dashboard queries leave the replica when the
+   stamp seen there is older than -Dirrigation.db.maxLagSec
+   ========================= */
+CREATE TABLE dbo.replica_heartbeat (
+  source   VARCHAR(200) NOT NULL PRIMARY KEY,
+  beat_utc DATETIME2(3) NOT NULL
+);
+GO
@@ -1,6 +1,10 @@
 package com.irrigation.dashboardapi.config;
 
+import core.rmi.HistoryExport;
 import core.rmi.RmiClient;
+import core.rmi.ShardRing;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -8,15 +12,40 @@ import org.springframework.context.annotation.Configuration;
 public class RmiConfig {
 
     @Bean
-    public RmiClient rmiClient() {
+    public RmiClient rmiClient(MeterRegistry registry,
+                               @Value("${irrigation.shards:127.0.0.1:1099/IrrigationService}") String shards,
+                               @Value("${irrigation.shard-vnodes:160}") int vnodes) {
         try {
-            String rmiHost = "127.0.0.1";
-            int rmiPort = 1099;
-            String rmiName = "IrrigationService";
-            return new RmiClient(rmiHost, rmiPort, rmiName);
+            // calls are routed by device to the core owning it (same ring as the gateway/cores)
+            RmiClient client = new RmiClient(new ShardRing(ShardRing.parse(shards), vnodes));
+            client.setObserver(new RmiMetrics(registry));
+            return client;
         } catch (Exception e) {
             // fail fast: if RMI cannot be created, dashboard-api should not start
             throw new IllegalStateException("Failed to create RmiClient", e);
         }
     }
+
+    @Bean(destroyMethod = "shutdown")
+    public RmiExecutor rmiExecutor(RmiClient rmi, MeterRegistry registry,
+                                   @Value("${irrigation.rmi.async.threads:32}") int threads,
+                                   @Value("${irrigation.rmi.async.queue:2000}") int queue,
+                                   @Value("${irrigation.rmi.request-timeout-ms:15000}") long timeoutMs) {
+        // controllers hand their RMI calls to this pool and return a CompletableFuture
+        return new RmiExecutor(rmi, registry, threads, queue, timeoutMs);
+    }
+
+    @Bean
+    public HistoryExport historyExport(RmiClient rmi,
+                                       @Value("${irrigation.export.parallel:4}") int parallel,
+                                       @Value("${irrigation.export.max-calls:4}") int maxCalls,
+                                       @Value("${irrigation.export.max:2}") int maxExports,
+                                       @Value("${irrigation.export.page-size:5000}") int pageSize,
+                                       @Value("${irrigation.export.slice-hours:24}") int sliceHours) {
+        // history pages go through rmi.call(...), so they are routed to each device's shard and timed
+        return new HistoryExport(
+                (device, afterUtc, afterId, to, limit) ->
+                        rmi.call(svc -> svc.getHistoryAfter(device, afterUtc, afterId, to, limit)),
+                parallel, maxCalls, maxExports, pageSize, sliceHours);
+    }
 }
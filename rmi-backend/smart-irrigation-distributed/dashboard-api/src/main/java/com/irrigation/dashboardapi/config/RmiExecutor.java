@@ -0,0 +1,103 @@
+package com.irrigation.dashboardapi.config;
+
+import core.rmi.RmiClient;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs controller RMI calls off the Tomcat workers. A controller returns call(...)'s
+ * CompletableFuture, Spring MVC releases the request thread, and the call waits for one of
+ * {@code threads} fixed "rmi-async" threads. Up to {@code queue} more wait in line; beyond that
+ * the request gets 503 at once, so 1000 slow dashboards cost a queue slot each, not a thread.
+ *
+ * A call not answered within {@code timeoutMs} (queue wait included) completes with 504. The
+ * RMI thread itself is only freed by the reply or the socket read timeout
+ * (-Dirrigation.rmi.readTimeoutMs on the core), so keep that one close to this.
+ *
+ * Meters: rmi.executor.active / rmi.executor.queued gauges, rmi.executor.rejected and
+ * rmi.executor.timeouts counters, rmi.client.inflight (every RMI call on the wire).
+ */
+public class RmiExecutor {
+
+    private final RmiClient rmi;
+    private final long timeoutMs;
+    private final ThreadPoolExecutor pool;
+    private final Counter rejected;
+    private final Counter timeouts;
+
+    public RmiExecutor(RmiClient rmi, MeterRegistry registry, int threads, int queue, long timeoutMs) {
+        this.rmi = rmi;
+        this.timeoutMs = timeoutMs;
+
+        AtomicInteger n = new AtomicInteger();
+        int size = Math.max(1, threads);
+        this.pool = new ThreadPoolExecutor(size, size, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queue)),
+                r -> {
+                    Thread t = new Thread(r, "rmi-async-" + n.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+
+        Gauge.builder("rmi.executor.active", pool, ThreadPoolExecutor::getActiveCount)
+                .description("Controller RMI calls running on the rmi-async threads")
+                .register(registry);
+        Gauge.builder("rmi.executor.queued", pool, p -> p.getQueue().size())
+                .description("Controller RMI calls waiting for an rmi-async thread")
+                .register(registry);
+        Gauge.builder("rmi.client.inflight", rmi, RmiClient::inFlight)
+                .description("IrrigationService calls currently waiting for a core")
+                .register(registry);
+        this.rejected = Counter.builder("rmi.executor.rejected")
+                .description("Requests answered 503 because the RMI queue was full")
+                .register(registry);
+        this.timeouts = Counter.builder("rmi.executor.timeouts")
+                .description("Requests answered 504 after the RMI request timeout")
+                .register(registry);
+    }
+
+    /** rmi.call(fn) on an rmi-async thread; 503 when the queue is full, 504 after the timeout. */
+    public <T> CompletableFuture<T> call(RmiClient.RemoteCall<T> fn) {
+        CompletableFuture<T> f;
+        try {
+            f = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return rmi.call(fn);
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+            }, pool);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many requests waiting for the core, retry later");
+        }
+
+        if (timeoutMs <= 0) return f;
+        return f.orTimeout(timeoutMs, TimeUnit.MILLISECONDS).exceptionally(e -> {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof TimeoutException) {
+                timeouts.increment();
+                throw new ResponseStatusException(HttpStatus.GATEWAY_TIMEOUT, "Core did not answer within " + timeoutMs + " ms");
+            }
+            throw e instanceof CompletionException ce ? ce : new CompletionException(e);
+        });
+    }
+
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+}
@@ -0,0 +1,35 @@
+package com.irrigation.dashboardapi.config;
+
+import core.rmi.RmiClient;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Feeds RmiClient round trips into Micrometer as the "rmi.client" timer,
+ * tagged by IrrigationService method and outcome (see /actuator/prometheus).
+ */
+public class RmiMetrics implements RmiClient.CallObserver {
+
+    private final MeterRegistry registry;
+
+    // method|outcome -> timer (avoid the builder on every call)
+    private final ConcurrentHashMap<String, Timer> timers = new ConcurrentHashMap<>();
+
+    public RmiMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public void onCall(String method, long nanos, boolean ok) {
+        String outcome = ok ? "success" : "error";
+        timers.computeIfAbsent(method + "|" + outcome, k -> Timer.builder("rmi.client")
+                        .description("RMI round trip per IrrigationService method")
+                        .tag("method", method)
+                        .tag("outcome", outcome)
+                        .register(registry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,22 @@
+package com.irrigation.dashboardapi.config;
+
+import com.irrigation.dashboardapi.web.SseHub;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class SseConfig {
+
+    @Bean(destroyMethod = "shutdown")
+    public SseHub sseHub(MeterRegistry registry,
+                         @Value("${irrigation.sse.queue:256}") int queue,
+                         @Value("${irrigation.sse.sender-threads:8}") int senderThreads,
+                         @Value("${irrigation.sse.heartbeat-ms:15000}") long heartbeatMs,
+                         @Value("${irrigation.sse.stall-ms:10000}") long stallMs,
+                         @Value("${irrigation.sse.overflow:disconnect}") String overflow) {
+        // all SSE endpoints share one hub: a few sender threads for any number of open streams
+        return new SseHub(registry, queue, senderThreads, heartbeatMs, stallMs, SseHub.Overflow.parse(overflow));
+    }
+}
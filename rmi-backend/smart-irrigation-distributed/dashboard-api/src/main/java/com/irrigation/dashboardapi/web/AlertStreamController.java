@@ -6,129 +6,207 @@ import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.time.Instant;
+import java.time.OffsetDateTime;
 import java.util.*;
 import java.util.concurrent.*;
 
 @RestController
 public class AlertStreamController {
 
+    private static final String TOPIC = "alerts:";
+
     private final RmiClient rmi;
 
-    // device -> emitters
-    private final ConcurrentHashMap<String, CopyOnWriteArraySet<SseEmitter>> emittersByDevice = new ConcurrentHashMap<>();
+    // device topics -> subscribers; sends go through per-client queues, never this scheduler
+    private final SseHub hub;
+
+    private static final String EPOCH = "1970-01-01T00:00:00Z";
+    private static final int PAGE = 200;        // getAlerts returns created_utc > since, oldest first
+    private static final int MAX_PAGES = 50;    // per poll; the rest follows on the next tick
+    private static final int RECENT = 256;      // sent alerts kept per device for reconnect replay
+    private static final long START_WINDOW_MS = 60_000; // first connect: only alerts from the last minute on
+
+    // device -> poll cursor + recently sent alerts; guarded by the Feed itself
+    private final ConcurrentHashMap<String, Feed> feeds = new ConcurrentHashMap<>();
 
-    // device -> last sent alert id (prevents duplicates + prevents replay on connect)
-    private final ConcurrentHashMap<String, Long> lastSentIdByDevice = new ConcurrentHashMap<>();
+    private static final class Feed {
+        long lastId;                                      // highest alert id sent
+        String lastUtc = EPOCH;                           // its created_utc: the next poll starts there
+        final ArrayDeque<AlertDTO> recent = new ArrayDeque<>();
+
+        void sent(AlertDTO a) {
+            if (a.id > lastId) {
+                lastId = a.id;
+                if (a.createdUtc != null) lastUtc = a.createdUtc;
+            }
+            recent.addLast(a);
+            if (recent.size() > RECENT) recent.removeFirst();
+        }
+    }
 
-    // single scheduler for polling RMI
+    // single scheduler for polling RMI (and replaying gaps to reconnecting clients)
     private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
 
-    public AlertStreamController(RmiClient rmi) {
+    public AlertStreamController(RmiClient rmi, SseHub hub) {
         this.rmi = rmi;
+        this.hub = hub;
         scheduler.scheduleAtFixedRate(this::pollAlerts, 0, 2, TimeUnit.SECONDS);
     }
 
     @GetMapping(value = "/api/devices/{device}/alerts/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
     public SseEmitter stream(
             @PathVariable String device,
-            @RequestParam(required = false) Long sinceId
+            @RequestParam(required = false) Long sinceId,
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId
     ) {
         SseEmitter emitter = new SseEmitter(0L); // no timeout
+        // another client already follows this device: its cursor is live, so this one only replays
+        boolean live = hub.hasSubscribers(TOPIC + device);
+        SseHub.Subscriber sub = hub.subscribe(TOPIC + device, emitter);
 
-        emittersByDevice
-                .computeIfAbsent(device, d -> new CopyOnWriteArraySet<>())
-                .add(emitter);
-
-        emitter.onCompletion(() -> remove(device, emitter));
-        emitter.onTimeout(() -> remove(device, emitter));
-        emitter.onError(e -> remove(device, emitter));
-
-        // ✅ Set initial last-sent id (so first connect does NOT replay whole history)
-        try {
-            long startId;
-
-            if (sinceId != null && sinceId > 0) {
-                startId = sinceId;
-            } else {
-                // IMPORTANT: your getAlerts() appears to return ASC (oldest->newest),
-                // so limit=1 would give oldest. Instead, get a small batch and take MAX(id).
-                List<AlertDTO> batch = rmi.call(svc -> svc.getAlerts(device, "1970-01-01T00:00:00Z", 50));
-                startId = maxId(batch);
+        // handshake
+        sub.send(SseEmitter.event().name("connected").data("ok"));
+
+        // EventSource reconnect (e.g. after a slow-consumer eviction) or an explicit sinceId:
+        // replay what this client missed to it alone instead of rewinding the device for everyone
+        Long resumeId = sinceId != null ? sinceId : parseId(lastEventId);
+        Feed feed = feeds.get(device);
+        if (resumeId != null && live && feed != null) {
+            synchronized (feed) {
+                AlertDTO oldest = feed.recent.peekFirst();
+                if (resumeId >= feed.lastId) {
+                    // nothing missed
+                } else if (oldest != null && oldest.id <= resumeId + 1) {
+                    for (AlertDTO a : feed.recent) {
+                        if (a.id > resumeId) sub.send(alertEvent(a));
+                    }
+                } else {
+                    // gap older than the kept alerts: page it in off the request thread
+                    long upTo = feed.lastId;
+                    scheduler.execute(() -> replay(device, sub, resumeId, upTo));
+                }
             }
-
-            lastSentIdByDevice.put(device, startId);
-        } catch (Exception e) {
-            lastSentIdByDevice.put(device, 0L);
+            return emitter;
         }
-
-        // handshake
-        try {
-            emitter.send(SseEmitter.event().name("connected").data("ok"));
-        } catch (Exception ignored) {}
+        if (live && feed != null) return emitter;
+
+        // nobody follows the device yet: start its cursor at resumeId, or at the newest alert
+        // so a first connect does NOT replay the whole history
+        Feed f = new Feed();
+        if (resumeId != null && resumeId > 0) {
+            f.lastId = resumeId;
+        } else {
+            f.lastUtc = Instant.now().minusMillis(START_WINDOW_MS).toString();
+            try {
+                for (AlertDTO a : fetchAfter(device, f.lastUtc, 0L)) {
+                    f.lastId = a.id;
+                    if (a.createdUtc != null) f.lastUtc = a.createdUtc;
+                }
+            } catch (Exception ignored) {
+                // poll from the window start
+            }
+        }
+        feeds.put(device, f);
 
         return emitter;
     }
 
     private void pollAlerts() {
         try {
-            for (String device : emittersByDevice.keySet()) {
-
-                long lastSent = lastSentIdByDevice.getOrDefault(device, 0L);
-
-                // Pull recent alerts and push only new ones by id
-                List<AlertDTO> batch = rmi.call(svc -> svc.getAlerts(device, "1970-01-01T00:00:00Z", 50));
-                if (batch == null || batch.isEmpty()) continue;
-
-                // Ensure we emit in increasing id order
-                batch.sort(Comparator.comparingLong(a -> a != null && a.id != null ? a.id : Long.MIN_VALUE));
+            for (String topic : hub.topics()) {
+                if (!topic.startsWith(TOPIC)) continue;
+                String device = topic.substring(TOPIC.length());
+                Feed feed = feeds.get(device);
+                if (feed == null) continue; // stream() is still placing its cursor
+
+                long lastId;
+                String lastUtc;
+                synchronized (feed) {
+                    lastId = feed.lastId;
+                    lastUtc = feed.lastUtc;
+                }
 
-                for (AlertDTO a : batch) {
-                    if (a == null || a.id == null) continue;
-                    if (a.id <= lastSent) continue;
+                // page forward from the last sent alert, not from the start of the history
+                List<AlertDTO> batch = fetchAfter(device, lastUtc, lastId);
+                if (batch.isEmpty()) continue;
 
-                    broadcast(device, a);
-                    lastSent = a.id;
+                synchronized (feed) {
+                    for (AlertDTO a : batch) {
+                        if (a.id <= feed.lastId) continue;
+                        broadcast(device, a);
+                        feed.sent(a);
+                    }
                 }
-
-                lastSentIdByDevice.put(device, lastSent);
             }
         } catch (Exception ignored) {
             // don't crash SSE
         }
     }
 
-    private void broadcast(String device, AlertDTO alert) {
-        Set<SseEmitter> set = emittersByDevice.get(device);
-        if (set == null || set.isEmpty()) return;
-
-        for (SseEmitter emitter : set) {
-            try {
-                emitter.send(SseEmitter.event().name("alert").data(alert));
-            } catch (Exception e) {
-                remove(device, emitter);
+    // a reconnecting client fell behind the kept alerts: send it (resumeId, upTo] from the core
+    private void replay(String device, SseHub.Subscriber sub, long resumeId, long upTo) {
+        try {
+            for (AlertDTO a : fetchAfter(device, EPOCH, resumeId)) {
+                if (!sub.isOpen()) return;
+                if (a.id <= upTo) sub.send(alertEvent(a));
             }
+        } catch (Exception ignored) {
+            // the client keeps the live stream
         }
     }
 
-    private void remove(String device, SseEmitter emitter) {
-        Set<SseEmitter> set = emittersByDevice.get(device);
-        if (set != null) {
-            set.remove(emitter);
-            if (set.isEmpty()) {
-                emittersByDevice.remove(device);
-                // optional cleanup:
-                // lastSentIdByDevice.remove(device);
+    /**
+     * Alerts with id > afterId created at or after fromUtc, in id order. Pages forward on
+     * created_utc (getAlerts is strictly after since, so each page restarts 1 ms before the
+     * last one seen and drops the ids it already has).
+     */
+    private List<AlertDTO> fetchAfter(String device, String fromUtc, long afterId) throws Exception {
+        List<AlertDTO> out = new ArrayList<>();
+        Set<Long> seen = new HashSet<>();
+        String since = minusMilli(fromUtc);
+        for (int page = 0; page < MAX_PAGES; page++) {
+            String s = since;
+            List<AlertDTO> batch = rmi.call(svc -> svc.getAlerts(device, s, PAGE));
+            if (batch == null || batch.isEmpty()) break;
+            String last = null;
+            for (AlertDTO a : batch) {
+                if (a == null || a.id == null) continue;
+                if (a.createdUtc != null) last = a.createdUtc;
+                if (a.id > afterId && seen.add(a.id)) out.add(a);
             }
+            if (batch.size() < PAGE || last == null) break;
+            String next = minusMilli(last);
+            // a full page inside one millisecond: step past it rather than loop on it
+            since = next.equals(since) ? last : next;
         }
+        out.sort(Comparator.comparingLong(a -> a.id));
+        return out;
     }
 
-    private long maxId(List<AlertDTO> alerts) {
-        long max = 0L;
-        if (alerts == null) return 0L;
-        for (AlertDTO a : alerts) {
-            if (a == null || a.id == null) continue;
-            if (a.id > max) max = a.id;
+    private static String minusMilli(String utc) {
+        try {
+            return OffsetDateTime.parse(utc).toInstant().minusMillis(1).toString();
+        } catch (RuntimeException e) {
+            return EPOCH;
+        }
+    }
+
+    private void broadcast(String device, AlertDTO alert) {
+        hub.publish(TOPIC + device, alertEvent(alert));
+    }
+
+    // the id lets EventSource send Last-Event-ID when it reconnects
+    private static SseEmitter.SseEventBuilder alertEvent(AlertDTO alert) {
+        return SseEmitter.event().id(String.valueOf(alert.id)).name("alert").data(alert);
+    }
+
+    private static Long parseId(String s) {
+        if (s == null || s.isBlank()) return null;
+        try {
+            return Long.parseLong(s.trim());
+        } catch (NumberFormatException e) {
+            return null;
         }
-        return max;
     }
 }
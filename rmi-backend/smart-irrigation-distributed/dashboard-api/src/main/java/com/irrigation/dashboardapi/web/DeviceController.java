@@ -1,47 +1,142 @@
 package com.irrigation.dashboardapi.web;
 
 import core.dto.AlertDTO;
+import core.dto.AnalyticsDTO;
 import core.dto.ModeDTO;
+import core.dto.ProfileDTO;
+import core.dto.PumpDecisionDTO;
 import core.dto.ReadingDTO;
+import com.irrigation.dashboardapi.config.RmiExecutor;
+import core.rmi.HistoryExport;
 import core.rmi.RmiClient;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import core.dto.DeviceStatusDTO;
 import core.dto.DeviceSummaryDTO;
 
 
 
+// Endpoints return the CompletableFuture of RmiExecutor.call(...): the Tomcat worker is released
+// while the core answers (validation still runs, and throws, on the request thread).
 @RestController
 public class DeviceController {
 
     private final RmiClient rmi;
+    private final RmiExecutor async;
+    private final HistoryExport export;
+    private final Counter exportRows;
+    private final Timer exportTime;
 
-    public DeviceController(RmiClient rmi) {
+    public DeviceController(RmiClient rmi, RmiExecutor async, HistoryExport export, MeterRegistry registry) {
         this.rmi = rmi;
+        this.async = async;
+        this.export = export;
+        this.exportRows = Counter.builder("export.rows")
+                .description("Readings written by /api/readings/export")
+                .register(registry);
+        this.exportTime = Timer.builder("export")
+                .description("Duration of one /api/readings/export")
+                .register(registry);
     }
 
     // ✅ List devices
     @GetMapping("/api/devices")
-    public List<String> devices() throws Exception {
-        return rmi.call(svc -> svc.listDevices());
+    public CompletableFuture<List<String>> devices() {
+        return async.call(svc -> svc.listDevices());
     }
 
     // ✅ Latest reading for one device
     @GetMapping("/api/devices/{device}/latest")
-    public ReadingDTO latest(@PathVariable String device) throws Exception {
-        return rmi.call(svc -> svc.getLatest(device));
+    public CompletableFuture<ReadingDTO> latest(@PathVariable String device) {
+        return async.call(svc -> svc.getLatest(device));
     }
 
     // ✅ History readings for charts
     @GetMapping("/api/devices/{device}/history")
-    public List<ReadingDTO> history(
+    public CompletableFuture<List<ReadingDTO>> history(
             @PathVariable String device,
             @RequestParam String fromUtc,
             @RequestParam String toUtc,
             @RequestParam(defaultValue = "200") int limit
+    ) {
+        return async.call(svc -> svc.getHistory(device, fromUtc, toUtc, limit));
+    }
+
+    // ✅ Pump decision per reading (rebuilt from the change-only decision journal)
+    @GetMapping("/api/devices/{device}/decisions")
+    public CompletableFuture<List<PumpDecisionDTO>> decisions(
+            @PathVariable String device,
+            @RequestParam String fromUtc,
+            @RequestParam String toUtc,
+            @RequestParam(defaultValue = "200") int limit
+    ) {
+        return async.call(svc -> svc.getDecisions(device, fromUtc, toUtc, limit));
+    }
+
+    // =========================
+    // ✅ EXPORT (fleet-wide history as CSV / NDJSON)
+    // =========================
+
+    // GET /api/readings/export?fromUtc=2025-03-01T00:00:00Z&toUtc=2025-09-01T00:00:00Z&format=csv&devices=esp32-01,esp32-02
+    // every reading in [fromUtc, toUtc) of the listed devices (all devices if omitted), streamed in chunks
+    @GetMapping("/api/readings/export")
+    public ResponseEntity<StreamingResponseBody> export(
+            @RequestParam String fromUtc,
+            @RequestParam String toUtc,
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestParam(required = false) List<String> devices
     ) throws Exception {
-        return rmi.call(svc -> svc.getHistory(device, fromUtc, toUtc, limit));
+        Instant from = OffsetDateTime.parse(fromUtc).toInstant();
+        Instant to = OffsetDateTime.parse(toUtc).toInstant();
+        if (!from.isBefore(to)) {
+            throw new IllegalArgumentException("fromUtc must be before toUtc");
+        }
+        HistoryExport.Format f = HistoryExport.Format.parse(format);
+        List<String> ids = (devices == null || devices.isEmpty())
+                ? rmi.call(svc -> svc.listDevices())
+                : new ArrayList<>(devices);
+
+        if (!export.tryBegin()) {
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "Too many exports running, retry later");
+        }
+
+        StreamingResponseBody body = out -> {
+            long t0 = System.nanoTime();
+            try {
+                HistoryExport.Stats stats = export.export(ids, from, to, f, out);
+                exportRows.increment(stats.rows);
+                System.out.println("[EXPORT] " + ids.size() + " device(s) " + from + " .. " + to + ": " + stats);
+            } catch (Exception e) {
+                System.out.println("[EXPORT] aborted: " + e.getMessage());
+                // rethrown so the connection is aborted: a complete-looking 200 would hide the truncation
+                throw e instanceof IOException io ? io : new IOException("export aborted: " + e.getMessage(), e);
+            } finally {
+                exportTime.record(System.nanoTime() - t0, TimeUnit.NANOSECONDS);
+                export.end();
+            }
+        };
+
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"readings." + f.extension + "\"")
+                .contentType(MediaType.parseMediaType(f.contentType))
+                .body(body);
     }
 
     // =========================
@@ -49,12 +144,12 @@ public class DeviceController {
     // =========================
 
     @GetMapping("/api/devices/{device}/mode")
-    public ModeDTO getMode(@PathVariable String device) throws Exception {
-        return rmi.call(svc -> svc.getMode(device));
+    public CompletableFuture<ModeDTO> getMode(@PathVariable String device) {
+        return async.call(svc -> svc.getMode(device));
     }
 
     @PostMapping("/api/devices/{device}/mode")
-    public ModeDTO setMode(@PathVariable String device, @RequestBody ModeRequest body) throws Exception {
+    public CompletableFuture<ModeDTO> setMode(@PathVariable String device, @RequestBody ModeRequest body) {
         if (body == null || body.mode == null) {
             throw new IllegalArgumentException("mode is required (AUTO or MANUAL)");
         }
@@ -66,8 +161,10 @@ public class DeviceController {
             throw new IllegalArgumentException("Invalid mode. Use AUTO or MANUAL");
         }
 
-        rmi.call(svc -> { svc.setMode(device, mode); return null; });
-        return rmi.call(svc -> svc.getMode(device)); // return the saved value
+        return async.call(svc -> {
+            svc.setMode(device, mode);
+            return svc.getMode(device); // return the saved value
+        });
     }
 
     public static class ModeRequest {
@@ -79,17 +176,19 @@ public class DeviceController {
     // =========================
 
     @GetMapping("/api/devices/{device}/manual-pump")
-    public boolean getManualPump(@PathVariable String device) throws Exception {
-        return rmi.call(svc -> svc.getManualPump(device));
+    public CompletableFuture<Boolean> getManualPump(@PathVariable String device) {
+        return async.call(svc -> svc.getManualPump(device));
     }
 
     @PostMapping("/api/devices/{device}/manual-pump")
-    public boolean setManualPump(@PathVariable String device, @RequestBody ManualPumpRequest body) throws Exception {
+    public CompletableFuture<Boolean> setManualPump(@PathVariable String device, @RequestBody ManualPumpRequest body) {
         if (body == null) {
             throw new IllegalArgumentException("Body required: {\"on\": true/false}");
         }
-        rmi.call(svc -> { svc.setManualPump(device, body.on); return null; });
-        return rmi.call(svc -> svc.getManualPump(device)); // return the saved value
+        return async.call(svc -> {
+            svc.setManualPump(device, body.on);
+            return svc.getManualPump(device); // return the saved value
+        });
     }
 
     public static class ManualPumpRequest {
@@ -101,49 +200,155 @@ public class DeviceController {
     // =========================
 
     @GetMapping("/api/devices/{device}/alerts")
-    public List<AlertDTO> alerts(
+    public CompletableFuture<List<AlertDTO>> alerts(
             @PathVariable String device,
             @RequestParam(defaultValue = "1970-01-01T00:00:00Z") String sinceUtc,
             @RequestParam(defaultValue = "200") int limit
-    ) throws Exception {
-        return rmi.call(svc -> svc.getAlerts(device, sinceUtc, limit));
+    ) {
+        return async.call(svc -> svc.getAlerts(device, sinceUtc, limit));
     }
     // ✅ Status for one device
     @GetMapping("/api/devices/{device}/status")
-    public DeviceStatusDTO status(
+    public CompletableFuture<DeviceStatusDTO> status(
             @PathVariable String device,
             @RequestParam(defaultValue = "20") int offlineSec
-    ) throws Exception {
-        return rmi.call(svc -> svc.getStatus(device, offlineSec));
+    ) {
+        return async.call(svc -> svc.getStatus(device, offlineSec));
     }
 
     // ✅ Status for all devices
     @GetMapping("/api/devices/status")
-    public List<DeviceStatusDTO> statusAll(
+    public CompletableFuture<List<DeviceStatusDTO>> statusAll(
             @RequestParam(defaultValue = "20") int offlineSec
-    ) throws Exception {
-        return rmi.call(svc -> svc.listStatus(offlineSec));
+    ) {
+        return async.call(svc -> svc.listStatus(offlineSec));
     }
     // ✅ Full dashboard summary (single call)
     @GetMapping("/api/devices/{device}/summary")
-    public DeviceSummaryDTO summary(
+    public CompletableFuture<DeviceSummaryDTO> summary(
             @PathVariable String device,
             @RequestParam(defaultValue = "20") int offlineSec,
             @RequestParam(required = false) String sinceUtc,
             @RequestParam(defaultValue = "10") int alertLimit
-    ) throws Exception {
+    ) {
         String finalSince = (sinceUtc == null || sinceUtc.isBlank())
                 ? "1970-01-01T00:00:00Z"
                 : sinceUtc;
 
-        return rmi.call(svc -> svc.getSummary(device, offlineSec, finalSince, alertLimit));
+        return async.call(svc -> svc.getSummary(device, offlineSec, finalSince, alertLimit));
     }
     @GetMapping("/api/devices/summary")
-    public List<core.dto.DeviceSummaryRowDTO> summaries(
+    public CompletableFuture<List<core.dto.DeviceSummaryRowDTO>> summaries(
             @RequestParam(defaultValue = "20") int offlineSec,
             @RequestParam(defaultValue = "1970-01-01T00:00:00Z") String sinceUtc
-    ) throws Exception {
-        return rmi.call(svc -> svc.listSummaries(offlineSec, sinceUtc));
+    ) {
+        return async.call(svc -> svc.listSummaries(offlineSec, sinceUtc));
+    }
+
+    // ✅ Streaming trends (EWMA soil, moisture slope, tank time-to-empty) - computed in the core, no history query
+    @GetMapping("/api/devices/{device}/analytics")
+    public CompletableFuture<AnalyticsDTO> analytics(@PathVariable String device) {
+        return async.call(svc -> svc.getAnalytics(device));
+    }
+
+    // =========================
+    // ✅ PROFILES (pump / tank thresholds)
+    // =========================
+
+    // effective thresholds (device -> zone -> default -> built-in), "source" tells which level set them
+    @GetMapping("/api/devices/{device}/profile")
+    public CompletableFuture<ProfileDTO> getProfile(@PathVariable String device) {
+        return async.call(svc -> svc.getProfile(device));
+    }
+
+    // PUT /api/devices/{device}/profile  {"moistureOn":25,"moistureOff":45}  (omitted fields inherit)
+    @PutMapping("/api/devices/{device}/profile")
+    public CompletableFuture<ProfileDTO> setDeviceProfile(@PathVariable String device, @RequestBody ProfileDTO body) {
+        ProfileDTO p = requireProfile(body);
+        p.device = device;
+        p.zone = null;
+        return async.call(svc -> svc.setProfile(p));
+    }
+
+    @PutMapping("/api/zones/{zone}/profile")
+    public CompletableFuture<ProfileDTO> setZoneProfile(@PathVariable String zone, @RequestBody ProfileDTO body) {
+        ProfileDTO p = requireProfile(body);
+        p.device = null;
+        p.zone = zone;
+        return async.call(svc -> svc.setProfile(p));
+    }
+
+    @PutMapping("/api/profiles/default")
+    public CompletableFuture<ProfileDTO> setDefaultProfile(@RequestBody ProfileDTO body) {
+        ProfileDTO p = requireProfile(body);
+        p.device = null;
+        p.zone = null;
+        return async.call(svc -> svc.setProfile(p));
+    }
+
+    // PUT /api/devices/{device}/zone  {"zone":"tomatoes"}  ({"zone":null} removes it)
+    @PutMapping("/api/devices/{device}/zone")
+    public CompletableFuture<ProfileDTO> setZone(@PathVariable String device, @RequestBody ZoneRequest body) {
+        String zone = body == null ? null : body.zone;
+        return async.call(svc -> svc.setZone(device, zone));
+    }
+
+    private static ProfileDTO requireProfile(ProfileDTO body) {
+        if (body == null) {
+            throw new IllegalArgumentException("Body required: {\"moistureOn\":30,\"moistureOff\":40,\"tankLow\":10,\"tankRecover\":15}");
+        }
+        body.source = null;
+        String invalid = body.validate();
+        if (invalid != null) throw new IllegalArgumentException(invalid);
+        return body;
+    }
+
+    public static class ZoneRequest {
+        public String zone;
+    }
+
+    // =========================
+    // ✅ BATCH (one RMI round trip for a dashboard page)
+    // =========================
+
+    // POST /api/devices/summary:batch  {"devices":["esp32-01","esp32-02"],"offlineSec":20,"sinceUtc":"...","alertLimit":10}
+    @PostMapping("/api/devices/summary:batch")
+    public CompletableFuture<List<DeviceSummaryDTO>> summaryBatch(@RequestBody BatchRequest body) {
+        List<String> devices = requireDevices(body);
+
+        int offlineSec = body.offlineSec != null ? body.offlineSec : 20;
+        int alertLimit = body.alertLimit != null ? body.alertLimit : 10;
+        String sinceUtc = (body.sinceUtc == null || body.sinceUtc.isBlank())
+                ? "1970-01-01T00:00:00Z"
+                : body.sinceUtc;
+
+        return async.call(svc -> svc.getSummaries(devices, offlineSec, sinceUtc, alertLimit));
+    }
+
+    // POST /api/devices/latest:batch  {"devices":["esp32-01","esp32-02"]}  -> {"esp32-01":{...},"esp32-02":null}
+    @PostMapping("/api/devices/latest:batch")
+    public CompletableFuture<Map<String, ReadingDTO>> latestBatch(@RequestBody BatchRequest body) {
+        List<String> devices = requireDevices(body);
+        return async.call(svc -> svc.getLatestMany(devices));
+    }
+
+    private static List<String> requireDevices(BatchRequest body) {
+        if (body == null || body.devices == null || body.devices.isEmpty()) {
+            throw new IllegalArgumentException("devices is required (non-empty array)");
+        }
+        if (body.devices.size() > MAX_BATCH_DEVICES) {
+            throw new IllegalArgumentException("At most " + MAX_BATCH_DEVICES + " devices per batch");
+        }
+        return new ArrayList<>(body.devices);
+    }
+
+    private static final int MAX_BATCH_DEVICES = 500;
+
+    public static class BatchRequest {
+        public List<String> devices;
+        public Integer offlineSec;
+        public String sinceUtc;
+        public Integer alertLimit;
     }
 
 
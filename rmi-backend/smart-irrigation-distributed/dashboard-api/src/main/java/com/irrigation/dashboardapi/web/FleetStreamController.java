@@ -0,0 +1,334 @@
+package com.irrigation.dashboardapi.web;
+
+import core.dto.DeviceSummaryRowDTO;
+import core.rmi.RmiClient;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Fleet overview as a diff stream instead of reloading /api/devices/summary on a timer.
+ *
+ * One view per (offlineSec, sinceUtc) pair polls listSummaries every irrigation.fleet.frame-ms,
+ * however many pages watch it, and compares each row with the last one sent for that device.
+ * Every change bumps the view's sequence number; the rows changed (and devices gone) in one
+ * poll leave as a single "diff" frame, rendered once and fanned out by the SseHub.
+ *
+ *   event: snapshot   data: {"seq":41,"rows":[...every device...]}
+ *   event: diff       data: {"seq":42,"rows":[...changed rows...],"removed":["esp32-07"]}
+ *
+ * Frame ids are "epoch-seq". A reconnect sends it back as Last-Event-ID (or ?since=) and gets
+ * one "diff" with everything that changed after that seq; a different epoch (view restarted)
+ * or an unknown seq gets a fresh "snapshot". secondsSinceLastSeen ticks on every poll, so it is
+ * left out of the comparison: rows carry lastSeenUtc and the page ages them itself.
+ *
+ * Every view is one listSummaries call per frame on the single fleet-stream thread, so sinceUtc
+ * is normalized (equal instants share a view, a malformed one is a 400) and at most
+ * irrigation.fleet.max-views views run at once; a new one past that is a 429.
+ */
+@RestController
+public class FleetStreamController {
+
+    private static final String TOPIC = "fleet:";
+
+    private final RmiClient rmi;
+    private final SseHub hub;
+    private final long frameMs;
+    private final int maxViews;
+
+    // "offlineSec|sinceUtc" -> view (removed once nobody watches it)
+    private final ConcurrentHashMap<String, View> views = new ConcurrentHashMap<>();
+
+    private final Counter frames;
+    private final Counter changedRows;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "fleet-stream");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public FleetStreamController(RmiClient rmi, SseHub hub, MeterRegistry registry,
+                                 @Value("${irrigation.fleet.frame-ms:2000}") long frameMs,
+                                 @Value("${irrigation.fleet.max-views:16}") int maxViews) {
+        this.rmi = rmi;
+        this.hub = hub;
+        this.frameMs = Math.max(200, frameMs);
+        this.maxViews = Math.max(1, maxViews);
+        this.frames = Counter.builder("fleet.frames")
+                .description("Fleet diff frames published")
+                .register(registry);
+        this.changedRows = Counter.builder("fleet.rows")
+                .description("Changed summary rows sent in fleet diff frames")
+                .register(registry);
+        scheduler.scheduleWithFixedDelay(this::pollViews, this.frameMs, this.frameMs, TimeUnit.MILLISECONDS);
+    }
+
+    // GET /api/devices/summary/stream?offlineSec=20&sinceUtc=...   (resume: Last-Event-ID or since=epoch-seq)
+    @GetMapping(value = "/api/devices/summary/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream(
+            @RequestParam(defaultValue = "20") int offlineSec,
+            @RequestParam(defaultValue = "1970-01-01T00:00:00Z") String sinceUtc,
+            @RequestParam(required = false) String since,
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId
+    ) {
+        if (offlineSec <= 0) offlineSec = 20;
+        String from = normalize(sinceUtc);
+        String key = offlineSec + "|" + from;
+        int off = offlineSec;
+        String resume = since != null ? since : lastEventId;
+
+        SseEmitter emitter = new SseEmitter(0L); // no timeout
+        View view;
+        while (!(view = views.computeIfAbsent(key, k -> newView(k, off, from))).join(emitter, resume)) {
+            // that view was just retired (no watchers), the next one starts a new epoch
+        }
+        if (!view.loaded()) {
+            View first = view;
+            scheduler.execute(() -> poll(first)); // snapshot now rather than at the next frame
+        }
+        return emitter;
+    }
+
+    private View newView(String key, int offlineSec, String sinceUtc) {
+        if (views.size() >= maxViews) {
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS,
+                    "Too many fleet views open (" + maxViews + "), use one of the running offlineSec/sinceUtc pairs");
+        }
+        return new View(TOPIC + key, offlineSec, sinceUtc);
+    }
+
+    /** sinceUtc as Instant.toString(), so "...Z" and "...+00:00" of the same instant share a view. */
+    private static String normalize(String sinceUtc) {
+        try {
+            return OffsetDateTime.parse(sinceUtc.trim()).toInstant().toString();
+        } catch (DateTimeParseException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "sinceUtc must be an ISO-8601 time with offset, e.g. 2024-01-01T00:00:00Z");
+        }
+    }
+
+    private void pollViews() {
+        for (Map.Entry<String, View> e : views.entrySet()) {
+            View view = e.getValue();
+            if (view.retireIfUnwatched()) {
+                views.remove(e.getKey(), view);
+                continue;
+            }
+            poll(view);
+        }
+    }
+
+    private void poll(View view) {
+        try {
+            List<DeviceSummaryRowDTO> rows = rmi.call(svc -> svc.listSummaries(view.offlineSec, view.sinceUtc));
+            view.apply(rows);
+        } catch (Exception ex) {
+            // keep the last table; the next frame retries
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    // =========================
+    // VIEW (one table, one sequence)
+    // =========================
+
+    private static final class Row {
+        final String device;
+        final String sig;   // every field except the age, to detect changes
+        final String json;
+        final long seq;     // sequence number of the frame that last changed it
+        final boolean removed;
+
+        Row(String device, String sig, String json, long seq, boolean removed) {
+            this.device = device;
+            this.sig = sig;
+            this.json = json;
+            this.seq = seq;
+            this.removed = removed;
+        }
+    }
+
+    private final class View {
+        final String topic;
+        final int offlineSec;
+        final String sinceUtc;
+        final String epoch = Long.toString(System.currentTimeMillis(), 36);
+
+        // guarded by this: apply and join never interleave, so a joiner misses no frame
+        final TreeMap<String, Row> table = new TreeMap<>();
+        long seq;
+        boolean loaded;
+        boolean retired;
+
+        View(String topic, int offlineSec, String sinceUtc) {
+            this.topic = topic;
+            this.offlineSec = offlineSec;
+            this.sinceUtc = sinceUtc;
+        }
+
+        /** False if the view was retired meanwhile (the caller joins a new one). */
+        synchronized boolean join(SseEmitter emitter, String resume) {
+            if (retired) return false;
+
+            SseHub.Subscriber sub = hub.subscribe(topic, emitter);
+            sub.send(SseEmitter.event().name("connected").data("ok"));
+            if (!loaded) return true; // the first poll publishes the snapshot
+
+            long from = resumeSeq(resume);
+            if (from < 0) {
+                sub.send(frame("snapshot", seq, table.values(), false));
+            } else if (from < seq) {
+                List<Row> changed = new ArrayList<>();
+                for (Row r : table.values()) if (r.seq > from) changed.add(r);
+                sub.send(frame("diff", seq, changed, true));
+            }
+            return true;
+        }
+
+        synchronized boolean loaded() {
+            return loaded;
+        }
+
+        synchronized boolean retireIfUnwatched() {
+            if (!hub.hasSubscribers(topic)) retired = true;
+            return retired;
+        }
+
+        /** -1 unless the id is "epoch-seq" of this view with a seq we can diff from. */
+        private long resumeSeq(String id) {
+            if (id == null || !id.startsWith(epoch + "-")) return -1;
+            try {
+                long s = Long.parseLong(id.substring(epoch.length() + 1));
+                return s >= 0 && s <= seq ? s : -1;
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+
+        synchronized void apply(List<DeviceSummaryRowDTO> rows) {
+            long now = System.currentTimeMillis();
+            long next = seq + 1;
+            List<Row> changed = new ArrayList<>();
+            Set<String> present = new HashSet<>();
+
+            for (DeviceSummaryRowDTO dto : rows) {
+                if (dto == null || dto.device == null) continue;
+                present.add(dto.device);
+
+                String sig = fields(dto);
+                Row prev = table.get(dto.device);
+                if (prev != null && !prev.removed && prev.sig.equals(sig)) continue;
+
+                Row r = new Row(dto.device, sig, json(dto, sig, now), next, false);
+                table.put(dto.device, r);
+                changed.add(r);
+            }
+            for (Map.Entry<String, Row> e : table.entrySet()) {
+                Row r = e.getValue();
+                if (r.removed || present.contains(e.getKey())) continue;
+                Row gone = new Row(e.getKey(), "", null, next, true);
+                e.setValue(gone);
+                changed.add(gone);
+            }
+
+            if (!loaded) {
+                loaded = true;
+                seq = next;
+                hub.publish(topic, frame("snapshot", seq, table.values(), false));
+                frames.increment();
+                changedRows.increment(changed.size());
+                return;
+            }
+            if (changed.isEmpty()) return;
+
+            seq = next;
+            hub.publish(topic, frame("diff", seq, changed, true));
+            frames.increment();
+            changedRows.increment(changed.size());
+        }
+
+        /** {"seq":N,"rows":[...],"removed":[...]}; tombstones only go into diffs. */
+        private SseEmitter.SseEventBuilder frame(String name, long frameSeq, Collection<Row> rows, boolean withRemoved) {
+            StringBuilder sb = new StringBuilder(64 + rows.size() * 256);
+            sb.append("{\"seq\":").append(frameSeq).append(",\"rows\":[");
+            boolean first = true;
+            for (Row r : rows) {
+                if (r.removed) continue;
+                if (!first) sb.append(',');
+                sb.append(r.json);
+                first = false;
+            }
+            sb.append(']');
+            if (withRemoved) {
+                sb.append(",\"removed\":[");
+                first = true;
+                for (Row r : rows) {
+                    if (!r.removed) continue;
+                    if (!first) sb.append(',');
+                    sb.append('"').append(escape(r.device)).append('"');
+                    first = false;
+                }
+                sb.append(']');
+            }
+            sb.append('}');
+            return SseEmitter.event().id(epoch + "-" + frameSeq).name(name).data(sb.toString());
+        }
+    }
+
+    // =========================
+    // JSON (field names as in /api/devices/summary)
+    // =========================
+
+    private static String fields(DeviceSummaryRowDTO r) {
+        StringBuilder sb = new StringBuilder(224);
+        sb.append("\"online\":").append(r.online)
+                .append(",\"soil\":").append(r.soil)
+                .append(",\"waterTank\":").append(r.waterTank)
+                .append(",\"raining\":").append(r.raining)
+                .append(",\"pump\":").append(r.pump)
+                .append(",\"tempC\":").append(r.tempC)
+                .append(",\"humidity\":").append(r.humidity)
+                .append(",\"createdUtc\":").append(str(r.createdUtc))
+                .append(",\"mode\":").append(r.mode == null ? "null" : str(r.mode.name()))
+                .append(",\"manualPump\":").append(r.manualPump)
+                .append(",\"recentAlertCount\":").append(r.recentAlertCount)
+                .append(",\"soilSlopePerHour\":").append(r.soilSlopePerHour)
+                .append(",\"tankMinutesToEmpty\":").append(r.tankMinutesToEmpty);
+        return sb.toString();
+    }
+
+    private static String json(DeviceSummaryRowDTO r, String fields, long nowMs) {
+        String lastSeen = r.secondsSinceLastSeen == null
+                ? null
+                : Instant.ofEpochSecond((nowMs / 1000) - r.secondsSinceLastSeen).toString();
+        return "{\"device\":\"" + escape(r.device) + "\""
+                + ",\"lastSeenUtc\":" + str(lastSeen)
+                + ",\"secondsSinceLastSeen\":" + r.secondsSinceLastSeen
+                + "," + fields + "}";
+    }
+
+    private static String str(String s) {
+        return s == null ? "null" : "\"" + escape(s) + "\"";
+    }
+
+    private static String escape(String s) {
+        if (s == null) return "";
+        return s.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
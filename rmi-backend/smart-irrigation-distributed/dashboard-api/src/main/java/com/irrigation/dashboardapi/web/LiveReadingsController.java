@@ -0,0 +1,162 @@
+package com.irrigation.dashboardapi.web;
+
+import com.irrigation.dashboardapi.config.RmiExecutor;
+import core.dto.ReadingDTO;
+import core.rmi.ReadingListener;
+import core.rmi.ReadingStream;
+import core.rmi.RmiClient;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Live readings over SSE, replacing /latest polling for gauges.
+ *
+ * This instance exports a ReadingListener and registers it with every core (renewed every
+ * irrigation.live.renew-sec, so a restarted core picks it up again); the cores call it with each
+ * reading pushReading stores. Each connection gets a ReadingStream: a "snapshot" per device
+ * first, then "delta" events with only the changed fields, at most one batch per
+ * irrigation.live.min-interval-ms. While a client still has events queued in the SseHub nothing
+ * more is handed to it, so its readings coalesce to the newest one per device. The first
+ * snapshot is fetched on the RmiExecutor, never on the Tomcat worker that opened the stream.
+ *
+ * The cores must be able to connect back to this host (-Djava.rmi.server.hostname).
+ */
+@RestController
+public class LiveReadingsController {
+
+    private static final String TOPIC = "live";
+
+    private final RmiClient rmi;
+    private final RmiExecutor async;
+    private final SseHub hub;
+    private final long minIntervalMs;
+
+    // open connections (a ReadingStream per SSE subscriber)
+    private final ConcurrentHashMap<SseHub.Subscriber, ReadingStream> streams = new ConcurrentHashMap<>();
+
+    private final Listener listener = new Listener();
+    private final Counter coalesced;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "live-readings");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public LiveReadingsController(RmiClient rmi, RmiExecutor async, SseHub hub, MeterRegistry registry,
+                                  @Value("${irrigation.live.min-interval-ms:1000}") long minIntervalMs,
+                                  @Value("${irrigation.live.renew-sec:30}") long renewSec) throws RemoteException {
+        this.rmi = rmi;
+        this.async = async;
+        this.hub = hub;
+        this.minIntervalMs = minIntervalMs;
+        this.coalesced = Counter.builder("live.coalesced")
+                .description("Live readings replaced by a newer one before they were sent")
+                .register(registry);
+
+        UnicastRemoteObject.exportObject(listener, 0);
+        scheduler.scheduleWithFixedDelay(this::register, 0, Math.max(1, renewSec), TimeUnit.SECONDS);
+        scheduler.scheduleWithFixedDelay(this::flush, 100, Math.max(50, minIntervalMs / 4), TimeUnit.MILLISECONDS);
+    }
+
+    // GET /api/devices/live?devices=esp32-01,esp32-02   (all devices if omitted)
+    @GetMapping(value = "/api/devices/live", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter live(@RequestParam(required = false) List<String> devices) {
+        return open(devices);
+    }
+
+    @GetMapping(value = "/api/devices/{device}/live", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter liveOne(@PathVariable String device) {
+        return open(List.of(device));
+    }
+
+    private SseEmitter open(List<String> devices) {
+        SseEmitter emitter = new SseEmitter(0L); // no timeout
+        ReadingStream stream = new ReadingStream(devices, minIntervalMs);
+
+        SseHub.Subscriber sub = hub.subscribe(TOPIC, emitter);
+        streams.put(sub, stream);
+        sub.send(SseEmitter.event().name("connected").data("ok"));
+
+        // first snapshot from the cores, so the gauges fill before the next reading arrives;
+        // live readings that beat it win (seed never replaces them)
+        try {
+            async.call(svc -> {
+                List<String> ids = stream.devices() == null ? svc.listDevices() : new ArrayList<>(stream.devices());
+                return svc.getLatestMany(ids);
+            }).thenAccept(latest -> {
+                for (ReadingDTO r : latest.values()) stream.seed(r);
+            });
+        } catch (Exception ignored) {
+            // RMI queue full: deltas start with a snapshot anyway
+        }
+        return emitter;
+    }
+
+    /** Hand due batches to the hub; a client with events still queued waits (and coalesces). */
+    private void flush() {
+        try {
+            for (Map.Entry<SseHub.Subscriber, ReadingStream> e : streams.entrySet()) {
+                SseHub.Subscriber sub = e.getKey();
+                ReadingStream stream = e.getValue();
+                if (!sub.isOpen()) {
+                    streams.remove(sub);
+                    coalesced.increment(stream.takeCoalesced());
+                    continue;
+                }
+                if (sub.queued() > 0) continue;
+
+                // one queue entry per batch, however many devices it covers
+                List<ReadingStream.Event> due = stream.drainDue();
+                List<SseEmitter.SseEventBuilder> events = new ArrayList<>(due.size());
+                for (ReadingStream.Event ev : due) events.add(SseEmitter.event().name(ev.name).data(ev.json));
+                sub.send(events);
+                coalesced.increment(stream.takeCoalesced());
+            }
+        } catch (Exception ignored) {
+            // don't crash SSE
+        }
+    }
+
+    private void register() {
+        try {
+            rmi.call(svc -> { svc.addReadingListener(listener); return null; });
+        } catch (Exception e) {
+            System.out.println("⚠️ Live readings not registered: " + e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+        try {
+            rmi.call(svc -> { svc.removeReadingListener(listener); return null; });
+        } catch (Exception ignored) {
+            // the cores drop us on the next failed call
+        }
+        try {
+            UnicastRemoteObject.unexportObject(listener, true);
+        } catch (Exception ignored) {}
+    }
+
+    /** Called by the cores (RMI threads): offer each reading to the connections that want it. */
+    private final class Listener implements ReadingListener {
+        @Override
+        public void onReadings(List<ReadingDTO> readings) {
+            if (readings == null || streams.isEmpty()) return;
+            for (ReadingStream stream : streams.values()) {
+                for (ReadingDTO r : readings) stream.offer(r);
+            }
+        }
+    }
+}
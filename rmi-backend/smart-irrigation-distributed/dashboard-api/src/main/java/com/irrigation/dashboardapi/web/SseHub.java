@@ -0,0 +1,344 @@
+package com.irrigation.dashboardapi.web;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Fan-out of SSE events to many emitters without letting one slow client hold up the others.
+ *
+ * publish(...) only renders the event once and offers it to each subscriber's bounded queue
+ * ({@code queueSize} entries; a batch from Subscriber.send(List) is one entry); a small pool of "sse-send" threads drains the queues, at most one
+ * thread per subscriber at a time. When a queue is full the overflow policy decides:
+ *   DISCONNECT   (default) the stream is completed; EventSource reconnects with Last-Event-ID
+ *   DROP_OLDEST  the oldest queued event is discarded (for state the next event replaces anyway)
+ * A send blocked for more than {@code stallMs} (client stopped reading, TCP window full) evicts
+ * the subscriber and takes its thread out of the pool: the write is interrupted, and until it
+ * returns (at the latest on Tomcat's write timeout) a replacement thread serves the other
+ * subscribers. At most {@code senderThreads} such replacements exist at a time.
+ *
+ * Every {@code heartbeatMs} an idle subscriber gets a ":hb" comment, which keeps proxies from
+ * closing quiet streams and surfaces dead connections as send errors.
+ *
+ * Meters: sse.subscribers / sse.queued gauges, sse.events, sse.dropped and
+ * sse.evictions{reason=overflow|stalled|error} counters.
+ */
+public class SseHub {
+
+    public enum Overflow {
+        DISCONNECT, DROP_OLDEST;
+
+        /** "disconnect" / "drop-oldest" (case and '-' / '_' do not matter). */
+        public static Overflow parse(String s) {
+            if (s == null || s.isBlank()) return DISCONNECT;
+            return valueOf(s.trim().toUpperCase().replace('-', '_'));
+        }
+    }
+
+    private static final List<Set<ResponseBodyEmitter.DataWithMediaType>> HEARTBEAT = List.of(SseEmitter.event().comment("hb").build());
+
+    private final int queueSize;
+    private final long stallNanos;
+    private final Overflow overflow;
+
+    // topic (e.g. "alerts:esp32-01") -> subscribers
+    private final ConcurrentHashMap<String, Set<Subscriber>> topics = new ConcurrentHashMap<>();
+    private final AtomicInteger subscribers = new AtomicInteger();
+
+    private final ThreadPoolExecutor senders;
+    private final int senderThreads;
+    private int stranded; // pool threads stuck in an evicted subscriber's write (guarded by senders)
+    private final ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "sse-heartbeat");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final Counter sent;
+    private final Counter dropped;
+    private final Counter evictedOverflow;
+    private final Counter evictedStalled;
+    private final Counter evictedError;
+
+    public SseHub(MeterRegistry registry, int queueSize, int senderThreads, long heartbeatMs, long stallMs, Overflow overflow) {
+        this.queueSize = Math.max(1, queueSize);
+        this.stallNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1000, stallMs));
+        this.overflow = overflow;
+
+        this.senderThreads = Math.max(1, senderThreads);
+        AtomicInteger n = new AtomicInteger();
+        this.senders = new ThreadPoolExecutor(this.senderThreads, this.senderThreads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "sse-send-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+        Gauge.builder("sse.subscribers", subscribers, AtomicInteger::get)
+                .description("Open SSE streams")
+                .register(registry);
+        Gauge.builder("sse.queued", this, SseHub::queued)
+                .description("Entries (events or batches) waiting in SSE subscriber queues")
+                .register(registry);
+        this.sent = Counter.builder("sse.events")
+                .description("SSE events written to clients (heartbeats included)")
+                .register(registry);
+        this.dropped = Counter.builder("sse.dropped")
+                .description("Events discarded by the drop-oldest overflow policy")
+                .register(registry);
+        this.evictedOverflow = eviction(registry, "overflow");
+        this.evictedStalled = eviction(registry, "stalled");
+        this.evictedError = eviction(registry, "error");
+
+        long every = Math.max(1000, heartbeatMs);
+        heartbeat.scheduleWithFixedDelay(this::tick, every, every, TimeUnit.MILLISECONDS);
+    }
+
+    private static Counter eviction(MeterRegistry registry, String reason) {
+        return Counter.builder("sse.evictions")
+                .description("SSE streams closed by the hub")
+                .tag("reason", reason)
+                .register(registry);
+    }
+
+    /** Register an emitter (the hub owns its completion / timeout / error callbacks). */
+    public Subscriber subscribe(String topic, SseEmitter emitter) {
+        Subscriber s = new Subscriber(topic, emitter, queueSize);
+        emitter.onCompletion(() -> close(s, null));
+        emitter.onTimeout(() -> close(s, null));
+        emitter.onError(e -> close(s, null));
+
+        topics.compute(topic, (k, set) -> {
+            if (set == null) set = ConcurrentHashMap.newKeySet();
+            set.add(s);
+            return set;
+        });
+        subscribers.incrementAndGet();
+        return s;
+    }
+
+    /** Queue the event for every subscriber of the topic; never blocks on a client. */
+    public void publish(String topic, SseEmitter.SseEventBuilder event) {
+        Set<Subscriber> set = topics.get(topic);
+        if (set == null || set.isEmpty()) return;
+
+        List<Set<ResponseBodyEmitter.DataWithMediaType>> items = List.of(event.build()); // rendered once, shared
+        for (Subscriber s : set) offer(s, items);
+    }
+
+    /** Topics with at least one subscriber. */
+    public Set<String> topics() {
+        return topics.keySet();
+    }
+
+    public boolean hasSubscribers(String topic) {
+        Set<Subscriber> set = topics.get(topic);
+        return set != null && !set.isEmpty();
+    }
+
+    public void shutdown() {
+        heartbeat.shutdownNow();
+        senders.shutdownNow();
+    }
+
+    // =========================
+    // QUEUE + DRAIN
+    // =========================
+
+    /** items: one queue entry, the events written back to back. */
+    private void offer(Subscriber s, List<Set<ResponseBodyEmitter.DataWithMediaType>> items) {
+        if (s.closed.get()) return;
+
+        if (!s.queue.offer(items)) {
+            if (overflow == Overflow.DISCONNECT) {
+                close(s, evictedOverflow);
+                return;
+            }
+            while (!s.queue.offer(items)) {
+                if (s.queue.poll() != null) dropped.increment();
+            }
+        }
+        schedule(s);
+    }
+
+    private void schedule(Subscriber s) {
+        if (!s.draining.compareAndSet(false, true)) return;
+        try {
+            senders.execute(() -> drain(s));
+        } catch (RejectedExecutionException e) {
+            s.draining.set(false); // shutting down
+        }
+    }
+
+    private void drain(Subscriber s) {
+        Thread me = Thread.currentThread();
+        boolean released = false; // tick() took this thread out of the pool
+        try {
+            List<Set<ResponseBodyEmitter.DataWithMediaType>> batch;
+            while (!released && !s.closed.get() && (batch = s.queue.poll()) != null) {
+                for (Set<ResponseBodyEmitter.DataWithMediaType> items : batch) {
+                    s.sender.set(me); // before sendingSince: a stall seen by tick() always has a sender
+                    s.sendingSince = System.nanoTime();
+                    try {
+                        s.emitter.send(items);
+                    } finally {
+                        released = !s.sender.compareAndSet(me, null);
+                        s.sendingSince = 0;
+                    }
+                    if (released || s.closed.get()) break;
+                    sent.increment();
+                }
+            }
+        } catch (Exception e) {
+            // client gone, or write interrupted / timed out after a stall eviction
+            close(s, evictedError);
+        } finally {
+            if (released) {
+                Thread.interrupted(); // the interrupt was meant for the write only
+                resize(-1);
+            }
+            s.draining.set(false);
+        }
+
+        if (s.closed.get()) {
+            complete(s);
+        } else if (!s.queue.isEmpty()) {
+            schedule(s); // offered after our last poll
+        }
+    }
+
+    private void tick() {
+        long now = System.nanoTime();
+        for (Set<Subscriber> set : topics.values()) {
+            for (Subscriber s : set) {
+                long since = s.sendingSince;
+                if (since != 0 && now - since > stallNanos) {
+                    close(s, evictedStalled);
+                    release(s);
+                } else if (s.queue.isEmpty()) {
+                    offer(s, HEARTBEAT);
+                }
+            }
+        }
+    }
+
+    /**
+     * Give up on the stalled write: a replacement thread joins the pool (unless the cap is reached)
+     * and the writer is interrupted. Exactly one of release() and the returning send wins the CAS.
+     */
+    private void release(Subscriber s) {
+        Thread t = s.sender.get();
+        if (t == null || !s.sender.compareAndSet(t, null)) return; // the send just returned
+        resize(1);
+        t.interrupt();
+    }
+
+    /** Grow / shrink the pool by stranded threads, at most senderThreads extra. */
+    private void resize(int delta) {
+        synchronized (senders) {
+            if (senders.isShutdown()) return;
+            stranded += delta;
+            int size = senderThreads + Math.min(stranded, senderThreads);
+            if (size > senders.getMaximumPoolSize()) {
+                senders.setMaximumPoolSize(size);
+                senders.setCorePoolSize(size);
+            } else if (size < senders.getMaximumPoolSize()) {
+                senders.setCorePoolSize(size);
+                senders.setMaximumPoolSize(size);
+            }
+        }
+    }
+
+    /** Unregister once; counts an eviction when the hub (not the client) ended the stream. */
+    private void close(Subscriber s, Counter reason) {
+        if (!s.closed.compareAndSet(false, true)) return;
+
+        topics.computeIfPresent(s.topic, (k, set) -> {
+            set.remove(s);
+            return set.isEmpty() ? null : set;
+        });
+        subscribers.decrementAndGet();
+        s.queue.clear();
+        if (reason != null) reason.increment();
+
+        // a send in progress completes it when it returns (complete() would wait for that send)
+        if (!s.draining.get()) complete(s);
+    }
+
+    private static void complete(Subscriber s) {
+        if (!s.completed.compareAndSet(false, true)) return;
+        try {
+            s.emitter.complete();
+        } catch (Exception ignored) {
+            // already completed by the container
+        }
+    }
+
+    private double queued() {
+        long n = 0;
+        for (Set<Subscriber> set : topics.values()) {
+            for (Subscriber s : set) n += s.queue.size();
+        }
+        return n;
+    }
+
+    // =========================
+    // SUBSCRIBER
+    // =========================
+
+    public final class Subscriber {
+        final String topic;
+        final SseEmitter emitter;
+        final ArrayBlockingQueue<List<Set<ResponseBodyEmitter.DataWithMediaType>>> queue;
+        final AtomicBoolean draining = new AtomicBoolean();
+        final AtomicBoolean closed = new AtomicBoolean();
+        final AtomicBoolean completed = new AtomicBoolean();
+        volatile long sendingSince; // nanoTime the current send started, 0 = idle
+        final AtomicReference<Thread> sender = new AtomicReference<>(); // thread inside emitter.send
+
+        Subscriber(String topic, SseEmitter emitter, int queueSize) {
+            this.topic = topic;
+            this.emitter = emitter;
+            this.queue = new ArrayBlockingQueue<>(queueSize);
+        }
+
+        /** Queue an event for this subscriber only (handshake, catch-up, snapshot). */
+        public void send(SseEmitter.SseEventBuilder event) {
+            offer(this, List.of(event.build()));
+        }
+
+        /** Queue several events as one entry: a batch of any size takes a single queue slot. */
+        public void send(List<SseEmitter.SseEventBuilder> events) {
+            if (events.isEmpty()) return;
+            List<Set<ResponseBodyEmitter.DataWithMediaType>> items = new ArrayList<>(events.size());
+            for (SseEmitter.SseEventBuilder e : events) items.add(e.build());
+            offer(this, items);
+        }
+
+        public boolean isOpen() {
+            return !closed.get();
+        }
+
+        /** Events waiting for this client; a producer that coalesces can hold back while > 0. */
+        public int queued() {
+            return queue.size();
+        }
+    }
+}
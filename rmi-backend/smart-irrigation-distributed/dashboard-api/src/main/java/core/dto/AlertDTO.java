@@ -1,12 +1,56 @@
 package core.dto;
 
-import java.io.Serializable;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+public class AlertDTO implements Externalizable {
+    private static final long serialVersionUID = 1L;
 
-public class AlertDTO implements Serializable {
     public Long id;
     public String device;
-    public String type;       // OFFLINE, TANK_LOW, RAINING, SENSOR_MISSING ...
+    public String type;       // OFFLINE, ONLINE, TANK_LOW, RAINING, SENSOR_MISSING ...
     public String severity;   // INFO, WARN, CRIT
     public String message;
     public String createdUtc;
+
+    private static final int ID = 1;
+    private static final int DEVICE = 1 << 1;
+    private static final int TYPE = 1 << 2;
+    private static final int SEVERITY = 1 << 3;
+    private static final int MESSAGE = 1 << 4;
+    private static final int TIME = 1 << 5;
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        int bits = 0;
+        if (id != null) bits |= ID;
+        if (device != null) bits |= DEVICE;
+        if (type != null) bits |= TYPE;
+        if (severity != null) bits |= SEVERITY;
+        if (message != null) bits |= MESSAGE;
+        if (createdUtc != null) bits |= TIME;
+
+        out.writeByte(bits);
+
+        if (id != null) DtoIO.writeZigZag(out, id);
+        if (device != null) DtoIO.writeString(out, device);
+        if (type != null) DtoIO.writeString(out, type);
+        if (severity != null) DtoIO.writeString(out, severity);
+        if (message != null) DtoIO.writeString(out, message);
+        if (createdUtc != null) DtoIO.writeTime(out, createdUtc);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        int bits = in.readUnsignedByte();
+
+        id = (bits & ID) != 0 ? DtoIO.readZigZag(in) : null;
+        device = (bits & DEVICE) != 0 ? DtoIO.readString(in) : null;
+        type = (bits & TYPE) != 0 ? DtoIO.readString(in) : null;
+        severity = (bits & SEVERITY) != 0 ? DtoIO.readString(in) : null;
+        message = (bits & MESSAGE) != 0 ? DtoIO.readString(in) : null;
+        createdUtc = (bits & TIME) != 0 ? DtoIO.readTime(in) : null;
+    }
 }
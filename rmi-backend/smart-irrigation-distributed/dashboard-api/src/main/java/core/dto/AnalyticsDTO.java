@@ -0,0 +1,76 @@
+package core.dto;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+/**
+ * Streaming trends of one device (computed in the core on every reading, no history query).
+ * Slopes are in percent per hour; a value is null until there are enough samples.
+ */
+public class AnalyticsDTO implements Externalizable {
+    private static final long serialVersionUID = 1L;
+
+    public String device;
+    public long samples;
+
+    public Double soilEwma;
+    public Double soilSlopePerHour;
+
+    public Double tankEwma;
+    public Double tankSlopePerHour;     // negative = draining
+    public Double tankMinutesToEmpty;   // null if the tank is not draining
+    public Double tankMinutesToLow;     // until the profile's tankLow
+
+    public String lastUtc;              // time of the last sample
+
+    private static final int DEVICE = 1;
+    private static final int SOIL_EWMA = 1 << 1;
+    private static final int SOIL_SLOPE = 1 << 2;
+    private static final int TANK_EWMA = 1 << 3;
+    private static final int TANK_SLOPE = 1 << 4;
+    private static final int TANK_EMPTY = 1 << 5;
+    private static final int TANK_LOW = 1 << 6;
+    private static final int LAST = 1 << 7;
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        int bits = 0;
+        if (device != null) bits |= DEVICE;
+        if (soilEwma != null) bits |= SOIL_EWMA;
+        if (soilSlopePerHour != null) bits |= SOIL_SLOPE;
+        if (tankEwma != null) bits |= TANK_EWMA;
+        if (tankSlopePerHour != null) bits |= TANK_SLOPE;
+        if (tankMinutesToEmpty != null) bits |= TANK_EMPTY;
+        if (tankMinutesToLow != null) bits |= TANK_LOW;
+        if (lastUtc != null) bits |= LAST;
+
+        out.writeByte(bits);
+
+        if (device != null) DtoIO.writeString(out, device);
+        DtoIO.writeVarLong(out, samples);
+        if (soilEwma != null) DtoIO.writeDouble(out, soilEwma);
+        if (soilSlopePerHour != null) DtoIO.writeDouble(out, soilSlopePerHour);
+        if (tankEwma != null) DtoIO.writeDouble(out, tankEwma);
+        if (tankSlopePerHour != null) DtoIO.writeDouble(out, tankSlopePerHour);
+        if (tankMinutesToEmpty != null) DtoIO.writeDouble(out, tankMinutesToEmpty);
+        if (tankMinutesToLow != null) DtoIO.writeDouble(out, tankMinutesToLow);
+        if (lastUtc != null) DtoIO.writeTime(out, lastUtc);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        int bits = in.readUnsignedByte();
+
+        device = (bits & DEVICE) != 0 ? DtoIO.readString(in) : null;
+        samples = DtoIO.readVarLong(in);
+        soilEwma = (bits & SOIL_EWMA) != 0 ? DtoIO.readDouble(in) : null;
+        soilSlopePerHour = (bits & SOIL_SLOPE) != 0 ? DtoIO.readDouble(in) : null;
+        tankEwma = (bits & TANK_EWMA) != 0 ? DtoIO.readDouble(in) : null;
+        tankSlopePerHour = (bits & TANK_SLOPE) != 0 ? DtoIO.readDouble(in) : null;
+        tankMinutesToEmpty = (bits & TANK_EMPTY) != 0 ? DtoIO.readDouble(in) : null;
+        tankMinutesToLow = (bits & TANK_LOW) != 0 ? DtoIO.readDouble(in) : null;
+        lastUtc = (bits & LAST) != 0 ? DtoIO.readTime(in) : null;
+    }
+}
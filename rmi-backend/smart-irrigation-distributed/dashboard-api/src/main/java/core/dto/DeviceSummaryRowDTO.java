@@ -1,8 +1,13 @@
 package core.dto;
 
-import java.io.Serializable;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+public class DeviceSummaryRowDTO implements Externalizable {
+    private static final long serialVersionUID = 1L;
 
-public class DeviceSummaryRowDTO implements Serializable {
     public String device;
     public Boolean online;
     public Long secondsSinceLastSeen;
@@ -18,4 +23,82 @@ public class DeviceSummaryRowDTO implements Serializable {
     public ModeDTO mode;
     public Boolean manualPump;
     public Integer recentAlertCount; // alerts since sinceUtc
+
+    public Double soilSlopePerHour;    // streaming trend (see AnalyticsDTO)
+    public Double tankMinutesToEmpty;
+
+    private static final int DEVICE = 1;
+    private static final int ONLINE_SET = 1 << 1;
+    private static final int ONLINE_ON = 1 << 2;
+    private static final int SECONDS = 1 << 3;
+    private static final int SOIL = 1 << 4;
+    private static final int TANK = 1 << 5;
+    private static final int RAIN_SET = 1 << 6;
+    private static final int RAIN_ON = 1 << 7;
+    private static final int PUMP_SET = 1 << 8;
+    private static final int PUMP_ON = 1 << 9;
+    private static final int TEMP = 1 << 10;
+    private static final int HUM = 1 << 11;
+    private static final int TIME = 1 << 12;
+    private static final int MODE = 1 << 13;
+    private static final int MANUAL_SET = 1 << 14;
+    private static final int MANUAL_ON = 1 << 15;
+    private static final int ALERT_COUNT = 1 << 16;
+    private static final int SOIL_SLOPE = 1 << 17;
+    private static final int TANK_EMPTY = 1 << 18;
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        int bits = 0;
+        if (device != null) bits |= DEVICE;
+        if (online != null) bits |= ONLINE_SET | (online ? ONLINE_ON : 0);
+        if (secondsSinceLastSeen != null) bits |= SECONDS;
+        if (soil != null) bits |= SOIL;
+        if (waterTank != null) bits |= TANK;
+        if (raining != null) bits |= RAIN_SET | (raining ? RAIN_ON : 0);
+        if (pump != null) bits |= PUMP_SET | (pump ? PUMP_ON : 0);
+        if (tempC != null) bits |= TEMP;
+        if (humidity != null) bits |= HUM;
+        if (createdUtc != null) bits |= TIME;
+        if (mode != null) bits |= MODE;
+        if (manualPump != null) bits |= MANUAL_SET | (manualPump ? MANUAL_ON : 0);
+        if (recentAlertCount != null) bits |= ALERT_COUNT;
+        if (soilSlopePerHour != null) bits |= SOIL_SLOPE;
+        if (tankMinutesToEmpty != null) bits |= TANK_EMPTY;
+
+        DtoIO.writeVarLong(out, bits);
+
+        if (device != null) DtoIO.writeString(out, device);
+        if (secondsSinceLastSeen != null) DtoIO.writeZigZag(out, secondsSinceLastSeen);
+        if (soil != null) DtoIO.writeZigZag(out, soil);
+        if (waterTank != null) DtoIO.writeZigZag(out, waterTank);
+        if (tempC != null) DtoIO.writeDouble(out, tempC);
+        if (humidity != null) DtoIO.writeDouble(out, humidity);
+        if (createdUtc != null) DtoIO.writeTime(out, createdUtc);
+        if (mode != null) DtoIO.writeMode(out, mode);
+        if (recentAlertCount != null) DtoIO.writeZigZag(out, recentAlertCount);
+        if (soilSlopePerHour != null) DtoIO.writeDouble(out, soilSlopePerHour);
+        if (tankMinutesToEmpty != null) DtoIO.writeDouble(out, tankMinutesToEmpty);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        int bits = (int) DtoIO.readVarLong(in);
+
+        device = (bits & DEVICE) != 0 ? DtoIO.readString(in) : null;
+        online = (bits & ONLINE_SET) != 0 ? (bits & ONLINE_ON) != 0 : null;
+        secondsSinceLastSeen = (bits & SECONDS) != 0 ? DtoIO.readZigZag(in) : null;
+        soil = (bits & SOIL) != 0 ? (int) DtoIO.readZigZag(in) : null;
+        waterTank = (bits & TANK) != 0 ? (int) DtoIO.readZigZag(in) : null;
+        raining = (bits & RAIN_SET) != 0 ? (bits & RAIN_ON) != 0 : null;
+        pump = (bits & PUMP_SET) != 0 ? (bits & PUMP_ON) != 0 : null;
+        tempC = (bits & TEMP) != 0 ? DtoIO.readDouble(in) : null;
+        humidity = (bits & HUM) != 0 ? DtoIO.readDouble(in) : null;
+        createdUtc = (bits & TIME) != 0 ? DtoIO.readTime(in) : null;
+        mode = (bits & MODE) != 0 ? DtoIO.readMode(in) : null;
+        manualPump = (bits & MANUAL_SET) != 0 ? (bits & MANUAL_ON) != 0 : null;
+        recentAlertCount = (bits & ALERT_COUNT) != 0 ? (int) DtoIO.readZigZag(in) : null;
+        soilSlopePerHour = (bits & SOIL_SLOPE) != 0 ? DtoIO.readDouble(in) : null;
+        tankMinutesToEmpty = (bits & TANK_EMPTY) != 0 ? DtoIO.readDouble(in) : null;
+    }
 }
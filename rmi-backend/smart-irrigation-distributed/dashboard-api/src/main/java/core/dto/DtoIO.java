@@ -0,0 +1,279 @@
+package core.dto;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Primitive encodings shared by the Externalizable DTOs.
+ *
+ * - varints (LEB128) with zigzag for signed values
+ * - timestamps as epoch millis when the ISO string round-trips exactly, else the string
+ * - doubles as a scaled varint when they have at most two decimals, else 8 raw bytes
+ *
+ * Every DTO writes a presence bitmap first, so null fields cost one bit.
+ * New fields must be appended at the end: ObjectInputStream skips unread block data,
+ * so an older reader still works against a newer writer. That only holds at the top
+ * level; a DTO nested in another is framed with writeNested (length prefix) so an older
+ * reader skips the fields it does not know there too.
+ */
+final class DtoIO {
+
+    private DtoIO() {}
+
+    // ======================================================================
+    // VARINTS
+    // ======================================================================
+
+    static void writeVarLong(ObjectOutput out, long v) throws IOException {
+        while ((v & ~0x7FL) != 0) {
+            out.writeByte((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.writeByte((int) v);
+    }
+
+    static long readVarLong(ObjectInput in) throws IOException {
+        long v = 0;
+        int shift = 0;
+        while (true) {
+            int b = in.readUnsignedByte();
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return v;
+            shift += 7;
+            if (shift > 63) throw new IOException("varint too long");
+        }
+    }
+
+    static void writeZigZag(ObjectOutput out, long v) throws IOException {
+        writeVarLong(out, (v << 1) ^ (v >> 63));
+    }
+
+    static long readZigZag(ObjectInput in) throws IOException {
+        long v = readVarLong(in);
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    // ======================================================================
+    // STRINGS (presence handled by the caller's bitmap)
+    // ======================================================================
+
+    static void writeString(ObjectOutput out, String s) throws IOException {
+        out.writeUTF(s);
+    }
+
+    static String readString(ObjectInput in) throws IOException {
+        return in.readUTF();
+    }
+
+    // ======================================================================
+    // TIMESTAMPS
+    // ======================================================================
+
+    static final long NOT_MILLIS = Long.MIN_VALUE;
+
+    /** Epoch millis if iso is exactly Instant.ofEpochMilli(ms).toString(), else NOT_MILLIS. */
+    static long isoToMillis(String iso) {
+        if (iso == null) return NOT_MILLIS;
+
+        long fast = parseCanonical(iso);
+        if (fast != NOT_MILLIS) return fast;
+
+        try {
+            Instant t = Instant.parse(iso);
+            long ms = t.toEpochMilli();
+            return Instant.ofEpochMilli(ms).toString().equals(iso) ? ms : NOT_MILLIS;
+        } catch (DateTimeParseException | ArithmeticException e) {
+            return NOT_MILLIS;
+        }
+    }
+
+    /**
+     * Fast path for the two shapes Instant.toString() produces at millisecond precision:
+     * "yyyy-MM-ddTHH:mm:ssZ" and "yyyy-MM-ddTHH:mm:ss.SSSZ" (fraction never 000).
+     * Anything else goes through Instant.parse.
+     */
+    private static long parseCanonical(String s) {
+        int len = s.length();
+        if (len != 20 && len != 24) return NOT_MILLIS;
+        if (s.charAt(4) != '-' || s.charAt(7) != '-' || s.charAt(10) != 'T'
+                || s.charAt(13) != ':' || s.charAt(16) != ':' || s.charAt(len - 1) != 'Z') return NOT_MILLIS;
+
+        int year = digits(s, 0, 4);
+        int month = digits(s, 5, 2);
+        int day = digits(s, 8, 2);
+        int hour = digits(s, 11, 2);
+        int minute = digits(s, 14, 2);
+        int second = digits(s, 17, 2);
+        if ((year | month | day | hour | minute | second) < 0) return NOT_MILLIS;
+        if (hour > 23 || minute > 59 || second > 59) return NOT_MILLIS;
+
+        int millis = 0;
+        if (len == 24) {
+            if (s.charAt(19) != '.') return NOT_MILLIS;
+            millis = digits(s, 20, 3);
+            if (millis <= 0) return NOT_MILLIS; // ".000" is never printed by Instant.toString
+        }
+
+        long epochDay;
+        try {
+            epochDay = LocalDate.of(year, month, day).toEpochDay();
+        } catch (DateTimeException e) {
+            return NOT_MILLIS;
+        }
+        return ((epochDay * 24 + hour) * 60 + minute) * 60_000L + second * 1000L + millis;
+    }
+
+    private static int digits(String s, int from, int count) {
+        int v = 0;
+        for (int i = from; i < from + count; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            v = v * 10 + (c - '0');
+        }
+        return v;
+    }
+
+    static String millisToIso(long ms) {
+        return Instant.ofEpochMilli(ms).toString();
+    }
+
+    static void writeTime(ObjectOutput out, String iso) throws IOException {
+        long ms = isoToMillis(iso);
+        if (ms != NOT_MILLIS) {
+            out.writeBoolean(true);
+            writeZigZag(out, ms);
+        } else {
+            out.writeBoolean(false);
+            out.writeUTF(iso);
+        }
+    }
+
+    static String readTime(ObjectInput in) throws IOException {
+        return in.readBoolean() ? millisToIso(readZigZag(in)) : in.readUTF();
+    }
+
+    // ======================================================================
+    // DOUBLES
+    // ======================================================================
+
+    /** True if v survives a round trip through v*100 as a long. */
+    static boolean isCentiExact(double v) {
+        double scaled = v * 100.0;
+        if (Double.isNaN(scaled) || Math.abs(scaled) > 1e15) return false;
+        long l = Math.round(scaled);
+        return l / 100.0 == v;
+    }
+
+    static void writeDouble(ObjectOutput out, double v) throws IOException {
+        if (isCentiExact(v)) {
+            out.writeBoolean(true);
+            writeZigZag(out, Math.round(v * 100.0));
+        } else {
+            out.writeBoolean(false);
+            out.writeDouble(v);
+        }
+    }
+
+    static double readDouble(ObjectInput in) throws IOException {
+        return in.readBoolean() ? readZigZag(in) / 100.0 : in.readDouble();
+    }
+
+    // ======================================================================
+    // BITSETS (columnar presence)
+    // ======================================================================
+
+    static void writeBits(ObjectOutput out, boolean[] bits, int n) throws IOException {
+        int acc = 0;
+        for (int i = 0; i < n; i++) {
+            if (bits[i]) acc |= 1 << (i & 7);
+            if ((i & 7) == 7) {
+                out.writeByte(acc);
+                acc = 0;
+            }
+        }
+        if ((n & 7) != 0) out.writeByte(acc);
+    }
+
+    static boolean[] readBits(ObjectInput in, int n) throws IOException {
+        boolean[] bits = new boolean[n];
+        int acc = 0;
+        for (int i = 0; i < n; i++) {
+            if ((i & 7) == 0) acc = in.readUnsignedByte();
+            bits[i] = (acc & (1 << (i & 7))) != 0;
+        }
+        return bits;
+    }
+
+    // ======================================================================
+    // NESTED DTOS (length-prefixed)
+    // ======================================================================
+
+    static void writeNested(ObjectOutput out, Externalizable dto) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream(64);
+        try (NestedOut nested = new NestedOut(buf)) {
+            dto.writeExternal(nested);
+        }
+        byte[] b = buf.toByteArray();
+        writeVarLong(out, b.length);
+        out.write(b);
+    }
+
+    /** Reads what writeNested wrote into dto; bytes past the fields dto knows are skipped. */
+    static <T extends Externalizable> T readNested(ObjectInput in, T dto) throws IOException {
+        int n = (int) readVarLong(in);
+        byte[] b = new byte[n];
+        in.readFully(b);
+        try (NestedIn nested = new NestedIn(b)) {
+            dto.readExternal(nested);
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+        return dto;
+    }
+
+    private static final class NestedOut extends DataOutputStream implements ObjectOutput {
+        NestedOut(ByteArrayOutputStream buf) {
+            super(buf);
+        }
+
+        @Override
+        public void writeObject(Object obj) throws IOException {
+            throw new IOException("nested DTOs write primitives only");
+        }
+    }
+
+    private static final class NestedIn extends DataInputStream implements ObjectInput {
+        NestedIn(byte[] b) {
+            super(new ByteArrayInputStream(b));
+        }
+
+        @Override
+        public Object readObject() throws IOException {
+            throw new IOException("nested DTOs read primitives only");
+        }
+    }
+
+    // ======================================================================
+    // ENUMS
+    // ======================================================================
+
+    static void writeMode(ObjectOutput out, ModeDTO m) throws IOException {
+        out.writeByte(m.ordinal());
+    }
+
+    static ModeDTO readMode(ObjectInput in) throws IOException {
+        int o = in.readUnsignedByte();
+        ModeDTO[] all = ModeDTO.values();
+        return o < all.length ? all[o] : ModeDTO.AUTO;
+    }
+}
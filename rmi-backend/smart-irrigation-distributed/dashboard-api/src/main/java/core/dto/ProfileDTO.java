@@ -0,0 +1,96 @@
+package core.dto;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+/**
+ * Pump / alert thresholds (percent).
+ *
+ * As a stored row: device set = per-device override, zone set = per-zone (crop) profile,
+ * both null = site default. Null thresholds inherit from the next level
+ * (device -> zone -> default -> built-in 30/40/10/15).
+ *
+ * As returned by getProfile(device): every threshold filled in, source says where each came from.
+ */
+public class ProfileDTO implements Externalizable {
+    private static final long serialVersionUID = 1L;
+
+    public String device;
+    public String zone;
+
+    public Integer moistureOn;    // pump ON when soil < moistureOn
+    public Integer moistureOff;   // pump OFF when soil > moistureOff
+    public Integer tankLow;       // tank <= tankLow: pump blocked + TANK_LOW alert
+    public Integer tankRecover;   // TANK_LOW latch resets when tank >= tankRecover
+
+    public Integer lookaheadMin;  // >0: also start the pump when soil is projected below moistureOn this far ahead
+
+    public String source;         // e.g. "DEVICE,ZONE:north,BUILTIN" (effective profiles only)
+
+    /** Null if valid, else the reason: ranges 0..100 and the ON<OFF / LOW<RECOVER hysteresis gaps. */
+    public String validate() {
+        Integer[] all = {moistureOn, moistureOff, tankLow, tankRecover};
+        for (Integer v : all) {
+            if (v != null && (v < 0 || v > 100)) return "thresholds must be between 0 and 100";
+        }
+        if (lookaheadMin != null && (lookaheadMin < 0 || lookaheadMin > 1440)) {
+            return "lookaheadMin must be between 0 and 1440";
+        }
+        if (moistureOn != null && moistureOff != null && moistureOn >= moistureOff) {
+            return "moistureOn must be lower than moistureOff";
+        }
+        if (tankLow != null && tankRecover != null && tankLow >= tankRecover) {
+            return "tankLow must be lower than tankRecover";
+        }
+        return null;
+    }
+
+    private static final int DEVICE = 1;
+    private static final int ZONE = 1 << 1;
+    private static final int MOISTURE_ON = 1 << 2;
+    private static final int MOISTURE_OFF = 1 << 3;
+    private static final int TANK_LOW = 1 << 4;
+    private static final int TANK_RECOVER = 1 << 5;
+    private static final int SOURCE = 1 << 6;
+    private static final int LOOKAHEAD = 1 << 7;
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        int bits = 0;
+        if (device != null) bits |= DEVICE;
+        if (zone != null) bits |= ZONE;
+        if (moistureOn != null) bits |= MOISTURE_ON;
+        if (moistureOff != null) bits |= MOISTURE_OFF;
+        if (tankLow != null) bits |= TANK_LOW;
+        if (tankRecover != null) bits |= TANK_RECOVER;
+        if (source != null) bits |= SOURCE;
+        if (lookaheadMin != null) bits |= LOOKAHEAD;
+
+        out.writeByte(bits);
+
+        if (device != null) DtoIO.writeString(out, device);
+        if (zone != null) DtoIO.writeString(out, zone);
+        if (moistureOn != null) DtoIO.writeZigZag(out, moistureOn);
+        if (moistureOff != null) DtoIO.writeZigZag(out, moistureOff);
+        if (tankLow != null) DtoIO.writeZigZag(out, tankLow);
+        if (tankRecover != null) DtoIO.writeZigZag(out, tankRecover);
+        if (source != null) DtoIO.writeString(out, source);
+        if (lookaheadMin != null) DtoIO.writeZigZag(out, lookaheadMin);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        int bits = in.readUnsignedByte();
+
+        device = (bits & DEVICE) != 0 ? DtoIO.readString(in) : null;
+        zone = (bits & ZONE) != 0 ? DtoIO.readString(in) : null;
+        moistureOn = (bits & MOISTURE_ON) != 0 ? (int) DtoIO.readZigZag(in) : null;
+        moistureOff = (bits & MOISTURE_OFF) != 0 ? (int) DtoIO.readZigZag(in) : null;
+        tankLow = (bits & TANK_LOW) != 0 ? (int) DtoIO.readZigZag(in) : null;
+        tankRecover = (bits & TANK_RECOVER) != 0 ? (int) DtoIO.readZigZag(in) : null;
+        source = (bits & SOURCE) != 0 ? DtoIO.readString(in) : null;
+        lookaheadMin = (bits & LOOKAHEAD) != 0 ? (int) DtoIO.readZigZag(in) : null;
+    }
+}
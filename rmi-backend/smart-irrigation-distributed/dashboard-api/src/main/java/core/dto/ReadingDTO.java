@@ -1,8 +1,13 @@
 package core.dto;
 
-import java.io.Serializable;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+public class ReadingDTO implements Externalizable {
+    private static final long serialVersionUID = 1L;
 
-public class ReadingDTO implements Serializable {
     public String device;
     public Integer soil;        // 0..100
     public Integer waterTank;   // 0..100
@@ -11,5 +16,85 @@ public class ReadingDTO implements Serializable {
     public Double tempC;        // nullable
     public Double humidity;     // nullable
     public String createdUtc;
+    public Long id;             // only in history pages: row id, breaks createdUtc ties (getHistoryAfter cursor)
+
+    // presence bitmap (boolean values ride in the bitmap, see DtoIO)
+    private static final int DEVICE = 1;
+    private static final int SOIL = 1 << 1;
+    private static final int TANK = 1 << 2;
+    private static final int RAIN_SET = 1 << 3;
+    private static final int RAIN_ON = 1 << 4;
+    private static final int PUMP_SET = 1 << 5;
+    private static final int PUMP_ON = 1 << 6;
+    private static final int TEMP = 1 << 7;
+    private static final int TEMP_CENTI = 1 << 8;
+    private static final int HUM = 1 << 9;
+    private static final int HUM_CENTI = 1 << 10;
+    private static final int TIME = 1 << 11;
+    private static final int TIME_MILLIS = 1 << 12;
+    private static final int ID = 1 << 13;
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        long ms = DtoIO.isoToMillis(createdUtc);
+
+        int bits = 0;
+        if (device != null) bits |= DEVICE;
+        if (soil != null) bits |= SOIL;
+        if (waterTank != null) bits |= TANK;
+        if (raining != null) bits |= RAIN_SET | (raining ? RAIN_ON : 0);
+        if (pump != null) bits |= PUMP_SET | (pump ? PUMP_ON : 0);
+        if (tempC != null) bits |= TEMP | (DtoIO.isCentiExact(tempC) ? TEMP_CENTI : 0);
+        if (humidity != null) bits |= HUM | (DtoIO.isCentiExact(humidity) ? HUM_CENTI : 0);
+        if (createdUtc != null) bits |= TIME | (ms != DtoIO.NOT_MILLIS ? TIME_MILLIS : 0);
+        if (id != null) bits |= ID;
+
+        out.writeShort(bits);
+
+        if (device != null) DtoIO.writeString(out, device);
+        if (soil != null) DtoIO.writeZigZag(out, soil);
+        if (waterTank != null) DtoIO.writeZigZag(out, waterTank);
+
+        if (tempC != null) {
+            if ((bits & TEMP_CENTI) != 0) DtoIO.writeZigZag(out, Math.round(tempC * 100.0));
+            else out.writeDouble(tempC);
+        }
+        if (humidity != null) {
+            if ((bits & HUM_CENTI) != 0) DtoIO.writeZigZag(out, Math.round(humidity * 100.0));
+            else out.writeDouble(humidity);
+        }
+        if (createdUtc != null) {
+            if ((bits & TIME_MILLIS) != 0) DtoIO.writeZigZag(out, ms);
+            else DtoIO.writeString(out, createdUtc);
+        }
+        if (id != null) DtoIO.writeZigZag(out, id);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        int bits = in.readUnsignedShort();
+
+        device = (bits & DEVICE) != 0 ? DtoIO.readString(in) : null;
+        soil = (bits & SOIL) != 0 ? (int) DtoIO.readZigZag(in) : null;
+        waterTank = (bits & TANK) != 0 ? (int) DtoIO.readZigZag(in) : null;
+        raining = (bits & RAIN_SET) != 0 ? (bits & RAIN_ON) != 0 : null;
+        pump = (bits & PUMP_SET) != 0 ? (bits & PUMP_ON) != 0 : null;
 
+        if ((bits & TEMP) != 0) {
+            tempC = (bits & TEMP_CENTI) != 0 ? DtoIO.readZigZag(in) / 100.0 : in.readDouble();
+        } else {
+            tempC = null;
+        }
+        if ((bits & HUM) != 0) {
+            humidity = (bits & HUM_CENTI) != 0 ? DtoIO.readZigZag(in) / 100.0 : in.readDouble();
+        } else {
+            humidity = null;
+        }
+        if ((bits & TIME) != 0) {
+            createdUtc = (bits & TIME_MILLIS) != 0 ? DtoIO.millisToIso(DtoIO.readZigZag(in)) : DtoIO.readString(in);
+        } else {
+            createdUtc = null;
+        }
+        id = (bits & ID) != 0 ? DtoIO.readZigZag(in) : null;
+    }
 }
@@ -0,0 +1,273 @@
+package core.dto;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.function.Predicate;
+
+/**
+ * List of readings serialized column by column (used for getHistory results).
+ *
+ * Callers see a normal mutable List<ReadingDTO>. On the wire it is:
+ *   count, device dictionary, one presence bitset per field,
+ *   then each column: soil / water_tank as zigzag deltas, temp / humidity as
+ *   centi-unit deltas when every value allows it, timestamps as millis deltas, row ids as deltas
+ *   (format 2; format 1 had no id column and is still read).
+ * A 5000-row page costs a few bytes per row instead of a full object per row.
+ */
+public class ReadingList extends AbstractList<ReadingDTO> implements RandomAccess, Externalizable {
+    private static final long serialVersionUID = 1L;
+
+    private static final int FORMAT = 2;
+
+    // column flags
+    private static final int TEMP_CENTI = 1;
+    private static final int HUM_CENTI = 1 << 1;
+    private static final int TIME_MILLIS = 1 << 2;
+
+    private ArrayList<ReadingDTO> rows;
+
+    public ReadingList() {
+        this.rows = new ArrayList<>();
+    }
+
+    public ReadingList(int capacity) {
+        this.rows = new ArrayList<>(capacity);
+    }
+
+    public ReadingList(List<ReadingDTO> rows) {
+        this.rows = new ArrayList<>(rows);
+    }
+
+    @Override public ReadingDTO get(int index) { return rows.get(index); }
+    @Override public int size() { return rows.size(); }
+    @Override public ReadingDTO set(int index, ReadingDTO r) { return rows.set(index, r); }
+    @Override public void add(int index, ReadingDTO r) { rows.add(index, r); }
+    @Override public ReadingDTO remove(int index) { return rows.remove(index); }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        int n = rows.size();
+        out.writeByte(FORMAT);
+        DtoIO.writeVarLong(out, n);
+        if (n == 0) return;
+
+        // null elements are carried as rows with every field absent
+        ReadingDTO empty = new ReadingDTO();
+        ReadingDTO[] r = new ReadingDTO[n];
+        for (int i = 0; i < n; i++) r[i] = rows.get(i) != null ? rows.get(i) : empty;
+
+        // ---- device dictionary (usually a single entry) ----
+        Map<String, Integer> dict = new HashMap<>();
+        List<String> dictList = new ArrayList<>();
+        boolean[] hasDevice = new boolean[n];
+        int[] deviceIdx = new int[n];
+        for (int i = 0; i < n; i++) {
+            if (r[i].device == null) continue;
+            hasDevice[i] = true;
+            deviceIdx[i] = dict.computeIfAbsent(r[i].device, d -> {
+                dictList.add(d);
+                return dictList.size() - 1;
+            });
+        }
+
+        // ---- column flags ----
+        long[] millis = new long[n];
+        int flags = TEMP_CENTI | HUM_CENTI | TIME_MILLIS;
+        for (int i = 0; i < n; i++) {
+            if (r[i].tempC != null && !DtoIO.isCentiExact(r[i].tempC)) flags &= ~TEMP_CENTI;
+            if (r[i].humidity != null && !DtoIO.isCentiExact(r[i].humidity)) flags &= ~HUM_CENTI;
+            if (r[i].createdUtc != null) {
+                millis[i] = DtoIO.isoToMillis(r[i].createdUtc);
+                if (millis[i] == DtoIO.NOT_MILLIS) flags &= ~TIME_MILLIS;
+            }
+        }
+        out.writeByte(flags);
+
+        DtoIO.writeVarLong(out, dictList.size());
+        for (String d : dictList) DtoIO.writeString(out, d);
+
+        // ---- presence / boolean bitsets ----
+        DtoIO.writeBits(out, hasDevice, n);
+        writeBits(out, r, x -> x.soil != null);
+        writeBits(out, r, x -> x.waterTank != null);
+        writeBits(out, r, x -> x.raining != null);
+        writeBits(out, r, x -> Boolean.TRUE.equals(x.raining));
+        writeBits(out, r, x -> x.pump != null);
+        writeBits(out, r, x -> Boolean.TRUE.equals(x.pump));
+        writeBits(out, r, x -> x.tempC != null);
+        writeBits(out, r, x -> x.humidity != null);
+        writeBits(out, r, x -> x.createdUtc != null);
+        writeBits(out, r, x -> x.id != null);
+
+        // ---- value columns ----
+        if (dictList.size() > 1) {
+            for (int i = 0; i < n; i++) if (hasDevice[i]) DtoIO.writeVarLong(out, deviceIdx[i]);
+        }
+
+        long prev = 0;
+        for (int i = 0; i < n; i++) {
+            if (r[i].soil == null) continue;
+            DtoIO.writeZigZag(out, r[i].soil - prev);
+            prev = r[i].soil;
+        }
+
+        prev = 0;
+        for (int i = 0; i < n; i++) {
+            if (r[i].waterTank == null) continue;
+            DtoIO.writeZigZag(out, r[i].waterTank - prev);
+            prev = r[i].waterTank;
+        }
+
+        prev = 0;
+        for (int i = 0; i < n; i++) {
+            if (r[i].tempC == null) continue;
+            if ((flags & TEMP_CENTI) != 0) {
+                long c = Math.round(r[i].tempC * 100.0);
+                DtoIO.writeZigZag(out, c - prev);
+                prev = c;
+            } else {
+                out.writeDouble(r[i].tempC);
+            }
+        }
+
+        prev = 0;
+        for (int i = 0; i < n; i++) {
+            if (r[i].humidity == null) continue;
+            if ((flags & HUM_CENTI) != 0) {
+                long c = Math.round(r[i].humidity * 100.0);
+                DtoIO.writeZigZag(out, c - prev);
+                prev = c;
+            } else {
+                out.writeDouble(r[i].humidity);
+            }
+        }
+
+        prev = 0;
+        for (int i = 0; i < n; i++) {
+            if (r[i].createdUtc == null) continue;
+            if ((flags & TIME_MILLIS) != 0) {
+                DtoIO.writeZigZag(out, millis[i] - prev);
+                prev = millis[i];
+            } else {
+                DtoIO.writeString(out, r[i].createdUtc);
+            }
+        }
+
+        prev = 0;
+        for (int i = 0; i < n; i++) {
+            if (r[i].id == null) continue;
+            DtoIO.writeZigZag(out, r[i].id - prev);
+            prev = r[i].id;
+        }
+    }
+
+    private static void writeBits(ObjectOutput out, ReadingDTO[] r, Predicate<ReadingDTO> bit) throws IOException {
+        boolean[] b = new boolean[r.length];
+        for (int i = 0; i < r.length; i++) b[i] = bit.test(r[i]);
+        DtoIO.writeBits(out, b, r.length);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        int format = in.readUnsignedByte();
+        if (format != 1 && format != FORMAT) throw new IOException("unknown ReadingList format " + format);
+
+        int n = (int) DtoIO.readVarLong(in);
+        rows = new ArrayList<>(n);
+        if (n == 0) return;
+
+        int flags = in.readUnsignedByte();
+
+        int dictSize = (int) DtoIO.readVarLong(in);
+        String[] dict = new String[dictSize];
+        for (int i = 0; i < dictSize; i++) dict[i] = DtoIO.readString(in);
+
+        boolean[] hasDevice = DtoIO.readBits(in, n);
+        boolean[] hasSoil = DtoIO.readBits(in, n);
+        boolean[] hasTank = DtoIO.readBits(in, n);
+        boolean[] hasRain = DtoIO.readBits(in, n);
+        boolean[] rainOn = DtoIO.readBits(in, n);
+        boolean[] hasPump = DtoIO.readBits(in, n);
+        boolean[] pumpOn = DtoIO.readBits(in, n);
+        boolean[] hasTemp = DtoIO.readBits(in, n);
+        boolean[] hasHum = DtoIO.readBits(in, n);
+        boolean[] hasTime = DtoIO.readBits(in, n);
+        boolean[] hasId = format >= 2 ? DtoIO.readBits(in, n) : new boolean[n];
+
+        ReadingDTO[] r = new ReadingDTO[n];
+        for (int i = 0; i < n; i++) {
+            r[i] = new ReadingDTO();
+            if (hasRain[i]) r[i].raining = rainOn[i];
+            if (hasPump[i]) r[i].pump = pumpOn[i];
+        }
+
+        for (int i = 0; i < n; i++) {
+            if (!hasDevice[i]) continue;
+            r[i].device = dictSize > 1 ? dict[(int) DtoIO.readVarLong(in)] : dict[0];
+        }
+
+        long prev = 0;
+        for (int i = 0; i < n; i++) {
+            if (!hasSoil[i]) continue;
+            prev += DtoIO.readZigZag(in);
+            r[i].soil = (int) prev;
+        }
+
+        prev = 0;
+        for (int i = 0; i < n; i++) {
+            if (!hasTank[i]) continue;
+            prev += DtoIO.readZigZag(in);
+            r[i].waterTank = (int) prev;
+        }
+
+        prev = 0;
+        for (int i = 0; i < n; i++) {
+            if (!hasTemp[i]) continue;
+            if ((flags & TEMP_CENTI) != 0) {
+                prev += DtoIO.readZigZag(in);
+                r[i].tempC = prev / 100.0;
+            } else {
+                r[i].tempC = in.readDouble();
+            }
+        }
+
+        prev = 0;
+        for (int i = 0; i < n; i++) {
+            if (!hasHum[i]) continue;
+            if ((flags & HUM_CENTI) != 0) {
+                prev += DtoIO.readZigZag(in);
+                r[i].humidity = prev / 100.0;
+            } else {
+                r[i].humidity = in.readDouble();
+            }
+        }
+
+        prev = 0;
+        for (int i = 0; i < n; i++) {
+            if (!hasTime[i]) continue;
+            if ((flags & TIME_MILLIS) != 0) {
+                prev += DtoIO.readZigZag(in);
+                r[i].createdUtc = DtoIO.millisToIso(prev);
+            } else {
+                r[i].createdUtc = DtoIO.readString(in);
+            }
+        }
+
+        prev = 0;
+        for (int i = 0; i < n; i++) {
+            if (!hasId[i]) continue;
+            prev += DtoIO.readZigZag(in);
+            r[i].id = prev;
+        }
+
+        for (ReadingDTO x : r) rows.add(x);
+    }
+}
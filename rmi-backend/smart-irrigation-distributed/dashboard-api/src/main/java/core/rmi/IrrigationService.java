@@ -13,15 +13,29 @@ import java.util.List;
 import core.dto.DeviceSummaryDTO;
 public interface IrrigationService extends Remote {
 
-    // called by gateway on every POST
+    // called by gateway on every POST; fails if the reading was not stored, createdUtc = stored time
     PumpDecisionDTO pushReading(ReadingDTO r) throws RemoteException;
 
+    // readings the gateway spooled during an outage, stored late with their createdUtc (no decision)
+    int importReadings(List<ReadingDTO> readings) throws RemoteException;
+
+    // backfill from CSV / NDJSON files on the core's host (file or directory inside its import directory) with SQL Server bulk copy
+    long bulkImport(String path) throws RemoteException;
+
     // read APIs
     ReadingDTO getLatest(String device) throws RemoteException;
 
     List<ReadingDTO> getHistory(String device, String fromUtc, String toUtc, int limit)
             throws RemoteException;
 
+    // keyset page for exports: rows after (afterUtc, afterId) up to toUtc, ORDER BY created_utc, id (ReadingDTO.id)
+    List<ReadingDTO> getHistoryAfter(String device, String afterUtc, long afterId, String toUtc, int limit)
+            throws RemoteException;
+
+    // pump decision per reading, rebuilt from the change-only journal (ORDER ASC)
+    List<PumpDecisionDTO> getDecisions(String device, String fromUtc, String toUtc, int limit)
+            throws RemoteException;
+
     // control API
     void setMode(String device, ModeDTO mode) throws RemoteException;
     ModeDTO getMode(String device) throws RemoteException;
@@ -40,5 +54,31 @@ public interface IrrigationService extends Remote {
             throws java.rmi.RemoteException;
     java.util.List<core.dto.DeviceSummaryRowDTO> listSummaries(int offlineSec, String sinceUtc) throws java.rmi.RemoteException;
 
+    // batch read APIs (one round trip for a dashboard page of devices)
+    // summaries come back in request order (duplicates/blank ids dropped)
+    List<DeviceSummaryDTO> getSummaries(List<String> devices, int offlineSec, String sinceUtc, int alertLimit)
+            throws RemoteException;
+    // device -> latest reading (null if the device never reported), in request order
+    java.util.Map<String, ReadingDTO> getLatestMany(List<String> devices) throws RemoteException;
+
+    // streaming analytics (EWMA, moisture slope, tank drain / time-to-empty), no DB query
+    core.dto.AnalyticsDTO getAnalytics(String device) throws RemoteException;
+
+    // profiles API (pump / tank thresholds)
+    // effective thresholds of a device (device -> zone -> default -> built-in)
+    core.dto.ProfileDTO getProfile(String device) throws RemoteException;
+    // store one row: p.device set = device override, p.zone set = zone profile, neither = site default
+    core.dto.ProfileDTO setProfile(core.dto.ProfileDTO p) throws RemoteException;
+    // move a device into a zone (null = none); returns its new effective profile
+    core.dto.ProfileDTO setZone(String device, String zone) throws RemoteException;
+
+    // live readings: the core calls listener.onReadings(...) with every reading pushReading stores
+    // (registration is idempotent; listeners renew it, a failing one is dropped by the core)
+    void addReadingListener(ReadingListener listener) throws RemoteException;
+    void removeReadingListener(ReadingListener listener) throws RemoteException;
+
+    // metrics API (Prometheus text of the core's histograms/counters)
+    String getMetrics() throws RemoteException;
+
 
 }
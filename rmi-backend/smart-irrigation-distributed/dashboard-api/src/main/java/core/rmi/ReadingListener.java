@@ -0,0 +1,17 @@
+package core.rmi;
+
+import core.dto.ReadingDTO;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.util.List;
+
+/**
+ * Callback exported by a client (dashboard-api) and registered with addReadingListener:
+ * the core calls it with the readings pushReading just stored, in arrival order per device.
+ */
+public interface ReadingListener extends Remote {
+
+    // a batch of live readings (columnar ReadingList on the wire), createdUtc always set
+    void onReadings(List<ReadingDTO> readings) throws RemoteException;
+}
@@ -0,0 +1,184 @@
+package core.rmi;
+
+import core.dto.ReadingDTO;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One live-readings connection: coalescing, rate limit and delta encoding. Used by the
+ * gateway (/readings/live) and dashboard-api (/api/devices/live).
+ *
+ * offer() keeps only the newest pending reading per device, so a client that cannot keep up
+ * skips intermediate readings instead of queueing them (takeCoalesced() counts them). Pending
+ * readings leave together, at most one batch per {@code minIntervalMs}. The first event of a
+ * device is a "snapshot" with every field; after that a "delta" carries device, created_utc
+ * and only the fields whose value changed (a field that became unknown is sent as null).
+ */
+public final class ReadingStream {
+
+    /** One SSE event: name "snapshot" or "delta", data a single-line JSON object. */
+    public static final class Event {
+        public final String name;
+        public final String device;
+        public final String json;
+
+        Event(String name, String device, String json) {
+            this.name = name;
+            this.device = device;
+            this.json = json;
+        }
+
+        /** The event as SSE wire text. */
+        public String sse() {
+            return "event: " + name + "\ndata: " + json + "\n\n";
+        }
+    }
+
+    private final Set<String> devices; // null = every device
+    private final long minIntervalNanos;
+
+    // guarded by this
+    private final LinkedHashMap<String, ReadingDTO> pending = new LinkedHashMap<>();
+    private final Map<String, ReadingDTO> sent = new HashMap<>();
+    private boolean flushed;
+    private long lastFlush;
+    private long coalesced;
+
+    /** @param devices devices to stream, null or empty for all */
+    public ReadingStream(Collection<String> devices, long minIntervalMs) {
+        if (devices == null || devices.isEmpty()) {
+            this.devices = null;
+        } else {
+            this.devices = new HashSet<>();
+            for (String d : devices) if (d != null && !d.isBlank()) this.devices.add(d.trim());
+        }
+        this.minIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, minIntervalMs));
+    }
+
+    /** Devices this stream is limited to, null for all. */
+    public Set<String> devices() {
+        return devices;
+    }
+
+    public boolean wants(String device) {
+        return device != null && (devices == null || devices.contains(device));
+    }
+
+    /** Newest reading wins: a reading still pending for the device is replaced. */
+    public synchronized void offer(ReadingDTO r) {
+        if (r == null || !wants(r.device)) return;
+        if (pending.put(r.device, r) != null) coalesced++;
+        notifyAll();
+    }
+
+    /**
+     * A reading fetched for the first snapshot, possibly after live ones arrived: taken only if
+     * nothing is pending or sent for the device yet, so it never replaces a newer reading.
+     */
+    public synchronized void seed(ReadingDTO r) {
+        if (r == null || !wants(r.device)) return;
+        if (pending.containsKey(r.device) || sent.containsKey(r.device)) return;
+        pending.put(r.device, r);
+        notifyAll();
+    }
+
+    /** Waits up to waitMs for pending readings the rate limit lets through; empty on timeout. */
+    public synchronized List<Event> poll(long waitMs) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, waitMs));
+        while (true) {
+            long now = System.nanoTime();
+            long until = deadline;
+            if (!pending.isEmpty()) {
+                if (due(now)) return flush(now);
+                until = Math.min(deadline, lastFlush + minIntervalNanos);
+            }
+            long left = until - now;
+            if (left <= 0) {
+                if (now - deadline >= 0) return List.of();
+                continue;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, left);
+        }
+    }
+
+    /** Non-blocking poll: the pending events if the rate limit allows a batch now, else empty. */
+    public synchronized List<Event> drainDue() {
+        long now = System.nanoTime();
+        if (pending.isEmpty() || !due(now)) return List.of();
+        return flush(now);
+    }
+
+    /** Readings replaced before they were sent, since the last call. */
+    public synchronized long takeCoalesced() {
+        long n = coalesced;
+        coalesced = 0;
+        return n;
+    }
+
+    private boolean due(long now) {
+        return !flushed || now - lastFlush >= minIntervalNanos;
+    }
+
+    private List<Event> flush(long now) {
+        flushed = true;
+        lastFlush = now;
+        List<Event> out = new ArrayList<>(pending.size());
+        for (ReadingDTO r : pending.values()) {
+            ReadingDTO prev = sent.put(r.device, r);
+            out.add(prev == null
+                    ? new Event("snapshot", r.device, snapshot(r))
+                    : new Event("delta", r.device, delta(prev, r)));
+        }
+        pending.clear();
+        return out;
+    }
+
+    // =========================
+    // JSON (same field names as the NDJSON export)
+    // =========================
+
+    static String snapshot(ReadingDTO r) {
+        StringBuilder sb = new StringBuilder(160);
+        sb.append("{\"device\":\"").append(escape(r.device)).append('"');
+        time(sb, r);
+        sb.append(",\"soil\":").append(r.soil)
+                .append(",\"water_tank\":").append(r.waterTank)
+                .append(",\"raining\":").append(r.raining)
+                .append(",\"pump\":").append(r.pump)
+                .append(",\"temp_c\":").append(r.tempC)
+                .append(",\"humidity\":").append(r.humidity)
+                .append('}');
+        return sb.toString();
+    }
+
+    static String delta(ReadingDTO prev, ReadingDTO r) {
+        StringBuilder sb = new StringBuilder(64);
+        sb.append("{\"device\":\"").append(escape(r.device)).append('"');
+        time(sb, r);
+        if (!Objects.equals(prev.soil, r.soil)) sb.append(",\"soil\":").append(r.soil);
+        if (!Objects.equals(prev.waterTank, r.waterTank)) sb.append(",\"water_tank\":").append(r.waterTank);
+        if (!Objects.equals(prev.raining, r.raining)) sb.append(",\"raining\":").append(r.raining);
+        if (!Objects.equals(prev.pump, r.pump)) sb.append(",\"pump\":").append(r.pump);
+        if (!Objects.equals(prev.tempC, r.tempC)) sb.append(",\"temp_c\":").append(r.tempC);
+        if (!Objects.equals(prev.humidity, r.humidity)) sb.append(",\"humidity\":").append(r.humidity);
+        return sb.append('}').toString();
+    }
+
+    private static void time(StringBuilder sb, ReadingDTO r) {
+        sb.append(",\"created_utc\":").append(r.createdUtc == null ? "null" : "\"" + escape(r.createdUtc) + "\"");
+    }
+
+    private static String escape(String s) {
+        if (s == null) return "";
+        return s.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
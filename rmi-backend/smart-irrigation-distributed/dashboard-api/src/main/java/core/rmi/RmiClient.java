@@ -1,34 +1,72 @@
 package core.rmi;
 
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
 import java.rmi.RemoteException;
+import java.rmi.ServerException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class RmiClient {
 
-    private final String host;
-    private final int port;
-    private final String name;
+    // which core instance owns which device (a single shard behaves like before)
+    private final ShardRing ring;
 
-    private volatile IrrigationService service;
+    // shard id -> current stub (replaced on reconnect; the router reads it on every call)
+    private final ConcurrentHashMap<String, IrrigationService> stubs = new ConcurrentHashMap<>();
+
+    private final IrrigationService service;
+
+    // optional latency hook (set by the Spring config to feed Micrometer)
+    private volatile CallObserver observer;
+
+    // IrrigationService calls currently on the wire (all callers: controllers, export, alert stream)
+    private final AtomicInteger inFlight = new AtomicInteger();
 
     public RmiClient(String host, int port, String name) throws Exception {
-        this.host = host;
-        this.port = port;
-        this.name = name;
-        connect(); // first connect
+        this(new ShardRing(List.of(host + ":" + port + "/" + name), 1));
     }
 
-    private synchronized void connect() throws Exception {
-        Registry registry = LocateRegistry.getRegistry(host, port);
-        this.service = (IrrigationService) registry.lookup(name);
-        System.out.println("✅ Connected to RMI: " + name + " @ " + host + ":" + port);
+    /** One registry lookup per shard; each call goes to the shard owning its device (see ShardRouter). */
+    public RmiClient(ShardRing ring) throws Exception {
+        this.ring = ring;
+
+        // client-side connection reuse (socket options come with the stub)
+        TunedSocketFactory.applyReuseProperties();
+
+        // first connect: every shard must be reachable
+        for (String id : ring.shards()) {
+            connect(id);
+        }
+        this.service = timed(ShardRouter.route(ring, stubs::get));
+    }
+
+    private void connect(String shardId) throws Exception {
+        ShardRing.Address a = ShardRing.address(shardId);
+        Registry registry = LocateRegistry.getRegistry(a.host, a.port);
+        stubs.put(shardId, (IrrigationService) registry.lookup(a.name));
+        System.out.println("✅ Connected to RMI: " + a.name + " @ " + a.host + ":" + a.port);
+    }
+
+    /** Re-lookup every shard; one that is still down keeps its old stub so the others keep working. */
+    private synchronized void reconnect() throws Exception {
+        Exception last = null;
+        for (String id : ring.shards()) {
+            try {
+                connect(id);
+            } catch (Exception e) {
+                System.out.println("⚠️ Shard " + id + " unreachable: " + e.getMessage());
+                last = e;
+            }
+        }
+        if (last != null && ring.size() == 1) throw last;
     }
 
-    /** Direct stub access (what your controller needs) */
+    /** Direct stub access (what your controller needs); routed by device across shards */
     public IrrigationService getStub() throws Exception {
-        // if something killed the connection, reconnect lazily
-        if (service == null) connect();
         return service;
     }
 
@@ -40,9 +78,12 @@ public class RmiClient {
         try {
             return fn.run(getStub());
         } catch (RemoteException firstFailure) {
+            // the core got the call and failed it itself: a new stub would not help
+            if (firstFailure instanceof ServerException) throw firstFailure;
+
             System.out.println("⚠️ RMI call failed: " + firstFailure.getMessage());
             System.out.println("🔁 Reconnecting to RMI...");
-            connect(); // reconnect once
+            reconnect(); // reconnect once
             return fn.run(service); // retry once
         }
     }
@@ -52,8 +93,46 @@ public class RmiClient {
         return service;
     }
 
+    public void setObserver(CallObserver observer) {
+        this.observer = observer;
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    /** Wrap the stub so each IrrigationService method reports its round trip to the observer. */
+    private IrrigationService timed(IrrigationService stub) {
+        return (IrrigationService) Proxy.newProxyInstance(
+                IrrigationService.class.getClassLoader(),
+                new Class<?>[]{IrrigationService.class},
+                (proxy, method, args) -> {
+                    if (method.getDeclaringClass() == Object.class) return method.invoke(stub, args);
+
+                    long t0 = System.nanoTime();
+                    boolean ok = false;
+                    inFlight.incrementAndGet();
+                    try {
+                        Object result = method.invoke(stub, args);
+                        ok = true;
+                        return result;
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause(); // keep RemoteException visible to call(...)
+                    } finally {
+                        inFlight.decrementAndGet();
+                        CallObserver o = observer;
+                        if (o != null) o.onCall(method.getName(), System.nanoTime() - t0, ok);
+                    }
+                });
+    }
+
     @FunctionalInterface
     public interface RemoteCall<T> {
         T run(IrrigationService svc) throws Exception;
     }
+
+    @FunctionalInterface
+    public interface CallObserver {
+        void onCall(String method, long nanos, boolean ok);
+    }
 }
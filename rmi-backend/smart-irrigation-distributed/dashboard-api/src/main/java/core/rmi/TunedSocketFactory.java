@@ -0,0 +1,177 @@
+package core.rmi;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.rmi.server.RMIClientSocketFactory;
+import java.rmi.server.RMIServerSocketFactory;
+import java.util.Objects;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Socket factory used to export IrrigationServiceImpl.
+ *
+ * The client half is serialized into the stub, so the gateway and dashboard
+ * get the same settings just by looking the service up (the class only has to
+ * be on their classpath). Settings are read on the server from system properties:
+ *
+ *   irrigation.rmi.tcpNoDelay        (default true)  disable Nagle on both sides
+ *   irrigation.rmi.compress          (default false) deflate the JRMP stream (big getHistory pages)
+ *   irrigation.rmi.connectTimeoutMs  (default 3000)  client connect timeout
+ *   irrigation.rmi.readTimeoutMs     (default 0)     client read timeout per call, 0 = none
+ *
+ * Connection reuse is governed by the JDK transport properties, see applyReuseProperties().
+ */
+public final class TunedSocketFactory implements RMIClientSocketFactory, RMIServerSocketFactory, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final boolean tcpNoDelay;
+    private final boolean compress;
+    private final int connectTimeoutMs;
+    private final int readTimeoutMs;
+
+    public TunedSocketFactory(boolean tcpNoDelay, boolean compress, int connectTimeoutMs, int readTimeoutMs) {
+        this.tcpNoDelay = tcpNoDelay;
+        this.compress = compress;
+        this.connectTimeoutMs = Math.max(0, connectTimeoutMs);
+        this.readTimeoutMs = Math.max(0, readTimeoutMs);
+    }
+
+    public static TunedSocketFactory fromSystemProperties() {
+        return new TunedSocketFactory(
+                Boolean.parseBoolean(System.getProperty("irrigation.rmi.tcpNoDelay", "true")),
+                Boolean.getBoolean("irrigation.rmi.compress"),
+                Integer.getInteger("irrigation.rmi.connectTimeoutMs", 3000),
+                Integer.getInteger("irrigation.rmi.readTimeoutMs", 0)
+        );
+    }
+
+    /**
+     * Map our reuse knobs onto the JDK RMI transport properties. Must run before the
+     * first RMI call in the JVM (the transport reads them once).
+     *
+     *   irrigation.rmi.reuseMs       -> sun.rmi.transport.connectionTimeout (client: keep idle connections this long)
+     *   irrigation.rmi.serverIdleMs  -> sun.rmi.transport.tcp.readTimeout   (server: drop idle connections after this)
+     */
+    public static void applyReuseProperties() {
+        copyProperty("irrigation.rmi.reuseMs", "sun.rmi.transport.connectionTimeout");
+        copyProperty("irrigation.rmi.serverIdleMs", "sun.rmi.transport.tcp.readTimeout");
+    }
+
+    private static void copyProperty(String from, String to) {
+        String v = System.getProperty(from);
+        if (v != null && !v.isBlank() && System.getProperty(to) == null) {
+            System.setProperty(to, v.trim());
+        }
+    }
+
+    // ======================================================================
+    // CLIENT SIDE
+    // ======================================================================
+
+    @Override
+    public Socket createSocket(String host, int port) throws IOException {
+        Socket s = compress ? new CompressedSocket() : new Socket();
+        try {
+            s.setTcpNoDelay(tcpNoDelay);
+            s.setKeepAlive(true);
+            s.connect(new InetSocketAddress(host, port), connectTimeoutMs);
+            s.setSoTimeout(readTimeoutMs);
+            return s;
+        } catch (IOException e) {
+            s.close();
+            throw e;
+        }
+    }
+
+    // ======================================================================
+    // SERVER SIDE
+    // ======================================================================
+
+    @Override
+    public ServerSocket createServerSocket(int port) throws IOException {
+        return new TunedServerSocket(port);
+    }
+
+    private final class TunedServerSocket extends ServerSocket {
+        TunedServerSocket(int port) throws IOException {
+            super(port);
+        }
+
+        @Override
+        public Socket accept() throws IOException {
+            Socket s = compress ? new CompressedSocket() : new Socket();
+            implAccept(s);
+            s.setTcpNoDelay(tcpNoDelay);
+            s.setKeepAlive(true);
+            return s;
+        }
+    }
+
+    /**
+     * Socket whose streams are deflated. The output uses SYNC_FLUSH so every RMI
+     * flush (end of a call or a return) reaches the peer immediately.
+     */
+    private static final class CompressedSocket extends Socket {
+        private InputStream in;
+        private OutputStream out;
+
+        @Override
+        public synchronized InputStream getInputStream() throws IOException {
+            if (in == null) {
+                in = new InflaterInputStream(super.getInputStream(), new Inflater(), 8192);
+            }
+            return in;
+        }
+
+        @Override
+        public synchronized OutputStream getOutputStream() throws IOException {
+            if (out == null) {
+                out = new DeflaterOutputStream(super.getOutputStream(), new Deflater(Deflater.BEST_SPEED), 8192, true);
+            }
+            return out;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            try {
+                if (out != null) out.close(); // finishes the deflater and frees native memory
+            } catch (IOException ignored) {
+                // peer may already be gone
+            } finally {
+                super.close();
+            }
+        }
+    }
+
+    // RMI compares factories to decide whether endpoints (and pooled connections) can be shared
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof TunedSocketFactory f)) return false;
+        return tcpNoDelay == f.tcpNoDelay
+                && compress == f.compress
+                && connectTimeoutMs == f.connectTimeoutMs
+                && readTimeoutMs == f.readTimeoutMs;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(tcpNoDelay, compress, connectTimeoutMs, readTimeoutMs);
+    }
+
+    @Override
+    public String toString() {
+        return "TunedSocketFactory{noDelay=" + tcpNoDelay + ", compress=" + compress
+                + ", connectTimeoutMs=" + connectTimeoutMs + ", readTimeoutMs=" + readTimeoutMs + "}";
+    }
+}
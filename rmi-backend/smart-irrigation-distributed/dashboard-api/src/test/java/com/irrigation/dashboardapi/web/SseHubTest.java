@@ -0,0 +1,112 @@
+package com.irrigation.dashboardapi.web;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SseHubTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private SseHub hub;
+
+    @AfterEach
+    void shutdown() {
+        if (hub != null) hub.shutdown();
+    }
+
+    /** A client that stopped reading: every write blocks until the thread is interrupted. */
+    static class StalledEmitter extends SseEmitter {
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+
+        @Override
+        public void send(Set<ResponseBodyEmitter.DataWithMediaType> items) throws IOException {
+            writing.countDown();
+            try {
+                new CountDownLatch(1).await();
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw new InterruptedIOException("write interrupted");
+            }
+        }
+    }
+
+    static class RecordingEmitter extends SseEmitter {
+        final CountDownLatch received;
+
+        RecordingEmitter(int events) {
+            this.received = new CountDownLatch(events);
+        }
+
+        @Override
+        public void send(Set<ResponseBodyEmitter.DataWithMediaType> items) {
+            received.countDown();
+        }
+    }
+
+    @Test
+    void stalledClientIsEvictedAndDoesNotStarveOthers() throws Exception {
+        // one sender thread: without eviction the stalled write would hold it forever
+        hub = new SseHub(registry, 16, 1, 1000, 1000, SseHub.Overflow.DISCONNECT);
+
+        StalledEmitter stalled = new StalledEmitter();
+        SseHub.Subscriber slow = hub.subscribe("alerts:slow", stalled);
+        hub.publish("alerts:slow", SseEmitter.event().name("alert").data("a"));
+        assertTrue(stalled.writing.await(5, TimeUnit.SECONDS));
+
+        RecordingEmitter healthy = new RecordingEmitter(1);
+        hub.subscribe("alerts:ok", healthy);
+        hub.publish("alerts:ok", SseEmitter.event().name("alert").data("b"));
+
+        assertTrue(stalled.interrupted.await(5, TimeUnit.SECONDS), "stalled write interrupted");
+        assertTrue(healthy.received.await(5, TimeUnit.SECONDS), "other subscriber served");
+        assertFalse(slow.isOpen());
+        assertFalse(hub.hasSubscribers("alerts:slow"));
+        assertEquals(1.0, registry.get("sse.evictions").tag("reason", "stalled").counter().count());
+        assertEquals(0.0, registry.get("sse.evictions").tag("reason", "error").counter().count());
+    }
+
+    @Test
+    void fullQueueDisconnects() throws Exception {
+        hub = new SseHub(registry, 2, 1, 60_000, 60_000, SseHub.Overflow.DISCONNECT);
+
+        StalledEmitter stalled = new StalledEmitter();
+        SseHub.Subscriber s = hub.subscribe("live", stalled);
+        hub.publish("live", SseEmitter.event().data("1"));
+        assertTrue(stalled.writing.await(5, TimeUnit.SECONDS)); // "1" taken by the sender
+
+        for (int i = 2; i <= 4; i++) hub.publish("live", SseEmitter.event().data(Integer.toString(i)));
+
+        assertFalse(s.isOpen());
+        assertEquals(1.0, registry.get("sse.evictions").tag("reason", "overflow").counter().count());
+    }
+
+    @Test
+    void batchLargerThanQueueTakesOneSlot() throws Exception {
+        hub = new SseHub(registry, 2, 1, 60_000, 60_000, SseHub.Overflow.DISCONNECT);
+
+        RecordingEmitter client = new RecordingEmitter(500);
+        SseHub.Subscriber s = hub.subscribe("live", client);
+        List<SseEmitter.SseEventBuilder> batch = new ArrayList<>();
+        for (int i = 0; i < 500; i++) batch.add(SseEmitter.event().name("delta").data("{\"device\":\"d" + i + "\"}"));
+        s.send(batch);
+
+        assertTrue(client.received.await(5, TimeUnit.SECONDS), "every event of the batch written");
+        assertTrue(s.isOpen());
+        assertEquals(0.0, registry.get("sse.evictions").tag("reason", "overflow").counter().count());
+    }
+}
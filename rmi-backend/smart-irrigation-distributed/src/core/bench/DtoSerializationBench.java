@@ -0,0 +1,129 @@
+package core.bench;
+
+import core.dto.ReadingDTO;
+import core.dto.ReadingList;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Payload size and (de)serialization time of a getHistory page.
+ *
+ * Run:  java -cp out core.bench.DtoSerializationBench [rows] [iterations]
+ *
+ * Compares the old plain-Serializable shape (mirrored here as LegacyReading),
+ * an ArrayList of Externalizable ReadingDTO, and the columnar ReadingList.
+ */
+public class DtoSerializationBench {
+
+    /** Same fields as ReadingDTO before it became Externalizable. */
+    static class LegacyReading implements Serializable {
+        String device;
+        Integer soil;
+        Integer waterTank;
+        Boolean raining;
+        Boolean pump;
+        Double tempC;
+        Double humidity;
+        String createdUtc;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+        List<ReadingDTO> sample = RmiTransportBench.sampleRows(rows);
+
+        ArrayList<LegacyReading> legacy = new ArrayList<>(rows);
+        for (ReadingDTO r : sample) {
+            LegacyReading l = new LegacyReading();
+            l.device = r.device;
+            l.soil = r.soil;
+            l.waterTank = r.waterTank;
+            l.raining = r.raining;
+            l.pump = r.pump;
+            l.tempC = r.tempC;
+            l.humidity = r.humidity;
+            l.createdUtc = r.createdUtc;
+            legacy.add(l);
+        }
+
+        ArrayList<ReadingDTO> perObject = new ArrayList<>(sample);
+        ReadingList columnar = new ReadingList(sample);
+
+        verify(sample, roundTrip(perObject));
+        verify(sample, roundTrip(columnar));
+
+        System.out.printf("%d rows, %d iterations%n", rows, iterations);
+        System.out.printf("%-26s %10s %10s %12s %12s%n", "format", "bytes", "bytes/row", "write us", "read us");
+
+        measure("Serializable (legacy)", legacy, rows, iterations);
+        measure("Externalizable per row", perObject, rows, iterations);
+        measure("ReadingList (columnar)", columnar, rows, iterations);
+    }
+
+    private static void measure(String label, Object payload, int rows, int iterations) throws Exception {
+        byte[] bytes = write(payload);
+
+        // warm up
+        for (int i = 0; i < iterations / 4 + 1; i++) read(write(payload));
+
+        long writeNanos = 0;
+        long readNanos = 0;
+        for (int i = 0; i < iterations; i++) {
+            long t0 = System.nanoTime();
+            byte[] b = write(payload);
+            long t1 = System.nanoTime();
+            read(b);
+            long t2 = System.nanoTime();
+            writeNanos += t1 - t0;
+            readNanos += t2 - t1;
+        }
+
+        System.out.printf("%-26s %10d %10.1f %12.0f %12.0f%n",
+                label, bytes.length, bytes.length / (double) rows,
+                writeNanos / 1000.0 / iterations, readNanos / 1000.0 / iterations);
+    }
+
+    private static byte[] write(Object o) throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(64 * 1024);
+        try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+            oos.writeObject(o);
+        }
+        return bos.toByteArray();
+    }
+
+    private static Object read(byte[] b) throws Exception {
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(b))) {
+            return ois.readObject();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<ReadingDTO> roundTrip(Object o) throws Exception {
+        return (List<ReadingDTO>) read(write(o));
+    }
+
+    private static void verify(List<ReadingDTO> expected, List<ReadingDTO> actual) {
+        if (expected.size() != actual.size()) throw new IllegalStateException("size mismatch");
+        for (int i = 0; i < expected.size(); i++) {
+            ReadingDTO a = expected.get(i);
+            ReadingDTO b = actual.get(i);
+            boolean same = Objects.equals(a.device, b.device)
+                    && Objects.equals(a.soil, b.soil)
+                    && Objects.equals(a.waterTank, b.waterTank)
+                    && Objects.equals(a.raining, b.raining)
+                    && Objects.equals(a.pump, b.pump)
+                    && Objects.equals(a.tempC, b.tempC)
+                    && Objects.equals(a.humidity, b.humidity)
+                    && Objects.equals(a.createdUtc, b.createdUtc);
+            if (!same) throw new IllegalStateException("round trip mismatch at row " + i);
+        }
+    }
+}
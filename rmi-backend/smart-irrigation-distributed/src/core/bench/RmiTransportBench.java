@@ -0,0 +1,122 @@
+package core.bench;
+
+import core.dto.ReadingDTO;
+import core.metrics.LatencyHistogram;
+import core.rmi.TunedSocketFactory;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Loopback round-trip benchmark: default RMI sockets vs TunedSocketFactory,
+ * plus a direct in-process call (irrigation.transport=inprocess) as the floor.
+ *
+ * Run:  java -cp out core.bench.RmiTransportBench [iterations]
+ *
+ * Each variant exports the same small service and calls it from this JVM
+ * (RMI still goes through TCP for that). Two payloads are measured: a tiny
+ * pushReading-sized call and a 5000-row getHistory-sized list.
+ */
+public class RmiTransportBench {
+
+    public interface Echo extends Remote {
+        ReadingDTO one(ReadingDTO r) throws RemoteException;
+        List<ReadingDTO> history(int n) throws RemoteException;
+    }
+
+    static class EchoImpl implements Echo {
+        private final List<ReadingDTO> rows = sampleRows(5000);
+
+        @Override
+        public ReadingDTO one(ReadingDTO r) {
+            return r;
+        }
+
+        @Override
+        public List<ReadingDTO> history(int n) {
+            return new ArrayList<>(rows.subList(0, Math.min(n, rows.size())));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        System.setProperty("java.rmi.server.hostname", "127.0.0.1");
+
+        System.out.printf("%-28s %10s %10s %10s %12s %12s%n",
+                "variant", "small p50", "small p99", "small avg", "history p50", "history p99");
+
+        run("default sockets", null, iterations);
+        run("tuned (TCP_NODELAY)", new TunedSocketFactory(true, false, 3000, 0), iterations);
+        run("tuned + compression", new TunedSocketFactory(true, true, 3000, 0), iterations);
+        measure("in-process (no RMI)", new EchoImpl(), iterations);
+
+        System.exit(0); // exported objects keep the JVM alive otherwise
+    }
+
+    private static void run(String label, TunedSocketFactory sf, int iterations) throws Exception {
+        EchoImpl impl = new EchoImpl();
+        Echo stub = (Echo) (sf == null
+                ? UnicastRemoteObject.exportObject(impl, 0)
+                : UnicastRemoteObject.exportObject(impl, 0, sf, sf));
+
+        measure(label, stub, iterations);
+
+        UnicastRemoteObject.unexportObject(impl, true);
+    }
+
+    private static void measure(String label, Echo stub, int iterations) throws Exception {
+        ReadingDTO probe = sampleRows(1).get(0);
+
+        // warm up connections + JIT
+        for (int i = 0; i < 500; i++) stub.one(probe);
+        for (int i = 0; i < 20; i++) stub.history(5000);
+
+        LatencyHistogram small = new LatencyHistogram();
+        long smallTotal = 0;
+        for (int i = 0; i < iterations; i++) {
+            long t0 = System.nanoTime();
+            stub.one(probe);
+            long dt = System.nanoTime() - t0;
+            small.recordNanos(dt);
+            smallTotal += dt;
+        }
+
+        LatencyHistogram big = new LatencyHistogram();
+        int bigIterations = Math.max(20, iterations / 20);
+        for (int i = 0; i < bigIterations; i++) {
+            long t0 = System.nanoTime();
+            stub.history(5000);
+            big.since(t0);
+        }
+
+        System.out.printf("%-28s %8.0fus %8.0fus %8.0fus %10.2fms %10.2fms%n",
+                label,
+                small.quantileSeconds(0.50) * 1e6,
+                small.quantileSeconds(0.99) * 1e6,
+                smallTotal / (double) iterations / 1000.0,
+                big.quantileSeconds(0.50) * 1e3,
+                big.quantileSeconds(0.99) * 1e3);
+    }
+
+    static List<ReadingDTO> sampleRows(int n) {
+        List<ReadingDTO> out = new ArrayList<>(n);
+        Instant t = Instant.parse("2025-06-01T00:00:00Z");
+        for (int i = 0; i < n; i++) {
+            ReadingDTO r = new ReadingDTO();
+            r.device = "esp32-01";
+            r.soil = 30 + (i % 15);
+            r.waterTank = 80 - (i / 100) % 70;
+            r.raining = (i % 97) == 0;
+            r.pump = (i % 40) < 10;
+            r.tempC = 24.0 + (i % 10) / 10.0;
+            r.humidity = 55.0 + (i % 7);
+            r.createdUtc = t.plusSeconds(5L * i).toString();
+            out.add(r);
+        }
+        return out;
+    }
+}
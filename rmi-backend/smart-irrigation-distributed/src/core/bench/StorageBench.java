@@ -0,0 +1,160 @@
+package core.bench;
+
+import core.db.Db;
+import core.db.IrrigationDao;
+import core.db.JdbcIrrigationDao;
+import core.db.segment.SegmentIrrigationDao;
+import core.dto.ReadingDTO;
+import core.metrics.LatencyHistogram;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.util.Comparator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
+
+/**
+ * Ingest / read throughput of the storage backends behind IrrigationDao.
+ *
+ * Run:  java -cp out core.bench.StorageBench [devices] [readingsPerDevice] [writerThreads] [jdbc]
+ *
+ * The segment store runs in a temp directory. JDBC only runs when the 4th argument is "jdbc",
+ * and only against a scratch database given as -Dirrigation.bench.dbUrl (never the configured
+ * irrigation.db.url); its bench-XXXX devices and readings are deleted again when it finishes.
+ */
+public class StorageBench {
+
+    private static final String BENCH_DEVICES = "bench-%";
+
+    public static void main(String[] args) throws Exception {
+        int devices = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int perDevice = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        boolean jdbc = args.length > 3 && "jdbc".equalsIgnoreCase(args[3]);
+
+        if (jdbc) {
+            String url = System.getProperty("irrigation.bench.dbUrl");
+            if (url == null || url.isBlank()) {
+                System.err.println("jdbc mode writes test rows: point -Dirrigation.bench.dbUrl at a scratch database");
+                System.exit(2);
+            }
+            // before core.db.Db is loaded, so every connection of this run goes to the bench database
+            System.setProperty("irrigation.db.url", url);
+        }
+
+        System.out.printf("%d devices x %d readings, %d writer threads, %d cpus%n",
+                devices, perDevice, threads, Runtime.getRuntime().availableProcessors());
+        System.out.printf("%-10s %-16s %12s %10s %10s%n", "backend", "op", "ops/s", "p50", "p99");
+
+        Path dir = Files.createTempDirectory("irrigation-seg");
+        try {
+            SegmentIrrigationDao seg = SegmentIrrigationDao.open(dir);
+            run("segment", seg, devices, perDevice, threads);
+            seg.close();
+
+            long t0 = System.nanoTime();
+            SegmentIrrigationDao reopened = SegmentIrrigationDao.open(dir);
+            System.out.printf("%-10s %-16s %12s %8.2fms%n", "segment", "reopen+replay", "-", (System.nanoTime() - t0) / 1e6);
+            reopened.close();
+        } finally {
+            try (Stream<Path> files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+
+        if (jdbc) {
+            try {
+                run("jdbc", new JdbcIrrigationDao(), devices, Math.min(perDevice, 50), threads);
+            } finally {
+                cleanUp();
+            }
+        }
+    }
+
+    /** Remove what the jdbc run wrote (readings first: they reference dbo.devices). */
+    private static void cleanUp() throws Exception {
+        try (Connection c = Db.get()) {
+            for (String table : new String[]{"readings", "device_state", "devices"}) {
+                try (PreparedStatement ps = c.prepareStatement("DELETE FROM dbo." + table + " WHERE device_id LIKE ?")) {
+                    ps.setString(1, BENCH_DEVICES);
+                    System.out.printf("%-10s removed %d row(s) from dbo.%s%n", "jdbc", ps.executeUpdate(), table);
+                }
+            }
+        }
+    }
+
+    private static void run(String label, IrrigationDao dao, int devices, int perDevice, int threads) throws Exception {
+        String[] ids = new String[devices];
+        for (int i = 0; i < devices; i++) ids[i] = String.format("bench-%04d", i);
+
+        // ingest: each writer owns a slice of the devices (like the per-device lanes)
+        LatencyHistogram insert = new LatencyHistogram();
+        CountDownLatch done = new CountDownLatch(threads);
+        long t0 = System.nanoTime();
+        for (int w = 0; w < threads; w++) {
+            final int slice = w;
+            Thread t = new Thread(() -> {
+                try {
+                    ThreadLocalRandom rnd = ThreadLocalRandom.current();
+                    for (int n = 0; n < perDevice; n++) {
+                        for (int d = slice; d < devices; d += threads) {
+                            ReadingDTO r = new ReadingDTO();
+                            r.device = ids[d];
+                            r.soil = rnd.nextInt(0, 100);
+                            r.waterTank = rnd.nextInt(0, 100);
+                            r.raining = rnd.nextInt(10) == 0;
+                            r.pump = rnd.nextBoolean();
+                            r.tempC = 20 + rnd.nextDouble(10);
+                            r.humidity = 40 + rnd.nextDouble(30);
+
+                            long s = System.nanoTime();
+                            dao.insertReading(r);
+                            insert.since(s);
+                        }
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                } finally {
+                    done.countDown();
+                }
+            });
+            t.setDaemon(true);
+            t.start();
+        }
+        done.await();
+        report(label, "insertReading", (long) devices * perDevice, System.nanoTime() - t0, insert);
+
+        // reads
+        int reads = Math.max(1000, devices * 10);
+        Timestamp from = new Timestamp(0);
+        Timestamp to = new Timestamp(System.currentTimeMillis() + 60_000);
+
+        LatencyHistogram latest = new LatencyHistogram();
+        t0 = System.nanoTime();
+        for (int i = 0; i < reads; i++) {
+            long s = System.nanoTime();
+            dao.getLatest(ids[i % devices]);
+            latest.since(s);
+        }
+        report(label, "getLatest", reads, System.nanoTime() - t0, latest);
+
+        LatencyHistogram history = new LatencyHistogram();
+        int historyReads = reads / 10;
+        t0 = System.nanoTime();
+        for (int i = 0; i < historyReads; i++) {
+            long s = System.nanoTime();
+            dao.getHistory(ids[i % devices], from, to, 200);
+            history.since(s);
+        }
+        report(label, "getHistory(200)", historyReads, System.nanoTime() - t0, history);
+    }
+
+    private static void report(String label, String op, long ops, long nanos, LatencyHistogram h) {
+        System.out.printf("%-10s %-16s %12.0f %8.3fms %8.3fms%n",
+                label, op, ops / (nanos / 1e9), h.quantileSeconds(0.50) * 1e3, h.quantileSeconds(0.99) * 1e3);
+    }
+}
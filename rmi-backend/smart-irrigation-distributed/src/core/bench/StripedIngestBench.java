@@ -0,0 +1,126 @@
+package core.bench;
+
+import core.dto.ReadingDTO;
+import core.logic.PumpLogic;
+import core.metrics.LatencyHistogram;
+import core.state.DeviceState;
+import core.state.StripedExecutor;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * pushReading-shaped throughput: no serialization vs one global lock vs StripedExecutor lanes.
+ *
+ * Run:  java -cp out core.bench.StripedIngestBench [producers] [opsPerProducer] [ioMicros] [devices]
+ *
+ * Each op does what pushReading does to a DeviceState (tank latch + hysteresis decision)
+ * around a simulated JDBC wait of ioMicros. "overlaps" counts ops that found another op
+ * of the same device already running, i.e. the races the lanes are there to remove.
+ */
+public class StripedIngestBench {
+
+    interface Runner {
+        void run(String device, Runnable op) throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int producers = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int opsPerProducer = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int ioMicros = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+        int devices = args.length > 3 ? Integer.parseInt(args[3]) : 500;
+
+        System.out.printf("%d producers x %d ops, %dus simulated DB per op, %d devices, %d cpus%n",
+                producers, opsPerProducer, ioMicros, devices, Runtime.getRuntime().availableProcessors());
+        System.out.printf("%-22s %12s %10s %10s %10s%n", "variant", "ops/s", "p50", "p99", "overlaps");
+
+        run("no serialization", (d, op) -> op.run(), producers, opsPerProducer, ioMicros, devices);
+
+        Object global = new Object();
+        run("global lock", (d, op) -> {
+            synchronized (global) {
+                op.run();
+            }
+        }, producers, opsPerProducer, ioMicros, devices);
+
+        for (int stripes : new int[]{1, 8, 32}) {
+            StripedExecutor lanes = new StripedExecutor(stripes, "bench-" + stripes);
+            run("striped x" + stripes, (d, op) -> lanes.call(d, () -> {
+                op.run();
+                return null;
+            }), producers, opsPerProducer, ioMicros, devices);
+            lanes.shutdown();
+        }
+    }
+
+    private static void run(String label, Runner runner, int producers, int opsPerProducer,
+                            int ioMicros, int devices) throws Exception {
+        ConcurrentHashMap<String, DeviceState> states = new ConcurrentHashMap<>();
+        ConcurrentHashMap<String, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+        String[] ids = new String[devices];
+        for (int i = 0; i < devices; i++) {
+            ids[i] = String.format("esp32-%04d", i);
+            states.put(ids[i], new DeviceState());
+            inFlight.put(ids[i], new AtomicInteger());
+        }
+
+        LongAdder overlaps = new LongAdder();
+        LatencyHistogram latency = new LatencyHistogram();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(producers);
+
+        for (int p = 0; p < producers; p++) {
+            Thread t = new Thread(() -> {
+                try {
+                    start.await();
+                    ThreadLocalRandom rnd = ThreadLocalRandom.current();
+                    for (int i = 0; i < opsPerProducer; i++) {
+                        String d = ids[rnd.nextInt(devices)];
+                        ReadingDTO r = new ReadingDTO();
+                        r.device = d;
+                        r.soil = rnd.nextInt(20, 50);
+                        r.waterTank = rnd.nextInt(0, 100);
+                        r.raining = false;
+
+                        long t0 = System.nanoTime();
+                        runner.run(d, () -> {
+                            if (inFlight.get(d).incrementAndGet() > 1) overlaps.increment();
+                            DeviceState st = states.get(d);
+
+                            LockSupport.parkNanos(ioMicros * 1000L); // insertReading / alerts / decision log
+
+                            boolean latched = st.tankLowLatched;
+                            if (r.waterTank >= 15) latched = false;
+                            if (!latched && r.waterTank <= 10) latched = true;
+                            st.tankLowLatched = latched;
+                            st.lastTankSeen = r.waterTank;
+                            st.lastAutoCmd = PumpLogic.decidePumpCmd(r, st.lastAutoCmd);
+
+                            inFlight.get(d).decrementAndGet();
+                        });
+                        latency.since(t0);
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                } finally {
+                    done.countDown();
+                }
+            });
+            t.setDaemon(true);
+            t.start();
+        }
+
+        long t0 = System.nanoTime();
+        start.countDown();
+        done.await();
+        double sec = (System.nanoTime() - t0) / 1e9;
+
+        System.out.printf("%-22s %12.0f %8.2fms %8.2fms %10d%n",
+                label, producers * (double) opsPerProducer / sec,
+                latency.quantileSeconds(0.50) * 1e3, latency.quantileSeconds(0.99) * 1e3, overlaps.sum());
+    }
+}
@@ -0,0 +1,237 @@
+package core.db;
+
+import core.db.archive.ReadingArchive;
+import core.dto.ReadingDTO;
+import core.metrics.LatencyHistogram;
+import core.metrics.Metrics;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Moves raw readings older than -Dirrigation.archive.afterDays out of dbo.readings into the
+ * ReadingArchive, one device-day at a time, oldest first:
+ *   1. read the day's rows (seek on IX_readings_device_created) and remember the highest id
+ *   2. roll its hours up into dbo.readings_hourly (same rollup as RetentionService)
+ *   3. write the compressed day file (merged with an existing one, forced to disk)
+ *   4. DELETE TOP batches of that day with id <= the highest id read
+ * A crash between 3 and 4 just rewrites the same rows next time (the archive drops exact
+ * duplicates); rows imported into the day after step 1 have higher ids and wait for the next run.
+ *
+ * Each core archives only the devices it owns, so a device's day files sit on the core that
+ * serves its getHistory. Runs every -Dirrigation.archive.everyMin (60), for at most
+ * -Dirrigation.retention.maxRunSec (300), deleting in -Dirrigation.retention.batch (2000) rows.
+ */
+public class Archiver {
+
+    private final ReadingArchive archive;
+    private final Predicate<String> owned;
+
+    private final int batch = Math.max(100, Integer.getInteger("irrigation.retention.batch", 2000));
+    private final long pauseMs = Math.max(0, Integer.getInteger("irrigation.retention.pauseMs", 50));
+    private final long maxRunMs = Math.max(1, Integer.getInteger("irrigation.retention.maxRunSec", 300)) * 1000L;
+
+    private static final LatencyHistogram RUN_TIME =
+            Metrics.histogram("core_archive_run_seconds", "Duration of one archive pass");
+    private static final LongAdder MOVED =
+            Metrics.counter("core_archive_rows_total", "Raw readings moved from dbo.readings into the archive");
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "archiver");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public Archiver(ReadingArchive archive, Predicate<String> owned) {
+        this.archive = archive;
+        this.owned = owned;
+    }
+
+    public void start() {
+        int every = Integer.getInteger("irrigation.archive.everyMin", 60);
+        if (every > 0) {
+            scheduler.scheduleWithFixedDelay(this::runQuietly, 2, every, TimeUnit.MINUTES);
+        }
+    }
+
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    public void runQuietly() {
+        try {
+            runOnce();
+        } catch (Exception e) {
+            System.err.println("[ARCHIVE] run failed: " + e.getMessage());
+        }
+    }
+
+    /** One pass over our devices; returns the number of rows moved. */
+    public long runOnce() throws Exception {
+        long t0 = System.nanoTime();
+        long deadline = System.currentTimeMillis() + maxRunMs;
+        LocalDate cutoff = LocalDate.now(ZoneOffset.UTC).minusDays(archive.afterDays());
+
+        long rows = 0;
+        long fileBytes = 0;
+        int deviceDays = 0;
+
+        try (Connection c = Db.get()) {
+            for (String device : devices(c)) {
+                if (!owned.test(device)) continue;
+
+                while (System.currentTimeMillis() < deadline) {
+                    LocalDate day = oldestDay(c, device);
+                    if (day == null || !day.isBefore(cutoff)) break;
+
+                    long[] moved = archiveDay(c, device, day, deadline);
+                    rows += moved[0];
+                    fileBytes += moved[1];
+                    deviceDays++;
+                    if (moved[2] > 0) break; // out of time mid-delete
+                }
+                if (System.currentTimeMillis() >= deadline) break;
+            }
+
+            int dropped = archive.dropExpired();
+            if (dropped > 0) System.out.println("[ARCHIVE] dropped " + dropped + " day file(s) older than " + archive.keepDays() + " d");
+        } finally {
+            RUN_TIME.since(t0);
+        }
+
+        if (deviceDays > 0) {
+            System.out.println("[ARCHIVE] moved " + rows + " reading(s) of " + deviceDays + " device-day(s) in "
+                    + (System.nanoTime() - t0) / 1_000_000 + " ms"
+                    + (rows > 0 ? String.format(" (%.1f B/row on disk)", fileBytes / (double) rows) : ""));
+        }
+        return rows;
+    }
+
+    /** {rows moved, size of the day file, 1 if the delete stopped at the deadline}. */
+    private long[] archiveDay(Connection c, String device, LocalDate day, long deadline) throws Exception {
+        Timestamp from = Timestamp.from(day.atStartOfDay(ZoneOffset.UTC).toInstant());
+        Timestamp to = Timestamp.from(day.plusDays(1).atStartOfDay(ZoneOffset.UTC).toInstant());
+
+        final String sql = """
+            SELECT id, soil, water_tank, raining, pump_reported, temp_c, humidity, created_utc
+            FROM dbo.readings
+            WHERE device_id = ?
+              AND created_utc >= ?
+              AND created_utc < ?
+            ORDER BY created_utc ASC
+        """;
+
+        List<ReadingDTO> rows = new ArrayList<>();
+        long maxId = Long.MIN_VALUE;
+        long t0 = System.nanoTime();
+        try (PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setString(1, device);
+            ps.setTimestamp(2, from);
+            ps.setTimestamp(3, to);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    maxId = Math.max(maxId, rs.getLong("id"));
+                    rows.add(row(device, rs));
+                }
+            }
+        } finally {
+            IrrigationDao.timer("archiveSelect").since(t0);
+        }
+        if (rows.isEmpty()) return new long[]{0, 0, 0};
+
+        RetentionService.rollup(c, from, to, device);
+        long size = archive.writeDay(device, day, rows);
+
+        final String delete = """
+            DELETE TOP (?) FROM dbo.readings
+            WHERE device_id = ?
+              AND created_utc >= ?
+              AND created_utc < ?
+              AND id <= ?
+        """;
+
+        long deleted = 0;
+        try (PreparedStatement ps = c.prepareStatement(delete)) {
+            while (true) {
+                ps.setInt(1, batch);
+                ps.setString(2, device);
+                ps.setTimestamp(3, from);
+                ps.setTimestamp(4, to);
+                ps.setLong(5, maxId);
+
+                long t1 = System.nanoTime();
+                int n;
+                try {
+                    n = ps.executeUpdate();
+                } finally {
+                    IrrigationDao.timer("archiveDelete").since(t1);
+                }
+
+                deleted += n;
+                MOVED.add(n);
+                if (n < batch) break;
+                if (System.currentTimeMillis() >= deadline) return new long[]{deleted, size, 1};
+                if (pauseMs > 0) Thread.sleep(pauseMs);
+            }
+        }
+        return new long[]{deleted, size, 0};
+    }
+
+    private static List<String> devices(Connection c) throws Exception {
+        List<String> out = new ArrayList<>();
+        try (PreparedStatement ps = c.prepareStatement("SELECT device_id FROM dbo.devices ORDER BY device_id");
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) out.add(rs.getString(1));
+        }
+        return out;
+    }
+
+    private static LocalDate oldestDay(Connection c, String device) throws Exception {
+        try (PreparedStatement ps = c.prepareStatement("SELECT MIN(created_utc) FROM dbo.readings WHERE device_id = ?")) {
+            ps.setString(1, device);
+            try (ResultSet rs = ps.executeQuery()) {
+                Timestamp ts = rs.next() ? rs.getTimestamp(1) : null;
+                return ts != null ? LocalDate.ofInstant(ts.toInstant(), ZoneOffset.UTC) : null;
+            }
+        }
+    }
+
+    private static ReadingDTO row(String device, ResultSet rs) throws Exception {
+        ReadingDTO r = new ReadingDTO();
+        r.device = device;
+
+        int soil = rs.getInt("soil");
+        r.soil = rs.wasNull() ? null : soil;
+        int tank = rs.getInt("water_tank");
+        r.waterTank = rs.wasNull() ? null : tank;
+        boolean raining = rs.getBoolean("raining");
+        r.raining = rs.wasNull() ? null : raining;
+        boolean pump = rs.getBoolean("pump_reported");
+        r.pump = rs.wasNull() ? null : pump;
+        Object t = rs.getObject("temp_c");
+        r.tempC = t == null ? null : ((Number) t).doubleValue();
+        Object h = rs.getObject("humidity");
+        r.humidity = h == null ? null : ((Number) h).doubleValue();
+
+        Instant created = rs.getTimestamp("created_utc").toInstant();
+        r.createdUtc = created.toString();
+        return r;
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(archive);
+    }
+}
@@ -6,16 +6,36 @@ import java.sql.SQLException;
 
 public class Db {
 
-    private static final String URL =
+    private static final String URL = System.getProperty("irrigation.db.url",
             "jdbc:sqlserver://DESKTOP-MB7273C\\SQLEXPRESS;"
                     + "databaseName=IrrigationDB;"
                     + "encrypt=true;"
-                    + "trustServerCertificate=true;";
+                    + "trustServerCertificate=true;");
 
-    private static final String USER = "talend_user";
-    private static final String PASS = "Talend@2025";
+    private static final String USER = System.getProperty("irrigation.db.user", "talend_user");
+    private static final String PASS = System.getProperty("irrigation.db.password", "Talend@2025");
 
+    // created on the first read(), so tools that only write never start the lag check
+    private static final class Replica {
+        static final ReadReplica INSTANCE = ReadReplica.fromSystemProperties(USER, PASS);
+    }
+
+    /** Primary: every write, and reads the core's own logic depends on (state, profiles, decisions). */
     public static Connection get() throws SQLException {
         return DriverManager.getConnection(URL, USER, PASS);
     }
+
+    /**
+     * Dashboard queries: the read replica (-Dirrigation.db.readUrl) while it is within
+     * -Dirrigation.db.maxLagSec of the primary, the primary otherwise or when none is configured.
+     */
+    public static Connection read() throws SQLException {
+        ReadReplica r = Replica.INSTANCE;
+        return r != null ? r.connect() : get();
+    }
+
+    /** The configured replica, or null (reads share the primary). */
+    public static ReadReplica replica() {
+        return Replica.INSTANCE;
+    }
 }
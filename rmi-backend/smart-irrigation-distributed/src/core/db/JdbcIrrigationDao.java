@@ -0,0 +1,1202 @@
+package core.db;
+
+import core.dto.AlertDTO;
+import core.dto.DeviceStatusDTO;
+import core.dto.ModeDTO;
+import core.dto.ProfileDTO;
+import core.dto.PumpDecisionDTO;
+import core.dto.ReadingDTO;
+import core.dto.ReadingList;
+import core.db.archive.ReadingArchive;
+import core.logic.DecisionReason;
+import core.state.DecisionRun;
+import core.state.DeviceState;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * SQL Server implementation (tables in docs/irrigation_DB.sql).
+ * Dashboard queries take Db.read() (the read replica when one is configured and fresh);
+ * writes and everything the decision logic reads back take Db.get().
+ */
+public class JdbcIrrigationDao implements IrrigationDao {
+
+    // batch reads bind one parameter per device; SQL Server allows 2100 per statement
+    public static final int MAX_BATCH = 1000;
+
+    // cold tier for aged readings (null when -Dirrigation.archive.afterDays is not set)
+    private final ReadingArchive archive;
+
+    public JdbcIrrigationDao() throws IOException {
+        this.archive = ReadingArchive.fromSystemProperties();
+    }
+
+    /** The reading archive getHistory spans, or null. */
+    public ReadingArchive archive() {
+        return archive;
+    }
+
+    // hot read queries; PlanCheck runs them under SHOWPLAN at startup to make sure they seek
+    static final String LATEST_SQL = """
+            SELECT TOP 1
+              device_id, soil, water_tank, raining, pump_reported, temp_c, humidity, created_utc
+            FROM dbo.readings
+            WHERE device_id = ?
+            ORDER BY created_utc DESC
+        """;
+
+    // keyset (created_utc, id): the id rides in IX_readings_device_created as the clustering key
+    static final String HISTORY_SQL = """
+            SELECT TOP (?)
+              id, device_id, soil, water_tank, raining, pump_reported, temp_c, humidity, created_utc
+            FROM dbo.readings
+            WHERE device_id = ?
+              AND created_utc >= ?
+              AND (created_utc > ? OR id > ?)
+              AND created_utc <= ?
+            ORDER BY created_utc ASC, id ASC
+        """;
+
+    static final String ALERTS_SQL = """
+            SELECT TOP (?)
+              id, device_id, alert_type, severity, message, created_utc
+            FROM dbo.alerts
+            WHERE device_id = ?
+              AND created_utc > ?
+            ORDER BY created_utc ASC
+        """;
+
+    // 1) Ensure device exists in dbo.devices (safe for first time)
+    public void ensureDeviceExists(String deviceId) throws Exception {
+        if (deviceId == null || deviceId.isBlank()) return;
+
+        final String sql =
+                "IF NOT EXISTS (SELECT 1 FROM dbo.devices WHERE device_id = ?) " +
+                        "INSERT INTO dbo.devices(device_id) VALUES (?)";
+
+        long t0 = System.nanoTime();
+        try (Connection c = Db.get();
+             PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setString(1, deviceId);
+            ps.setString(2, deviceId);
+            ps.executeUpdate();
+        } finally {
+            IrrigationDao.timer("ensureDeviceExists").since(t0);
+        }
+    }
+
+    // 2) Update last_seen_utc (called on every pushReading)
+    @Override
+    public void touchLastSeen(String deviceId) throws Exception {
+        if (deviceId == null || deviceId.isBlank()) return;
+
+        ensureDeviceExists(deviceId);
+
+        final String sql =
+                "UPDATE dbo.devices SET last_seen_utc = SYSUTCDATETIME() WHERE device_id = ?";
+
+        long t0 = System.nanoTime();
+        try (Connection c = Db.get();
+             PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setString(1, deviceId);
+            ps.executeUpdate();
+        } finally {
+            IrrigationDao.timer("touchLastSeen").since(t0);
+        }
+    }
+
+    // 3) Load state from dbo.device_state; if missing, create default row
+    @Override
+    public DeviceState loadOrCreateState(String deviceId) throws Exception {
+        if (deviceId == null || deviceId.isBlank()) {
+            return defaultState();
+        }
+
+        ensureDeviceExists(deviceId);
+
+        final String q =
+                "SELECT mode, manual_pump_cmd, last_auto_cmd " +
+                        "FROM dbo.device_state WHERE device_id = ?";
+
+        long t0 = System.nanoTime();
+        try (Connection c = Db.get();
+             PreparedStatement ps = c.prepareStatement(q)) {
+
+            ps.setString(1, deviceId);
+
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    DeviceState st = new DeviceState();
+                    st.mode = parseMode(rs.getString("mode"));
+                    st.manualPumpCmd = rs.getBoolean("manual_pump_cmd");
+                    st.lastAutoCmd = rs.getBoolean("last_auto_cmd");
+                    return st;
+                }
+            }
+        } finally {
+            IrrigationDao.timer("loadOrCreateState").since(t0);
+        }
+
+        DeviceState def = defaultState();
+        upsertState(deviceId, def.mode, def.manualPumpCmd, def.lastAutoCmd);
+        return def;
+    }
+
+    // 3b) All persisted states in one query (startup preload of the state cache)
+    @Override
+    public Map<String, DeviceState> loadAllStates() throws Exception {
+        final String q = "SELECT device_id, mode, manual_pump_cmd, last_auto_cmd FROM dbo.device_state";
+
+        Map<String, DeviceState> out = new HashMap<>();
+
+        long t0 = System.nanoTime();
+        try (Connection c = Db.get();
+             PreparedStatement ps = c.prepareStatement(q);
+             ResultSet rs = ps.executeQuery()) {
+
+            while (rs.next()) {
+                DeviceState st = new DeviceState();
+                st.mode = parseMode(rs.getString("mode"));
+                st.manualPumpCmd = rs.getBoolean("manual_pump_cmd");
+                st.lastAutoCmd = rs.getBoolean("last_auto_cmd");
+                out.put(rs.getString("device_id"), st);
+            }
+        } finally {
+            IrrigationDao.timer("loadAllStates").since(t0);
+        }
+
+        return out;
+    }
+
+    // 4) Upsert state (works for insert or update)
+    @Override
+    public void upsertState(String deviceId, ModeDTO mode, boolean manualPumpCmd, boolean lastAutoCmd) throws Exception {
+        if (deviceId == null || deviceId.isBlank()) return;
+        if (mode == null) mode = ModeDTO.AUTO;
+
+        ensureDeviceExists(deviceId);
+
+        final String sql =
+                "MERGE dbo.device_state AS t " +
+                        "USING (SELECT ? AS device_id) AS s " +
+                        "ON t.device_id = s.device_id " +
+                        "WHEN MATCHED THEN UPDATE SET " +
+                        "  mode = ?, manual_pump_cmd = ?, last_auto_cmd = ?, updated_utc = SYSUTCDATETIME() " +
+                        "WHEN NOT MATCHED THEN INSERT (device_id, mode, manual_pump_cmd, last_auto_cmd) " +
+                        "  VALUES (?, ?, ?, ?);";
+
+        long t0 = System.nanoTime();
+        try (Connection c = Db.get();
+             PreparedStatement ps = c.prepareStatement(sql)) {
+
+            int i = 1;
+            ps.setString(i++, deviceId);
+            ps.setString(i++, mode.name());
+            ps.setBoolean(i++, manualPumpCmd);
+            ps.setBoolean(i++, lastAutoCmd);
+
+            ps.setString(i++, deviceId);
+            ps.setString(i++, mode.name());
+            ps.setBoolean(i++, manualPumpCmd);
+            ps.setBoolean(i++, lastAutoCmd);
+
+            ps.executeUpdate();
+        } finally {
+            IrrigationDao.timer("upsertState").since(t0);
+        }
+    }
+
+    // readings the gateway stamped are keyed by (device_id, created_utc): a retried push or a
+    // spool replay of a reading already stored inserts nothing (IX_readings_device_created)
+    private static final String INSERT_KEYED_SQL = """
+        INSERT INTO dbo.readings
+        (device_id, soil, water_tank, raining, pump_reported, temp_c, humidity, created_utc)
+        OUTPUT INSERTED.created_utc
+        SELECT ?, ?, ?, ?, ?, ?, ?, ?
+        WHERE NOT EXISTS (SELECT 1 FROM dbo.readings WITH (UPDLOCK, HOLDLOCK)
+                          WHERE device_id = ? AND created_utc = ?)
+    """;
+
+    // the same without OUTPUT, so it can be batched
+    private static final String IMPORT_KEYED_SQL = """
+        INSERT INTO dbo.readings
+        (device_id, soil, water_tank, raining, pump_reported, temp_c, humidity, created_utc)
+        SELECT ?, ?, ?, ?, ?, ?, ?, ?
+        WHERE NOT EXISTS (SELECT 1 FROM dbo.readings WITH (UPDLOCK, HOLDLOCK)
+                          WHERE device_id = ? AND created_utc = ?)
+    """;
+
+    // 5) Insert raw sensor reading into dbo.readings; returns its created_utc (null if skipped).
+    //    With createdUtc set (the gateway's receive time) that is the row's time and its key.
+    @Override
+    public Timestamp insertReading(ReadingDTO r) throws Exception {
+        if (r == null || r.device == null || r.device.isBlank()) return null;
+
+        ensureDeviceExists(r.device);
+
+        final String sql = """
+            INSERT INTO dbo.readings
+            (device_id, soil, water_tank, raining, pump_reported, temp_c, humidity)
+            OUTPUT INSERTED.created_utc
+            VALUES (?, ?, ?, ?, ?, ?, ?)
+        """;
+
+        long t0 = System.nanoTime();
+        Timestamp key = r.createdUtc != null ? Timestamp.from(OffsetDateTime.parse(r.createdUtc).toInstant()) : null;
+        try (Connection c = Db.get();
+             PreparedStatement ps = c.prepareStatement(key != null ? INSERT_KEYED_SQL : sql)) {
+
+            int i = bindReading(ps, r);
+            if (key != null) bindKey(ps, i, r.device, key);
+
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) return rs.getTimestamp(1);
+                return key; // already stored
+            }
+        } finally {
+            IrrigationDao.timer("insertReading").since(t0);
+        }
+    }
+
+    // 5b) Late readings (gateway spool replay): created_utc comes from the reading, one transaction per call;
+    //     returns the rows stored (readings already held for their (device, created_utc) are skipped).
+    //     last_seen_utc moves forward to the newest one, like a bulk import.
+    @Override
+    public int importReadings(List<ReadingDTO> rs) throws Exception {
+        List<ReadingDTO> rows = new ArrayList<>(rs.size());
+        Set<String> seen = new HashSet<>();
+        for (ReadingDTO r : rs) {
+            if (r == null || r.device == null || r.device.isBlank()) continue;
+            if (seen.add(r.device)) ensureDeviceExists(r.device);
+            rows.add(r);
+        }
+        if (rows.isEmpty()) return 0;
+
+        long t0 = System.nanoTime();
+        try (Connection c = Db.get()) {
+            c.setAutoCommit(false);
+            try (PreparedStatement ps = c.prepareStatement(IMPORT_KEYED_SQL);
+                 PreparedStatement lastSeen = c.prepareStatement(
+                         "UPDATE dbo.devices SET last_seen_utc = ? WHERE device_id = ? AND (last_seen_utc IS NULL OR last_seen_utc < ?)")) {
+                Map<String, Timestamp> newest = new HashMap<>();
+                for (ReadingDTO r : rows) {
+                    Timestamp at = r.createdUtc != null
+                            ? Timestamp.from(OffsetDateTime.parse(r.createdUtc).toInstant())
+                            : new Timestamp(System.currentTimeMillis());
+                    bindKey(ps, bindReading(ps, r), r.device, at);
+                    ps.addBatch();
+                    newest.merge(r.device, at, (a, b) -> a.after(b) ? a : b);
+                }
+                int stored = 0;
+                for (int n : ps.executeBatch()) stored += Math.max(0, n);
+
+                for (Map.Entry<String, Timestamp> e : newest.entrySet()) {
+                    lastSeen.setTimestamp(1, e.getValue());
+                    lastSeen.setString(2, e.getKey());
+                    lastSeen.setTimestamp(3, e.getValue());
+                    lastSeen.addBatch();
+                }
+                lastSeen.executeBatch();
+                c.commit();
+                return stored;
+            } catch (Exception e) {
+                c.rollback();
+                throw e;
+            } finally {
+                c.setAutoCommit(true);
+            }
+        } finally {
+            IrrigationDao.timer("importReadings").since(t0);
+        }
+    }
+
+    /** device_id .. humidity, parameters 1-7; returns the next parameter index. */
+    private static int bindReading(PreparedStatement ps, ReadingDTO r) throws SQLException {
+        int i = 1;
+        ps.setString(i++, r.device);
+
+        if (r.soil != null) ps.setInt(i++, r.soil);
+        else ps.setNull(i++, java.sql.Types.INTEGER);
+
+        if (r.waterTank != null) ps.setInt(i++, r.waterTank);
+        else ps.setNull(i++, java.sql.Types.INTEGER);
+
+        if (r.raining != null) ps.setBoolean(i++, r.raining);
+        else ps.setNull(i++, java.sql.Types.BIT);
+
+        if (r.pump != null) ps.setBoolean(i++, r.pump);
+        else ps.setNull(i++, java.sql.Types.BIT);
+
+        if (r.tempC != null) ps.setDouble(i++, r.tempC);
+        else ps.setNull(i++, java.sql.Types.FLOAT);
+
+        if (r.humidity != null) ps.setDouble(i++, r.humidity);
+        else ps.setNull(i++, java.sql.Types.FLOAT);
+        return i;
+    }
+
+    /** created_utc, then the NOT EXISTS key of INSERT_KEYED_SQL. */
+    private static void bindKey(PreparedStatement ps, int i, String device, Timestamp at) throws SQLException {
+        ps.setTimestamp(i++, at);
+        ps.setString(i++, device);
+        ps.setTimestamp(i, at);
+    }
+
+    // 6) Insert an alert row into dbo.alerts
+    @Override
+    public void insertAlert(String deviceId, String alertType, String severity, String message) throws Exception {
+        if (deviceId == null || deviceId.isBlank()) return;
+        if (alertType == null || alertType.isBlank()) return;
+        if (severity == null || severity.isBlank()) severity = "INFO";
+        if (message == null) message = "";
+
+        ensureDeviceExists(deviceId);
+
+        final String sql = """
+            INSERT INTO dbo.alerts (device_id, alert_type, severity, message)
+            VALUES (?, ?, ?, ?)
+        """;
+
+        long t0 = System.nanoTime();
+        try (Connection c = Db.get();
+             PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setString(1, deviceId);
+            ps.setString(2, alertType);
+            ps.setString(3, severity);
+            ps.setString(4, message);
+            ps.executeUpdate();
+        } finally {
+            IrrigationDao.timer("insertAlert").since(t0);
+        }
+    }
+
+    // 7) Read alerts since a UTC time (ORDER ASC)
+    @Override
+    public List<AlertDTO> getAlerts(String deviceId, String sinceUtc, int limit) throws Exception {
+        if (deviceId == null || deviceId.isBlank()) return List.of();
+        if (sinceUtc == null || sinceUtc.isBlank()) sinceUtc = "1970-01-01T00:00:00Z";
+
+        if (limit <= 0) limit = 200;
+        if (limit > 2000) limit = 2000;
+
+        Timestamp sinceTs = Timestamp.from(OffsetDateTime.parse(sinceUtc).toInstant());
+
+        List<AlertDTO> out = new ArrayList<>();
+
+        long t0 = System.nanoTime();
+        try (Connection c = Db.read();
+             PreparedStatement ps = c.prepareStatement(ALERTS_SQL)) {
+
+            ps.setInt(1, limit);
+            ps.setString(2, deviceId);
+            ps.setTimestamp(3, sinceTs);
+
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    AlertDTO a = new AlertDTO();
+
+                    long idVal = rs.getLong("id");
+                    a.id = rs.wasNull() ? null : idVal;
+
+                    a.device = rs.getString("device_id");
+                    a.type = rs.getString("alert_type");
+                    a.severity = rs.getString("severity");
+                    a.message = rs.getString("message");
+                    a.createdUtc = rs.getTimestamp("created_utc").toInstant().toString();
+
+                    out.add(a);
+                }
+            }
+        } finally {
+            IrrigationDao.timer("getAlerts").since(t0);
+        }
+
+        return out;
+    }
+
+    // 8) List all known devices
+    @Override
+    public List<String> listDevices() throws Exception {
+        final String sql = """
+            SELECT device_id
+            FROM dbo.devices
+            ORDER BY device_id ASC
+        """;
+
+        List<String> out = new ArrayList<>();
+
+        long t0 = System.nanoTime();
+        try (Connection c = Db.read();
+             PreparedStatement ps = c.prepareStatement(sql);
+             ResultSet rs = ps.executeQuery()) {
+
+            while (rs.next()) {
+                out.add(rs.getString("device_id"));
+            }
+        } finally {
+            IrrigationDao.timer("listDevices").since(t0);
+        }
+
+        return out;
+    }
+
+    // =========================
+    // ✅ FIXED STATUS (NO TIMEZONE BUGS)
+    // =========================
+
+    // Used by IrrigationServiceImpl.getStatus(...)
+    @Override
+    public DeviceStatusDTO getStatus(String deviceId, int offlineSec) throws Exception {
+        if (deviceId == null || deviceId.isBlank()) return null;
+        if (offlineSec <= 0) offlineSec = 20;
+
+        final String sql = """
+            SELECT
+              device_id,
+              last_seen_utc,
+              DATEDIFF(SECOND, last_seen_utc, SYSUTCDATETIME()) AS diff_sec
+            FROM dbo.devices
+            WHERE device_id = ?
+        """;
+
+        long t0 = System.nanoTime();
+        try (Connection c = Db.read();
+             PreparedStatement ps = c.prepareStatement(sql)) {
+
+            ps.setString(1, deviceId);
+
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) return null;
+
+                return mapStatus(rs, offlineSec);
+            }
+        } finally {
+            IrrigationDao.timer("getStatus").since(t0);
+        }
+    }
+
+    // Used by IrrigationServiceImpl.listStatus(...)
+    @Override
+    public List<DeviceStatusDTO> listStatus(int offlineSec) throws Exception {
+        if (offlineSec <= 0) offlineSec = 20;
+
+        final String sql = """
+            SELECT
+              device_id,
+              last_seen_utc,
+              DATEDIFF(SECOND, last_seen_utc, SYSUTCDATETIME()) AS diff_sec
+            FROM dbo.devices
+            ORDER BY device_id
+        """;
+
+        List<DeviceStatusDTO> out = new ArrayList<>();
+
+        long t0 = System.nanoTime();
+        try (Connection c = Db.read();
+             PreparedStatement ps = c.prepareStatement(sql);
+             ResultSet rs = ps.executeQuery()) {
+
+            while (rs.next()) {
+                out.add(mapStatus(rs, offlineSec));
+            }
+        } finally {
+            IrrigationDao.timer("listStatus").since(t0);
+        }
+
+        return out;
+    }
+
+    // =========================
+    // PROFILES (thresholds per device / zone / site)
+    // =========================
+
+    // All rows of dbo.irrigation_profiles (device set = DEVICE scope, zone set = ZONE scope, neither = DEFAULT)
+    @Override
+    public List<ProfileDTO> loadProfiles() throws Exception {
+        final String sql = """
+            SELECT scope, scope_key, moisture_on, moisture_off, tank_low, tank_recover, lookahead_min
+            FROM dbo.irrigation_profiles
+        """;
+
+        List<ProfileDTO> out = new ArrayList<>();
+
+        long t0 = System.nanoTime();
+        try (Connection c = Db.get();
+             PreparedStatement ps = c.prepareStatement(sql);
+             ResultSet rs = ps.executeQuery()) {
+
+            while (rs.next()) {
+                ProfileDTO p = new ProfileDTO();
+                String scope = rs.getString("scope");
+                if ("DEVICE".equals(scope)) p.device = rs.getString("scope_key");
+                else if ("ZONE".equals(scope)) p.zone = rs.getString("scope_key");
+
+                p.moistureOn = (Integer) rs.getObject("moisture_on");
+                p.moistureOff = (Integer) rs.getObject("moisture_off");
+                p.tankLow = (Integer) rs.getObject("tank_low");
+                p.tankRecover = (Integer) rs.getObject("tank_recover");
+                p.lookaheadMin = (Integer) rs.getObject("lookahead_min");
+                out.add(p);
+            }
+        } finally {
+            IrrigationDao.timer("loadProfiles").since(t0);
+        }
+
+        return out;
+    }
+
+    // device -> zone for devices assigned to a zone
+    @Override
+    public Map<String, String> loadDeviceZones() throws Exception {
+        final String sql = "SELECT device_id, zone FROM dbo.devices WHERE zone IS NOT NULL";
+
+        Map<String, String> out = new HashMap<>();
+
+        long t0 = System.nanoTime();
+        try (Connection c = Db.get();
+             PreparedStatement ps = c.prepareStatement(sql);
+             ResultSet rs = ps.executeQuery()) {
+
+            while (rs.next()) {
+                out.put(rs.getString("device_id"), rs.getString("zone"));
+            }
+        } finally {
+            IrrigationDao.timer("loadDeviceZones").since(t0);
+        }
+
+        return out;
+    }
+
+    // Insert or replace one profile row (scope taken from p.device / p.zone)
+    @Override
+    public void upsertProfile(ProfileDTO p) throws Exception {
+        String scope;
+        String key;
+        if (p.device != null && !p.device.isBlank()) {
+            scope = "DEVICE";
+            key = p.device;
+            ensureDeviceExists(p.device);
+        } else if (p.zone != null && !p.zone.isBlank()) {
+            scope = "ZONE";
+            key = p.zone;
+        } else {
+            scope = "DEFAULT";
+            key = "*";
+        }
+
+        final String sql =
+                "MERGE dbo.irrigation_profiles AS t " +
+                        "USING (SELECT ? AS scope, ? AS scope_key) AS s " +
+                        "ON t.scope = s.scope AND t.scope_key = s.scope_key " +
+                        "WHEN MATCHED THEN UPDATE SET " +
+                        "  moisture_on = ?, moisture_off = ?, tank_low = ?, tank_recover = ?, lookahead_min = ?, " +
+                        "  updated_utc = SYSUTCDATETIME() " +
+                        "WHEN NOT MATCHED THEN INSERT (scope, scope_key, moisture_on, moisture_off, tank_low, tank_recover, lookahead_min) " +
+                        "  VALUES (?, ?, ?, ?, ?, ?, ?);";
+
+        long t0 = System.nanoTime();
+        try (Connection c = Db.get();
+             PreparedStatement ps = c.prepareStatement(sql)) {
+
+            int i = 1;
+            ps.setString(i++, scope);
+            ps.setString(i++, key);
+            i = setThresholds(ps, i, p);
+
+            ps.setString(i++, scope);
+            ps.setString(i++, key);
+            setThresholds(ps, i, p);
+
+            ps.executeUpdate();
+        } finally {
+            IrrigationDao.timer("upsertProfile").since(t0);
+        }
+    }
+
+    private static int setThresholds(PreparedStatement ps, int i, ProfileDTO p) throws Exception {
+        for (Integer v : new Integer[]{p.moistureOn, p.moistureOff, p.tankLow, p.tankRecover, p.lookaheadMin}) {
+            if (v != null) ps.setInt(i++, v);
+            else ps.setNull(i++, java.sql.Types.INTEGER);
+        }
+        return i;
+    }
+
+    // Assign a device to a zone (null/blank = no zone)
+    @Override
+    public void setDeviceZone(String deviceId, String zone) throws Exception {
+        if (deviceId == null || deviceId.isBlank()) return;
+
+        ensureDeviceExists(deviceId);
+
+        final String sql = "UPDATE dbo.devices SET zone = ? WHERE device_id = ?";
+
+        long t0 = System.nanoTime();
+        try (Connection c = Db.get();
+             PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setString(1, zone == null || zone.isBlank() ? null : zone);
+            ps.setString(2, deviceId);
+            ps.executeUpdate();
+        } finally {
+            IrrigationDao.timer("setDeviceZone").since(t0);
+        }
+    }
+
+    private DeviceStatusDTO mapStatus(ResultSet rs, int offlineSec) throws Exception {
+        Timestamp last = rs.getTimestamp("last_seen_utc");
+        Integer diff = (Integer) rs.getObject("diff_sec"); // can be null
+
+        DeviceStatusDTO s = new DeviceStatusDTO();
+        s.device = rs.getString("device_id");
+
+        if (last == null || diff == null) {
+            s.lastSeenUtc = null;
+            s.secondsSinceLastSeen = -1;
+            s.online = false;
+        } else {
+            s.lastSeenUtc = last.toInstant().toString();
+            s.secondsSinceLastSeen = diff.longValue();
+            s.online = s.secondsSinceLastSeen <= offlineSec;
+        }
+        return s;
+    }
+
+    // =========================
+    // BATCH READS (one statement per MAX_BATCH devices)
+    // =========================
+
+    /** "(?),(?),..." for a VALUES table of n device ids. */
+    public static String valuesList(int n) {
+        StringBuilder sb = new StringBuilder(n * 4);
+        for (int i = 0; i < n; i++) {
+            if (i > 0) sb.append(',');
+            sb.append("(?)");
+        }
+        return sb.toString();
+    }
+
+    // Used by IrrigationServiceImpl.getSummaries(...): device -> status (unknown devices absent)
+    @Override
+    public Map<String, DeviceStatusDTO> getStatusMany(List<String> deviceIds, int offlineSec) throws Exception {
+        if (offlineSec <= 0) offlineSec = 20;
+
+        Map<String, DeviceStatusDTO> out = new HashMap<>();
+
+        for (int from = 0; from < deviceIds.size(); from += MAX_BATCH) {
+            List<String> ids = deviceIds.subList(from, Math.min(deviceIds.size(), from + MAX_BATCH));
+
+            final String sql = """
+                SELECT
+                  dv.device_id,
+                  dv.last_seen_utc,
+                  DATEDIFF(SECOND, dv.last_seen_utc, SYSUTCDATETIME()) AS diff_sec
+                FROM (VALUES %s) AS d(device_id)
+                JOIN dbo.devices dv ON dv.device_id = d.device_id
+            """.formatted(valuesList(ids.size()));
+
+            long t0 = System.nanoTime();
+            try (Connection c = Db.read();
+                 PreparedStatement ps = c.prepareStatement(sql)) {
+
+                for (int i = 0; i < ids.size(); i++) ps.setString(i + 1, ids.get(i));
+
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        DeviceStatusDTO s = mapStatus(rs, offlineSec);
+                        out.put(s.device, s);
+                    }
+                }
+            } finally {
+                IrrigationDao.timer("getStatusMany").since(t0);
+            }
+        }
+
+        return out;
+    }
+
+    // Same rows as getAlerts(...) for each device (TOP limit per device, ASC), in one statement
+    @Override
+    public Map<String, List<AlertDTO>> getAlertsMany(List<String> deviceIds, String sinceUtc, int limit) throws Exception {
+        if (sinceUtc == null || sinceUtc.isBlank()) sinceUtc = "1970-01-01T00:00:00Z";
+
+        if (limit <= 0) limit = 200;
+        if (limit > 2000) limit = 2000;
+
+        Timestamp sinceTs = Timestamp.from(OffsetDateTime.parse(sinceUtc).toInstant());
+
+        Map<String, List<AlertDTO>> out = new HashMap<>();
+
+        for (int from = 0; from < deviceIds.size(); from += MAX_BATCH) {
+            List<String> ids = deviceIds.subList(from, Math.min(deviceIds.size(), from + MAX_BATCH));
+
+            // CROSS APPLY = one (device_id, created_utc) seek per device instead of a scan of the IN list
+            final String sql = """
+                SELECT
+                  a.id, a.device_id, a.alert_type, a.severity, a.message, a.created_utc
+                FROM (VALUES %s) AS d(device_id)
+                CROSS APPLY (
+                  SELECT TOP (?)
+                    id, device_id, alert_type, severity, message, created_utc
+                  FROM dbo.alerts
+                  WHERE device_id = d.device_id
+                    AND created_utc > ?
+                  ORDER BY created_utc ASC
+                ) a
+                ORDER BY a.device_id, a.created_utc ASC
+            """.formatted(valuesList(ids.size()));
+
+            long t0 = System.nanoTime();
+            try (Connection c = Db.read();
+                 PreparedStatement ps = c.prepareStatement(sql)) {
+
+                int p = 1;
+                for (String id : ids) ps.setString(p++, id);
+                ps.setInt(p++, limit);
+                ps.setTimestamp(p, sinceTs);
+
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        AlertDTO a = new AlertDTO();
+
+                        long idVal = rs.getLong("id");
+                        a.id = rs.wasNull() ? null : idVal;
+
+                        a.device = rs.getString("device_id");
+                        a.type = rs.getString("alert_type");
+                        a.severity = rs.getString("severity");
+                        a.message = rs.getString("message");
+                        a.createdUtc = rs.getTimestamp("created_utc").toInstant().toString();
+
+                        out.computeIfAbsent(a.device, k -> new ArrayList<>()).add(a);
+                    }
+                }
+            } finally {
+                IrrigationDao.timer("getAlertsMany").since(t0);
+            }
+        }
+
+        return out;
+    }
+
+    // Decision journal (dbo.pump_decision_runs): one row per (mode, pump_cmd, reason) run, see DecisionJournal
+    @Override
+    public long openDecisionRun(String deviceId, ModeDTO mode, boolean pumpCmd, int reasonCode,
+                                Timestamp startedUtc) throws Exception {
+        final String sql = """
+            INSERT INTO dbo.pump_decision_runs
+            (device_id, mode, pump_cmd, reason_code, started_utc, last_utc, run_count)
+            OUTPUT INSERTED.id
+            VALUES (?, ?, ?, ?, ?, ?, 1)
+        """;
+
+        long t0 = System.nanoTime();
+        try (Connection c = Db.get();
+             PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setString(1, deviceId);
+            ps.setString(2, mode.name());
+            ps.setBoolean(3, pumpCmd);
+            ps.setInt(4, reasonCode);
+            ps.setTimestamp(5, startedUtc);
+            ps.setTimestamp(6, startedUtc);
+
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) throw new IllegalStateException("no id returned for pump_decision_runs insert");
+                return rs.getLong(1);
+            }
+        } finally {
+            IrrigationDao.timer("openDecisionRun").since(t0);
+        }
+    }
+
+    @Override
+    public void updateDecisionRun(long id, int runCount, Timestamp lastUtc) throws Exception {
+        final String sql = "UPDATE dbo.pump_decision_runs SET run_count = ?, last_utc = ? WHERE id = ?";
+
+        long t0 = System.nanoTime();
+        try (Connection c = Db.get();
+             PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setInt(1, runCount);
+            ps.setTimestamp(2, lastUtc);
+            ps.setLong(3, id);
+            ps.executeUpdate();
+        } finally {
+            IrrigationDao.timer("updateDecisionRun").since(t0);
+        }
+    }
+
+    // latest run of a device (to keep extending it after a restart), null if none
+    @Override
+    public DecisionRun lastDecisionRun(String deviceId) throws Exception {
+        final String sql = """
+            SELECT TOP 1 id, mode, pump_cmd, reason_code, started_utc, last_utc, run_count
+            FROM dbo.pump_decision_runs
+            WHERE device_id = ?
+            ORDER BY started_utc DESC, id DESC
+        """;
+
+        long t0 = System.nanoTime();
+        try (Connection c = Db.get();
+             PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setString(1, deviceId);
+
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) return null;
+
+                DecisionRun run = new DecisionRun();
+                run.id = rs.getLong("id");
+                run.mode = parseMode(rs.getString("mode"));
+                run.pumpCmd = rs.getBoolean("pump_cmd");
+                run.reason = DecisionReason.ofCode(rs.getInt("reason_code"));
+                run.startedMs = rs.getTimestamp("started_utc").getTime();
+                run.lastMs = rs.getTimestamp("last_utc").getTime();
+                run.runCount = rs.getInt("run_count");
+                run.flushedCount = run.runCount;
+                run.flushedAtMs = run.lastMs;
+                return run;
+            }
+        } finally {
+            IrrigationDao.timer("lastDecisionRun").since(t0);
+        }
+    }
+
+    // Per-reading decisions rebuilt from readings + runs (like dbo.v_pump_decisions), ORDER ASC.
+    // Readings come from dbo.readings and the archive (getHistory). Runs outlive raw readings
+    // (retention 180 d vs 14 d): before the device's oldest reading left in either, each run is
+    // one entry stamped with its started_utc.
+    @Override
+    public List<PumpDecisionDTO> getDecisions(String deviceId, Timestamp fromUtc, Timestamp toUtc, int limit) throws Exception {
+        long t0 = System.nanoTime();
+        try {
+            List<DecisionRun> runs = decisionRuns(deviceId, fromUtc, toUtc, limit);
+            List<PumpDecisionDTO> out = new ArrayList<>();
+            if (runs.isEmpty()) return out;
+
+            Instant raw = oldestReading(deviceId);
+            Instant archived = archive != null ? archive.oldest(deviceId) : null;
+            if (archived != null && (raw == null || archived.isBefore(raw))) raw = archived;
+            long rawMs = raw != null ? raw.toEpochMilli() : Long.MAX_VALUE;
+
+            // 1) purged span: the runs themselves
+            for (DecisionRun run : runs) {
+                if (out.size() >= limit || run.startedMs >= rawMs || run.startedMs > toUtc.getTime()) break;
+                if (run.startedMs < fromUtc.getTime() && run.lastMs < fromUtc.getTime()) continue;
+                out.add(decision(deviceId, run, run.startedMs));
+            }
+            if (out.size() >= limit || rawMs > toUtc.getTime()) return out;
+
+            // 2) readings still kept (SQL or archive), each with the run it fell in
+            Timestamp from = rawMs > fromUtc.getTime() ? new Timestamp(rawMs) : fromUtc;
+            int r = 0;
+            for (ReadingDTO reading : getHistory(deviceId, from, toUtc, limit - out.size())) {
+                long ts = millis(reading);
+                while (r + 1 < runs.size() && runs.get(r + 1).startedMs <= ts) r++;
+                if (runs.get(r).startedMs > ts) continue; // before the first journaled decision
+                out.add(decision(deviceId, runs.get(r), ts));
+            }
+            return out;
+        } finally {
+            IrrigationDao.timer("getDecisions").since(t0);
+        }
+    }
+
+    /** Runs started in [from, to] plus the one in force at from, ascending, at most limit + 1. */
+    private List<DecisionRun> decisionRuns(String deviceId, Timestamp fromUtc, Timestamp toUtc, int limit) throws Exception {
+        final String sql = """
+            SELECT TOP (?) id, mode, pump_cmd, reason_code, started_utc, last_utc, run_count
+            FROM dbo.pump_decision_runs
+            WHERE device_id = ?
+              AND started_utc <= ?
+              AND started_utc >= ISNULL((SELECT MAX(p.started_utc) FROM dbo.pump_decision_runs p
+                                         WHERE p.device_id = ? AND p.started_utc <= ?), ?)
+            ORDER BY started_utc ASC, id ASC
+        """;
+
+        List<DecisionRun> out = new ArrayList<>();
+        try (Connection c = Db.read();
+             PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setInt(1, limit + 1);
+            ps.setString(2, deviceId);
+            ps.setTimestamp(3, toUtc);
+            ps.setString(4, deviceId);
+            ps.setTimestamp(5, fromUtc);
+            ps.setTimestamp(6, fromUtc);
+
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    DecisionRun run = new DecisionRun();
+                    run.id = rs.getLong("id");
+                    run.mode = parseMode(rs.getString("mode"));
+                    run.pumpCmd = rs.getBoolean("pump_cmd");
+                    run.reason = DecisionReason.ofCode(rs.getInt("reason_code"));
+                    run.startedMs = rs.getTimestamp("started_utc").getTime();
+                    run.lastMs = rs.getTimestamp("last_utc").getTime();
+                    run.runCount = rs.getInt("run_count");
+                    out.add(run);
+                }
+            }
+        }
+        return out;
+    }
+
+    /** created_utc of the device's oldest row in dbo.readings, null if it has none. */
+    private Instant oldestReading(String deviceId) throws Exception {
+        try (Connection c = Db.read();
+             PreparedStatement ps = c.prepareStatement("SELECT MIN(created_utc) FROM dbo.readings WHERE device_id = ?")) {
+            ps.setString(1, deviceId);
+            try (ResultSet rs = ps.executeQuery()) {
+                Timestamp ts = rs.next() ? rs.getTimestamp(1) : null;
+                return ts != null ? ts.toInstant() : null;
+            }
+        }
+    }
+
+    private static PumpDecisionDTO decision(String deviceId, DecisionRun run, long atMs) {
+        PumpDecisionDTO d = new PumpDecisionDTO();
+        d.device = deviceId;
+        d.mode = run.mode;
+        d.pumpCmd = run.pumpCmd;
+        d.reason = run.reason.name();
+        d.createdUtc = Instant.ofEpochMilli(atMs).toString();
+        return d;
+    }
+
+    // =========================
+    // READINGS (read side) + CONTROL AUDIT
+    // =========================
+
+    @Override
+    public ReadingDTO getLatest(String deviceId) throws Exception {
+        if (deviceId == null || deviceId.isBlank()) return null;
+
+        long t0 = System.nanoTime();
+        try (Connection c = Db.read();
+             PreparedStatement ps = c.prepareStatement(LATEST_SQL)) {
+
+            ps.setString(1, deviceId);
+
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) return null;
+                return mapReadingRow(rs);
+            }
+        } finally {
+            IrrigationDao.timer("getLatest").since(t0);
+        }
+    }
+
+    // device -> latest reading (devices that never reported are absent)
+    @Override
+    public Map<String, ReadingDTO> getLatestMany(List<String> deviceIds) throws Exception {
+        Map<String, ReadingDTO> out = new HashMap<>();
+
+        for (int from = 0; from < deviceIds.size(); from += MAX_BATCH) {
+            List<String> chunk = deviceIds.subList(from, Math.min(deviceIds.size(), from + MAX_BATCH));
+
+            // same row as getLatest(...) per device: one TOP 1 seek each, one round trip for all
+            final String sql = """
+                SELECT
+                  r.device_id, r.soil, r.water_tank, r.raining, r.pump_reported, r.temp_c, r.humidity, r.created_utc
+                FROM (VALUES %s) AS d(device_id)
+                CROSS APPLY (
+                  SELECT TOP 1
+                    device_id, soil, water_tank, raining, pump_reported, temp_c, humidity, created_utc
+                  FROM dbo.readings
+                  WHERE device_id = d.device_id
+                  ORDER BY created_utc DESC
+                ) r
+            """.formatted(valuesList(chunk.size()));
+
+            long t0 = System.nanoTime();
+            try (Connection c = Db.read();
+                 PreparedStatement ps = c.prepareStatement(sql)) {
+
+                for (int i = 0; i < chunk.size(); i++) ps.setString(i + 1, chunk.get(i));
+
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        ReadingDTO r = mapReadingRow(rs);
+                        out.put(r.device, r);
+                    }
+                }
+            } finally {
+                IrrigationDao.timer("getLatestMany").since(t0);
+            }
+        }
+
+        return out;
+    }
+
+    // readings in [fromUtc, toUtc], ORDER ASC, from dbo.readings and (for aged days) the archive
+    @Override
+    public List<ReadingDTO> getHistory(String deviceId, Timestamp fromUtc, Timestamp toUtc, int limit) throws Exception {
+        return getHistoryAfter(deviceId, fromUtc, Long.MIN_VALUE, toUtc, limit);
+    }
+
+    // archived rows sort before SQL rows of the same millisecond (see ReadingArchive.ARCHIVE_ID), as in the merge below
+    @Override
+    public List<ReadingDTO> getHistoryAfter(String deviceId, Timestamp afterUtc, long afterId, Timestamp toUtc, int limit)
+            throws Exception {
+        List<ReadingDTO> recent = getHistorySql(deviceId, afterUtc, afterId, toUtc, limit);
+        if (archive == null || !archive.covers(deviceId, afterUtc.toInstant())) return recent;
+
+        List<ReadingDTO> old;
+        long t0 = System.nanoTime();
+        try {
+            old = archive.readAfter(deviceId, afterUtc.toInstant(), afterId, toUtc.toInstant(), limit);
+        } finally {
+            IrrigationDao.timer("archiveRead").since(t0);
+        }
+        if (old.isEmpty()) return recent;
+
+        // archived days are older than what is left in SQL, except late imports into those days
+        // and a day the Archiver has written but not yet deleted (same rows on both sides)
+        List<ReadingDTO> out = new ReadingList(Math.min(limit, old.size() + recent.size()));
+        int i = 0;
+        int j = 0;
+        while (out.size() < limit && (i < old.size() || j < recent.size())) {
+            if (j >= recent.size()) {
+                out.add(old.get(i++));
+            } else if (i >= old.size()) {
+                out.add(recent.get(j++));
+            } else {
+                long a = millis(old.get(i));
+                long b = millis(recent.get(j));
+                if (a == b && sameValues(old.get(i), recent.get(j))) j++;
+                if (a <= b) out.add(old.get(i++));
+                else out.add(recent.get(j++));
+            }
+        }
+        return out;
+    }
+
+    private static boolean sameValues(ReadingDTO a, ReadingDTO b) {
+        return Objects.equals(a.soil, b.soil)
+                && Objects.equals(a.waterTank, b.waterTank)
+                && Objects.equals(a.raining, b.raining)
+                && Objects.equals(a.pump, b.pump)
+                && Objects.equals(a.tempC, b.tempC)
+                && Objects.equals(a.humidity, b.humidity);
+    }
+
+    private static long millis(ReadingDTO r) {
+        return Instant.parse(r.createdUtc).toEpochMilli();
+    }
+
+    private List<ReadingDTO> getHistorySql(String deviceId, Timestamp afterUtc, long afterId, Timestamp toUtc, int limit)
+            throws Exception {
+        long t0 = System.nanoTime();
+        try (Connection c = Db.read();
+             PreparedStatement ps = c.prepareStatement(HISTORY_SQL)) {
+
+            ps.setInt(1, limit);
+            ps.setString(2, deviceId);
+            ps.setTimestamp(3, afterUtc);
+            ps.setTimestamp(4, afterUtc);
+            ps.setLong(5, afterId);
+            ps.setTimestamp(6, toUtc);
+
+            // columnar wire format (see ReadingList)
+            List<ReadingDTO> out = new ReadingList();
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    ReadingDTO r = mapReadingRow(rs);
+                    r.id = rs.getLong("id");
+                    out.add(r);
+                }
+            }
+            return out;
+        } finally {
+            IrrigationDao.timer("getHistory").since(t0);
+        }
+    }
+
+    private ReadingDTO mapReadingRow(ResultSet rs) throws Exception {
+        ReadingDTO r = new ReadingDTO();
+
+        r.device = rs.getString("device_id");
+
+        int soilVal = rs.getInt("soil");
+        r.soil = rs.wasNull() ? null : soilVal;
+
+        int wtVal = rs.getInt("water_tank");
+        r.waterTank = rs.wasNull() ? null : wtVal;
+
+        boolean rainingVal = rs.getBoolean("raining");
+        r.raining = rs.wasNull() ? null : rainingVal;
+
+        boolean pumpVal = rs.getBoolean("pump_reported");
+        r.pump = rs.wasNull() ? null : pumpVal;
+
+        Object t = rs.getObject("temp_c");
+        r.tempC = (t == null) ? null : ((Number) t).doubleValue();
+
+        Object h = rs.getObject("humidity");
+        r.humidity = (h == null) ? null : ((Number) h).doubleValue();
+
+        r.createdUtc = rs.getTimestamp("created_utc").toInstant().toString();
+
+        return r;
+    }
+
+    @Override
+    public void insertControlEvent(String deviceId, String type, ModeDTO mode, Boolean manualPump, String source)
+            throws Exception {
+        if (deviceId == null || deviceId.isBlank()) return;
+
+        final String sql = """
+            INSERT INTO dbo.control_events
+            (device_id, event_type, mode, manual_pump, source)
+            VALUES (?, ?, ?, ?, ?)
+        """;
+
+        long t0 = System.nanoTime();
+        try (Connection c = Db.get();
+             PreparedStatement ps = c.prepareStatement(sql)) {
+
+            ps.setString(1, deviceId);
+            ps.setString(2, type);
+            ps.setString(3, mode != null ? mode.name() : null);
+
+            if (manualPump != null) ps.setBoolean(4, manualPump);
+            else ps.setNull(4, java.sql.Types.BIT);
+
+            ps.setString(5, (source != null && !source.isBlank()) ? source : "UNKNOWN");
+
+            ps.executeUpdate();
+        } finally {
+            IrrigationDao.timer("insertControlEvent").since(t0);
+        }
+    }
+
+    @Override
+    public String toString() {
+        ReadReplica r = Db.replica();
+        return "SQL Server (JDBC" + (r != null ? ", queries on " + r : "") + ")";
+    }
+
+    // Keep these helpers
+    private DeviceState defaultState() {
+        DeviceState st = new DeviceState();
+        st.mode = ModeDTO.AUTO;
+        st.manualPumpCmd = false;
+        st.lastAutoCmd = false;
+        return st;
+    }
+
+    private ModeDTO parseMode(String s) {
+        if (s == null) return ModeDTO.AUTO;
+        return "MANUAL".equalsIgnoreCase(s) ? ModeDTO.MANUAL : ModeDTO.AUTO;
+    }
+}
@@ -0,0 +1,233 @@
+package core.db;
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Versioned schema migrations, applied by the core at startup (-Dirrigation.migrate=false to skip).
+ *
+ * dbo.schema_version records what has run. Each pending migration runs in its own transaction,
+ * in version order; the statements are guarded (IF ... IS NULL / NOT EXISTS), so a database
+ * built from docs/irrigation_DB.sql just gets its versions recorded. Several shards starting
+ * together serialize on an app lock. Append new migrations at the end; never edit an applied one.
+ */
+public class MigrationRunner {
+
+    /** One version: a description and the statements run in order (each is its own batch, no GO). */
+    static final class Migration {
+        final int version;
+        final String description;
+        final List<String> statements;
+
+        Migration(int version, String description, String... statements) {
+            this.version = version;
+            this.description = description;
+            this.statements = List.of(statements);
+        }
+    }
+
+    static final List<Migration> MIGRATIONS = List.of(
+            new Migration(1, "zones and irrigation profiles",
+                    "IF COL_LENGTH('dbo.devices', 'zone') IS NULL ALTER TABLE dbo.devices ADD zone VARCHAR(64) NULL",
+                    """
+                    IF OBJECT_ID('dbo.irrigation_profiles', 'U') IS NULL
+                    CREATE TABLE dbo.irrigation_profiles (
+                      scope         VARCHAR(10) NOT NULL,
+                      scope_key     VARCHAR(64) NOT NULL,
+                      moisture_on   INT NULL,
+                      moisture_off  INT NULL,
+                      tank_low      INT NULL,
+                      tank_recover  INT NULL,
+                      updated_utc   DATETIME2(3) NOT NULL DEFAULT SYSUTCDATETIME(),
+                      CONSTRAINT PK_irrigation_profiles PRIMARY KEY (scope, scope_key)
+                    )
+                    """,
+                    "IF COL_LENGTH('dbo.irrigation_profiles', 'lookahead_min') IS NULL "
+                            + "ALTER TABLE dbo.irrigation_profiles ADD lookahead_min INT NULL"),
+
+            new Migration(2, "change-only pump decision journal",
+                    """
+                    IF OBJECT_ID('dbo.pump_decision_runs', 'U') IS NULL
+                    CREATE TABLE dbo.pump_decision_runs (
+                      id          BIGINT IDENTITY(1,1) NOT NULL PRIMARY KEY,
+                      device_id   VARCHAR(64) NOT NULL,
+                      mode        VARCHAR(10) NOT NULL,
+                      pump_cmd    BIT NOT NULL,
+                      reason_code TINYINT NOT NULL,
+                      started_utc DATETIME2(3) NOT NULL,
+                      last_utc    DATETIME2(3) NOT NULL,
+                      run_count   INT NOT NULL,
+                      CONSTRAINT FK_pump_decision_runs_device
+                        FOREIGN KEY (device_id) REFERENCES dbo.devices(device_id)
+                    )
+                    """,
+                    indexIfMissing("IX_pump_decision_runs_device_started", "dbo.pump_decision_runs",
+                            "(device_id, started_utc) INCLUDE (mode, pump_cmd, reason_code)"),
+                    """
+                    CREATE OR ALTER VIEW dbo.v_pump_decisions AS
+                    SELECT r.id AS reading_id, r.device_id, r.created_utc, d.mode, d.pump_cmd, d.reason_code
+                    FROM dbo.readings r
+                    CROSS APPLY (
+                      SELECT TOP 1 x.mode, x.pump_cmd, x.reason_code
+                      FROM dbo.pump_decision_runs x
+                      WHERE x.device_id = r.device_id
+                        AND x.started_utc <= r.created_utc
+                      ORDER BY x.started_utc DESC, x.id DESC
+                    ) d
+                    """),
+
+            new Migration(3, "hourly rollup and retention indexes",
+                    """
+                    IF OBJECT_ID('dbo.readings_hourly', 'U') IS NULL
+                    CREATE TABLE dbo.readings_hourly (
+                      device_id     VARCHAR(64) NOT NULL,
+                      hour_utc      DATETIME2(0) NOT NULL,
+                      samples       INT NOT NULL,
+                      soil_min      INT NULL,
+                      soil_avg      FLOAT NULL,
+                      soil_max      INT NULL,
+                      tank_min      INT NULL,
+                      tank_avg      FLOAT NULL,
+                      tank_max      INT NULL,
+                      rain_samples  INT NOT NULL,
+                      pump_samples  INT NOT NULL,
+                      temp_avg      FLOAT NULL,
+                      humidity_avg  FLOAT NULL,
+                      CONSTRAINT PK_readings_hourly PRIMARY KEY (device_id, hour_utc)
+                    )
+                    """,
+                    indexIfMissing("IX_readings_created", "dbo.readings", "(created_utc)"),
+                    indexIfMissing("IX_alerts_created", "dbo.alerts", "(created_utc)"),
+                    indexIfMissing("IX_control_events_created", "dbo.control_events", "(created_utc)"),
+                    indexIfMissing("IX_pump_decision_runs_last", "dbo.pump_decision_runs", "(last_utc)")),
+
+            new Migration(4, "covering indexes for getLatest / getHistory / getAlerts",
+                    indexIfMissing("IX_readings_device_created", "dbo.readings",
+                            "(device_id, created_utc) INCLUDE (soil, water_tank, raining, pump_reported, temp_c, humidity)"),
+                    indexIfMissing("IX_alerts_device_created", "dbo.alerts",
+                            "(device_id, created_utc) INCLUDE (alert_type, severity, message)")),
+
+            new Migration(5, "bulk import staging heap",
+                    """
+                    IF OBJECT_ID('dbo.readings_import', 'U') IS NULL
+                    CREATE TABLE dbo.readings_import (
+                      device_id     VARCHAR(64) NOT NULL,
+                      soil          INT NULL,
+                      water_tank    INT NULL,
+                      raining       BIT NULL,
+                      pump_reported BIT NULL,
+                      temp_c        FLOAT NULL,
+                      humidity      FLOAT NULL,
+                      created_utc   DATETIME2(3) NOT NULL
+                    )
+                    """),
+
+            new Migration(6, "read replica heartbeat",
+                    """
+                    IF OBJECT_ID('dbo.replica_heartbeat', 'U') IS NULL
+                    CREATE TABLE dbo.replica_heartbeat (
+                      source   VARCHAR(200) NOT NULL PRIMARY KEY,
+                      beat_utc DATETIME2(3) NOT NULL
+                    )
+                    """),
+
+            new Migration(7, "hourly rollup watermark for late readings",
+                    "IF COL_LENGTH('dbo.readings_hourly', 'last_id') IS NULL "
+                            + "ALTER TABLE dbo.readings_hourly ADD last_id BIGINT NULL",
+                    // buckets rolled up before: everything still in dbo.readings for the hour was in them
+                    """
+                    UPDATE h SET h.last_id = m.max_id
+                    FROM dbo.readings_hourly h
+                    CROSS APPLY (
+                      SELECT MAX(r.id) AS max_id
+                      FROM dbo.readings r
+                      WHERE r.device_id = h.device_id
+                        AND r.created_utc >= h.hour_utc
+                        AND r.created_utc < DATEADD(HOUR, 1, h.hour_utc)
+                    ) m
+                    WHERE h.last_id IS NULL AND m.max_id IS NOT NULL
+                    """)
+    );
+
+    private static String indexIfMissing(String name, String table, String definition) {
+        return "IF NOT EXISTS (SELECT 1 FROM sys.indexes WHERE name = '" + name + "' AND object_id = OBJECT_ID('"
+                + table + "')) CREATE INDEX " + name + " ON " + table + " " + definition;
+    }
+
+    /** Apply every pending migration; returns how many ran. */
+    public int migrate() throws Exception {
+        int applied = 0;
+
+        try (Connection c = Db.get()) {
+            lock(c);
+
+            try (Statement st = c.createStatement()) {
+                st.execute("""
+                    IF OBJECT_ID('dbo.schema_version', 'U') IS NULL
+                    CREATE TABLE dbo.schema_version (
+                      version      INT NOT NULL PRIMARY KEY,
+                      description  NVARCHAR(200) NOT NULL,
+                      applied_utc  DATETIME2(3) NOT NULL DEFAULT SYSUTCDATETIME()
+                    )
+                """);
+            }
+
+            Set<Integer> done = new HashSet<>();
+            try (PreparedStatement ps = c.prepareStatement("SELECT version FROM dbo.schema_version");
+                 ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) done.add(rs.getInt(1));
+            }
+
+            for (Migration m : MIGRATIONS) {
+                if (done.contains(m.version)) continue;
+
+                long t0 = System.nanoTime();
+                c.setAutoCommit(false);
+                try (Statement st = c.createStatement()) {
+                    for (String sql : m.statements) st.execute(sql);
+
+                    try (PreparedStatement ps = c.prepareStatement(
+                            "INSERT INTO dbo.schema_version (version, description) VALUES (?, ?)")) {
+                        ps.setInt(1, m.version);
+                        ps.setString(2, m.description);
+                        ps.executeUpdate();
+                    }
+                    c.commit();
+                } catch (Exception e) {
+                    c.rollback();
+                    throw new IllegalStateException("migration " + m.version + " (" + m.description + ") failed: "
+                            + e.getMessage(), e);
+                } finally {
+                    c.setAutoCommit(true);
+                }
+
+                applied++;
+                System.out.println("[DB] migration " + m.version + " applied: " + m.description
+                        + " (" + (System.nanoTime() - t0) / 1_000_000 + " ms)");
+            }
+        }
+
+        System.out.println("[DB] schema at version " + MIGRATIONS.get(MIGRATIONS.size() - 1).version
+                + (applied > 0 ? " (" + applied + " migration(s) applied)" : ""));
+        return applied;
+    }
+
+    /** Session app lock: waits (up to 60s) for another shard that is migrating the same database. */
+    private static void lock(Connection c) throws Exception {
+        try (CallableStatement cs = c.prepareCall("{? = call sp_getapplock(?, ?, ?, ?)}")) {
+            cs.registerOutParameter(1, java.sql.Types.INTEGER);
+            cs.setString(2, "irrigation-migrate");
+            cs.setString(3, "Exclusive");
+            cs.setString(4, "Session");
+            cs.setInt(5, 60_000);
+            cs.execute();
+            if (cs.getInt(1) < 0) throw new IllegalStateException("could not get the migration lock");
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package core.db;
+
+import core.metrics.Metrics;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Startup check that the hot reads (getLatest / getHistory / getAlerts) compile to index seeks.
+ *
+ * Each query is sent under SET SHOWPLAN_XML ON (compiled, not executed) and the estimated plan
+ * is searched for scans over readings / alerts. A scan means a covering index is missing or was
+ * dropped: the query still works but reads the whole table, which is what made the dashboard
+ * slow once readings grew. Findings are logged as [DB] lines and exported as core_plan_scans;
+ * nothing fails. -Dirrigation.planCheck=false skips it.
+ */
+public class PlanCheck {
+
+    private static final Set<String> SCANS = Set.of("Table Scan", "Clustered Index Scan", "Index Scan");
+
+    private final AtomicInteger scans = new AtomicInteger();
+
+    public PlanCheck() {
+        Metrics.gauge("core_plan_scans", "Hot queries whose startup plan scans instead of seeks", scans::get);
+    }
+
+    /** Returns the number of hot queries with a scan in their plan (-1 if the check itself failed). */
+    public int run() {
+        Map<String, String> queries = new LinkedHashMap<>();
+        queries.put("getLatest", JdbcIrrigationDao.LATEST_SQL);
+        queries.put("getHistory", JdbcIrrigationDao.HISTORY_SQL);
+        queries.put("getAlerts", JdbcIrrigationDao.ALERTS_SQL);
+
+        int bad = 0;
+        try (Connection c = Db.get()) {
+            try (Statement st = c.createStatement()) {
+                st.execute("SET SHOWPLAN_XML ON");
+            }
+            try {
+                for (Map.Entry<String, String> q : queries.entrySet()) {
+                    List<String> found = scansIn(plan(c, q.getKey(), q.getValue()));
+                    if (found.isEmpty()) {
+                        System.out.println("[DB] plan check " + q.getKey() + ": seek");
+                    } else {
+                        bad++;
+                        System.out.println("[DB] plan check " + q.getKey() + ": SCAN " + String.join(", ", found)
+                                + " (run MigrationRunner / docs/irrigation_DB.sql section 10)");
+                    }
+                }
+            } finally {
+                try (Statement st = c.createStatement()) {
+                    st.execute("SET SHOWPLAN_XML OFF");
+                }
+            }
+        } catch (Exception e) {
+            System.out.println("[DB] plan check skipped: " + e.getMessage());
+            return -1;
+        }
+
+        scans.set(bad);
+        return bad;
+    }
+
+    /** Estimated plan XML; the parameters only have to type-check, nothing runs. */
+    private static String plan(Connection c, String name, String sql) throws Exception {
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        try (PreparedStatement ps = c.prepareStatement(sql)) {
+            switch (name) {
+                case "getLatest" -> ps.setString(1, "plan-check");
+                case "getHistory" -> {
+                    ps.setInt(1, 200);
+                    ps.setString(2, "plan-check");
+                    ps.setTimestamp(3, new Timestamp(now.getTime() - 86_400_000L));
+                    ps.setTimestamp(4, new Timestamp(now.getTime() - 86_400_000L));
+                    ps.setLong(5, Long.MIN_VALUE);
+                    ps.setTimestamp(6, now);
+                }
+                case "getAlerts" -> {
+                    ps.setInt(1, 50);
+                    ps.setString(2, "plan-check");
+                    ps.setTimestamp(3, new Timestamp(now.getTime() - 86_400_000L));
+                }
+                default -> throw new IllegalArgumentException(name);
+            }
+
+            StringBuilder xml = new StringBuilder();
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) xml.append(rs.getString(1));
+            }
+            return xml.toString();
+        }
+    }
+
+    /** "PhysicalOp on [table].[index]" for every scan operator in the plan. */
+    static List<String> scansIn(String showplanXml) throws Exception {
+        DocumentBuilderFactory f = DocumentBuilderFactory.newInstance();
+        f.setNamespaceAware(false);
+        f.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+        Document doc = f.newDocumentBuilder().parse(new InputSource(new StringReader(showplanXml)));
+
+        List<String> found = new ArrayList<>();
+        NodeList ops = doc.getElementsByTagName("RelOp");
+        for (int i = 0; i < ops.getLength(); i++) {
+            Element op = (Element) ops.item(i);
+            String physical = op.getAttribute("PhysicalOp");
+            if (!SCANS.contains(physical)) continue;
+
+            // the Object element of this operator (first one below it)
+            NodeList objects = op.getElementsByTagName("Object");
+            String target = "?";
+            if (objects.getLength() > 0) {
+                Element o = (Element) objects.item(0);
+                target = o.getAttribute("Table") + (o.hasAttribute("Index") ? "." + o.getAttribute("Index") : "");
+            }
+            found.add(physical + " on " + target);
+        }
+        return found;
+    }
+}
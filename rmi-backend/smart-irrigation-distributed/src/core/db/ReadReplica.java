@@ -0,0 +1,175 @@
+package core.db;
+
+import core.metrics.Metrics;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Read side of Db: a readable secondary (Always On, log shipping standby, replication
+ * subscriber) that takes the dashboard queries off the ingest database.
+ *
+ * Lag is measured with a heartbeat: every -Dirrigation.db.lagCheckMs (2000) this core stamps
+ * its row of dbo.replica_heartbeat on the primary with its own clock, then reads the row back
+ * from the replica; lag = now - stamp seen there (no clock skew between servers involved).
+ * The replica is used while lag <= -Dirrigation.db.maxLagSec (10). When it lags, cannot be
+ * reached or a connect fails, reads go to the primary until the next check finds it fresh.
+ *
+ * Lag in core_db_replica_lag_seconds (-1 = down), routing in core_db_reads_total{target}.
+ */
+public class ReadReplica {
+
+    private static final String BEAT_SQL = """
+            MERGE dbo.replica_heartbeat WITH (HOLDLOCK) AS t
+            USING (SELECT ? AS source) AS s
+            ON t.source = s.source
+            WHEN MATCHED THEN UPDATE SET beat_utc = ?
+            WHEN NOT MATCHED THEN INSERT (source, beat_utc) VALUES (s.source, ?);
+        """;
+
+    private final String url;
+    private final String user;
+    private final String pass;
+    private final String source;
+    private final long maxLagMs;
+    private final long checkMs;
+
+    private volatile boolean usable;
+    private volatile long lagMs = -1;
+    private boolean beatFailing; // lag thread only
+
+    private final LongAdder replicaReads;
+    private final LongAdder primaryReads;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "replica-lag");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public ReadReplica(String url, String user, String pass, String source, long maxLagMs, long checkMs) {
+        this.url = url;
+        this.user = user;
+        this.pass = pass;
+        this.source = source;
+        this.maxLagMs = Math.max(0, maxLagMs);
+        this.checkMs = Math.max(250, checkMs);
+
+        this.replicaReads = Metrics.counter("core_db_reads_total", "Query connections handed out", "target", "replica");
+        this.primaryReads = Metrics.counter("core_db_reads_total", "Query connections handed out", "target", "primary");
+        Metrics.gauge("core_db_replica_lag_seconds", "Heartbeat lag of the read replica (-1 = unreachable)",
+                () -> lagMs < 0 ? -1 : lagMs / 1000.0);
+        Metrics.gauge("core_db_replica_usable", "1 while queries go to the read replica",
+                () -> usable ? 1 : 0);
+    }
+
+    /** Null unless -Dirrigation.db.readUrl is set; user / password default to the primary's. */
+    static ReadReplica fromSystemProperties(String primaryUser, String primaryPass) {
+        String url = System.getProperty("irrigation.db.readUrl", "");
+        if (url.isBlank()) return null;
+
+        ReadReplica r = new ReadReplica(
+                url,
+                System.getProperty("irrigation.db.readUser", primaryUser),
+                System.getProperty("irrigation.db.readPassword", primaryPass),
+                System.getProperty("irrigation.shardId", "core"),
+                Integer.getInteger("irrigation.db.maxLagSec", 10) * 1000L,
+                Long.getLong("irrigation.db.lagCheckMs", 2000)
+        );
+        r.start();
+        return r;
+    }
+
+    public void start() {
+        scheduler.scheduleWithFixedDelay(this::check, 0, checkMs, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    /** A read-only replica connection when it is fresh enough, else a primary one. */
+    Connection connect() throws SQLException {
+        if (usable) {
+            try {
+                Connection c = DriverManager.getConnection(url, user, pass);
+                c.setReadOnly(true);
+                replicaReads.increment();
+                return c;
+            } catch (SQLException e) {
+                down("connect failed: " + e.getMessage());
+            }
+        }
+        primaryReads.increment();
+        return Db.get();
+    }
+
+    public boolean usable() {
+        return usable;
+    }
+
+    /** Last measured lag in ms, -1 if the replica could not be read. */
+    public long lagMs() {
+        return lagMs;
+    }
+
+    private void check() {
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        try (Connection c = Db.get();
+             PreparedStatement ps = c.prepareStatement(BEAT_SQL)) {
+            ps.setString(1, source);
+            ps.setTimestamp(2, now);
+            ps.setTimestamp(3, now);
+            ps.executeUpdate();
+            beatFailing = false;
+        } catch (Exception e) {
+            // no fresh beats: the measured lag grows and the replica is dropped once past maxLag
+            if (!beatFailing) System.out.println("[DB] replica heartbeat not written: " + e.getMessage());
+            beatFailing = true;
+        }
+
+        try (Connection c = DriverManager.getConnection(url, user, pass);
+             PreparedStatement ps = c.prepareStatement(
+                     "SELECT beat_utc FROM dbo.replica_heartbeat WHERE source = ?")) {
+            ps.setString(1, source);
+            Timestamp seen = null;
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) seen = rs.getTimestamp(1);
+            }
+            if (seen == null) {
+                down("no heartbeat for " + source + " yet");
+                return;
+            }
+
+            lagMs = Math.max(0, System.currentTimeMillis() - seen.getTime());
+            boolean fresh = lagMs <= maxLagMs;
+            if (fresh != usable) {
+                System.out.println(fresh
+                        ? "[DB] read replica in use (lag " + lagMs + " ms)"
+                        : "[DB] read replica lags " + lagMs + " ms > " + maxLagMs + " ms, queries go to the primary");
+            }
+            usable = fresh;
+        } catch (Exception e) {
+            lagMs = -1;
+            down(e.getMessage());
+        }
+    }
+
+    private void down(String why) {
+        if (usable) System.out.println("[DB] read replica down, queries go to the primary: " + why);
+        usable = false;
+    }
+
+    @Override
+    public String toString() {
+        return "read replica (max lag " + maxLagMs / 1000 + " s)";
+    }
+}
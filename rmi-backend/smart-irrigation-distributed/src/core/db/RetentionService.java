@@ -0,0 +1,297 @@
+package core.db;
+
+import core.metrics.LatencyHistogram;
+import core.metrics.Metrics;
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background pruning of the append-only tables.
+ *
+ * Policy per table in days, -Dirrigation.retention.<table>=N (0 = keep forever):
+ *   readings 14, alerts 90, pump_decision_runs 180, control_events 365, readings_hourly 0.
+ * Raw readings are first rolled up into dbo.readings_hourly, one window of
+ * -Dirrigation.retention.windowHours (24) at a time, so history older than the raw
+ * policy survives as hourly min/avg/max. Each bucket remembers the highest reading id it
+ * holds, so late rows (spool replay, imports) landing in an hour already rolled up are merged
+ * in on the next pass instead of being purged uncounted.
+ *
+ * pump_decision_runs outlives the raw readings on purpose: past them getDecisions answers
+ * with one entry per run.
+ *
+ * Deletes go in DELETE TOP (-Dirrigation.retention.batch, 2000) statements: each one stays
+ * well under SQL Server's ~5000-lock escalation threshold and commits on its own, with
+ * -Dirrigation.retention.pauseMs (50) between batches so ingest keeps its share of the log.
+ * A run stops after -Dirrigation.retention.maxRunSec (300) and resumes on the next one
+ * (every -Dirrigation.retention.everyMin, default 60; 0 disables).
+ *
+ * Several shards on one database: an exclusive app lock lets only one of them run at a time.
+ * With -Dirrigation.archive.afterDays set, raw readings are left to Archiver instead.
+ */
+public class RetentionService {
+
+    /** One table, the column its age is measured on, and how many days to keep. */
+    static final class Policy {
+        final String table;
+        final String timeColumn;
+        final int keepDays;
+
+        Policy(String table, String timeColumn, int defaultDays) {
+            this.table = table;
+            this.timeColumn = timeColumn;
+            this.keepDays = Integer.getInteger("irrigation.retention." + table, defaultDays);
+        }
+    }
+
+    private final List<Policy> policies = List.of(
+            new Policy("readings", "created_utc", 14),
+            new Policy("alerts", "created_utc", 90),
+            new Policy("pump_decision_runs", "last_utc", 180),
+            new Policy("control_events", "created_utc", 365),
+            new Policy("readings_hourly", "hour_utc", 0)
+    );
+
+    private final boolean archived = Integer.getInteger("irrigation.archive.afterDays", 0) > 0;
+
+    private final int batch = Math.max(100, Integer.getInteger("irrigation.retention.batch", 2000));
+    private final long pauseMs = Math.max(0, Integer.getInteger("irrigation.retention.pauseMs", 50));
+    private final int windowHours = Math.max(1, Integer.getInteger("irrigation.retention.windowHours", 24));
+    private final long maxRunMs = Math.max(1, Integer.getInteger("irrigation.retention.maxRunSec", 300)) * 1000L;
+
+    private static final LatencyHistogram RUN_TIME =
+            Metrics.histogram("core_retention_run_seconds", "Duration of one retention pass");
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "retention");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public void start() {
+        int every = Integer.getInteger("irrigation.retention.everyMin", 60);
+        if (every > 0) {
+            scheduler.scheduleWithFixedDelay(this::runQuietly, 1, every, TimeUnit.MINUTES);
+        }
+    }
+
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    public void runQuietly() {
+        try {
+            runOnce();
+        } catch (Exception e) {
+            System.err.println("[DB] retention run failed: " + e.getMessage());
+        }
+    }
+
+    /** One pass over every policy; returns rows purged per table (empty if another shard holds the lock). */
+    public Map<String, Long> runOnce() throws Exception {
+        long t0 = System.nanoTime();
+        long deadline = System.currentTimeMillis() + maxRunMs;
+        Map<String, Long> purged = new LinkedHashMap<>();
+
+        try (Connection c = Db.get()) {
+            if (!tryLock(c)) {
+                System.out.println("[DB] retention skipped: another core instance is running it");
+                return purged;
+            }
+
+            for (Policy p : policies) {
+                if (p.keepDays <= 0) continue;
+                // with the archive on, Archiver rolls raw readings up and moves them out before this age
+                if (archived && "readings".equals(p.table)) continue;
+                if (System.currentTimeMillis() >= deadline) break;
+
+                // whole hours only, so an hourly bucket is never rolled up half-deleted
+                Instant cutoff = Instant.now().minus(Duration.ofDays(p.keepDays)).truncatedTo(ChronoUnit.HOURS);
+                long n = "readings".equals(p.table)
+                        ? rollupAndPurgeReadings(c, cutoff, deadline)
+                        : deleteBatches(c, p.table, p.timeColumn, Timestamp.from(cutoff), Long.MAX_VALUE, deadline);
+
+                purged.put(p.table, n);
+                if (n > 0) {
+                    Metrics.counter("core_retention_purged_total", "Rows deleted by the retention job", "table", p.table).add(n);
+                }
+            }
+        } finally {
+            RUN_TIME.since(t0);
+        }
+
+        System.out.println("[DB] retention purged " + purged + " in " + (System.nanoTime() - t0) / 1_000_000 + " ms");
+        return purged;
+    }
+
+    /** Roll up then delete raw readings one window at a time, oldest first, up to the cutoff. */
+    private long rollupAndPurgeReadings(Connection c, Instant cutoff, long deadline) throws Exception {
+        Instant oldest = oldest(c, "readings", "created_utc");
+        if (oldest == null) return 0;
+
+        long total = 0;
+        Instant from = oldest.truncatedTo(ChronoUnit.HOURS);
+
+        while (from.isBefore(cutoff) && System.currentTimeMillis() < deadline) {
+            Instant to = from.plus(Duration.ofHours(windowHours));
+            if (to.isAfter(cutoff)) to = cutoff;
+
+            // rows arriving after this read are neither purged nor lost: the next pass folds them in
+            long maxId = maxReadingId(c);
+            rollup(c, Timestamp.from(from), Timestamp.from(to), null);
+            long n = deleteBatches(c, "readings", "created_utc", Timestamp.from(to), maxId, deadline);
+            total += n;
+
+            // out of time mid-window: the next run starts again from the oldest remaining row
+            if (System.currentTimeMillis() >= deadline) break;
+            from = to;
+        }
+        return total;
+    }
+
+    /** maxId bounds dbo.readings to the rows a rollup has seen; Long.MAX_VALUE = no bound. */
+    private long deleteBatches(Connection c, String table, String timeColumn, Timestamp before, long maxId,
+                               long deadline) throws Exception {
+        boolean bounded = maxId != Long.MAX_VALUE;
+        final String sql = "DELETE TOP (?) FROM dbo." + table + " WHERE " + timeColumn + " < ?"
+                + (bounded ? " AND id <= ?" : "");
+
+        long total = 0;
+        try (PreparedStatement ps = c.prepareStatement(sql)) {
+            while (true) {
+                ps.setInt(1, batch);
+                ps.setTimestamp(2, before);
+                if (bounded) ps.setLong(3, maxId);
+
+                long t0 = System.nanoTime();
+                int n;
+                try {
+                    n = ps.executeUpdate();
+                } finally {
+                    IrrigationDao.timer("retentionDelete").since(t0);
+                }
+
+                total += n;
+                if (n < batch || System.currentTimeMillis() >= deadline) return total;
+                if (pauseMs > 0) Thread.sleep(pauseMs);
+            }
+        }
+    }
+
+    /**
+     * Hourly min/avg/max per device for [from, to), of one device or all (device null).
+     * Only rows above a bucket's last_id are folded in, merged like BulkReadingImporter does
+     * (averages weighted by samples), so re-running a window counts nothing twice and late rows
+     * extend their existing bucket. Also used by Archiver.
+     */
+    static void rollup(Connection c, Timestamp from, Timestamp to, String device) throws Exception {
+        final String sql = """
+            MERGE dbo.readings_hourly WITH (HOLDLOCK) AS t
+            USING (
+              SELECT r.device_id, h.hour_utc, COUNT(*) AS samples,
+                     MIN(r.soil) AS soil_min, AVG(CAST(r.soil AS FLOAT)) AS soil_avg, MAX(r.soil) AS soil_max,
+                     MIN(r.water_tank) AS tank_min, AVG(CAST(r.water_tank AS FLOAT)) AS tank_avg, MAX(r.water_tank) AS tank_max,
+                     SUM(CASE WHEN r.raining = 1 THEN 1 ELSE 0 END) AS rain_samples,
+                     SUM(CASE WHEN r.pump_reported = 1 THEN 1 ELSE 0 END) AS pump_samples,
+                     AVG(r.temp_c) AS temp_avg, AVG(r.humidity) AS humidity_avg,
+                     MAX(r.id) AS last_id
+              FROM dbo.readings r
+              CROSS APPLY (SELECT DATEADD(HOUR, DATEDIFF(HOUR, 0, r.created_utc), 0) AS hour_utc) h
+              WHERE r.created_utc >= ? AND r.created_utc < ?%s
+                AND r.id > ISNULL((SELECT x.last_id FROM dbo.readings_hourly x
+                                   WHERE x.device_id = r.device_id AND x.hour_utc = h.hour_utc), 0)
+              GROUP BY r.device_id, h.hour_utc
+            ) AS s
+            ON t.device_id = s.device_id AND t.hour_utc = s.hour_utc
+            WHEN MATCHED THEN UPDATE SET
+              t.soil_min = CASE WHEN t.soil_min IS NULL OR s.soil_min < t.soil_min THEN s.soil_min ELSE t.soil_min END,
+              t.soil_max = CASE WHEN t.soil_max IS NULL OR s.soil_max > t.soil_max THEN s.soil_max ELSE t.soil_max END,
+              t.soil_avg = CASE WHEN t.soil_avg IS NULL THEN s.soil_avg WHEN s.soil_avg IS NULL THEN t.soil_avg
+                                ELSE (t.soil_avg * t.samples + s.soil_avg * s.samples) / (t.samples + s.samples) END,
+              t.tank_min = CASE WHEN t.tank_min IS NULL OR s.tank_min < t.tank_min THEN s.tank_min ELSE t.tank_min END,
+              t.tank_max = CASE WHEN t.tank_max IS NULL OR s.tank_max > t.tank_max THEN s.tank_max ELSE t.tank_max END,
+              t.tank_avg = CASE WHEN t.tank_avg IS NULL THEN s.tank_avg WHEN s.tank_avg IS NULL THEN t.tank_avg
+                                ELSE (t.tank_avg * t.samples + s.tank_avg * s.samples) / (t.samples + s.samples) END,
+              t.temp_avg = CASE WHEN t.temp_avg IS NULL THEN s.temp_avg WHEN s.temp_avg IS NULL THEN t.temp_avg
+                                ELSE (t.temp_avg * t.samples + s.temp_avg * s.samples) / (t.samples + s.samples) END,
+              t.humidity_avg = CASE WHEN t.humidity_avg IS NULL THEN s.humidity_avg WHEN s.humidity_avg IS NULL THEN t.humidity_avg
+                                ELSE (t.humidity_avg * t.samples + s.humidity_avg * s.samples) / (t.samples + s.samples) END,
+              t.rain_samples = t.rain_samples + s.rain_samples,
+              t.pump_samples = t.pump_samples + s.pump_samples,
+              t.samples = t.samples + s.samples,
+              t.last_id = s.last_id
+            WHEN NOT MATCHED THEN INSERT
+              (device_id, hour_utc, samples,
+               soil_min, soil_avg, soil_max,
+               tank_min, tank_avg, tank_max,
+               rain_samples, pump_samples, temp_avg, humidity_avg, last_id)
+            VALUES
+              (s.device_id, s.hour_utc, s.samples,
+               s.soil_min, s.soil_avg, s.soil_max,
+               s.tank_min, s.tank_avg, s.tank_max,
+               s.rain_samples, s.pump_samples, s.temp_avg, s.humidity_avg, s.last_id);
+        """.formatted(device != null ? " AND r.device_id = ?" : "");
+
+        long t0 = System.nanoTime();
+        try (PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setTimestamp(1, from);
+            ps.setTimestamp(2, to);
+            if (device != null) ps.setString(3, device);
+            ps.executeUpdate();
+        } finally {
+            IrrigationDao.timer("retentionRollup").since(t0);
+        }
+    }
+
+    private static long maxReadingId(Connection c) throws Exception {
+        try (PreparedStatement ps = c.prepareStatement("SELECT ISNULL(MAX(id), 0) FROM dbo.readings");
+             ResultSet rs = ps.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private Instant oldest(Connection c, String table, String timeColumn) throws Exception {
+        final String sql = "SELECT MIN(" + timeColumn + ") FROM dbo." + table;
+        try (PreparedStatement ps = c.prepareStatement(sql);
+             ResultSet rs = ps.executeQuery()) {
+            Timestamp ts = rs.next() ? rs.getTimestamp(1) : null;
+            return ts != null ? ts.toInstant() : null;
+        }
+    }
+
+    /** Session-scoped app lock, released when the connection closes; false if another shard holds it. */
+    private boolean tryLock(Connection c) throws Exception {
+        try (CallableStatement cs = c.prepareCall("{? = call sp_getapplock(?, ?, ?, ?)}")) {
+            cs.registerOutParameter(1, java.sql.Types.INTEGER);
+            cs.setString(2, "irrigation-retention");
+            cs.setString(3, "Exclusive");
+            cs.setString(4, "Session");
+            cs.setInt(5, 0);
+            cs.execute();
+            return cs.getInt(1) >= 0;
+        }
+    }
+
+    @Override
+    public String toString() {
+        List<String> out = new ArrayList<>();
+        for (Policy p : policies) {
+            out.add(p.table + "=" + (archived && "readings".equals(p.table) ? "archive"
+                    : p.keepDays > 0 ? p.keepDays + "d" : "keep"));
+        }
+        return "retention" + out;
+    }
+}
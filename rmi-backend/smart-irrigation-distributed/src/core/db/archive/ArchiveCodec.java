@@ -0,0 +1,294 @@
+package core.db.archive;
+
+import core.dto.ReadingDTO;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Bit-level encoding of one block of readings of one device (rows in created_utc order).
+ *
+ * Timestamps: the first as 64 bits, then delta-of-delta in variable buckets; a device reporting
+ * every 5 s with a few ms of jitter costs ~10 bits a row. Per row and field a presence bit, then:
+ *   soil / water_tank       zigzag delta to the previous value, bucketed (unchanged = 1 bit)
+ *   raining / pump          one value bit
+ *   temp_c / humidity       when every value of the block has at most 2 decimals: bucketed deltas
+ *                           of value x 100; otherwise Gorilla XOR against the previous double
+ * A block starts from zero state, so any block decodes on its own (what the file index seeks to).
+ */
+final class ArchiveCodec {
+
+    // block flags (first byte)
+    private static final int TEMP_CENTI = 1;
+    private static final int HUM_CENTI = 1 << 1;
+
+    // bucket widths; bucket k is written as k one-bits and a zero (the last one without the zero)
+    private static final int[] DOD_BUCKETS = {0, 8, 13, 20, 64};
+    private static final int[] INT_BUCKETS = {0, 4, 8, 16, 64};
+
+    private ArchiveCodec() {
+    }
+
+    static byte[] encode(List<ReadingDTO> rows, long[] millis) {
+        int n = rows.size();
+        int flags = TEMP_CENTI | HUM_CENTI;
+        for (ReadingDTO r : rows) {
+            if (r.tempC != null && !centiExact(r.tempC)) flags &= ~TEMP_CENTI;
+            if (r.humidity != null && !centiExact(r.humidity)) flags &= ~HUM_CENTI;
+        }
+
+        BitWriter w = new BitWriter(n * 6 + 16);
+        w.write(flags, 8);
+
+        long prevTs = millis[0];
+        long prevDelta = 0;
+        w.write(prevTs, 64);
+        for (int i = 1; i < n; i++) {
+            long delta = millis[i] - prevTs;
+            w.bucketed(zigzag(delta - prevDelta), DOD_BUCKETS);
+            prevDelta = delta;
+            prevTs = millis[i];
+        }
+
+        IntColumn soil = new IntColumn();
+        IntColumn tank = new IntColumn();
+        DoubleColumn temp = new DoubleColumn((flags & TEMP_CENTI) != 0);
+        DoubleColumn hum = new DoubleColumn((flags & HUM_CENTI) != 0);
+        for (ReadingDTO r : rows) {
+            soil.write(w, r.soil == null ? null : r.soil.longValue());
+            tank.write(w, r.waterTank == null ? null : r.waterTank.longValue());
+            writeBool(w, r.raining);
+            writeBool(w, r.pump);
+            temp.write(w, r.tempC);
+            hum.write(w, r.humidity);
+        }
+        return w.toByteArray();
+    }
+
+    /** Decodes n rows; only those with from <= created_utc <= to are added to out. */
+    static void decode(byte[] block, int n, String device, long fromMs, long toMs, List<ReadingDTO> out) {
+        BitReader in = new BitReader(block);
+        int flags = (int) in.read(8);
+
+        long[] millis = new long[n];
+        millis[0] = in.read(64);
+        long prevDelta = 0;
+        for (int i = 1; i < n; i++) {
+            prevDelta += unzigzag(in.bucketed(DOD_BUCKETS));
+            millis[i] = millis[i - 1] + prevDelta;
+        }
+
+        IntColumn soil = new IntColumn();
+        IntColumn tank = new IntColumn();
+        DoubleColumn temp = new DoubleColumn((flags & TEMP_CENTI) != 0);
+        DoubleColumn hum = new DoubleColumn((flags & HUM_CENTI) != 0);
+        for (int i = 0; i < n; i++) {
+            Long s = soil.read(in);
+            Long t = tank.read(in);
+            Boolean rain = readBool(in);
+            Boolean pump = readBool(in);
+            Double tc = temp.read(in);
+            Double h = hum.read(in);
+            if (millis[i] < fromMs || millis[i] > toMs) continue;
+
+            ReadingDTO r = new ReadingDTO();
+            r.device = device;
+            r.soil = s == null ? null : s.intValue();
+            r.waterTank = t == null ? null : t.intValue();
+            r.raining = rain;
+            r.pump = pump;
+            r.tempC = tc;
+            r.humidity = h;
+            r.createdUtc = Instant.ofEpochMilli(millis[i]).toString();
+            out.add(r);
+        }
+    }
+
+    /** Decode everything (used to merge late rows into an existing day file). */
+    static List<ReadingDTO> decodeAll(byte[] block, int n, String device) {
+        List<ReadingDTO> out = new ArrayList<>(n);
+        decode(block, n, device, Long.MIN_VALUE, Long.MAX_VALUE, out);
+        return out;
+    }
+
+    // =========================
+    // COLUMNS
+    // =========================
+
+    private static void writeBool(BitWriter w, Boolean b) {
+        w.write(b != null ? 1 : 0, 1);
+        if (b != null) w.write(b ? 1 : 0, 1);
+    }
+
+    private static Boolean readBool(BitReader in) {
+        if (in.read(1) == 0) return null;
+        return in.read(1) == 1;
+    }
+
+    private static final class IntColumn {
+        long prev;
+
+        void write(BitWriter w, Long v) {
+            w.write(v != null ? 1 : 0, 1);
+            if (v == null) return;
+            w.bucketed(zigzag(v - prev), INT_BUCKETS);
+            prev = v;
+        }
+
+        Long read(BitReader in) {
+            if (in.read(1) == 0) return null;
+            prev += unzigzag(in.bucketed(INT_BUCKETS));
+            return prev;
+        }
+    }
+
+    private static final class DoubleColumn {
+        final boolean centi;
+        final IntColumn ints = new IntColumn();
+        long prevBits;
+        int prevLead = -1;
+        int prevTrail;
+
+        DoubleColumn(boolean centi) {
+            this.centi = centi;
+        }
+
+        void write(BitWriter w, Double v) {
+            if (centi) {
+                ints.write(w, v == null ? null : Math.round(v * 100.0));
+                return;
+            }
+            w.write(v != null ? 1 : 0, 1);
+            if (v == null) return;
+
+            long bits = Double.doubleToLongBits(v);
+            long x = bits ^ prevBits;
+            prevBits = bits;
+            if (x == 0) {
+                w.write(0, 1);
+                return;
+            }
+            w.write(1, 1);
+
+            int lead = Math.min(63, Long.numberOfLeadingZeros(x));
+            int trail = Long.numberOfTrailingZeros(x);
+            if (prevLead >= 0 && lead >= prevLead && trail >= prevTrail) {
+                // fits the previous meaningful window
+                w.write(0, 1);
+                w.write(x >>> prevTrail, 64 - prevLead - prevTrail);
+            } else {
+                int len = 64 - lead - trail;
+                w.write(1, 1);
+                w.write(lead, 6);
+                w.write(len - 1, 6);
+                w.write(x >>> trail, len);
+                prevLead = lead;
+                prevTrail = trail;
+            }
+        }
+
+        Double read(BitReader in) {
+            if (centi) {
+                Long c = ints.read(in);
+                return c == null ? null : c / 100.0;
+            }
+            if (in.read(1) == 0) return null;
+            if (in.read(1) == 1) {
+                long x;
+                if (in.read(1) == 0) {
+                    x = in.read(64 - prevLead - prevTrail) << prevTrail;
+                } else {
+                    int lead = (int) in.read(6);
+                    int len = (int) in.read(6) + 1;
+                    int trail = 64 - lead - len;
+                    x = in.read(len) << trail;
+                    prevLead = lead;
+                    prevTrail = trail;
+                }
+                prevBits ^= x;
+            }
+            return Double.longBitsToDouble(prevBits);
+        }
+    }
+
+    private static boolean centiExact(double v) {
+        double c = v * 100.0;
+        return Math.abs(c) < 1e15 && Math.round(c) / 100.0 == v;
+    }
+
+    private static long zigzag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    private static long unzigzag(long z) {
+        return (z >>> 1) ^ -(z & 1);
+    }
+
+    // =========================
+    // BITS (MSB first)
+    // =========================
+
+    static final class BitWriter {
+        private byte[] buf;
+        private long bits;
+
+        BitWriter(int bytes) {
+            buf = new byte[Math.max(16, bytes)];
+        }
+
+        /** The low n bits of value (n = 0..64). */
+        void write(long value, int n) {
+            for (int i = n - 1; i >= 0; i--) {
+                int idx = (int) (bits >>> 3);
+                if (idx >= buf.length) buf = Arrays.copyOf(buf, buf.length * 2);
+                if (((value >>> i) & 1) != 0) buf[idx] |= (byte) (0x80 >>> (bits & 7));
+                bits++;
+            }
+        }
+
+        void bucketed(long z, int[] widths) {
+            int last = widths.length - 1;
+            for (int k = 0; k < last; k++) {
+                if (widths[k] < 64 && z >>> widths[k] == 0) {
+                    write((1L << (k + 1)) - 2, k + 1); // k ones then a zero
+                    write(z, widths[k]);
+                    return;
+                }
+            }
+            write((1L << last) - 1, last);
+            write(z, widths[last]);
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, (int) ((bits + 7) >>> 3));
+        }
+    }
+
+    static final class BitReader {
+        private final byte[] buf;
+        private long pos;
+
+        BitReader(byte[] buf) {
+            this.buf = buf;
+        }
+
+        long read(int n) {
+            long v = 0;
+            for (int i = 0; i < n; i++) {
+                int b = (buf[(int) (pos >>> 3)] >>> (7 - (pos & 7))) & 1;
+                v = (v << 1) | b;
+                pos++;
+            }
+            return v;
+        }
+
+        long bucketed(int[] widths) {
+            int last = widths.length - 1;
+            int k = 0;
+            while (k < last && read(1) == 1) k++;
+            return read(widths[k]);
+        }
+    }
+}
@@ -0,0 +1,399 @@
+package core.db.archive;
+
+import core.dto.ReadingDTO;
+import core.metrics.Metrics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32C;
+
+/**
+ * Cold tier for raw readings: one compressed file per device and UTC day,
+ * <dir>/<device>/<yyyy-MM-dd>.arc, written by core.db.Archiver and read by getHistory.
+ *
+ * File = [magic][version] blocks of up to BLOCK_ROWS rows (ArchiveCodec), then the block index
+ * [count] + per block [firstMs][lastMs][rows][offset][length][crc32c], then the footer
+ * [indexOffset][crc32c(index)][magic]. A range read loads the footer and index and decodes
+ * only the blocks overlapping the range. Files are written to a temp name, forced and renamed
+ * over the old one, so a reader sees the old day or the new one, never half of it.
+ *
+ * -Dirrigation.archive.afterDays (0 = no archive, e.g. 7), -Dirrigation.archive.dir (archive).
+ */
+public final class ReadingArchive {
+
+    static final int BLOCK_ROWS = 1024;
+
+    /** Archived rows have no row id: ARCHIVE_ID + their ordinal within their millisecond, below any dbo.readings id. */
+    public static final long ARCHIVE_ID = Long.MIN_VALUE + 1;
+
+    private static final int MAGIC = 0x41524331; // "ARC1"
+    private static final int VERSION = 1;
+    private static final int INDEX_ENTRY = 8 + 8 + 4 + 8 + 4 + 4;
+    private static final int FOOTER = 8 + 4 + 4;
+
+    private final Path dir;
+    private final int afterDays;
+    private final int keepDays;
+
+    // device -> archived days (loaded from its directory on first use)
+    private final ConcurrentHashMap<String, NavigableSet<LocalDate>> days = new ConcurrentHashMap<>();
+
+    private final AtomicLong files = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+
+    public ReadingArchive(Path dir, int afterDays, int keepDays) throws IOException {
+        this.dir = dir;
+        this.afterDays = afterDays;
+        this.keepDays = keepDays;
+        Files.createDirectories(dir);
+
+        try (var s = Files.walk(dir, 2)) {
+            s.filter(p -> p.getFileName().toString().endsWith(".arc")).forEach(p -> {
+                files.incrementAndGet();
+                bytes.addAndGet(p.toFile().length());
+            });
+        }
+
+        Metrics.gauge("core_archive_files", "Day files in the reading archive", files::get);
+        Metrics.gauge("core_archive_bytes", "Size of the reading archive", bytes::get);
+    }
+
+    /** Null unless -Dirrigation.archive.afterDays > 0. */
+    public static ReadingArchive fromSystemProperties() throws IOException {
+        int after = Integer.getInteger("irrigation.archive.afterDays", 0);
+        if (after <= 0) return null;
+        return new ReadingArchive(
+                Path.of(System.getProperty("irrigation.archive.dir", "archive")),
+                after,
+                Integer.getInteger("irrigation.archive.keepDays", 0));
+    }
+
+    public int afterDays() {
+        return afterDays;
+    }
+
+    /** Days kept in the archive (0 = forever). */
+    public int keepDays() {
+        return keepDays;
+    }
+
+    /** True if [from, ...] may have archived rows for the device (anything before the end of its last day). */
+    public boolean covers(String device, Instant from) {
+        NavigableSet<LocalDate> d = daysOf(device);
+        return !d.isEmpty() && from.isBefore(d.last().plusDays(1).atStartOfDay(ZoneOffset.UTC).toInstant());
+    }
+
+    // =========================
+    // READ
+    // =========================
+
+    /** created_utc of the device's oldest archived row, or null if nothing is archived. */
+    public Instant oldest(String device) throws IOException {
+        for (LocalDate day : daysOf(device)) {
+            Instant start = day.atStartOfDay(ZoneOffset.UTC).toInstant();
+            List<ReadingDTO> first = read(device, start, start.plus(Duration.ofDays(1)).minusMillis(1), 1);
+            if (!first.isEmpty()) return Instant.parse(first.get(0).createdUtc);
+        }
+        return null;
+    }
+
+    /** Archived rows with from <= created_utc <= to, ascending, at most limit. */
+    public List<ReadingDTO> read(String device, Instant from, Instant to, int limit) throws IOException {
+        return readAfter(device, from, Long.MIN_VALUE, to, limit);
+    }
+
+    /**
+     * Archived rows after the keyset (from, afterId) up to to, by (created_utc, id), at most limit.
+     * afterId = Long.MIN_VALUE keeps every row at from; a dbo.readings id (> 0) skips all of them.
+     */
+    public List<ReadingDTO> readAfter(String device, Instant from, long afterId, Instant to, int limit) throws IOException {
+        List<ReadingDTO> out = new ArrayList<>();
+        long fromMs = from.toEpochMilli();
+        long toMs = to.toEpochMilli();
+        long skip = afterId == Long.MIN_VALUE ? 0 : afterId < 0 ? afterId - ARCHIVE_ID + 1 : Long.MAX_VALUE;
+
+        LocalDate first = LocalDate.ofInstant(from, ZoneOffset.UTC);
+        LocalDate last = LocalDate.ofInstant(to, ZoneOffset.UTC);
+        if (last.isBefore(first) || limit <= 0) return out;
+
+        List<ReadingDTO> rows = new ArrayList<>();
+        for (LocalDate day : daysOf(device).subSet(first, true, last, true)) {
+            Path f = file(device, day);
+            try (FileChannel ch = FileChannel.open(f, StandardOpenOption.READ)) {
+                long prevMs = Long.MIN_VALUE;
+                long k = 0;
+                for (Block b : index(ch, f)) {
+                    if (b.lastMs < fromMs || b.firstMs > toMs) continue;
+                    rows.clear();
+                    ArchiveCodec.decode(b.load(ch, f), b.rows, device, fromMs, toMs, rows);
+
+                    // a millisecond never spans days, and every row of one >= fromMs is decoded
+                    for (ReadingDTO r : rows) {
+                        long ms = Instant.parse(r.createdUtc).toEpochMilli();
+                        k = ms == prevMs ? k + 1 : 0;
+                        prevMs = ms;
+                        if (ms == fromMs && k < skip) continue;
+
+                        r.id = ARCHIVE_ID + k;
+                        out.add(r);
+                        if (out.size() >= limit) return out;
+                    }
+                }
+            } catch (java.nio.file.NoSuchFileException gone) {
+                // dropped by keepDays while we were reading
+            }
+        }
+        return out;
+    }
+
+    // =========================
+    // WRITE
+    // =========================
+
+    /**
+     * Store one device-day. Rows already in that day's file are merged in (late imports), exact
+     * duplicates dropped, so writing the same rows twice (a run that died before its DELETE) is
+     * harmless. Returns the size of the day file.
+     */
+    public synchronized long writeDay(String device, LocalDate day, List<ReadingDTO> rows) throws IOException {
+        Path f = file(device, day);
+        List<ReadingDTO> all = new ArrayList<>(rows);
+        long oldSize = 0;
+        if (Files.exists(f)) {
+            oldSize = Files.size(f);
+            try (FileChannel ch = FileChannel.open(f, StandardOpenOption.READ)) {
+                for (Block b : index(ch, f)) all.addAll(ArchiveCodec.decodeAll(b.load(ch, f), b.rows, device));
+            }
+        }
+
+        // by time (ISO strings do not sort: "...:00.5Z" < "...:00Z"), then drop exact duplicates
+        long[] keys = new long[all.size()];
+        Integer[] order = new Integer[all.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = Instant.parse(all.get(i).createdUtc).toEpochMilli();
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingLong(i -> keys[i]));
+
+        List<ReadingDTO> unique = new ArrayList<>(all.size());
+        List<Long> uniqueMs = new ArrayList<>(all.size());
+        for (int i : order) {
+            ReadingDTO r = all.get(i);
+            if (duplicate(unique, uniqueMs, r, keys[i])) continue;
+            unique.add(r);
+            uniqueMs.add(keys[i]);
+        }
+
+        Files.createDirectories(f.getParent());
+        Path tmp = f.resolveSibling(f.getFileName() + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(ch, ByteBuffer.allocate(8).putInt(MAGIC).putInt(VERSION).flip());
+
+            int blocks = (unique.size() + BLOCK_ROWS - 1) / BLOCK_ROWS;
+            ByteBuffer index = ByteBuffer.allocate(4 + blocks * INDEX_ENTRY).putInt(blocks);
+            for (int i = 0; i < unique.size(); i += BLOCK_ROWS) {
+                List<ReadingDTO> part = unique.subList(i, Math.min(unique.size(), i + BLOCK_ROWS));
+                long[] millis = new long[part.size()];
+                for (int k = 0; k < millis.length; k++) millis[k] = uniqueMs.get(i + k);
+
+                byte[] block = ArchiveCodec.encode(part, millis);
+                CRC32C crc = new CRC32C();
+                crc.update(block);
+                index.putLong(millis[0]).putLong(millis[millis.length - 1]).putInt(part.size())
+                        .putLong(ch.position()).putInt(block.length).putInt((int) crc.getValue());
+                writeFully(ch, ByteBuffer.wrap(block));
+            }
+
+            long indexOffset = ch.position();
+            index.flip();
+            CRC32C crc = new CRC32C();
+            crc.update(index.duplicate());
+            writeFully(ch, index);
+            writeFully(ch, ByteBuffer.allocate(FOOTER).putLong(indexOffset).putInt((int) crc.getValue()).putInt(MAGIC).flip());
+            ch.force(true);
+        }
+        Files.move(tmp, f, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        long size = Files.size(f);
+        if (oldSize == 0) files.incrementAndGet();
+        bytes.addAndGet(size - oldSize);
+        daysOf(device).add(day);
+        return size;
+    }
+
+    /** Delete day files older than keepDays; returns the number removed. */
+    public synchronized int dropExpired() throws IOException {
+        if (keepDays <= 0) return 0;
+        LocalDate before = LocalDate.now(ZoneOffset.UTC).minusDays(keepDays);
+
+        int n = 0;
+        try (DirectoryStream<Path> devices = Files.newDirectoryStream(dir)) {
+            for (Path d : devices) {
+                if (!Files.isDirectory(d)) continue;
+                try (DirectoryStream<Path> ds = Files.newDirectoryStream(d, "*.arc")) {
+                    for (Path f : ds) {
+                        LocalDate day = dayOf(f);
+                        if (day == null || !day.isBefore(before)) continue;
+                        long size = Files.size(f);
+                        Files.delete(f);
+                        files.decrementAndGet();
+                        bytes.addAndGet(-size);
+                        n++;
+                    }
+                }
+            }
+        }
+        if (n > 0) days.clear(); // reloaded per device on next use
+        return n;
+    }
+
+    // =========================
+    // FILES / INDEX
+    // =========================
+
+    private static final class Block {
+        final long firstMs;
+        final long lastMs;
+        final int rows;
+        final long offset;
+        final int length;
+        final int crc;
+
+        Block(ByteBuffer b) {
+            this.firstMs = b.getLong();
+            this.lastMs = b.getLong();
+            this.rows = b.getInt();
+            this.offset = b.getLong();
+            this.length = b.getInt();
+            this.crc = b.getInt();
+        }
+
+        byte[] load(FileChannel ch, Path f) throws IOException {
+            ByteBuffer buf = ByteBuffer.allocate(length);
+            readFully(ch, buf, offset);
+            CRC32C c = new CRC32C();
+            c.update(buf.array());
+            if ((int) c.getValue() != crc) throw new IOException("archive block at " + offset + " of " + f + " is corrupt");
+            return buf.array();
+        }
+    }
+
+    private static List<Block> index(FileChannel ch, Path f) throws IOException {
+        long size = ch.size();
+        if (size < 8 + 4 + FOOTER) throw new IOException("archive file " + f + " is truncated");
+
+        ByteBuffer footer = ByteBuffer.allocate(FOOTER);
+        readFully(ch, footer, size - FOOTER);
+        footer.flip();
+        long indexOffset = footer.getLong();
+        int crcValue = footer.getInt();
+        if (footer.getInt() != MAGIC || indexOffset < 8 || indexOffset > size - FOOTER) {
+            throw new IOException("archive file " + f + " has no valid footer");
+        }
+
+        ByteBuffer index = ByteBuffer.allocate((int) (size - FOOTER - indexOffset));
+        readFully(ch, index, indexOffset);
+        CRC32C crc = new CRC32C();
+        crc.update(index.array());
+        if ((int) crc.getValue() != crcValue) throw new IOException("archive index of " + f + " is corrupt");
+
+        index.flip();
+        int n = index.getInt();
+        List<Block> out = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) out.add(new Block(index));
+        return out;
+    }
+
+    private NavigableSet<LocalDate> daysOf(String device) {
+        return days.computeIfAbsent(device, d -> {
+            NavigableSet<LocalDate> set = new ConcurrentSkipListSet<>();
+            Path dd = dir.resolve(dirName(d));
+            if (Files.isDirectory(dd)) {
+                try (DirectoryStream<Path> ds = Files.newDirectoryStream(dd, "*.arc")) {
+                    for (Path f : ds) {
+                        LocalDate day = dayOf(f);
+                        if (day != null) set.add(day);
+                    }
+                } catch (IOException e) {
+                    System.out.println("[ARCHIVE] cannot list " + dd + ": " + e.getMessage());
+                }
+            }
+            return set;
+        });
+    }
+
+    private Path file(String device, LocalDate day) {
+        return dir.resolve(dirName(device)).resolve(day + ".arc");
+    }
+
+    private static LocalDate dayOf(Path f) {
+        String name = f.getFileName().toString();
+        try {
+            return LocalDate.parse(name.substring(0, name.length() - ".arc".length()));
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /** Device ids are used as directory names as-is when safe, else hex-encoded ("~" prefix). */
+    static String dirName(String device) {
+        if (device.matches("[A-Za-z0-9_-][A-Za-z0-9._-]*")) return device;
+        return "~" + HexFormat.of().formatHex(device.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Same values as a row already kept at the same millisecond. */
+    private static boolean duplicate(List<ReadingDTO> kept, List<Long> keptMs, ReadingDTO r, long ms) {
+        for (int k = kept.size() - 1; k >= 0 && keptMs.get(k) == ms; k--) {
+            if (same(kept.get(k), r)) return true;
+        }
+        return false;
+    }
+
+    private static boolean same(ReadingDTO a, ReadingDTO b) {
+        return Objects.equals(a.soil, b.soil)
+                && Objects.equals(a.waterTank, b.waterTank)
+                && Objects.equals(a.raining, b.raining)
+                && Objects.equals(a.pump, b.pump)
+                && Objects.equals(a.tempC, b.tempC)
+                && Objects.equals(a.humidity, b.humidity);
+    }
+
+    private static void writeFully(FileChannel ch, ByteBuffer b) throws IOException {
+        while (b.hasRemaining()) ch.write(b);
+    }
+
+    private static void readFully(FileChannel ch, ByteBuffer b, long pos) throws IOException {
+        while (b.hasRemaining()) {
+            int n = ch.read(b, pos + b.position());
+            if (n < 0) throw new IOException("unexpected end of archive file");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "archive " + dir.toAbsolutePath() + " (after " + afterDays + " d"
+                + (keepDays > 0 ? ", kept " + keepDays + " d" : "") + ")";
+    }
+}
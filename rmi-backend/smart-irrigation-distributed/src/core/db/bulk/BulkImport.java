@@ -0,0 +1,73 @@
+package core.db.bulk;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Command-line backfill into SQL Server (the database of core.db.Db).
+ *
+ * Run:  java -cp out core.db.bulk.BulkImport <file-or-directory>...
+ *
+ * Files: .csv / .ndjson / .jsonl, optionally .gz (columns in ReadingSource). A directory means
+ * every such file in it, in name order. Tuning: -Dirrigation.bulk.partitions / .batch / .chunk /
+ * .moveHours, see BulkReadingImporter. The same load is available over RMI as bulkImport(path),
+ * limited to paths under -Dirrigation.bulk.importDir (default "import"), see within.
+ */
+public class BulkImport {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("usage: BulkImport <file-or-directory>...");
+            System.exit(2);
+        }
+
+        List<Path> files = new ArrayList<>();
+        for (String a : args) files.addAll(expand(Path.of(a)));
+        if (files.isEmpty()) {
+            System.err.println("no .csv / .ndjson / .jsonl files in " + String.join(" ", args));
+            System.exit(2);
+        }
+
+        BulkReadingImporter importer = BulkReadingImporter.fromSystemProperties();
+        System.out.println("Importing " + files.size() + " file(s) with " + importer);
+
+        try (ReadingSource source = ReadingSource.open(files)) {
+            importer.load(source);
+        }
+    }
+
+    /**
+     * expand() for a path sent by an RMI client: resolved against root and accepted only if it,
+     * and every file it expands to, is inside root once ".." and symbolic links are resolved.
+     */
+    public static List<Path> within(Path root, String path) throws Exception {
+        if (!Files.isDirectory(root)) throw new IllegalArgumentException("no import directory " + root.toAbsolutePath());
+
+        Path dir = root.toRealPath();
+        Path p = dir.resolve(path).normalize();
+        if (!p.startsWith(dir) || !Files.exists(p) || !p.toRealPath().startsWith(dir)) {
+            throw new IllegalArgumentException(path + " is not in the import directory " + dir);
+        }
+
+        List<Path> files = expand(p.toRealPath());
+        for (Path f : files) {
+            if (!f.toRealPath().startsWith(dir)) {
+                throw new IllegalArgumentException(f + " links out of the import directory " + dir);
+            }
+        }
+        return files;
+    }
+
+    /** A file as is; a directory -> its importable files, sorted by name. */
+    public static List<Path> expand(Path p) throws Exception {
+        if (!Files.isDirectory(p)) return List.of(p);
+        try (Stream<Path> s = Files.list(p)) {
+            return s.filter(f -> f.getFileName().toString().matches("(?i).*\\.(csv|ndjson|jsonl|json)(\\.gz)?"))
+                    .sorted()
+                    .toList();
+        }
+    }
+}
@@ -0,0 +1,523 @@
+package core.db.bulk;
+
+import com.microsoft.sqlserver.jdbc.ISQLServerBulkData;
+import com.microsoft.sqlserver.jdbc.SQLServerBulkCopy;
+import com.microsoft.sqlserver.jdbc.SQLServerBulkCopyOptions;
+import core.db.Db;
+import core.db.IrrigationDao;
+import core.dto.ReadingDTO;
+import core.metrics.Metrics;
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Loads large numbers of readings into SQL Server with SQLServerBulkCopy (backfills after long
+ * WiFi outages, site migrations). insertReading does ~1 round trip per row; this streams.
+ *
+ * 1) load:   the source is read on the calling thread and dealt by device hash to
+ *            -Dirrigation.bulk.partitions (4) workers, each with its own connection streaming
+ *            into the heap dbo.readings_import with TABLOCK (parallel bulk loads into a heap
+ *            don't block each other), committed every -Dirrigation.bulk.batch (10000) rows.
+ *            Rows travel in chunks of -Dirrigation.bulk.chunk (1000) through queues of 4 chunks
+ *            per worker, so memory stays the same whatever the input size.
+ * 2) finish: devices missing from dbo.devices are added; rows older than the raw readings
+ *            retention (irrigation.retention.readings) are merged straight into
+ *            dbo.readings_hourly, the rest moved into dbo.readings one window of
+ *            -Dirrigation.bulk.moveHours (24) at a time; devices.last_seen_utc moves forward
+ *            where the load has newer readings; the staging table is emptied.
+ *            With the archive on (-Dirrigation.archive.afterDays) nothing is rolled up here:
+ *            every row goes to dbo.readings and old days reach the archive through Archiver.
+ *
+ * One import at a time per database (app lock, the staging table is shared). If the load
+ * fails, dbo.readings is untouched and the staging table is cleared. If finish fails, its rows
+ * stay in staging and the next import finishes them before loading its own: the hourly merge
+ * deletes what it merged in the same transaction, and moves are keyed by (device_id, created_utc),
+ * so nothing is counted or copied twice.
+ */
+public class BulkReadingImporter {
+
+    /** What one import did. */
+    public static final class Result {
+        public long loaded;     // rows bulk-copied into staging
+        public long skipped;    // source lines that did not parse
+        public long raw;        // moved into dbo.readings
+        public long rolledUp;   // older than retention: merged into dbo.readings_hourly only
+        public long newDevices;
+        public long millis;
+        public List<String> errors = List.of();
+        public Set<String> devices = Set.of(); // devices with loaded rows
+
+        @Override
+        public String toString() {
+            return "loaded=" + loaded + " (raw=" + raw + " rolledUp=" + rolledUp + ")"
+                    + " skipped=" + skipped + " newDevices=" + newDevices
+                    + " in " + millis + " ms" + (millis > 0 ? " (" + loaded * 1000 / millis + " rows/s)" : "");
+        }
+    }
+
+    // staging columns, in bulk-copy ordinal order (1-based)
+    private static final String[] COLUMNS = {
+            "device_id", "soil", "water_tank", "raining", "pump_reported", "temp_c", "humidity", "created_utc"};
+    private static final int[] TYPES = {
+            Types.VARCHAR, Types.INTEGER, Types.INTEGER, Types.BIT, Types.BIT, Types.DOUBLE, Types.DOUBLE, Types.TIMESTAMP};
+    private static final int[] PRECISION = {64, 10, 10, 1, 1, 15, 15, 23};
+    private static final int[] SCALE = {0, 0, 0, 0, 0, 0, 0, 3};
+
+    private static final Object[][] END = new Object[0][];
+
+    private final int partitions;
+    private final int batchRows;
+    private final int chunkRows;
+    private final int moveHours;
+    private final int keepDays;
+
+    public BulkReadingImporter(int partitions, int batchRows, int chunkRows, int moveHours, int keepDays) {
+        this.partitions = Math.max(1, partitions);
+        this.batchRows = Math.max(100, batchRows);
+        this.chunkRows = Math.max(1, chunkRows);
+        this.moveHours = Math.max(1, moveHours);
+        this.keepDays = keepDays;
+    }
+
+    /**
+     * For late readings (importReadings): every row into dbo.readings like the small-batch path,
+     * RetentionService rolls up what is past retention on its next pass (late rows included).
+     */
+    public static BulkReadingImporter forLateReadings() {
+        return new BulkReadingImporter(
+                Integer.getInteger("irrigation.bulk.partitions", 4),
+                Integer.getInteger("irrigation.bulk.batch", 10_000),
+                Integer.getInteger("irrigation.bulk.chunk", 1000),
+                Integer.getInteger("irrigation.bulk.moveHours", 24),
+                0);
+    }
+
+    public static BulkReadingImporter fromSystemProperties() {
+        return new BulkReadingImporter(
+                Integer.getInteger("irrigation.bulk.partitions", 4),
+                Integer.getInteger("irrigation.bulk.batch", 10_000),
+                Integer.getInteger("irrigation.bulk.chunk", 1000),
+                Integer.getInteger("irrigation.bulk.moveHours", 24),
+                // archive on: Archiver moves old days out (raw rows kept), not the hourly-only rollup
+                Integer.getInteger("irrigation.archive.afterDays", 0) > 0
+                        ? 0 : Integer.getInteger("irrigation.retention.readings", 14)
+        );
+    }
+
+    public Result load(ReadingSource source) throws Exception {
+        long t0 = System.nanoTime();
+        Result res = new Result();
+
+        try (Connection control = Db.get()) {
+            lock(control);
+            finishLeftOver(control);
+
+            Set<String> devices = new HashSet<>();
+            try {
+                res.loaded = stage(source, devices);
+            } catch (Exception e) {
+                exec(control, "TRUNCATE TABLE dbo.readings_import");
+                throw e;
+            }
+            res.skipped = source.skipped();
+            res.errors = List.copyOf(source.firstErrors());
+            res.devices = devices;
+
+            if (res.loaded > 0) finish(control, res);
+            exec(control, "TRUNCATE TABLE dbo.readings_import");
+        } finally {
+            res.millis = (System.nanoTime() - t0) / 1_000_000;
+            IrrigationDao.timer("bulkImport").since(t0);
+        }
+
+        Metrics.counter("core_bulk_rows_total", "Readings handled by the bulk importer", "result", "loaded").add(res.loaded);
+        Metrics.counter("core_bulk_rows_total", "Readings handled by the bulk importer", "result", "skipped").add(res.skipped);
+        System.out.println("[DB] bulk import " + res);
+        for (String e : res.errors) System.out.println("[DB] bulk import skipped " + e);
+        return res;
+    }
+
+    /** Rows in staging from an import whose finish failed: finish them (or fail) before staging more. */
+    private void finishLeftOver(Connection c) throws Exception {
+        long left;
+        try (PreparedStatement ps = c.prepareStatement("SELECT COUNT_BIG(*) FROM dbo.readings_import");
+             ResultSet rs = ps.executeQuery()) {
+            left = rs.next() ? rs.getLong(1) : 0;
+        }
+        if (left == 0) return;
+
+        System.out.println("[DB] bulk import: finishing " + left + " row(s) a failed import left in staging");
+        Result prev = new Result();
+        finish(c, prev);
+        exec(c, "TRUNCATE TABLE dbo.readings_import");
+        System.out.println("[DB] bulk import (left over) raw=" + prev.raw + " rolledUp=" + prev.rolledUp);
+    }
+
+    // =========================
+    // 1) PARALLEL BULK COPY INTO STAGING
+    // =========================
+
+    private long stage(ReadingSource source, Set<String> devices) throws Exception {
+        AtomicInteger seq = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(partitions, r -> {
+            Thread t = new Thread(r, "bulk-import-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+        List<BlockingQueue<Object[][]>> queues = new ArrayList<>(partitions);
+        List<Future<?>> running = new ArrayList<>(partitions);
+        AtomicLong copied = new AtomicLong();
+
+        try {
+            for (int p = 0; p < partitions; p++) {
+                BlockingQueue<Object[][]> q = new ArrayBlockingQueue<>(4);
+                queues.add(q);
+                running.add(workers.submit(() -> {
+                    copy(new QueueBulkData(q, copied));
+                    return null;
+                }));
+            }
+
+            Object[][][] chunks = new Object[partitions][][];
+            int[] fill = new int[partitions];
+
+            ReadingDTO r;
+            while ((r = source.next()) != null) {
+                devices.add(r.device);
+                int p = Math.floorMod(r.device.hashCode(), partitions);
+                if (chunks[p] == null) chunks[p] = new Object[chunkRows][];
+                chunks[p][fill[p]++] = row(r);
+
+                if (fill[p] == chunkRows) {
+                    put(queues.get(p), chunks[p], running.get(p));
+                    chunks[p] = null;
+                    fill[p] = 0;
+                }
+            }
+            for (int p = 0; p < partitions; p++) {
+                if (fill[p] > 0) {
+                    Object[][] last = new Object[fill[p]][];
+                    System.arraycopy(chunks[p], 0, last, 0, fill[p]);
+                    put(queues.get(p), last, running.get(p));
+                }
+                put(queues.get(p), END, running.get(p));
+            }
+
+            for (Future<?> f : running) f.get();
+            return copied.get();
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    /** Hand a chunk to a worker; if that worker already failed, surface its error instead of blocking. */
+    private static void put(BlockingQueue<Object[][]> q, Object[][] chunk, Future<?> worker) throws Exception {
+        while (!q.offer(chunk, 200, TimeUnit.MILLISECONDS)) {
+            if (worker.isDone()) {
+                worker.get(); // throws the worker's failure
+                throw new IllegalStateException("bulk copy worker stopped early");
+            }
+        }
+    }
+
+    private void copy(ISQLServerBulkData data) throws Exception {
+        try (Connection c = Db.get();
+             SQLServerBulkCopy bulk = new SQLServerBulkCopy(c)) {
+
+            SQLServerBulkCopyOptions o = new SQLServerBulkCopyOptions();
+            o.setBatchSize(batchRows);
+            o.setTableLock(true);
+            o.setUseInternalTransaction(true);
+            o.setBulkCopyTimeout(0);
+            bulk.setBulkCopyOptions(o);
+
+            bulk.setDestinationTableName("dbo.readings_import");
+            for (int i = 0; i < COLUMNS.length; i++) bulk.addColumnMapping(i + 1, COLUMNS[i]);
+            bulk.writeToServer(data);
+        }
+    }
+
+    private static Object[] row(ReadingDTO r) {
+        Timestamp at = r.createdUtc != null
+                ? Timestamp.from(ReadingSource.parseTime(r.createdUtc))
+                : new Timestamp(System.currentTimeMillis());
+        return new Object[]{r.device, r.soil, r.waterTank, r.raining, r.pump, r.tempC, r.humidity, at};
+    }
+
+    /** Rows of one partition, pulled by the driver from the chunk queue until END. */
+    private static final class QueueBulkData implements ISQLServerBulkData {
+        private static final long serialVersionUID = 1L;
+
+        private final transient BlockingQueue<Object[][]> queue;
+        private final transient AtomicLong copied;
+        private transient Object[][] chunk;
+        private int pos;
+
+        QueueBulkData(BlockingQueue<Object[][]> queue, AtomicLong copied) {
+            this.queue = queue;
+            this.copied = copied;
+        }
+
+        @Override
+        public Set<Integer> getColumnOrdinals() {
+            Set<Integer> ordinals = new LinkedHashSet<>();
+            for (int i = 1; i <= COLUMNS.length; i++) ordinals.add(i);
+            return ordinals;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return COLUMNS[column - 1];
+        }
+
+        @Override
+        public int getColumnType(int column) {
+            return TYPES[column - 1];
+        }
+
+        @Override
+        public int getPrecision(int column) {
+            return PRECISION[column - 1];
+        }
+
+        @Override
+        public int getScale(int column) {
+            return SCALE[column - 1];
+        }
+
+        @Override
+        public boolean next() throws SQLException {
+            if (chunk == END) return false;
+            if (chunk != null && ++pos < chunk.length) return true;
+
+            try {
+                chunk = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("bulk import cancelled", e);
+            }
+            pos = 0;
+            return chunk != END;
+        }
+
+        @Override
+        public Object[] getRowData() {
+            copied.incrementAndGet();
+            return chunk[pos];
+        }
+    }
+
+    // =========================
+    // 2) FINISH: DEVICES, ROLLUPS, MOVE, LAST SEEN
+    // =========================
+
+    private void finish(Connection c, Result res) throws Exception {
+        res.newDevices = update(c, """
+            INSERT INTO dbo.devices (device_id)
+            SELECT DISTINCT s.device_id
+            FROM dbo.readings_import s
+            WHERE NOT EXISTS (SELECT 1 FROM dbo.devices d WHERE d.device_id = s.device_id)
+        """);
+
+        // forward only, so a finish that runs again changes nothing
+        update(c, """
+            UPDATE d SET d.last_seen_utc = s.last_utc
+            FROM dbo.devices d
+            JOIN (SELECT device_id, MAX(created_utc) AS last_utc
+                  FROM dbo.readings_import GROUP BY device_id) s ON s.device_id = d.device_id
+            WHERE d.last_seen_utc IS NULL OR d.last_seen_utc < s.last_utc
+        """);
+
+        // whole hours, like RetentionService: these rows would be rolled up and purged on its next run
+        Timestamp cutoff = keepDays > 0
+                ? Timestamp.from(Instant.now().minus(Duration.ofDays(keepDays)).truncatedTo(ChronoUnit.HOURS))
+                : null;
+        if (cutoff != null) res.rolledUp = mergeHourly(c, cutoff);
+
+        Instant[] range = range(c, cutoff);
+        if (range != null) {
+            Instant from = range[0].truncatedTo(ChronoUnit.HOURS);
+            while (!from.isAfter(range[1])) {
+                Instant to = from.plus(Duration.ofHours(moveHours));
+                res.raw += move(c, Timestamp.from(from), Timestamp.from(to));
+                from = to;
+            }
+        }
+    }
+
+    /**
+     * Adds the old rows into their hourly buckets. Buckets that already exist (rolled up by
+     * retention) are combined: counts summed, min/max widened, averages weighted by samples
+     * (readings_hourly keeps no per-column counts, so NULL sensor values skew them slightly).
+     * The merged rows leave staging in the same transaction, so a retried finish cannot merge them twice.
+     */
+    private long mergeHourly(Connection c, Timestamp cutoff) throws Exception {
+        final String sql = """
+            MERGE dbo.readings_hourly AS t
+            USING (
+              SELECT r.device_id, h.hour_utc, COUNT(*) AS samples,
+                     MIN(r.soil) AS soil_min, AVG(CAST(r.soil AS FLOAT)) AS soil_avg, MAX(r.soil) AS soil_max,
+                     MIN(r.water_tank) AS tank_min, AVG(CAST(r.water_tank AS FLOAT)) AS tank_avg, MAX(r.water_tank) AS tank_max,
+                     SUM(CASE WHEN r.raining = 1 THEN 1 ELSE 0 END) AS rain_samples,
+                     SUM(CASE WHEN r.pump_reported = 1 THEN 1 ELSE 0 END) AS pump_samples,
+                     AVG(r.temp_c) AS temp_avg, AVG(r.humidity) AS humidity_avg
+              FROM dbo.readings_import r
+              CROSS APPLY (SELECT DATEADD(HOUR, DATEDIFF(HOUR, 0, r.created_utc), 0) AS hour_utc) h
+              WHERE r.created_utc < ?
+              GROUP BY r.device_id, h.hour_utc
+            ) AS s
+            ON t.device_id = s.device_id AND t.hour_utc = s.hour_utc
+            WHEN MATCHED THEN UPDATE SET
+              t.soil_min = CASE WHEN t.soil_min IS NULL OR s.soil_min < t.soil_min THEN s.soil_min ELSE t.soil_min END,
+              t.soil_max = CASE WHEN t.soil_max IS NULL OR s.soil_max > t.soil_max THEN s.soil_max ELSE t.soil_max END,
+              t.soil_avg = CASE WHEN t.soil_avg IS NULL THEN s.soil_avg WHEN s.soil_avg IS NULL THEN t.soil_avg
+                                ELSE (t.soil_avg * t.samples + s.soil_avg * s.samples) / (t.samples + s.samples) END,
+              t.tank_min = CASE WHEN t.tank_min IS NULL OR s.tank_min < t.tank_min THEN s.tank_min ELSE t.tank_min END,
+              t.tank_max = CASE WHEN t.tank_max IS NULL OR s.tank_max > t.tank_max THEN s.tank_max ELSE t.tank_max END,
+              t.tank_avg = CASE WHEN t.tank_avg IS NULL THEN s.tank_avg WHEN s.tank_avg IS NULL THEN t.tank_avg
+                                ELSE (t.tank_avg * t.samples + s.tank_avg * s.samples) / (t.samples + s.samples) END,
+              t.temp_avg = CASE WHEN t.temp_avg IS NULL THEN s.temp_avg WHEN s.temp_avg IS NULL THEN t.temp_avg
+                                ELSE (t.temp_avg * t.samples + s.temp_avg * s.samples) / (t.samples + s.samples) END,
+              t.humidity_avg = CASE WHEN t.humidity_avg IS NULL THEN s.humidity_avg WHEN s.humidity_avg IS NULL THEN t.humidity_avg
+                                ELSE (t.humidity_avg * t.samples + s.humidity_avg * s.samples) / (t.samples + s.samples) END,
+              t.rain_samples = t.rain_samples + s.rain_samples,
+              t.pump_samples = t.pump_samples + s.pump_samples,
+              t.samples = t.samples + s.samples
+            WHEN NOT MATCHED THEN INSERT
+              (device_id, hour_utc, samples,
+               soil_min, soil_avg, soil_max,
+               tank_min, tank_avg, tank_max,
+               rain_samples, pump_samples, temp_avg, humidity_avg)
+            VALUES
+              (s.device_id, s.hour_utc, s.samples,
+               s.soil_min, s.soil_avg, s.soil_max,
+               s.tank_min, s.tank_avg, s.tank_max,
+               s.rain_samples, s.pump_samples, s.temp_avg, s.humidity_avg);
+        """;
+
+        long old;
+        try (PreparedStatement ps = c.prepareStatement("SELECT COUNT_BIG(*) FROM dbo.readings_import WHERE created_utc < ?")) {
+            ps.setTimestamp(1, cutoff);
+            try (ResultSet rs = ps.executeQuery()) {
+                old = rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+        if (old == 0) return 0;
+
+        long t0 = System.nanoTime();
+        c.setAutoCommit(false);
+        try (PreparedStatement ps = c.prepareStatement(sql);
+             PreparedStatement del = c.prepareStatement("DELETE FROM dbo.readings_import WHERE created_utc < ?")) {
+            ps.setTimestamp(1, cutoff);
+            ps.executeUpdate();
+            del.setTimestamp(1, cutoff);
+            del.executeUpdate();
+            c.commit();
+        } catch (Exception e) {
+            c.rollback();
+            throw e;
+        } finally {
+            c.setAutoCommit(true);
+            IrrigationDao.timer("bulkMergeHourly").since(t0);
+        }
+        return old;
+    }
+
+    /** [min, max] created_utc of the staged rows at/after the cutoff, or null if there are none. */
+    private static Instant[] range(Connection c, Timestamp cutoff) throws Exception {
+        final String sql = "SELECT MIN(created_utc), MAX(created_utc) FROM dbo.readings_import"
+                + (cutoff != null ? " WHERE created_utc >= ?" : "");
+        try (PreparedStatement ps = c.prepareStatement(sql)) {
+            if (cutoff != null) ps.setTimestamp(1, cutoff);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next() || rs.getTimestamp(1) == null) return null;
+                return new Instant[]{rs.getTimestamp(1).toInstant(), rs.getTimestamp(2).toInstant()};
+            }
+        }
+    }
+
+    /**
+     * One window of staged rows into dbo.readings (its own transaction, bounded log growth).
+     * Keyed by (device_id, created_utc) like insertReading: a reading already stored, or staged
+     * twice, goes in once.
+     */
+    private static long move(Connection c, Timestamp from, Timestamp to) throws Exception {
+        final String sql = """
+            INSERT INTO dbo.readings
+              (device_id, soil, water_tank, raining, pump_reported, temp_c, humidity, created_utc)
+            SELECT device_id, soil, water_tank, raining, pump_reported, temp_c, humidity, created_utc
+            FROM (
+              SELECT s.*, ROW_NUMBER() OVER (PARTITION BY s.device_id, s.created_utc ORDER BY (SELECT NULL)) AS n
+              FROM dbo.readings_import s
+              WHERE s.created_utc >= ? AND s.created_utc < ?
+            ) s
+            WHERE s.n = 1
+              AND NOT EXISTS (SELECT 1 FROM dbo.readings r
+                              WHERE r.device_id = s.device_id AND r.created_utc = s.created_utc)
+            ORDER BY created_utc
+        """;
+
+        long t0 = System.nanoTime();
+        try (PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setTimestamp(1, from);
+            ps.setTimestamp(2, to);
+            return ps.executeUpdate();
+        } finally {
+            IrrigationDao.timer("bulkMove").since(t0);
+        }
+    }
+
+    private static int update(Connection c, String sql) throws Exception {
+        try (Statement st = c.createStatement()) {
+            return st.executeUpdate(sql);
+        }
+    }
+
+    private static void exec(Connection c, String sql) throws Exception {
+        try (Statement st = c.createStatement()) {
+            st.execute(sql);
+        }
+    }
+
+    /** Session app lock, waits up to 60s for an import already running (any shard). */
+    private static void lock(Connection c) throws Exception {
+        try (CallableStatement cs = c.prepareCall("{? = call sp_getapplock(?, ?, ?, ?)}")) {
+            cs.registerOutParameter(1, Types.INTEGER);
+            cs.setString(2, "irrigation-bulk-import");
+            cs.setString(3, "Exclusive");
+            cs.setString(4, "Session");
+            cs.setInt(5, 60_000);
+            cs.execute();
+            if (cs.getInt(1) < 0) throw new IllegalStateException("another bulk import is running");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "bulk import (" + partitions + " partitions, batch " + batchRows + ")";
+    }
+}
@@ -0,0 +1,399 @@
+package core.db.bulk;
+
+import core.dto.ReadingDTO;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Readings for the bulk importer, one at a time (files are read line by line, never held in memory).
+ *
+ * CSV:    header row naming the columns, any order:
+ *         device (or device_id), soil, water_tank, raining, pump (or pump_reported), temp_c, humidity, created_utc
+ * NDJSON: one flat JSON object per line with the same keys.
+ * Empty / null values are NULL. created_utc is ISO-8601 ("2025-06-01T10:00:00Z", "...+02:00") or
+ * SQL style "2025-06-01 10:00:00.123" taken as UTC. A ".gz" suffix is decompressed on the fly.
+ */
+public abstract class ReadingSource implements Closeable {
+
+    private long bad;
+    private final List<String> firstErrors = new ArrayList<>();
+
+    /** Next reading, or null at the end. Lines that do not parse are counted (skipped()) and passed over. */
+    public abstract ReadingDTO next() throws IOException;
+
+    public long skipped() {
+        return bad;
+    }
+
+    /** The first few parse errors ("file:line: message"), for the import summary. */
+    public List<String> firstErrors() {
+        return firstErrors;
+    }
+
+    @Override
+    public void close() throws IOException {
+    }
+
+    // =========================
+    // FACTORIES
+    // =========================
+
+    /** By extension: .csv, .ndjson / .jsonl / .json (optionally + .gz). */
+    public static ReadingSource open(Path file) throws IOException {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        String base = name.endsWith(".gz") ? name.substring(0, name.length() - 3) : name;
+
+        InputStream in = Files.newInputStream(file);
+        if (name.endsWith(".gz")) in = new GZIPInputStream(in, 1 << 16);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16);
+
+        if (base.endsWith(".csv")) return new Csv(file.toString(), reader);
+        if (base.endsWith(".ndjson") || base.endsWith(".jsonl") || base.endsWith(".json")) {
+            return new NdJson(file.toString(), reader);
+        }
+        reader.close();
+        throw new IOException(file + ": expected .csv, .ndjson or .jsonl (optionally .gz)");
+    }
+
+    /** Several files one after the other, as one source. */
+    public static ReadingSource open(List<Path> files) throws IOException {
+        if (files.size() == 1) return open(files.get(0));
+
+        Iterator<Path> it = files.iterator();
+        return new ReadingSource() {
+            ReadingSource current;
+            long skippedBefore;
+
+            @Override
+            public ReadingDTO next() throws IOException {
+                while (true) {
+                    if (current == null) {
+                        if (!it.hasNext()) return null;
+                        current = open(it.next());
+                    }
+                    ReadingDTO r = current.next();
+                    if (r != null) return r;
+
+                    skippedBefore += current.skipped();
+                    for (String e : current.firstErrors()) noteError(e);
+                    current.close();
+                    current = null;
+                }
+            }
+
+            @Override
+            public long skipped() {
+                return skippedBefore + (current != null ? current.skipped() : 0);
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (current != null) current.close();
+            }
+        };
+    }
+
+    /** Readings already in memory (a buffered device upload / spool replay batch). */
+    public static ReadingSource of(List<ReadingDTO> readings) {
+        Iterator<ReadingDTO> it = readings.iterator();
+        return new ReadingSource() {
+            @Override
+            public ReadingDTO next() {
+                while (it.hasNext()) {
+                    ReadingDTO r = it.next();
+                    if (r != null && r.device != null && !r.device.isBlank()) return r;
+                }
+                return null;
+            }
+        };
+    }
+
+    // =========================
+    // LINE FORMATS
+    // =========================
+
+    /** Shared line loop: blank lines are ignored, a failed parse is counted and skipped. */
+    private abstract static class Lines extends ReadingSource {
+        final String name;
+        final BufferedReader reader;
+        long line;
+
+        Lines(String name, BufferedReader reader) {
+            this.name = name;
+            this.reader = reader;
+        }
+
+        abstract ReadingDTO parse(String line);
+
+        @Override
+        public ReadingDTO next() throws IOException {
+            String s;
+            while ((s = reader.readLine()) != null) {
+                line++;
+                if (s.isBlank()) continue;
+                try {
+                    ReadingDTO r = parse(s);
+                    if (r != null) return r;
+                } catch (IllegalArgumentException | IndexOutOfBoundsException | DateTimeParseException e) {
+                    skip(name + ":" + line + ": " + e.getMessage());
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
+    private static final class Csv extends Lines {
+        private int[] columns; // csv position -> field index (-1 = ignored)
+
+        Csv(String name, BufferedReader reader) {
+            super(name, reader);
+        }
+
+        @Override
+        ReadingDTO parse(String line) {
+            String[] cells = splitCsv(line);
+            if (columns == null) {
+                columns = new int[cells.length];
+                boolean hasDevice = false;
+                boolean hasTime = false;
+                for (int i = 0; i < cells.length; i++) {
+                    columns[i] = field(cells[i].trim());
+                    hasDevice |= columns[i] == F_DEVICE;
+                    hasTime |= columns[i] == F_TIME;
+                }
+                if (!hasDevice || !hasTime) {
+                    throw new IllegalStateException(name + ": CSV header needs device and created_utc columns, got: " + line);
+                }
+                return null;
+            }
+
+            ReadingDTO r = new ReadingDTO();
+            for (int i = 0; i < cells.length && i < columns.length; i++) {
+                set(r, columns[i], cells[i]);
+            }
+            return check(r);
+        }
+    }
+
+    private static final class NdJson extends Lines {
+        NdJson(String name, BufferedReader reader) {
+            super(name, reader);
+        }
+
+        @Override
+        ReadingDTO parse(String line) {
+            ReadingDTO r = new ReadingDTO();
+            for (Map.Entry<String, String> e : flatJson(line).entrySet()) {
+                set(r, field(e.getKey()), e.getValue());
+            }
+            return check(r);
+        }
+    }
+
+    void skip(String error) {
+        bad++;
+        noteError(error);
+    }
+
+    void noteError(String error) {
+        if (firstErrors.size() < 5) firstErrors.add(error);
+    }
+
+    // =========================
+    // FIELDS
+    // =========================
+
+    private static final int F_DEVICE = 0, F_SOIL = 1, F_TANK = 2, F_RAIN = 3, F_PUMP = 4,
+            F_TEMP = 5, F_HUMIDITY = 6, F_TIME = 7;
+
+    private static final Map<String, Integer> FIELDS = new HashMap<>();
+    static {
+        FIELDS.put("device", F_DEVICE);
+        FIELDS.put("device_id", F_DEVICE);
+        FIELDS.put("soil", F_SOIL);
+        FIELDS.put("water_tank", F_TANK);
+        FIELDS.put("raining", F_RAIN);
+        FIELDS.put("pump", F_PUMP);
+        FIELDS.put("pump_reported", F_PUMP);
+        FIELDS.put("temp_c", F_TEMP);
+        FIELDS.put("humidity", F_HUMIDITY);
+        FIELDS.put("created_utc", F_TIME);
+    }
+
+    private static int field(String name) {
+        return FIELDS.getOrDefault(name.toLowerCase(Locale.ROOT), -1);
+    }
+
+    private static void set(ReadingDTO r, int field, String raw) {
+        if (field < 0) return;
+        String v = raw == null ? null : raw.trim();
+        if (v != null && (v.isEmpty() || v.equalsIgnoreCase("null"))) v = null;
+
+        switch (field) {
+            case F_DEVICE -> r.device = v;
+            case F_SOIL -> r.soil = v == null ? null : Integer.valueOf(v);
+            case F_TANK -> r.waterTank = v == null ? null : Integer.valueOf(v);
+            case F_RAIN -> r.raining = bool(v);
+            case F_PUMP -> r.pump = bool(v);
+            case F_TEMP -> r.tempC = v == null ? null : Double.valueOf(v);
+            case F_HUMIDITY -> r.humidity = v == null ? null : Double.valueOf(v);
+            case F_TIME -> r.createdUtc = v;
+            default -> { }
+        }
+    }
+
+    private static Boolean bool(String v) {
+        if (v == null) return null;
+        if (v.equals("1") || v.equalsIgnoreCase("true")) return true;
+        if (v.equals("0") || v.equalsIgnoreCase("false")) return false;
+        throw new IllegalArgumentException("not a boolean: " + v);
+    }
+
+    private static ReadingDTO check(ReadingDTO r) {
+        if (r.device == null || r.device.isBlank()) throw new IllegalArgumentException("missing device");
+        if (r.device.length() > 64) throw new IllegalArgumentException("device id longer than 64");
+        if (r.createdUtc == null) throw new IllegalArgumentException("missing created_utc");
+        parseTime(r.createdUtc); // a bad time skips the line here, not in the bulk copy
+        return r;
+    }
+
+    /** ISO-8601 with offset, or "yyyy-MM-dd HH:mm:ss[.fff]" / "yyyy-MM-ddTHH:mm:ss" without one (UTC). */
+    static Instant parseTime(String v) {
+        String t = v.indexOf(' ') == 10 ? v.replace(' ', 'T') : v;
+        try {
+            return OffsetDateTime.parse(t).toInstant();
+        } catch (DateTimeParseException noOffset) {
+            return LocalDateTime.parse(t).toInstant(ZoneOffset.UTC);
+        }
+    }
+
+    // =========================
+    // MINIMAL PARSERS (NO LIBS, FLAT RECORDS)
+    // =========================
+
+    /** One CSV line: commas, "quoted, fields" with "" escapes. */
+    static String[] splitCsv(String line) {
+        List<String> out = new ArrayList<>();
+        StringBuilder cur = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    cur.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    cur.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                out.add(cur.toString());
+                cur.setLength(0);
+            } else {
+                cur.append(c);
+            }
+        }
+        out.add(cur.toString());
+        return out.toArray(new String[0]);
+    }
+
+    /** key -> raw value of a flat JSON object (strings unescaped, numbers / true / false / null as text). */
+    static Map<String, String> flatJson(String s) {
+        Map<String, String> out = new HashMap<>();
+        int[] pos = {skipWs(s, 0)};
+        expect(s, pos, '{');
+
+        while (true) {
+            pos[0] = skipWs(s, pos[0]);
+            if (pos[0] < s.length() && s.charAt(pos[0]) == '}') return out;
+
+            String key = string(s, pos);
+            pos[0] = skipWs(s, pos[0]);
+            expect(s, pos, ':');
+            pos[0] = skipWs(s, pos[0]);
+
+            String value;
+            if (pos[0] < s.length() && s.charAt(pos[0]) == '"') {
+                value = string(s, pos);
+            } else {
+                int start = pos[0];
+                while (pos[0] < s.length() && ",} \t".indexOf(s.charAt(pos[0])) < 0) pos[0]++;
+                value = s.substring(start, pos[0]);
+            }
+            out.put(key, value);
+
+            pos[0] = skipWs(s, pos[0]);
+            if (pos[0] < s.length() && s.charAt(pos[0]) == ',') {
+                pos[0]++;
+                continue;
+            }
+            expect(s, pos, '}');
+            return out;
+        }
+    }
+
+    private static String string(String s, int[] pos) {
+        expect(s, pos, '"');
+        StringBuilder sb = new StringBuilder();
+        while (pos[0] < s.length()) {
+            char c = s.charAt(pos[0]++);
+            if (c == '"') return sb.toString();
+            if (c == '\\' && pos[0] < s.length()) {
+                char e = s.charAt(pos[0]++);
+                switch (e) {
+                    case 'n' -> sb.append('\n');
+                    case 't' -> sb.append('\t');
+                    case 'r' -> sb.append('\r');
+                    case 'u' -> {
+                        sb.append((char) Integer.parseInt(s.substring(pos[0], pos[0] + 4), 16));
+                        pos[0] += 4;
+                    }
+                    default -> sb.append(e);
+                }
+            } else {
+                sb.append(c);
+            }
+        }
+        throw new IllegalArgumentException("unterminated string");
+    }
+
+    private static void expect(String s, int[] pos, char c) {
+        if (pos[0] >= s.length() || s.charAt(pos[0]) != c) {
+            throw new IllegalArgumentException("expected '" + c + "' at column " + (pos[0] + 1));
+        }
+        pos[0]++;
+    }
+
+    private static int skipWs(String s, int i) {
+        while (i < s.length() && Character.isWhitespace(s.charAt(i))) i++;
+        return i;
+    }
+}
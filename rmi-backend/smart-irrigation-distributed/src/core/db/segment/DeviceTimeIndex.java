@@ -0,0 +1,117 @@
+package core.db.segment;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Small per-device time index over a SegmentLog.
+ *
+ * Every record carries the offset of the previous record of the same device (a back chain),
+ * and the index keeps, per device, the last offset plus one (time, offset) checkpoint per
+ * BLOCK records. A range read binary-searches the checkpoints and walks at most one block
+ * per BLOCK results, so memory is ~16 bytes per 64 records and reads are O(limit + BLOCK).
+ *
+ * Timestamps must not go backwards per device (the DAO sends older ones to its late log,
+ * see LateIndex). Not thread-safe.
+ */
+final class DeviceTimeIndex {
+
+    static final int BLOCK = 64;
+
+    /** Reads the (time, previous offset) header of a record. */
+    interface Chain {
+        long timeOf(long offset) throws IOException;
+        long prevOf(long offset) throws IOException;
+    }
+
+    static final class Entry {
+        long lastOffset = -1;
+        long lastTime = Long.MIN_VALUE;
+        long count;
+
+        private long[] blockTime = new long[2];
+        private long[] blockOffset = new long[2];
+        private int blocks;
+
+        void add(long time, long offset) {
+            if (count % BLOCK == 0) {
+                if (blocks == blockTime.length) {
+                    blockTime = Arrays.copyOf(blockTime, blocks * 2);
+                    blockOffset = Arrays.copyOf(blockOffset, blocks * 2);
+                }
+                blockTime[blocks] = time;
+                blockOffset[blocks] = offset;
+                blocks++;
+            }
+            lastOffset = offset;
+            lastTime = time;
+            count++;
+        }
+    }
+
+    private final HashMap<String, Entry> byDevice = new HashMap<>();
+
+    Entry entry(String device) {
+        return byDevice.computeIfAbsent(device, d -> new Entry());
+    }
+
+    Entry get(String device) {
+        return byDevice.get(device);
+    }
+
+    int devices() {
+        return byDevice.size();
+    }
+
+    /** Offsets of the device's records with fromTime <= time <= toTime, oldest first, at most limit. */
+    static List<Long> range(Entry e, long fromTime, long toTime, int limit, Chain chain) throws IOException {
+        return range(e, fromTime, Long.MIN_VALUE, toTime, limit, chain);
+    }
+
+    /**
+     * Same, after the keyset (fromTime, afterOffset): records at fromTime up to afterOffset are
+     * skipped (offsets grow along the chain, so they are the first ones of that time).
+     */
+    static List<Long> range(Entry e, long fromTime, long afterOffset, long toTime, int limit, Chain chain)
+            throws IOException {
+        List<Long> out = new ArrayList<>();
+        if (e == null || e.count == 0 || limit <= 0 || fromTime > toTime) return out;
+
+        // last block starting strictly before fromTime: every earlier block ends before it
+        // (equal times can span a block boundary, so "<=" could skip matching records)
+        int lo = 0, hi = e.blocks - 1, start = 0;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (e.blockTime[mid] < fromTime) {
+                start = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+
+        long[] block = new long[BLOCK];
+        for (int k = start; k < e.blocks; k++) {
+            if (e.blockTime[k] > toTime) break;
+
+            // the block's records: walk back from its last record to its first, then read forward
+            long end = k + 1 < e.blocks ? chain.prevOf(e.blockOffset[k + 1]) : e.lastOffset;
+            int n = 0;
+            for (long off = end; ; off = chain.prevOf(off)) {
+                block[n++] = off;
+                if (off == e.blockOffset[k] || n == BLOCK) break;
+            }
+
+            for (int i = n - 1; i >= 0; i--) {
+                long t = chain.timeOf(block[i]);
+                if (t < fromTime || t == fromTime && block[i] <= afterOffset) continue;
+                if (t > toTime || out.size() >= limit) return out;
+                out.add(block[i]);
+            }
+        }
+        return out;
+    }
+}
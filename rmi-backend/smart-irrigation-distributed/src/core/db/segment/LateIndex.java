@@ -0,0 +1,85 @@
+package core.db.segment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Per-device (time, offset) index of the late readings log.
+ *
+ * A late reading is older than the device's last one (a spool replay after an outage), so it
+ * cannot join the back chain of DeviceTimeIndex. Late readings are rare and bounded by the
+ * gateway spool, so this index keeps every entry in memory (16 bytes each), sorted by time;
+ * replays arrive oldest-first, so an insert is almost always an append. Equal times keep
+ * arrival order. Not thread-safe.
+ */
+final class LateIndex {
+
+    private static final class Entry {
+        long[] time = new long[8];
+        long[] offset = new long[8];
+        int n;
+    }
+
+    private final HashMap<String, Entry> byDevice = new HashMap<>();
+
+    void add(String device, long time, long offset) {
+        Entry e = byDevice.computeIfAbsent(device, d -> new Entry());
+        if (e.n == e.time.length) {
+            e.time = Arrays.copyOf(e.time, e.n * 2);
+            e.offset = Arrays.copyOf(e.offset, e.n * 2);
+        }
+
+        int at = e.n > 0 && e.time[e.n - 1] > time ? upperBound(e, time) : e.n;
+        System.arraycopy(e.time, at, e.time, at + 1, e.n - at);
+        System.arraycopy(e.offset, at, e.offset, at + 1, e.n - at);
+        e.time[at] = time;
+        e.offset[at] = offset;
+        e.n++;
+    }
+
+    /**
+     * Offsets of the device's late records after the keyset (fromTime, afterOffset) with time <= toTime,
+     * oldest first, at most limit. Equal times are in append order, so their offsets grow too.
+     */
+    List<Long> range(String device, long fromTime, long afterOffset, long toTime, int limit) {
+        List<Long> out = new ArrayList<>();
+        Entry e = byDevice.get(device);
+        if (e == null || limit <= 0 || fromTime > toTime) return out;
+
+        for (int i = lowerBound(e, fromTime); i < e.n && e.time[i] <= toTime && out.size() < limit; i++) {
+            if (e.time[i] == fromTime && e.offset[i] <= afterOffset) continue;
+            out.add(e.offset[i]);
+        }
+        return out;
+    }
+
+    long records() {
+        long n = 0;
+        for (Entry e : byDevice.values()) n += e.n;
+        return n;
+    }
+
+    /** First index with time >= t. */
+    private static int lowerBound(Entry e, long t) {
+        int lo = 0, hi = e.n;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (e.time[mid] < t) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /** First index with time > t. */
+    private static int upperBound(Entry e, long t) {
+        int lo = 0, hi = e.n;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (e.time[mid] <= t) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+}
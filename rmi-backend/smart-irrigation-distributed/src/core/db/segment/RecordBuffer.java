@@ -0,0 +1,83 @@
+package core.db.segment;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reusable growable buffer to encode one record, plus the matching decoders.
+ * Strings are [short length][UTF-8], length -1 = null. Not thread-safe (one per table, used under its lock).
+ */
+final class RecordBuffer {
+
+    private ByteBuffer b = ByteBuffer.allocate(256);
+
+    RecordBuffer clear() {
+        b.clear();
+        return this;
+    }
+
+    /** The encoded record, ready for SegmentLog.append. */
+    ByteBuffer flip() {
+        return b.flip();
+    }
+
+    RecordBuffer putByte(int v) {
+        ensure(1).put((byte) v);
+        return this;
+    }
+
+    RecordBuffer putInt(int v) {
+        ensure(4).putInt(v);
+        return this;
+    }
+
+    RecordBuffer putLong(long v) {
+        ensure(8).putLong(v);
+        return this;
+    }
+
+    RecordBuffer putDouble(double v) {
+        ensure(8).putDouble(v);
+        return this;
+    }
+
+    RecordBuffer putString(String s) {
+        if (s == null) {
+            ensure(2).putShort((short) -1);
+            return this;
+        }
+        byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+        if (utf8.length > Short.MAX_VALUE) throw new IllegalArgumentException("string too long for a record");
+        ensure(2 + utf8.length).putShort((short) utf8.length).put(utf8);
+        return this;
+    }
+
+    /** Nullable int as [byte present][int]. */
+    RecordBuffer putNullableInt(Integer v) {
+        putByte(v != null ? 1 : 0);
+        if (v != null) putInt(v);
+        return this;
+    }
+
+    static String getString(ByteBuffer in) {
+        int len = in.getShort();
+        if (len < 0) return null;
+        byte[] utf8 = new byte[len];
+        in.get(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    static Integer getNullableInt(ByteBuffer in) {
+        return in.get() != 0 ? in.getInt() : null;
+    }
+
+    private ByteBuffer ensure(int n) {
+        if (b.remaining() < n) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(b.capacity() * 2, b.position() + n));
+            b.flip();
+            bigger.put(b);
+            b = bigger;
+        }
+        return b;
+    }
+}
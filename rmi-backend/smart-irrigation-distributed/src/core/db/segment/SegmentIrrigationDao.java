@@ -0,0 +1,876 @@
+package core.db.segment;
+
+import core.db.IrrigationDao;
+import core.dto.AlertDTO;
+import core.dto.DeviceStatusDTO;
+import core.dto.ModeDTO;
+import core.dto.ProfileDTO;
+import core.dto.PumpDecisionDTO;
+import core.dto.ReadingDTO;
+import core.dto.ReadingList;
+import core.logic.DecisionReason;
+import core.state.DecisionRun;
+import core.state.DeviceState;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Embedded storage for a single box without SQL Server: four SegmentLogs under one directory.
+ *
+ *   readings  [ts][prev][device][flags][soil][tank][temp][humidity]   + DeviceTimeIndex
+ *   late      readings older than the device's last one, same layout  + LateIndex
+ *   alerts    [ts][prev][device][id][type][severity][message]         + DeviceTimeIndex
+ *   meta      tagged records (device, state, zone, profile, decision run, control event),
+ *             replayed into maps on open; last write wins
+ *
+ * Everything but the readings/alerts payloads lives in memory, so opening replays the
+ * logs once (the same work as a cold cache) and reads never touch SQL. last_seen is the time of
+ * the device's last reading, so touchLastSeen costs nothing. Pages are forced to disk every
+ * -Dirrigation.segmentForceMs (default 1000) and on segment rollover
+ * (-Dirrigation.segmentMb, default 64). No retention: old segments are kept.
+ */
+public class SegmentIrrigationDao implements IrrigationDao {
+
+    // meta record tags (persisted: never renumber)
+    private static final int T_DEVICE = 1;
+    private static final int T_STATE = 2;
+    private static final int T_ZONE = 3;
+    private static final int T_PROFILE = 4;
+    private static final int T_RUN_OPEN = 5;
+    private static final int T_RUN_UPDATE = 6;
+    private static final int T_CONTROL = 7;
+
+    // reading flags
+    private static final int F_SOIL = 1;
+    private static final int F_TANK = 1 << 1;
+    private static final int F_RAIN_SET = 1 << 2;
+    private static final int F_RAIN = 1 << 3;
+    private static final int F_PUMP_SET = 1 << 4;
+    private static final int F_PUMP = 1 << 5;
+    private static final int F_TEMP = 1 << 6;
+    private static final int F_HUMIDITY = 1 << 7;
+
+    /** One row of dbo.devices. */
+    private static final class DeviceRow {
+        long lastSeenMs = -1;
+        String zone;
+    }
+
+    private final Path dir;
+
+    private final SegmentLog readings;
+    private final DeviceTimeIndex readingIndex = new DeviceTimeIndex();
+    private final RecordBuffer readingBuf = new RecordBuffer();
+
+    // guarded by the readings lock, like the readings index
+    private final SegmentLog late;
+    private final LateIndex lateIndex = new LateIndex();
+
+    // ReadingDTO.id = offset in the readings log, or offset in the late log with this bit set,
+    // so (time, id) orders chained readings before late ones of the same millisecond, like the merge
+    private static final long LATE_ID = 1L << 62;
+
+    private final SegmentLog alerts;
+    private final DeviceTimeIndex alertIndex = new DeviceTimeIndex();
+    private final RecordBuffer alertBuf = new RecordBuffer();
+    private long alertSeq;
+
+    private final SegmentLog meta;
+    private final RecordBuffer metaBuf = new RecordBuffer();
+    private final TreeMap<String, DeviceRow> devices = new TreeMap<>();
+    private final Map<String, DeviceState> states = new HashMap<>();
+    private final Map<String, ProfileDTO> profiles = new HashMap<>();    // scope|key -> row
+    private final Map<String, List<DecisionRun>> runs = new HashMap<>(); // device -> runs by start
+    private final Map<Long, DecisionRun> runsById = new HashMap<>();
+    private long runSeq;
+
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "segment-flush");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private SegmentIrrigationDao(Path dir, int segmentBytes) throws IOException {
+        this.dir = dir;
+        // meta first: readings/alerts replay may create device rows
+        this.meta = SegmentLog.open(dir, "meta", segmentBytes, (off, p) -> applyMeta(p));
+        this.readings = SegmentLog.open(dir, "readings", segmentBytes, this::replayReading);
+        this.late = SegmentLog.open(dir, "late", segmentBytes, this::replayLate);
+        this.alerts = SegmentLog.open(dir, "alerts", segmentBytes, this::replayAlert);
+    }
+
+    public static SegmentIrrigationDao open(Path dir) throws IOException {
+        int segmentBytes = Integer.getInteger("irrigation.segmentMb", 64) * 1024 * 1024;
+        SegmentIrrigationDao dao = new SegmentIrrigationDao(dir, segmentBytes);
+
+        int forceMs = Integer.getInteger("irrigation.segmentForceMs", 1000);
+        if (forceMs > 0) dao.flusher.scheduleWithFixedDelay(dao::force, forceMs, forceMs, TimeUnit.MILLISECONDS);
+
+        System.out.println("[SEG] opened " + dir.toAbsolutePath()
+                + " readings=" + dao.readings.records()
+                + " late=" + dao.late.records()
+                + " alerts=" + dao.alerts.records()
+                + " devices=" + dao.devices.size()
+                + (dao.readings.truncatedBytes() + dao.late.truncatedBytes() + dao.alerts.truncatedBytes() + dao.meta.truncatedBytes() > 0
+                    ? " (torn tail cut off)" : ""));
+        return dao;
+    }
+
+    public void force() {
+        readings.force();
+        late.force();
+        alerts.force();
+        meta.force();
+    }
+
+    public void close() {
+        flusher.shutdownNow();
+        readings.close();
+        late.close();
+        alerts.close();
+        meta.close();
+    }
+
+    @Override
+    public String toString() {
+        return "segment log at " + dir.toAbsolutePath();
+    }
+
+    // =========================
+    // DEVICES / STATE
+    // =========================
+
+    @Override
+    public void touchLastSeen(String deviceId) {
+        // last_seen = time of the last reading (set by insertReading)
+    }
+
+    @Override
+    public DeviceState loadOrCreateState(String deviceId) throws Exception {
+        if (deviceId == null || deviceId.isBlank()) return defaultState();
+
+        synchronized (meta) {
+            DeviceState st = states.get(deviceId);
+            if (st != null) return copy(st);
+        }
+        DeviceState def = defaultState();
+        upsertState(deviceId, def.mode, def.manualPumpCmd, def.lastAutoCmd);
+        return def;
+    }
+
+    @Override
+    public Map<String, DeviceState> loadAllStates() {
+        Map<String, DeviceState> out = new HashMap<>();
+        synchronized (meta) {
+            for (Map.Entry<String, DeviceState> e : states.entrySet()) out.put(e.getKey(), copy(e.getValue()));
+        }
+        return out;
+    }
+
+    @Override
+    public void upsertState(String deviceId, ModeDTO mode, boolean manualPumpCmd, boolean lastAutoCmd) throws Exception {
+        if (deviceId == null || deviceId.isBlank()) return;
+        if (mode == null) mode = ModeDTO.AUTO;
+
+        long t0 = System.nanoTime();
+        try {
+            synchronized (meta) {
+                // called on every AUTO reading: only changes are written
+                DeviceState cur = states.get(deviceId);
+                if (cur != null && cur.mode == mode && cur.manualPumpCmd == manualPumpCmd
+                        && cur.lastAutoCmd == lastAutoCmd) return;
+
+                ensureDevice(deviceId);
+                appendMeta(metaBuf.clear().putByte(T_STATE).putString(deviceId)
+                        .putByte(mode.ordinal()).putByte(manualPumpCmd ? 1 : 0).putByte(lastAutoCmd ? 1 : 0));
+            }
+        } finally {
+            IrrigationDao.timer("upsertState").since(t0);
+        }
+    }
+
+    // =========================
+    // READINGS
+    // =========================
+
+    @Override
+    public Timestamp insertReading(ReadingDTO r) throws Exception {
+        if (r == null || r.device == null || r.device.isBlank()) return null;
+
+        long t0 = System.nanoTime();
+        try {
+            if (r.createdUtc == null) return new Timestamp(appendReading(r, System.currentTimeMillis(), false));
+            long key = OffsetDateTime.parse(r.createdUtc).toInstant().toEpochMilli();
+            appendReading(r, key, true);
+            return new Timestamp(key);
+        } finally {
+            IrrigationDao.timer("insertReading").since(t0);
+        }
+    }
+
+    /**
+     * Stored at their original createdUtc, once per (device, createdUtc). A reading older than the
+     * device's last one cannot join the time-ordered back chain and goes to the late log instead;
+     * reads merge both.
+     */
+    @Override
+    public int importReadings(List<ReadingDTO> rs) throws Exception {
+        long t0 = System.nanoTime();
+        try {
+            int n = 0;
+            for (ReadingDTO r : rs) {
+                if (r == null || r.device == null || r.device.isBlank()) continue;
+                long ms = r.createdUtc != null
+                        ? OffsetDateTime.parse(r.createdUtc).toInstant().toEpochMilli()
+                        : System.currentTimeMillis();
+                if (appendReading(r, ms, true) >= 0) n++;
+            }
+            return n;
+        } finally {
+            IrrigationDao.timer("importReadings").since(t0);
+        }
+    }
+
+    /** Returns the reading's time, or -1 when keyed and a reading of the device at atMs is already stored. */
+    long appendReading(ReadingDTO r, long atMs, boolean keyed) throws IOException {
+        synchronized (meta) {
+            ensureDevice(r.device);
+        }
+
+        long ts;
+        synchronized (readings) {
+            DeviceTimeIndex.Entry e = readingIndex.entry(r.device);
+            ts = atMs;
+            if (keyed && stored(r.device, e, ts)) return -1;
+            boolean isLate = ts < e.lastTime; // the chain never goes backwards per device
+
+            int flags = 0;
+            if (r.soil != null) flags |= F_SOIL;
+            if (r.waterTank != null) flags |= F_TANK;
+            if (r.raining != null) flags |= F_RAIN_SET | (r.raining ? F_RAIN : 0);
+            if (r.pump != null) flags |= F_PUMP_SET | (r.pump ? F_PUMP : 0);
+            if (r.tempC != null) flags |= F_TEMP;
+            if (r.humidity != null) flags |= F_HUMIDITY;
+
+            RecordBuffer b = readingBuf.clear().putLong(ts).putLong(isLate ? -1 : e.lastOffset)
+                    .putString(r.device).putByte(flags);
+            if (r.soil != null) b.putInt(r.soil);
+            if (r.waterTank != null) b.putInt(r.waterTank);
+            if (r.tempC != null) b.putDouble(r.tempC);
+            if (r.humidity != null) b.putDouble(r.humidity);
+
+            if (isLate) lateIndex.add(r.device, ts, late.append(b.flip()));
+            else e.add(ts, readings.append(b.flip()));
+        }
+
+        synchronized (meta) {
+            DeviceRow row = devices.get(r.device);
+            row.lastSeenMs = Math.max(row.lastSeenMs, ts);
+        }
+        return ts;
+    }
+
+    /** A reading of the device at exactly ts, in the chain or the late log (caller holds the readings lock). */
+    private boolean stored(String device, DeviceTimeIndex.Entry e, long ts) throws IOException {
+        if (ts > e.lastTime) return false; // the common case: newer than anything stored
+        return !DeviceTimeIndex.range(e, ts, Long.MIN_VALUE, ts, 1, chainOf(readings)).isEmpty()
+                || !lateIndex.range(device, ts, Long.MIN_VALUE, ts, 1).isEmpty();
+    }
+
+    @Override
+    public ReadingDTO getLatest(String deviceId) throws Exception {
+        if (deviceId == null || deviceId.isBlank()) return null;
+
+        long t0 = System.nanoTime();
+        try {
+            long off;
+            synchronized (readings) {
+                DeviceTimeIndex.Entry e = readingIndex.get(deviceId);
+                if (e == null) return null;
+                off = e.lastOffset;
+            }
+            return decodeReading(readings.read(off));
+        } finally {
+            IrrigationDao.timer("getLatest").since(t0);
+        }
+    }
+
+    @Override
+    public Map<String, ReadingDTO> getLatestMany(List<String> deviceIds) throws Exception {
+        Map<String, ReadingDTO> out = new HashMap<>();
+        for (String d : deviceIds) {
+            ReadingDTO r = getLatest(d);
+            if (r != null) out.put(d, r);
+        }
+        return out;
+    }
+
+    @Override
+    public List<ReadingDTO> getHistory(String deviceId, Timestamp fromUtc, Timestamp toUtc, int limit) throws Exception {
+        return getHistoryAfter(deviceId, fromUtc, Long.MIN_VALUE, toUtc, limit);
+    }
+
+    @Override
+    public List<ReadingDTO> getHistoryAfter(String deviceId, Timestamp afterUtc, long afterId, Timestamp toUtc, int limit)
+            throws Exception {
+        long t0 = System.nanoTime();
+        try {
+            List<ReadingDTO> out = new ReadingList();
+            for (long id : readingRange(deviceId, afterUtc.getTime(), afterId, toUtc.getTime(), limit)) {
+                ReadingDTO r = decodeReading(readingRecord(id));
+                r.id = id;
+                out.add(r);
+            }
+            return out;
+        } finally {
+            IrrigationDao.timer("getHistory").since(t0);
+        }
+    }
+
+    /**
+     * Ids of the device's readings after the keyset (from, afterId) with ts <= to, by (ts, id),
+     * at most limit: the chain merged with the late log.
+     */
+    private List<Long> readingRange(String deviceId, long from, long afterId, long to, int limit) throws IOException {
+        // a late cursor is past every chained reading of its millisecond, a chained one before every late one
+        long chainAfter = afterId >= LATE_ID ? Long.MAX_VALUE : afterId;
+        long lateAfter = afterId >= LATE_ID ? afterId & ~LATE_ID : Long.MIN_VALUE;
+
+        List<Long> chained;
+        List<Long> lateOffs;
+        synchronized (readings) {
+            chained = DeviceTimeIndex.range(readingIndex.get(deviceId), from, chainAfter, to, limit, chainOf(readings));
+            lateOffs = lateIndex.range(deviceId, from, lateAfter, to, limit);
+        }
+
+        List<Long> out = new ArrayList<>(Math.min(limit, chained.size() + lateOffs.size()));
+        int i = 0, j = 0;
+        while (out.size() < limit && (i < chained.size() || j < lateOffs.size())) {
+            boolean fromChain = j == lateOffs.size()
+                    || i < chained.size() && readings.peekLong(chained.get(i), 0) <= late.peekLong(lateOffs.get(j), 0);
+            out.add(fromChain ? chained.get(i++) : LATE_ID | lateOffs.get(j++));
+        }
+        return out;
+    }
+
+    private ByteBuffer readingRecord(long id) throws IOException {
+        return id >= LATE_ID ? late.read(id & ~LATE_ID) : readings.read(id);
+    }
+
+    private void replayReading(long offset, ByteBuffer p) {
+        long ts = p.getLong(0);
+        p.position(16);
+        String device = RecordBuffer.getString(p);
+
+        readingIndex.entry(device).add(ts, offset);
+        DeviceRow row = devices.computeIfAbsent(device, d -> new DeviceRow());
+        row.lastSeenMs = Math.max(row.lastSeenMs, ts);
+    }
+
+    private void replayLate(long offset, ByteBuffer p) {
+        long ts = p.getLong(0);
+        p.position(16);
+        String device = RecordBuffer.getString(p);
+
+        lateIndex.add(device, ts, offset);
+        DeviceRow row = devices.computeIfAbsent(device, d -> new DeviceRow());
+        row.lastSeenMs = Math.max(row.lastSeenMs, ts);
+    }
+
+    private static ReadingDTO decodeReading(ByteBuffer p) {
+        ReadingDTO r = new ReadingDTO();
+        long ts = p.getLong();
+        p.getLong(); // prev
+        r.device = RecordBuffer.getString(p);
+
+        int flags = p.get() & 0xFF;
+        if ((flags & F_SOIL) != 0) r.soil = p.getInt();
+        if ((flags & F_TANK) != 0) r.waterTank = p.getInt();
+        if ((flags & F_RAIN_SET) != 0) r.raining = (flags & F_RAIN) != 0;
+        if ((flags & F_PUMP_SET) != 0) r.pump = (flags & F_PUMP) != 0;
+        if ((flags & F_TEMP) != 0) r.tempC = p.getDouble();
+        if ((flags & F_HUMIDITY) != 0) r.humidity = p.getDouble();
+
+        r.createdUtc = Instant.ofEpochMilli(ts).toString();
+        return r;
+    }
+
+    // =========================
+    // ALERTS
+    // =========================
+
+    @Override
+    public void insertAlert(String deviceId, String alertType, String severity, String message) throws Exception {
+        if (deviceId == null || deviceId.isBlank()) return;
+        if (alertType == null || alertType.isBlank()) return;
+        if (severity == null || severity.isBlank()) severity = "INFO";
+        if (message == null) message = "";
+
+        synchronized (meta) {
+            ensureDevice(deviceId);
+        }
+
+        long t0 = System.nanoTime();
+        try {
+            synchronized (alerts) {
+                DeviceTimeIndex.Entry e = alertIndex.entry(deviceId);
+                long ts = Math.max(System.currentTimeMillis(), e.lastTime);
+
+                alertBuf.clear().putLong(ts).putLong(e.lastOffset).putString(deviceId)
+                        .putLong(++alertSeq).putString(alertType).putString(severity).putString(message);
+                e.add(ts, alerts.append(alertBuf.flip()));
+            }
+        } finally {
+            IrrigationDao.timer("insertAlert").since(t0);
+        }
+    }
+
+    @Override
+    public List<AlertDTO> getAlerts(String deviceId, String sinceUtc, int limit) throws Exception {
+        if (deviceId == null || deviceId.isBlank()) return List.of();
+        if (sinceUtc == null || sinceUtc.isBlank()) sinceUtc = "1970-01-01T00:00:00Z";
+
+        if (limit <= 0) limit = 200;
+        if (limit > 2000) limit = 2000;
+
+        // created_utc > since, like the SQL version
+        long since = OffsetDateTime.parse(sinceUtc).toInstant().toEpochMilli() + 1;
+
+        long t0 = System.nanoTime();
+        try {
+            List<Long> offs;
+            synchronized (alerts) {
+                offs = DeviceTimeIndex.range(alertIndex.get(deviceId), since, Long.MAX_VALUE, limit, chainOf(alerts));
+            }
+
+            List<AlertDTO> out = new ArrayList<>(offs.size());
+            for (long off : offs) out.add(decodeAlert(alerts.read(off)));
+            return out;
+        } finally {
+            IrrigationDao.timer("getAlerts").since(t0);
+        }
+    }
+
+    @Override
+    public Map<String, List<AlertDTO>> getAlertsMany(List<String> deviceIds, String sinceUtc, int limit) throws Exception {
+        Map<String, List<AlertDTO>> out = new HashMap<>();
+        for (String d : deviceIds) {
+            List<AlertDTO> a = getAlerts(d, sinceUtc, limit);
+            if (!a.isEmpty()) out.put(d, a);
+        }
+        return out;
+    }
+
+    private void replayAlert(long offset, ByteBuffer p) {
+        long ts = p.getLong(0);
+        p.position(16);
+        String device = RecordBuffer.getString(p);
+        alertSeq = Math.max(alertSeq, p.getLong());
+
+        alertIndex.entry(device).add(ts, offset);
+        devices.computeIfAbsent(device, d -> new DeviceRow());
+    }
+
+    private static AlertDTO decodeAlert(ByteBuffer p) {
+        AlertDTO a = new AlertDTO();
+        long ts = p.getLong();
+        p.getLong(); // prev
+        a.device = RecordBuffer.getString(p);
+        a.id = p.getLong();
+        a.type = RecordBuffer.getString(p);
+        a.severity = RecordBuffer.getString(p);
+        a.message = RecordBuffer.getString(p);
+        a.createdUtc = Instant.ofEpochMilli(ts).toString();
+        return a;
+    }
+
+    /** Time and previous-offset header shared by readings and alerts. */
+    private static DeviceTimeIndex.Chain chainOf(SegmentLog log) {
+        return new DeviceTimeIndex.Chain() {
+            @Override
+            public long timeOf(long offset) {
+                return log.peekLong(offset, 0);
+            }
+
+            @Override
+            public long prevOf(long offset) {
+                return log.peekLong(offset, 8);
+            }
+        };
+    }
+
+    // =========================
+    // CONTROL AUDIT
+    // =========================
+
+    @Override
+    public void insertControlEvent(String deviceId, String type, ModeDTO mode, Boolean manualPump, String source)
+            throws Exception {
+        if (deviceId == null || deviceId.isBlank()) return;
+
+        long t0 = System.nanoTime();
+        try {
+            synchronized (meta) {
+                ensureDevice(deviceId);
+                appendMeta(metaBuf.clear().putByte(T_CONTROL).putString(deviceId)
+                        .putLong(System.currentTimeMillis()).putString(type)
+                        .putByte(mode != null ? mode.ordinal() : -1)
+                        .putByte(manualPump == null ? -1 : manualPump ? 1 : 0)
+                        .putString((source != null && !source.isBlank()) ? source : "UNKNOWN"));
+            }
+        } finally {
+            IrrigationDao.timer("insertControlEvent").since(t0);
+        }
+    }
+
+    // =========================
+    // DEVICE LIST / STATUS
+    // =========================
+
+    @Override
+    public List<String> listDevices() {
+        synchronized (meta) {
+            return new ArrayList<>(devices.keySet());
+        }
+    }
+
+    @Override
+    public DeviceStatusDTO getStatus(String deviceId, int offlineSec) {
+        if (deviceId == null || deviceId.isBlank()) return null;
+        if (offlineSec <= 0) offlineSec = 20;
+
+        synchronized (meta) {
+            DeviceRow row = devices.get(deviceId);
+            return row == null ? null : status(deviceId, row, offlineSec, System.currentTimeMillis());
+        }
+    }
+
+    @Override
+    public List<DeviceStatusDTO> listStatus(int offlineSec) {
+        if (offlineSec <= 0) offlineSec = 20;
+
+        List<DeviceStatusDTO> out = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        synchronized (meta) {
+            for (Map.Entry<String, DeviceRow> e : devices.entrySet()) {
+                out.add(status(e.getKey(), e.getValue(), offlineSec, now));
+            }
+        }
+        return out;
+    }
+
+    @Override
+    public Map<String, DeviceStatusDTO> getStatusMany(List<String> deviceIds, int offlineSec) {
+        if (offlineSec <= 0) offlineSec = 20;
+
+        Map<String, DeviceStatusDTO> out = new HashMap<>();
+        long now = System.currentTimeMillis();
+        synchronized (meta) {
+            for (String d : deviceIds) {
+                DeviceRow row = devices.get(d);
+                if (row != null) out.put(d, status(d, row, offlineSec, now));
+            }
+        }
+        return out;
+    }
+
+    private static DeviceStatusDTO status(String device, DeviceRow row, int offlineSec, long now) {
+        DeviceStatusDTO s = new DeviceStatusDTO();
+        s.device = device;
+
+        if (row.lastSeenMs < 0) {
+            s.lastSeenUtc = null;
+            s.secondsSinceLastSeen = -1;
+            s.online = false;
+        } else {
+            s.lastSeenUtc = Instant.ofEpochMilli(row.lastSeenMs).toString();
+            s.secondsSinceLastSeen = Math.max(0, (now - row.lastSeenMs) / 1000);
+            s.online = s.secondsSinceLastSeen <= offlineSec;
+        }
+        return s;
+    }
+
+    // =========================
+    // PROFILES / ZONES
+    // =========================
+
+    @Override
+    public List<ProfileDTO> loadProfiles() {
+        List<ProfileDTO> out = new ArrayList<>();
+        synchronized (meta) {
+            for (ProfileDTO p : profiles.values()) out.add(copy(p));
+        }
+        return out;
+    }
+
+    @Override
+    public Map<String, String> loadDeviceZones() {
+        Map<String, String> out = new HashMap<>();
+        synchronized (meta) {
+            for (Map.Entry<String, DeviceRow> e : devices.entrySet()) {
+                if (e.getValue().zone != null) out.put(e.getKey(), e.getValue().zone);
+            }
+        }
+        return out;
+    }
+
+    @Override
+    public void upsertProfile(ProfileDTO p) throws Exception {
+        String scope;
+        String key;
+        if (p.device != null && !p.device.isBlank()) {
+            scope = "DEVICE";
+            key = p.device;
+        } else if (p.zone != null && !p.zone.isBlank()) {
+            scope = "ZONE";
+            key = p.zone;
+        } else {
+            scope = "DEFAULT";
+            key = "*";
+        }
+
+        synchronized (meta) {
+            if ("DEVICE".equals(scope)) ensureDevice(key);
+            appendMeta(metaBuf.clear().putByte(T_PROFILE).putString(scope).putString(key)
+                    .putNullableInt(p.moistureOn).putNullableInt(p.moistureOff)
+                    .putNullableInt(p.tankLow).putNullableInt(p.tankRecover)
+                    .putNullableInt(p.lookaheadMin));
+        }
+    }
+
+    @Override
+    public void setDeviceZone(String deviceId, String zone) throws Exception {
+        if (deviceId == null || deviceId.isBlank()) return;
+
+        synchronized (meta) {
+            ensureDevice(deviceId);
+            appendMeta(metaBuf.clear().putByte(T_ZONE).putString(deviceId)
+                    .putString(zone == null || zone.isBlank() ? null : zone));
+        }
+    }
+
+    // =========================
+    // DECISION JOURNAL
+    // =========================
+
+    @Override
+    public long openDecisionRun(String deviceId, ModeDTO mode, boolean pumpCmd, int reasonCode,
+                                Timestamp startedUtc) throws Exception {
+        long t0 = System.nanoTime();
+        try {
+            synchronized (meta) {
+                ensureDevice(deviceId);
+                long id = runSeq + 1;
+                appendMeta(metaBuf.clear().putByte(T_RUN_OPEN).putLong(id).putString(deviceId)
+                        .putByte(mode.ordinal()).putByte(pumpCmd ? 1 : 0).putByte(reasonCode)
+                        .putLong(startedUtc.getTime()));
+                return id;
+            }
+        } finally {
+            IrrigationDao.timer("openDecisionRun").since(t0);
+        }
+    }
+
+    @Override
+    public void updateDecisionRun(long id, int runCount, Timestamp lastUtc) throws Exception {
+        long t0 = System.nanoTime();
+        try {
+            synchronized (meta) {
+                appendMeta(metaBuf.clear().putByte(T_RUN_UPDATE).putLong(id).putInt(runCount).putLong(lastUtc.getTime()));
+            }
+        } finally {
+            IrrigationDao.timer("updateDecisionRun").since(t0);
+        }
+    }
+
+    @Override
+    public DecisionRun lastDecisionRun(String deviceId) {
+        synchronized (meta) {
+            List<DecisionRun> list = runs.get(deviceId);
+            return list == null || list.isEmpty() ? null : copy(list.get(list.size() - 1));
+        }
+    }
+
+    @Override
+    public List<PumpDecisionDTO> getDecisions(String deviceId, Timestamp fromUtc, Timestamp toUtc, int limit) throws Exception {
+        long t0 = System.nanoTime();
+        try {
+            List<PumpDecisionDTO> out = new ArrayList<>();
+            for (long id : readingRange(deviceId, fromUtc.getTime(), Long.MIN_VALUE, toUtc.getTime(), limit)) {
+                long ts = id >= LATE_ID ? late.peekLong(id & ~LATE_ID, 0) : readings.peekLong(id, 0);
+
+                DecisionRun run;
+                synchronized (meta) {
+                    run = runAt(runs.get(deviceId), ts);
+                }
+                if (run == null) continue; // before the first journaled decision
+
+                PumpDecisionDTO d = new PumpDecisionDTO();
+                d.device = deviceId;
+                d.mode = run.mode;
+                d.pumpCmd = run.pumpCmd;
+                d.reason = run.reason.name();
+                d.createdUtc = Instant.ofEpochMilli(ts).toString();
+                out.add(d);
+            }
+            return out;
+        } finally {
+            IrrigationDao.timer("getDecisions").since(t0);
+        }
+    }
+
+    /** Latest run started at or before ts. */
+    private static DecisionRun runAt(List<DecisionRun> list, long ts) {
+        if (list == null) return null;
+        int lo = 0, hi = list.size() - 1, found = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (list.get(mid).startedMs <= ts) {
+                found = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return found < 0 ? null : list.get(found);
+    }
+
+    // =========================
+    // META LOG (caller holds the meta lock)
+    // =========================
+
+    private void ensureDevice(String deviceId) throws IOException {
+        if (devices.containsKey(deviceId)) return;
+        appendMeta(metaBuf.clear().putByte(T_DEVICE).putString(deviceId));
+    }
+
+    /** Append, then apply exactly like replay does, so memory and disk cannot disagree. */
+    private void appendMeta(RecordBuffer b) throws IOException {
+        ByteBuffer rec = b.flip();
+        meta.append(rec.duplicate());
+        applyMeta(rec);
+    }
+
+    private void applyMeta(ByteBuffer p) {
+        int tag = p.get();
+        switch (tag) {
+            case T_DEVICE -> devices.computeIfAbsent(RecordBuffer.getString(p), d -> new DeviceRow());
+
+            case T_STATE -> {
+                String device = RecordBuffer.getString(p);
+                DeviceState st = new DeviceState();
+                st.mode = ModeDTO.values()[p.get()];
+                st.manualPumpCmd = p.get() != 0;
+                st.lastAutoCmd = p.get() != 0;
+                states.put(device, st);
+            }
+
+            case T_ZONE -> {
+                String device = RecordBuffer.getString(p);
+                devices.computeIfAbsent(device, d -> new DeviceRow()).zone = RecordBuffer.getString(p);
+            }
+
+            case T_PROFILE -> {
+                String scope = RecordBuffer.getString(p);
+                String key = RecordBuffer.getString(p);
+                ProfileDTO row = new ProfileDTO();
+                if ("DEVICE".equals(scope)) row.device = key;
+                else if ("ZONE".equals(scope)) row.zone = key;
+                row.moistureOn = RecordBuffer.getNullableInt(p);
+                row.moistureOff = RecordBuffer.getNullableInt(p);
+                row.tankLow = RecordBuffer.getNullableInt(p);
+                row.tankRecover = RecordBuffer.getNullableInt(p);
+                row.lookaheadMin = RecordBuffer.getNullableInt(p);
+                profiles.put(scope + "|" + key, row);
+            }
+
+            case T_RUN_OPEN -> {
+                DecisionRun run = new DecisionRun();
+                run.id = p.getLong();
+                String device = RecordBuffer.getString(p);
+                run.mode = ModeDTO.values()[p.get()];
+                run.pumpCmd = p.get() != 0;
+                run.reason = DecisionReason.ofCode(p.get());
+                run.startedMs = p.getLong();
+                run.lastMs = run.startedMs;
+                run.runCount = 1;
+                runSeq = Math.max(runSeq, run.id);
+                runs.computeIfAbsent(device, d -> new ArrayList<>()).add(run);
+                runsById.put(run.id, run);
+            }
+
+            case T_RUN_UPDATE -> {
+                DecisionRun run = runsById.get(p.getLong());
+                if (run != null) {
+                    run.runCount = p.getInt();
+                    run.lastMs = p.getLong();
+                }
+            }
+
+            case T_CONTROL -> {
+                // audit only: nothing reads control events back
+            }
+
+            default -> throw new IllegalStateException("unknown meta record tag " + tag);
+        }
+    }
+
+    // =========================
+    // COPIES (callers mutate what they get back)
+    // =========================
+
+    private static DeviceState defaultState() {
+        DeviceState st = new DeviceState();
+        st.mode = ModeDTO.AUTO;
+        st.manualPumpCmd = false;
+        st.lastAutoCmd = false;
+        return st;
+    }
+
+    private static DeviceState copy(DeviceState s) {
+        DeviceState st = new DeviceState();
+        st.mode = s.mode;
+        st.manualPumpCmd = s.manualPumpCmd;
+        st.lastAutoCmd = s.lastAutoCmd;
+        return st;
+    }
+
+    private static DecisionRun copy(DecisionRun r) {
+        DecisionRun c = new DecisionRun();
+        c.id = r.id;
+        c.mode = r.mode;
+        c.pumpCmd = r.pumpCmd;
+        c.reason = r.reason;
+        c.startedMs = r.startedMs;
+        c.lastMs = r.lastMs;
+        c.runCount = r.runCount;
+        c.flushedCount = r.runCount;
+        c.flushedAtMs = r.lastMs;
+        return c;
+    }
+
+    private static ProfileDTO copy(ProfileDTO p) {
+        ProfileDTO c = new ProfileDTO();
+        c.device = p.device;
+        c.zone = p.zone;
+        c.moistureOn = p.moistureOn;
+        c.moistureOff = p.moistureOff;
+        c.tankLow = p.tankLow;
+        c.tankRecover = p.tankRecover;
+        c.lookaheadMin = p.lookaheadMin;
+        return c;
+    }
+}
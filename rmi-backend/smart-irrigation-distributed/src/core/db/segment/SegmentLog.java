@@ -0,0 +1,308 @@
+package core.db.segment;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only log of records in memory-mapped segment files: <dir>/<name>-000000.seg, -000001.seg, ...
+ *
+ * Record = [int length][int crc32c(payload)][payload]. A length of 0 marks the end of the
+ * written part (new segments are zero-filled). The length is written last, so a record is
+ * either fully there or not at all once its page reaches disk; on open, a tail that fails
+ * its CRC in the last segment is treated as a torn write and cut off.
+ *
+ * Only the active (last) segment is mapped; a full one is flushed, unmapped and from then on
+ * read on demand through a read-only channel, so the mapped size stays one segment however
+ * large the log grows. The segment size is kept in <dir>/<name>.hdr and wins over the one
+ * asked for on reopen (a log written with another -Dirrigation.segmentMb still lines up).
+ *
+ * Offsets are (segment << 32 | position) and stay valid for the life of the files.
+ * Appends are synchronized; reads of already-returned offsets need no lock.
+ */
+public final class SegmentLog implements Closeable {
+
+    /** Called once per valid record on open, in append order. */
+    public interface Visitor {
+        void record(long offset, ByteBuffer payload) throws IOException;
+    }
+
+    static final int HEADER = 8;
+
+    // <name>.hdr: magic, version, segment size
+    private static final int MAGIC = 0x5345474C; // "SEGL"
+    private static final int VERSION = 1;
+
+    /** Sealed segments (read through their channel) and the mapped active one, swapped as a whole on roll. */
+    private static final class Segments {
+        final FileChannel[] sealed;
+        final MappedByteBuffer active;
+
+        Segments(FileChannel[] sealed, MappedByteBuffer active) {
+            this.sealed = sealed;
+            this.active = active;
+        }
+
+        int count() {
+            return sealed.length + 1;
+        }
+    }
+
+    private final Path dir;
+    private final String name;
+    private final int segmentBytes;
+
+    private volatile Segments segments;
+    private int pos;                 // write position in the last segment
+    private long records;
+    private long truncatedBytes;     // torn tail cut off on open
+
+    private SegmentLog(Path dir, String name, int segmentBytes) {
+        this.dir = dir;
+        this.name = name;
+        this.segmentBytes = segmentBytes;
+    }
+
+    /** Replay every existing segment's valid records, map the last one and position the writer after it. */
+    public static SegmentLog open(Path dir, String name, int segmentBytes, Visitor replay) throws IOException {
+        Files.createDirectories(dir);
+
+        List<Path> files;
+        try (Stream<Path> s = Files.list(dir)) {
+            files = s.filter(p -> {
+                String f = p.getFileName().toString();
+                return f.startsWith(name + "-") && f.endsWith(".seg");
+            }).sorted().toList();
+        }
+
+        SegmentLog log = new SegmentLog(dir, name, segmentSize(dir, name, segmentBytes, files));
+        int n = Math.max(1, files.size());
+
+        FileChannel[] sealed = new FileChannel[n - 1];
+        try {
+            for (int seg = 0; seg < n - 1; seg++) {
+                // mapped only for the replay, then read on demand
+                log.replaySegment(seg, log.map(seg, FileChannel.MapMode.READ_ONLY), false, replay);
+                sealed[seg] = FileChannel.open(log.file(seg), StandardOpenOption.READ);
+            }
+            MappedByteBuffer active = log.map(n - 1, FileChannel.MapMode.READ_WRITE);
+            log.pos = log.replaySegment(n - 1, active, true, replay);
+            log.segments = new Segments(sealed, active);
+        } catch (IOException | RuntimeException e) {
+            for (FileChannel ch : sealed) if (ch != null) ch.close();
+            throw e;
+        }
+        return log;
+    }
+
+    /** Segment size from <name>.hdr; a log without one is sized by its first segment, a new log by the caller. */
+    private static int segmentSize(Path dir, String name, int requested, List<Path> files) throws IOException {
+        Path hdr = dir.resolve(name + ".hdr");
+        if (Files.exists(hdr)) {
+            ByteBuffer b = ByteBuffer.wrap(Files.readAllBytes(hdr));
+            if (b.remaining() < 12 || b.getInt() != MAGIC || b.getInt() != VERSION) {
+                throw new IOException(hdr + ": not a segment log header");
+            }
+            int stored = b.getInt();
+            if (stored <= HEADER) throw new IOException(hdr + ": bad segment size " + stored);
+            if (stored != requested) {
+                System.out.println("[SEG] " + name + ": keeping segment size " + stored + " from " + hdr.getFileName()
+                        + " (asked for " + requested + ")");
+            }
+            return stored;
+        }
+
+        long size = files.isEmpty() ? requested : Files.size(files.get(0));
+        if (size <= HEADER || size > Integer.MAX_VALUE) throw new IOException(files.get(0) + ": bad segment size " + size);
+        ByteBuffer b = ByteBuffer.allocate(12).putInt(MAGIC).putInt(VERSION).putInt((int) size);
+        Files.write(hdr, b.array());
+        return (int) size;
+    }
+
+    private int replaySegment(int seg, MappedByteBuffer buf, boolean last, Visitor replay) throws IOException {
+        CRC32C crc = new CRC32C();
+        int p = 0;
+
+        while (p + HEADER <= segmentBytes) {
+            int len = buf.getInt(p);
+            if (len == 0) break;
+
+            boolean sane = len > 0 && p + HEADER + len <= segmentBytes;
+            if (sane) {
+                ByteBuffer payload = buf.slice(p + HEADER, len);
+                crc.reset();
+                crc.update(payload.duplicate());
+                if ((int) crc.getValue() == buf.getInt(p + 4)) {
+                    replay.record(offset(seg, p), payload);
+                    records++;
+                    p += HEADER + len;
+                    continue;
+                }
+            }
+
+            if (!last) throw new IOException(file(seg) + ": corrupt record at " + p);
+
+            // torn write at the tail: wipe it so the next append starts clean
+            truncatedBytes = segmentBytes - p;
+            for (int i = p; i < segmentBytes; i++) buf.put(i, (byte) 0);
+            break;
+        }
+        return p;
+    }
+
+    /** Append one record; returns its offset. */
+    public synchronized long append(ByteBuffer payload) throws IOException {
+        int len = payload.remaining();
+        if (len == 0 || HEADER + len > segmentBytes) {
+            throw new IOException(name + ": record of " + len + " bytes does not fit a segment");
+        }
+        if (pos + HEADER + len > segmentBytes) roll();
+
+        Segments segs = segments;
+        MappedByteBuffer buf = segs.active;
+        int p = pos;
+
+        CRC32C crc = new CRC32C();
+        crc.update(payload.duplicate());
+
+        buf.put(p + HEADER, payload, payload.position(), len);
+        buf.putInt(p + 4, (int) crc.getValue());
+        buf.putInt(p, len); // last: makes the record visible to replay
+
+        pos = p + HEADER + len;
+        records++;
+        return offset(segs.sealed.length, p);
+    }
+
+    /** Payload of the record at offset (CRC-checked). */
+    public ByteBuffer read(long offset) throws IOException {
+        int seg = (int) (offset >>> 32);
+        int p = (int) offset;
+
+        Segments segs = segments;
+        int len;
+        int sum;
+        ByteBuffer payload;
+        if (seg < segs.sealed.length) {
+            FileChannel ch = segs.sealed[seg];
+            ByteBuffer h = readAt(ch, p, HEADER);
+            len = h.getInt(0);
+            sum = h.getInt(4);
+            if (len <= 0 || p + HEADER + len > segmentBytes) throw new IOException(file(seg) + ": no record at " + p);
+            payload = readAt(ch, p + HEADER, len);
+        } else {
+            MappedByteBuffer buf = segs.active;
+            len = buf.getInt(p);
+            sum = buf.getInt(p + 4);
+            payload = buf.slice(p + HEADER, len);
+        }
+
+        CRC32C crc = new CRC32C();
+        crc.update(payload.duplicate());
+        if ((int) crc.getValue() != sum) {
+            throw new IOException(file(seg) + ": CRC mismatch at " + p);
+        }
+        return payload;
+    }
+
+    /** One long of the payload at offset, without the CRC check (index walks; the full read checks it). */
+    public long peekLong(long offset, int at) {
+        int seg = (int) (offset >>> 32);
+        int p = (int) offset + HEADER + at;
+
+        Segments segs = segments;
+        if (seg >= segs.sealed.length) return segs.active.getLong(p);
+        try {
+            return readAt(segs.sealed[seg], p, 8).getLong(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(file(seg) + ": read at " + p + " failed", e);
+        }
+    }
+
+    private static ByteBuffer readAt(FileChannel ch, long at, int len) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(len);
+        while (b.hasRemaining()) {
+            if (ch.read(b, at + b.position()) < 0) throw new IOException("unexpected end of segment");
+        }
+        return b.flip();
+    }
+
+    /** Seal the full segment (flushed, then read through a channel) and map a new one. */
+    private void roll() throws IOException {
+        Segments old = segments;
+        old.active.force();
+
+        int seg = old.sealed.length;
+        FileChannel[] sealed = new FileChannel[seg + 1];
+        System.arraycopy(old.sealed, 0, sealed, 0, seg);
+        sealed[seg] = FileChannel.open(file(seg), StandardOpenOption.READ);
+
+        // readers still holding the old Segments keep its mapping alive until they drop it
+        segments = new Segments(sealed, map(seg + 1, FileChannel.MapMode.READ_WRITE));
+        pos = 0;
+    }
+
+    /** Write dirty pages of the active segment to disk. */
+    public synchronized void force() {
+        segments.active.force();
+    }
+
+    public long records() {
+        return records;
+    }
+
+    public int segmentCount() {
+        return segments.count();
+    }
+
+    public long truncatedBytes() {
+        return truncatedBytes;
+    }
+
+    /** Bytes used (full segments + the written part of the last one). */
+    public synchronized long sizeBytes() {
+        return (long) segments.sealed.length * segmentBytes + pos;
+    }
+
+    @Override
+    public synchronized void close() {
+        force();
+        for (FileChannel ch : segments.sealed) {
+            try {
+                ch.close();
+            } catch (IOException ignored) {
+                // read-only: nothing to lose
+            }
+        }
+    }
+
+    private Path file(int seg) {
+        return dir.resolve(String.format("%s-%06d.seg", name, seg));
+    }
+
+    private static long offset(int seg, int pos) {
+        return ((long) seg << 32) | (pos & 0xFFFFFFFFL);
+    }
+
+    private MappedByteBuffer map(int seg, FileChannel.MapMode mode) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file(seg).toFile(), mode == FileChannel.MapMode.READ_ONLY ? "r" : "rw");
+             FileChannel ch = raf.getChannel()) {
+            if (raf.length() < segmentBytes) {
+                if (mode == FileChannel.MapMode.READ_ONLY) throw new IOException(file(seg) + ": shorter than a segment");
+                raf.setLength(segmentBytes);
+            }
+            // the mapping stays valid after the channel is closed
+            return ch.map(mode, 0, segmentBytes);
+        }
+    }
+}
@@ -1,10 +1,43 @@
 package core.dto;
 
-import java.io.Serializable;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+public class DeviceStatusDTO implements Externalizable {
+    private static final long serialVersionUID = 1L;
 
-public class DeviceStatusDTO implements Serializable {
     public String device;
     public String lastSeenUtc;          // ISO string or null
     public boolean online;
     public long secondsSinceLastSeen;   // -1 if unknown
+
+    private static final int DEVICE = 1;
+    private static final int LAST_SEEN = 1 << 1;
+    private static final int ONLINE = 1 << 2;
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        int bits = 0;
+        if (device != null) bits |= DEVICE;
+        if (lastSeenUtc != null) bits |= LAST_SEEN;
+        if (online) bits |= ONLINE;
+
+        out.writeByte(bits);
+
+        if (device != null) DtoIO.writeString(out, device);
+        if (lastSeenUtc != null) DtoIO.writeTime(out, lastSeenUtc);
+        DtoIO.writeZigZag(out, secondsSinceLastSeen);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        int bits = in.readUnsignedByte();
+
+        device = (bits & DEVICE) != 0 ? DtoIO.readString(in) : null;
+        lastSeenUtc = (bits & LAST_SEEN) != 0 ? DtoIO.readTime(in) : null;
+        online = (bits & ONLINE) != 0;
+        secondsSinceLastSeen = DtoIO.readZigZag(in);
+    }
 }
@@ -1,9 +1,15 @@
 package core.dto;
 
-import java.io.Serializable;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.ArrayList;
 import java.util.List;
 
-public class DeviceSummaryDTO implements Serializable {
+public class DeviceSummaryDTO implements Externalizable {
+    private static final long serialVersionUID = 2L; // 2: nested DTOs length-prefixed
+
     public String device;
 
     public ReadingDTO latest;
@@ -13,4 +19,70 @@ public class DeviceSummaryDTO implements Serializable {
     public DeviceStatusDTO status;
 
     public List<AlertDTO> alerts;
+
+    public AnalyticsDTO analytics;
+
+    private static final int DEVICE = 1;
+    private static final int LATEST = 1 << 1;
+    private static final int MODE = 1 << 2;
+    private static final int MANUAL_SET = 1 << 3;
+    private static final int MANUAL_ON = 1 << 4;
+    private static final int STATUS = 1 << 5;
+    private static final int ALERTS = 1 << 6;
+    private static final int ANALYTICS = 1 << 7;
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        int bits = 0;
+        if (device != null) bits |= DEVICE;
+        if (latest != null) bits |= LATEST;
+        if (mode != null) bits |= MODE;
+        if (manualPump != null) bits |= MANUAL_SET | (manualPump ? MANUAL_ON : 0);
+        if (status != null) bits |= STATUS;
+        if (alerts != null) bits |= ALERTS;
+        if (analytics != null) bits |= ANALYTICS;
+
+        out.writeByte(bits);
+
+        // nested DTOs are length-prefixed (no per-object stream header), so each can grow fields
+        if (device != null) DtoIO.writeString(out, device);
+        if (latest != null) DtoIO.writeNested(out, latest);
+        if (mode != null) DtoIO.writeMode(out, mode);
+        if (status != null) DtoIO.writeNested(out, status);
+
+        if (alerts != null) {
+            DtoIO.writeVarLong(out, alerts.size());
+            for (AlertDTO a : alerts) {
+                out.writeBoolean(a != null);
+                if (a != null) DtoIO.writeNested(out, a);
+            }
+        }
+
+        if (analytics != null) DtoIO.writeNested(out, analytics);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        int bits = in.readUnsignedByte();
+
+        device = (bits & DEVICE) != 0 ? DtoIO.readString(in) : null;
+
+        latest = (bits & LATEST) != 0 ? DtoIO.readNested(in, new ReadingDTO()) : null;
+
+        mode = (bits & MODE) != 0 ? DtoIO.readMode(in) : null;
+        manualPump = (bits & MANUAL_SET) != 0 ? (bits & MANUAL_ON) != 0 : null;
+
+        status = (bits & STATUS) != 0 ? DtoIO.readNested(in, new DeviceStatusDTO()) : null;
+
+        alerts = null;
+        if ((bits & ALERTS) != 0) {
+            int n = (int) DtoIO.readVarLong(in);
+            alerts = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                alerts.add(in.readBoolean() ? DtoIO.readNested(in, new AlertDTO()) : null);
+            }
+        }
+
+        analytics = (bits & ANALYTICS) != 0 ? DtoIO.readNested(in, new AnalyticsDTO()) : null;
+    }
 }
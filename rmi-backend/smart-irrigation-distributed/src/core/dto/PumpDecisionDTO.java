@@ -1,9 +1,50 @@
 package core.dto;
 
-import java.io.Serializable;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+public class PumpDecisionDTO implements Externalizable {
+    private static final long serialVersionUID = 1L;
 
-public class PumpDecisionDTO implements Serializable {
     public String device;
     public boolean pumpCmd;     // what server wants
-    public String reason;       // debug string for now (prof-friendly)
+    public String reason;       // DecisionReason name (SOIL_DRY, TANK_LOW, HOLD, ...)
+    public ModeDTO mode;        // only in getDecisions
+    public String createdUtc;   // created_utc of the reading: stored by pushReading, or in getDecisions (started_utc of the run once readings are purged)
+
+    private static final int DEVICE = 1;
+    private static final int PUMP_CMD = 1 << 1;
+    private static final int REASON = 1 << 2;
+    private static final int MODE = 1 << 3;
+    private static final int CREATED = 1 << 4;
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        int bits = 0;
+        if (device != null) bits |= DEVICE;
+        if (pumpCmd) bits |= PUMP_CMD;
+        if (reason != null) bits |= REASON;
+        if (mode != null) bits |= MODE;
+        if (createdUtc != null) bits |= CREATED;
+
+        out.writeByte(bits);
+
+        if (device != null) DtoIO.writeString(out, device);
+        if (reason != null) DtoIO.writeString(out, reason);
+        if (mode != null) DtoIO.writeMode(out, mode);
+        if (createdUtc != null) DtoIO.writeTime(out, createdUtc);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        int bits = in.readUnsignedByte();
+
+        device = (bits & DEVICE) != 0 ? DtoIO.readString(in) : null;
+        pumpCmd = (bits & PUMP_CMD) != 0;
+        reason = (bits & REASON) != 0 ? DtoIO.readString(in) : null;
+        mode = (bits & MODE) != 0 ? DtoIO.readMode(in) : null;
+        createdUtc = (bits & CREATED) != 0 ? DtoIO.readTime(in) : null;
+    }
 }
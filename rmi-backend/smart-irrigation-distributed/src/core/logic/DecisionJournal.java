@@ -0,0 +1,92 @@
+package core.logic;
+
+import core.db.IrrigationDao;
+import core.dto.ModeDTO;
+import core.metrics.Metrics;
+import core.state.DecisionRun;
+import core.state.DeviceState;
+
+import java.sql.Timestamp;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Change-only pump decision log (dbo.pump_decision_runs).
+ *
+ * A row is inserted only when the (mode, pump_cmd, reason) of a device changes, so every
+ * decision keeps the rule that produced it (ON by SOIL_DRY, then ON by HOLD are two runs);
+ * repeated decisions just bump the open run's count in memory, written back every
+ * -Dirrigation.decisionFlushEvery decisions (default 50) or -Dirrigation.decisionFlushSec (60)
+ * and when the run closes. run_count / last_utc of a device that stopped reporting can
+ * therefore lag a little; the per-reading view (dbo.v_pump_decisions) only needs started_utc.
+ *
+ * Called on the device's lane (see StripedExecutor), with the pump decision it records.
+ */
+public class DecisionJournal {
+
+    private final IrrigationDao dao;
+    private final int flushEvery = Math.max(1, Integer.getInteger("irrigation.decisionFlushEvery", 50));
+    private final long flushMs = Math.max(0, Integer.getInteger("irrigation.decisionFlushSec", 60)) * 1000L;
+
+    private static final LongAdder RUNS_OPENED =
+            Metrics.counter("core_decision_runs_opened_total", "Decision journal rows inserted (transitions)");
+    private static final LongAdder DECISIONS_FOLDED =
+            Metrics.counter("core_decision_folded_total", "Decisions folded into an open run (no insert)");
+
+    public DecisionJournal(IrrigationDao dao) {
+        this.dao = dao;
+    }
+
+    /** at = created_utc of the reading that produced the decision (so the per-reading view lines up). */
+    public void record(String device, DeviceState st, ModeDTO mode, boolean cmd, DecisionReason reason, Timestamp at) {
+        if (device == null || device.isBlank()) return;
+        if (mode == null) mode = ModeDTO.AUTO;
+        if (reason == null) reason = DecisionReason.UNKNOWN;
+        long now = at != null ? at.getTime() : System.currentTimeMillis();
+
+        try {
+            DecisionRun run = st.decisionRun;
+
+            // after a restart: keep extending the last run if nothing changed
+            if (run == null) run = st.decisionRun = dao.lastDecisionRun(device);
+
+            if (run != null && run.continues(mode, cmd, reason)) {
+                run.runCount++;
+                run.lastMs = now;
+                DECISIONS_FOLDED.increment();
+
+                if (run.runCount - run.flushedCount >= flushEvery || now - run.flushedAtMs >= flushMs) {
+                    flush(run);
+                }
+                return;
+            }
+
+            // transition: close the previous run, open a new one
+            if (run != null && run.dirty()) flush(run);
+
+            DecisionRun next = new DecisionRun();
+            next.mode = mode;
+            next.pumpCmd = cmd;
+            next.reason = reason;
+            next.startedMs = now;
+            next.lastMs = now;
+            next.runCount = 1;
+            next.id = dao.openDecisionRun(device, mode, cmd, next.reason.code, new Timestamp(now));
+            next.flushedCount = 1;
+            next.flushedAtMs = now;
+
+            st.decisionRun = next;
+            RUNS_OPENED.increment();
+
+        } catch (Exception e) {
+            // forget the run: the next decision re-reads / reopens it
+            st.decisionRun = null;
+            System.err.println("[DB] pump_decision_runs write failed: " + e.getMessage());
+        }
+    }
+
+    private void flush(DecisionRun run) throws Exception {
+        dao.updateDecisionRun(run.id, run.runCount, new Timestamp(run.lastMs));
+        run.flushedCount = run.runCount;
+        run.flushedAtMs = run.lastMs;
+    }
+}
@@ -0,0 +1,50 @@
+package core.logic;
+
+/**
+ * Why PumpLogic returned what it returned, as a stable 1-byte code
+ * (stored in dbo.pump_decision_runs.reason_code instead of a free-text reason).
+ *
+ * Codes are persisted: never renumber, only append.
+ */
+public enum DecisionReason {
+    UNKNOWN(0),          // rows compacted from the old free-text log
+    MISSING_INPUT(1),    // soil / water_tank / raining missing => fail safe OFF
+    RAINING(2),
+    TANK_LOW(3),
+    SOIL_DRY(4),         // soil < moistureOn => ON
+    SOIL_TREND(5),       // projected soil < moistureOn within lookaheadMin => ON
+    SOIL_WET(6),         // soil > moistureOff => OFF
+    HOLD(7),             // inside the hysteresis band, keep current command
+    MANUAL(8);           // MANUAL mode, manualPumpCmd
+
+    public final int code;
+
+    DecisionReason(int code) {
+        this.code = code;
+    }
+
+    private static final DecisionReason[] BY_CODE = new DecisionReason[9];
+
+    static {
+        for (DecisionReason r : values()) BY_CODE[r.code] = r;
+    }
+
+    public static DecisionReason ofCode(int code) {
+        return code >= 0 && code < BY_CODE.length && BY_CODE[code] != null ? BY_CODE[code] : UNKNOWN;
+    }
+
+    /** Command implied by this reason; HOLD / MANUAL keep the given current command. */
+    public boolean pumpCmd(boolean current) {
+        switch (this) {
+            case SOIL_DRY:
+            case SOIL_TREND:
+                return true;
+            case HOLD:
+            case MANUAL:
+            case UNKNOWN:
+                return current;
+            default:
+                return false;
+        }
+    }
+}
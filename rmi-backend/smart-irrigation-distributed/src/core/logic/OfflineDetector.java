@@ -0,0 +1,116 @@
+package core.logic;
+
+import core.db.IrrigationDao;
+import core.dto.DeviceStatusDTO;
+import core.state.TimingWheel;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Predicate;
+
+/**
+ * Emits OFFLINE when a device stops reporting and ONLINE when it comes back.
+ *
+ * Every pushReading re-arms the device deadline in a TimingWheel (O(1)),
+ * so detection does not depend on anybody calling getStatus.
+ */
+public class OfflineDetector {
+
+    private final IrrigationDao dao;
+    private final int offlineSec;
+    private final TimingWheel<String> wheel;
+
+    // with several core shards each one only watches the devices it owns
+    private final Predicate<String> owned;
+
+    // when each device went offline (ms), to report the outage length on recovery
+    private final ConcurrentHashMap<String, Long> offlineSinceMs = new ConcurrentHashMap<>();
+
+    // alert inserts hit the DB: keep them off the wheel thread so ticks stay on time
+    private final ExecutorService alertWriter = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "offline-alerts");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public OfflineDetector(IrrigationDao dao, int offlineSec) {
+        this(dao, offlineSec, d -> true);
+    }
+
+    public OfflineDetector(IrrigationDao dao, int offlineSec, Predicate<String> owned) {
+        this.dao = dao;
+        this.owned = owned;
+        this.offlineSec = offlineSec > 0 ? offlineSec : 20;
+        this.wheel = new TimingWheel<>(this.offlineSec * 1000L, 1000, 64, this::onExpired);
+    }
+
+    /** Arm every known device from dbo.devices so silent devices are detected after a restart. */
+    public void seedFromDb() {
+        try {
+            List<DeviceStatusDTO> all = dao.listStatus(offlineSec);
+            for (DeviceStatusDTO s : all) {
+                if (s == null || s.device == null || s.device.isBlank()) continue;
+                if (!owned.test(s.device)) continue;
+
+                if (s.secondsSinceLastSeen < 0) {
+                    // never seen: nothing to go offline from, first reading arms it
+                    continue;
+                }
+                wheel.seed(s.device, s.secondsSinceLastSeen * 1000L);
+                if (s.secondsSinceLastSeen > offlineSec) {
+                    offlineSinceMs.put(s.device,
+                            System.currentTimeMillis() - (s.secondsSinceLastSeen - offlineSec) * 1000L);
+                }
+            }
+            System.out.println("[OFFLINE] seeded " + wheel.size() + " device(s), timeout=" + offlineSec + "s");
+        } catch (Exception e) {
+            System.err.println("[OFFLINE] seed from DB failed: " + e.getMessage());
+        }
+    }
+
+    public void start() {
+        wheel.start();
+    }
+
+    public void stop() {
+        wheel.stop();
+        alertWriter.shutdown();
+    }
+
+    /** Called on every accepted reading. */
+    public void onReading(String device) {
+        if (device == null || device.isBlank()) return;
+
+        if (wheel.touch(device)) {
+            Long since = offlineSinceMs.remove(device);
+            long downSec = since == null ? -1 : (System.currentTimeMillis() - since) / 1000;
+
+            String msg = downSec >= 0
+                    ? "Device back online after " + downSec + "s"
+                    : "Device back online";
+            writeAlert(device, "ONLINE", "INFO", msg);
+        }
+    }
+
+    public boolean isOffline(String device) {
+        return wheel.isExpired(device);
+    }
+
+    private void onExpired(String device) {
+        offlineSinceMs.put(device, System.currentTimeMillis() - offlineSec * 1000L);
+        writeAlert(device, "OFFLINE", "WARN", "No readings for " + offlineSec + "s");
+    }
+
+    private void writeAlert(String device, String type, String severity, String message) {
+        alertWriter.execute(() -> {
+            try {
+                dao.insertAlert(device, type, severity, message);
+                System.out.println("[OFFLINE] " + type + " device=" + device);
+            } catch (Exception e) {
+                System.err.println("[DB] insertAlert " + type + " failed: " + e.getMessage());
+            }
+        });
+    }
+}
@@ -0,0 +1,62 @@
+package core.logic;
+
+import core.dto.ProfileDTO;
+
+/**
+ * Effective thresholds of one device (immutable, resolved once and shared by the decision path).
+ */
+public final class Profile {
+
+    public static final Profile BUILTIN = new Profile(30, 40, 10, 15, 0, "BUILTIN");
+
+    public final int moistureOn;
+    public final int moistureOff;
+    public final int tankLow;
+    public final int tankRecover;
+    public final int lookaheadMin;   // 0 = decide on the current reading only
+    public final String source;
+
+    public Profile(int moistureOn, int moistureOff, int tankLow, int tankRecover, int lookaheadMin, String source) {
+        this.moistureOn = moistureOn;
+        this.moistureOff = moistureOff;
+        this.tankLow = tankLow;
+        this.tankRecover = tankRecover;
+        this.lookaheadMin = lookaheadMin;
+        this.source = source;
+    }
+
+    /** Fields set in row win over this profile; source records the level they came from. */
+    Profile overlaidBy(ProfileDTO row, String level) {
+        if (row == null) return this;
+        if (row.moistureOn == null && row.moistureOff == null && row.tankLow == null && row.tankRecover == null
+                && row.lookaheadMin == null) return this;
+
+        return new Profile(
+                row.moistureOn != null ? row.moistureOn : moistureOn,
+                row.moistureOff != null ? row.moistureOff : moistureOff,
+                row.tankLow != null ? row.tankLow : tankLow,
+                row.tankRecover != null ? row.tankRecover : tankRecover,
+                row.lookaheadMin != null ? row.lookaheadMin : lookaheadMin,
+                level + "," + source);
+    }
+
+    public ProfileDTO toDto(String device, String zone) {
+        ProfileDTO p = new ProfileDTO();
+        p.device = device;
+        p.zone = zone;
+        p.moistureOn = moistureOn;
+        p.moistureOff = moistureOff;
+        p.tankLow = tankLow;
+        p.tankRecover = tankRecover;
+        p.lookaheadMin = lookaheadMin;
+        p.source = source;
+        return p;
+    }
+
+    @Override
+    public String toString() {
+        return "Profile{on=" + moistureOn + ", off=" + moistureOff
+                + ", tankLow=" + tankLow + ", tankRecover=" + tankRecover
+                + ", lookaheadMin=" + lookaheadMin + ", source=" + source + "}";
+    }
+}
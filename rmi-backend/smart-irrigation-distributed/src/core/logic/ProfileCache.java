@@ -0,0 +1,121 @@
+package core.logic;
+
+import core.db.IrrigationDao;
+import core.dto.ProfileDTO;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory copy of dbo.irrigation_profiles + device zones.
+ *
+ * The decision path only calls forDevice(...), which is a map lookup
+ * (resolved Profiles are memoized per snapshot). reload() builds a new snapshot
+ * with two queries and swaps it in one volatile write; it runs after every
+ * profile/zone change and every -Dirrigation.profileReloadSec (default 30s)
+ * to pick up edits made by other shards or directly in the DB.
+ */
+public class ProfileCache {
+
+    /** One consistent view of the table; resolved profiles are cached per snapshot. */
+    private static final class Snapshot {
+        final Map<String, ProfileDTO> byDevice;
+        final Map<String, ProfileDTO> byZone;
+        final ProfileDTO siteDefault;
+        final Map<String, String> zones;
+        final ConcurrentHashMap<String, Profile> resolved = new ConcurrentHashMap<>();
+
+        Snapshot(Map<String, ProfileDTO> byDevice, Map<String, ProfileDTO> byZone,
+                 ProfileDTO siteDefault, Map<String, String> zones) {
+            this.byDevice = byDevice;
+            this.byZone = byZone;
+            this.siteDefault = siteDefault;
+            this.zones = zones;
+        }
+    }
+
+    private final IrrigationDao dao;
+    private volatile Snapshot snap = new Snapshot(Map.of(), Map.of(), null, Map.of());
+
+    private final ScheduledExecutorService reloader = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "profile-reload");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public ProfileCache(IrrigationDao dao) {
+        this.dao = dao;
+    }
+
+    public void start() {
+        int every = Integer.getInteger("irrigation.profileReloadSec", 30);
+        if (every > 0) {
+            reloader.scheduleWithFixedDelay(this::reloadQuietly, every, every, TimeUnit.SECONDS);
+        }
+    }
+
+    public void stop() {
+        reloader.shutdownNow();
+    }
+
+    /** Effective thresholds: device row -> zone row -> site default -> built-in, field by field. */
+    public Profile forDevice(String device) {
+        Snapshot s = snap;
+        if (device == null || device.isBlank()) return resolve(s, null);
+        return s.resolved.computeIfAbsent(device, d -> resolve(s, d));
+    }
+
+    /** What forDevice(row.device) would return if row replaced the device's current override. */
+    public Profile preview(ProfileDTO row) {
+        Snapshot s = snap;
+        Map<String, ProfileDTO> byDevice = new HashMap<>(s.byDevice);
+        byDevice.put(row.device, row);
+        return resolve(new Snapshot(byDevice, s.byZone, s.siteDefault, s.zones), row.device);
+    }
+
+    public String zoneOf(String device) {
+        return device == null ? null : snap.zones.get(device);
+    }
+
+    public void reload() throws Exception {
+        Map<String, ProfileDTO> byDevice = new HashMap<>();
+        Map<String, ProfileDTO> byZone = new HashMap<>();
+        ProfileDTO siteDefault = null;
+
+        List<ProfileDTO> rows = dao.loadProfiles();
+        for (ProfileDTO p : rows) {
+            if (p.device != null) byDevice.put(p.device, p);
+            else if (p.zone != null) byZone.put(p.zone, p);
+            else siteDefault = p;
+        }
+
+        snap = new Snapshot(byDevice, byZone, siteDefault, dao.loadDeviceZones());
+    }
+
+    public void reloadQuietly() {
+        try {
+            reload();
+        } catch (Exception e) {
+            System.err.println("[DB] profile reload failed (keeping previous profiles): " + e.getMessage());
+        }
+    }
+
+    public int size() {
+        Snapshot s = snap;
+        return s.byDevice.size() + s.byZone.size() + (s.siteDefault != null ? 1 : 0);
+    }
+
+    private static Profile resolve(Snapshot s, String device) {
+        Profile p = Profile.BUILTIN.overlaidBy(s.siteDefault, "DEFAULT");
+        if (device == null) return p;
+
+        String zone = s.zones.get(device);
+        if (zone != null) p = p.overlaidBy(s.byZone.get(zone), "ZONE:" + zone);
+        return p.overlaidBy(s.byDevice.get(device), "DEVICE");
+    }
+}
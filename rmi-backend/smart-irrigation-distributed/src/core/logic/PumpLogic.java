@@ -4,28 +4,41 @@ import core.dto.ReadingDTO;
 
 public class PumpLogic {
 
-    // TEMP defaults for MVP (we will later make them configurable via RMI + DB)
-    private static final int MOISTURE_ON  = 30;
-    private static final int MOISTURE_OFF = 40;
-    private static final int TANK_LOW     = 10;
-
-    // Simple stateless decision for now (no mode yet)
+    // thresholds come from the device's Profile (see ProfileCache); built-in 30/40/10 when none is set
     public static boolean decidePumpCmd(ReadingDTO r, boolean currentCmd) {
-        if (r == null) return false;
-        if (r.device == null || r.device.isBlank()) return false;
+        return decidePumpCmd(r, currentCmd, Profile.BUILTIN);
+    }
 
-        // missing critical inputs => fail safe OFF
-        if (r.soil == null || r.waterTank == null || r.raining == null) return false;
+    public static boolean decidePumpCmd(ReadingDTO r, boolean currentCmd, Profile p) {
+        return decidePumpCmd(r, currentCmd, p, null);
+    }
 
-        boolean tankLow = r.waterTank < TANK_LOW;
+    /**
+     * With a soil trend and p.lookaheadMin > 0 the pump also starts when the moisture is
+     * projected to cross moistureOn within lookaheadMin (slope from TrendStats). Stops are unchanged.
+     */
+    public static boolean decidePumpCmd(ReadingDTO r, boolean currentCmd, Profile p, TrendStats soilTrend) {
+        return decide(r, currentCmd, p, soilTrend).pumpCmd(currentCmd);
+    }
+
+    /** Same rules as decidePumpCmd, returning the rule that fired (command = reason.pumpCmd(currentCmd)). */
+    public static DecisionReason decide(ReadingDTO r, boolean currentCmd, Profile p, TrendStats soilTrend) {
+        if (r == null) return DecisionReason.MISSING_INPUT;
+        if (r.device == null || r.device.isBlank()) return DecisionReason.MISSING_INPUT;
+
+        // missing critical inputs => fail safe OFF
+        if (r.soil == null || r.waterTank == null || r.raining == null) return DecisionReason.MISSING_INPUT;
 
-        // hard stops
-        if (r.raining || tankLow) return false;
+        // hard stops (tank: same rule as the TANK_LOW alert)
+        if (r.raining) return DecisionReason.RAINING;
+        if (r.waterTank <= p.tankLow) return DecisionReason.TANK_LOW;
 
         // hysteresis using currentCmd
-        if (!currentCmd && r.soil < MOISTURE_ON) return true;
-        if (currentCmd && r.soil > MOISTURE_OFF) return false;
+        if (!currentCmd && r.soil < p.moistureOn) return DecisionReason.SOIL_DRY;
+        if (!currentCmd && p.lookaheadMin > 0 && soilTrend != null
+                && soilTrend.projected(p.lookaheadMin) < p.moistureOn) return DecisionReason.SOIL_TREND;
+        if (currentCmd && r.soil > p.moistureOff) return DecisionReason.SOIL_WET;
 
-        return currentCmd;
+        return DecisionReason.HOLD;
     }
 }
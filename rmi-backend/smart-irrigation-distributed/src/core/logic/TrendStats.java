@@ -0,0 +1,141 @@
+package core.logic;
+
+import java.io.Serializable;
+
+/**
+ * Streaming trend of one signal (soil %, tank %): EWMA level + weighted least-squares slope.
+ *
+ * O(1) per sample and a handful of doubles per device. Older samples decay with
+ * exp(-age / tau), so the window is "about the last tau seconds" whatever the reporting rate.
+ * Times are kept relative to the latest sample (shifted on every update) to stay numerically stable.
+ *
+ * Not thread-safe: updated and read on the device's lane (see StripedExecutor); other
+ * threads read a {@link #snapshot()} the lane published.
+ */
+public final class TrendStats implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    // decay time constant, -Dirrigation.trendTauSec (default 10 min)
+    public static final int DEFAULT_TAU_SEC = Integer.getInteger("irrigation.trendTauSec", 600);
+
+    private final double tauSec;
+
+    private long lastMs = Long.MIN_VALUE;
+    private long samples;
+
+    private double ewma;
+    private double last;
+
+    // decayed sums over (t, y), t in hours relative to the latest sample (t <= 0)
+    private double s0, st, sy, stt, sty;
+
+    public TrendStats() {
+        this(DEFAULT_TAU_SEC);
+    }
+
+    public TrendStats(double tauSec) {
+        this.tauSec = tauSec > 0 ? tauSec : 600;
+    }
+
+    public void add(long nowMs, double y) {
+        if (samples == 0) {
+            ewma = y;
+        } else {
+            double dtSec = Math.max(0, nowMs - lastMs) / 1000.0;
+            double decay = Math.exp(-dtSec / tauSec);
+
+            // time-aware EWMA: a long gap weighs the new sample more
+            ewma = y + (ewma - y) * decay;
+
+            // shift old sample times back by dt (hours), then decay
+            double dt = dtSec / 3600.0;
+            stt = decay * (stt - 2 * dt * st + dt * dt * s0);
+            sty = decay * (sty - dt * sy);
+            st = decay * (st - dt * s0);
+            sy = decay * sy;
+            s0 = decay * s0;
+        }
+
+        // new sample sits at t = 0
+        s0 += 1;
+        sy += y;
+
+        last = y;
+        lastMs = nowMs;
+        samples++;
+    }
+
+    public long samples() {
+        return samples;
+    }
+
+    public double ewma() {
+        return ewma;
+    }
+
+    public double last() {
+        return last;
+    }
+
+    public long lastMs() {
+        return lastMs;
+    }
+
+    /** Units per hour; NaN until there are at least 3 samples spread over time. */
+    public double slopePerHour() {
+        if (samples < 3) return Double.NaN;
+        double den = s0 * stt - st * st;
+        if (!(Math.abs(den) > 1e-12)) return Double.NaN;
+        return (s0 * sty - st * sy) / den;
+    }
+
+    /**
+     * Minutes until the signal reaches {@code floor} at the current slope,
+     * or NaN if it is not falling (or there is no slope yet).
+     */
+    public double minutesTo(double floor) {
+        return minutesTo(last, slopePerHour(), floor);
+    }
+
+    private static double minutesTo(double last, double slope, double floor) {
+        if (Double.isNaN(slope) || slope >= -1e-9) return Double.NaN;
+        double gap = last - floor;
+        return gap <= 0 ? 0 : gap / -slope * 60.0;
+    }
+
+    /** Level expected after {@code minutes} at the current slope (the EWMA if there is no slope yet). */
+    public double projected(double minutes) {
+        double slope = slopePerHour();
+        return Double.isNaN(slope) ? ewma : ewma + slope * minutes / 60.0;
+    }
+
+    public Snapshot snapshot() {
+        return samples == 0 ? Snapshot.EMPTY : new Snapshot(samples, lastMs, ewma, last, slopePerHour());
+    }
+
+    /** Immutable copy of the trend at one sample, safe to read from any thread. */
+    public static final class Snapshot implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        public static final Snapshot EMPTY = new Snapshot(0, Long.MIN_VALUE, 0, 0, Double.NaN);
+
+        public final long samples;
+        public final long lastMs;
+        public final double ewma;
+        public final double last;
+        public final double slopePerHour;
+
+        private Snapshot(long samples, long lastMs, double ewma, double last, double slopePerHour) {
+            this.samples = samples;
+            this.lastMs = lastMs;
+            this.ewma = ewma;
+            this.last = last;
+            this.slopePerHour = slopePerHour;
+        }
+
+        /** See {@link TrendStats#minutesTo(double)}. */
+        public double minutesTo(double floor) {
+            return TrendStats.minutesTo(last, slopePerHour, floor);
+        }
+    }
+}
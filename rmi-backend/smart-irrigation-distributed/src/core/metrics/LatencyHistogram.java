@@ -0,0 +1,118 @@
+package core.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * HDR-style log-linear latency histogram (microsecond resolution).
+ *
+ * Each power of two is split into 16 linear sub-buckets (~6% relative error),
+ * covering 1us .. ~12 days in 608 counters. record() is a handful of shifts plus
+ * one atomic increment, no locks, so it is safe to call from any hot path.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 4;
+    private static final int SUB = 1 << SUB_BITS;       // 16 sub-buckets per power of two
+    private static final int MAX_EXP = 40;               // 2^40 us ~ 12.7 days
+    private static final int SIZE = (MAX_EXP - SUB_BITS + 2) * SUB;
+
+    // Prometheus "le" bounds exported (seconds)
+    private static final double[] EXPORT_BOUNDS = {
+            0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005, 0.01,
+            0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10
+    };
+
+    private final AtomicLongArray counts = new AtomicLongArray(SIZE);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumMicros = new LongAdder();
+
+    public void recordNanos(long nanos) {
+        long us = TimeUnit.NANOSECONDS.toMicros(nanos);
+        if (us < 0) us = 0;
+
+        counts.incrementAndGet(indexOf(us));
+        count.increment();
+        sumMicros.add(us);
+    }
+
+    /** Convenience for the usual "long t0 = System.nanoTime(); ... ; h.since(t0)" pattern. */
+    public void since(long startNanos) {
+        recordNanos(System.nanoTime() - startNanos);
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    /** Approximate quantile in seconds (upper bound of the bucket holding the rank). */
+    public double quantileSeconds(double q) {
+        long total = 0;
+        long[] snap = new long[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            snap[i] = counts.get(i);
+            total += snap[i];
+        }
+        if (total == 0) return 0;
+
+        long rank = (long) Math.ceil(q * total);
+        long seen = 0;
+        for (int i = 0; i < SIZE; i++) {
+            seen += snap[i];
+            if (seen >= rank) return upperMicros(i) / 1e6;
+        }
+        return upperMicros(SIZE - 1) / 1e6;
+    }
+
+    /** Prometheus text exposition (histogram type) for one labelled series. */
+    void writePrometheus(StringBuilder sb, String name, String labels) {
+        long[] snap = new long[SIZE];
+        for (int i = 0; i < SIZE; i++) snap[i] = counts.get(i);
+
+        int idx = 0;
+        long cumulative = 0;
+        for (double le : EXPORT_BOUNDS) {
+            long leMicros = (long) (le * 1e6);
+            while (idx < SIZE && upperMicros(idx) <= leMicros) {
+                cumulative += snap[idx++];
+            }
+            sb.append(name).append("_bucket{").append(labels);
+            if (!labels.isEmpty()) sb.append(',');
+            sb.append("le=\"").append(le).append("\"} ").append(cumulative).append('\n');
+        }
+
+        long total = 0;
+        for (long c : snap) total += c;
+
+        String braces = labels.isEmpty() ? "" : "{" + labels + "}";
+        sb.append(name).append("_bucket{").append(labels);
+        if (!labels.isEmpty()) sb.append(',');
+        sb.append("le=\"+Inf\"} ").append(total).append('\n');
+        sb.append(name).append("_sum").append(braces).append(' ').append(sumMicros.sum() / 1e6).append('\n');
+        sb.append(name).append("_count").append(braces).append(' ').append(total).append('\n');
+    }
+
+    // ======================================================================
+    // BUCKET MATH
+    // ======================================================================
+
+    static int indexOf(long us) {
+        if (us < SUB) return (int) us;
+
+        int exp = 63 - Long.numberOfLeadingZeros(us);
+        if (exp > MAX_EXP) return SIZE - 1;
+
+        int mantissa = (int) ((us >>> (exp - SUB_BITS)) & (SUB - 1));
+        return (exp - SUB_BITS + 1) * SUB + mantissa;
+    }
+
+    /** Largest microsecond value that lands in bucket i. */
+    static long upperMicros(int i) {
+        if (i < SUB) return i;
+
+        int exp = i / SUB + SUB_BITS - 1;
+        int mantissa = i % SUB;
+        return ((long) (SUB + mantissa + 1) << (exp - SUB_BITS)) - 1;
+    }
+}
@@ -0,0 +1,123 @@
+package core.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Process-wide metrics registry (histograms, counters, gauges).
+ *
+ * Lookups are ConcurrentHashMap reads, so callers on hot paths can either look
+ * a series up per call or keep the returned object in a static field.
+ * writePrometheus() renders everything in the Prometheus text format.
+ */
+public final class Metrics {
+
+    private static final class Family {
+        final String type; // histogram, counter, gauge
+        final String help;
+        final ConcurrentHashMap<String, Object> series = new ConcurrentHashMap<>();
+
+        Family(String type, String help) {
+            this.type = type;
+            this.help = help;
+        }
+    }
+
+    private static final ConcurrentHashMap<String, Family> FAMILIES = new ConcurrentHashMap<>();
+
+    private Metrics() {}
+
+    /**
+     * @param labels alternating key/value pairs, e.g. "method", "pushReading"
+     */
+    public static LatencyHistogram histogram(String name, String help, String... labels) {
+        return (LatencyHistogram) family(name, "histogram", help)
+                .series.computeIfAbsent(labelString(labels), k -> new LatencyHistogram());
+    }
+
+    public static LongAdder counter(String name, String help, String... labels) {
+        return (LongAdder) family(name, "counter", help)
+                .series.computeIfAbsent(labelString(labels), k -> new LongAdder());
+    }
+
+    /** Registers (or replaces) a gauge read at scrape time. */
+    public static void gauge(String name, String help, Supplier<? extends Number> value, String... labels) {
+        family(name, "gauge", help).series.put(labelString(labels), value);
+    }
+
+    public static String toPrometheus() {
+        StringBuilder sb = new StringBuilder(4096);
+        writePrometheus(sb);
+        return sb.toString();
+    }
+
+    public static void writePrometheus(StringBuilder sb) {
+        // sorted for stable output
+        for (Map.Entry<String, Family> fe : new TreeMap<>(FAMILIES).entrySet()) {
+            String name = fe.getKey();
+            Family f = fe.getValue();
+
+            sb.append("# HELP ").append(name).append(' ').append(f.help).append('\n');
+            sb.append("# TYPE ").append(name).append(' ').append(f.type).append('\n');
+
+            for (Map.Entry<String, Object> se : new TreeMap<>(f.series).entrySet()) {
+                String labels = se.getKey();
+                Object m = se.getValue();
+
+                if (m instanceof LatencyHistogram h) {
+                    h.writePrometheus(sb, name, labels);
+                    continue;
+                }
+
+                double v;
+                if (m instanceof LongAdder c) {
+                    v = c.sum();
+                } else {
+                    try {
+                        Number n = (Number) ((Supplier<?>) m).get();
+                        v = n == null ? Double.NaN : n.doubleValue();
+                    } catch (Exception e) {
+                        v = Double.NaN;
+                    }
+                }
+
+                sb.append(name);
+                if (!labels.isEmpty()) sb.append('{').append(labels).append('}');
+                sb.append(' ').append(format(v)).append('\n');
+            }
+        }
+    }
+
+    private static Family family(String name, String type, String help) {
+        Family f = FAMILIES.computeIfAbsent(name, n -> new Family(type, help));
+        if (!f.type.equals(type)) {
+            throw new IllegalArgumentException("metric " + name + " already registered as " + f.type);
+        }
+        return f;
+    }
+
+    private static String labelString(String... kv) {
+        if (kv == null || kv.length == 0) return "";
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i + 1 < kv.length; i += 2) {
+            if (sb.length() > 0) sb.append(',');
+            sb.append(kv[i]).append("=\"").append(escape(kv[i + 1])).append('"');
+        }
+        return sb.toString();
+    }
+
+    private static String escape(String s) {
+        if (s == null) return "";
+        return s.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static String format(double v) {
+        if (Double.isNaN(v)) return "NaN";
+        if (v == Math.rint(v) && Math.abs(v) < 1e15) return Long.toString((long) v);
+        return Double.toString(v);
+    }
+}
@@ -0,0 +1,317 @@
+package core.rmi;
+
+import core.dto.ReadingDTO;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fleet-wide history export: every reading of a set of devices in [from, to) as CSV or NDJSON,
+ * streamed to an OutputStream in constant memory. Used by the gateway and dashboard-api.
+ *
+ * The job is split into partitions of one device x one time slice. Up to {@code parallel}
+ * partitions of an export run at once, each paging through getHistoryAfter ({@code pageSize} rows
+ * a call, (created_utc, id) keyset cursor, so a page never loses or repeats rows of a busy
+ * millisecond) and rendering every page into a small queue; the calling thread writes the
+ * partitions out in order (device, then time). At most parallel x (queuedPages + 1)
+ * pages are in memory, and a slow client just makes the producers wait.
+ * History calls of all running exports together are capped at {@code maxCalls}, so an export
+ * cannot take every core / SQL Server connection from the dashboards.
+ */
+public final class HistoryExport {
+
+    public enum Format {
+        CSV("text/csv; charset=utf-8", "csv"),
+        NDJSON("application/x-ndjson; charset=utf-8", "ndjson");
+
+        public final String contentType;
+        public final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        /** "csv" / "ndjson" (also "jsonl"); anything else is rejected. */
+        public static Format parse(String s) {
+            if (s == null || s.isBlank() || s.equalsIgnoreCase("csv")) return CSV;
+            if (s.equalsIgnoreCase("ndjson") || s.equalsIgnoreCase("jsonl")) return NDJSON;
+            throw new IllegalArgumentException("format must be csv or ndjson");
+        }
+    }
+
+    /** One getHistoryAfter call: rows after (afterUtc, afterId), created_utc <= toUtc, ORDER BY created_utc, id. */
+    @FunctionalInterface
+    public interface PageSource {
+        List<ReadingDTO> page(String device, String afterUtc, long afterId, String toUtc, int limit) throws Exception;
+    }
+
+    /** What one export wrote. */
+    public static final class Stats {
+        public final long rows;
+        public final long bytes;
+        public final int partitions;
+        public final long millis;
+
+        Stats(long rows, long bytes, int partitions, long millis) {
+            this.rows = rows;
+            this.bytes = bytes;
+            this.partitions = partitions;
+            this.millis = millis;
+        }
+
+        public double rowsPerSec() {
+            return millis > 0 ? rows * 1000.0 / millis : rows;
+        }
+
+        @Override
+        public String toString() {
+            return rows + " rows (" + bytes / 1024 + " KiB) from " + partitions + " partitions in "
+                    + millis + " ms, " + Math.round(rowsPerSec()) + " rows/s";
+        }
+    }
+
+    private static final byte[] CSV_HEADER =
+            "device,created_utc,soil,water_tank,raining,pump,temp_c,humidity\n".getBytes(StandardCharsets.UTF_8);
+
+    private static final Chunk END = new Chunk(null, 0, null);
+
+    private final PageSource source;
+    private final int parallel;
+    private final int pageSize;
+    private final int queuedPages;
+    private final Duration slice;
+    private final Semaphore calls;
+    private final Semaphore exports;
+
+    private final ExecutorService workers = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "history-export");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * @param parallel    partitions of one export fetched at once
+     * @param maxCalls    history calls in flight across all exports
+     * @param maxExports  exports running at once (tryBegin fails beyond that)
+     * @param pageSize    rows per history call (the core caps it at 5000)
+     * @param sliceHours  time range of one partition
+     */
+    public HistoryExport(PageSource source, int parallel, int maxCalls, int maxExports, int pageSize, int sliceHours) {
+        this.source = source;
+        this.parallel = Math.max(1, parallel);
+        this.pageSize = Math.max(100, Math.min(5000, pageSize));
+        this.queuedPages = 2;
+        this.slice = Duration.ofHours(Math.max(1, sliceHours));
+        this.calls = new Semaphore(Math.max(1, maxCalls));
+        this.exports = new Semaphore(Math.max(1, maxExports));
+    }
+
+    /** Reserve a slot before sending response headers; pair with end(). */
+    public boolean tryBegin() {
+        return exports.tryAcquire();
+    }
+
+    public void end() {
+        exports.release();
+    }
+
+    /**
+     * Writes the whole export (header included) and flushes. A failure after the first byte
+     * is also written to the stream ("# export failed" line / {"error":...}) before rethrowing,
+     * because the status code is already gone by then.
+     */
+    public Stats export(List<String> devices, Instant from, Instant to, Format format, OutputStream out) throws Exception {
+        long t0 = System.nanoTime();
+        List<String> ids = new ArrayList<>();
+        for (String d : devices) if (d != null && !d.isBlank()) ids.add(d);
+        long sliceMs = slice.toMillis();
+        long slices = Math.max(0, (to.toEpochMilli() - from.toEpochMilli() + sliceMs - 1) / sliceMs);
+        long total = ids.size() * slices;
+
+        long rows = 0;
+        long bytes = 0;
+        Deque<Partition> running = new ArrayDeque<>();
+        long next = 0;
+
+        try {
+            if (format == Format.CSV) {
+                out.write(CSV_HEADER);
+                bytes += CSV_HEADER.length;
+            }
+
+            while (next < total || !running.isEmpty()) {
+                while (running.size() < parallel && next < total) {
+                    // partitions are made as they are started: device-major, then time
+                    String device = ids.get((int) (next / slices));
+                    Instant a = from.plus(slice.multipliedBy(next % slices));
+                    Instant b = a.plus(slice).isAfter(to) ? to : a.plus(slice);
+                    Partition p = new Partition(device, a, b, format);
+                    next++;
+                    running.addLast(p);
+                    workers.execute(p::run);
+                }
+
+                Partition head = running.peekFirst();
+                Chunk c = head.chunks.take();
+                if (c == END) {
+                    running.pollFirst();
+                    continue;
+                }
+                if (c.error != null) throw c.error;
+
+                out.write(c.bytes);
+                out.flush();
+                rows += c.rows;
+                bytes += c.bytes.length;
+            }
+            out.flush();
+        } catch (Exception e) {
+            String msg = String.valueOf(e.getMessage()).replace('\n', ' ');
+            try {
+                out.write((format == Format.CSV
+                        ? "# export failed: " + msg + "\n"
+                        : "{\"error\":\"" + escape(msg) + "\"}\n").getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            } catch (Exception ignored) {
+                // client is gone
+            }
+            throw e;
+        } finally {
+            for (Partition p : running) p.cancelled = true;
+        }
+
+        return new Stats(rows, bytes, (int) total, (System.nanoTime() - t0) / 1_000_000);
+    }
+
+    // =========================
+    // PARTITION (one device, one slice)
+    // =========================
+
+    private static final class Chunk {
+        final byte[] bytes;
+        final int rows;
+        final Exception error;
+
+        Chunk(byte[] bytes, int rows, Exception error) {
+            this.bytes = bytes;
+            this.rows = rows;
+            this.error = error;
+        }
+    }
+
+    private final class Partition {
+        final String device;
+        final Instant from;
+        final Instant to;
+        final Format format;
+        final BlockingQueue<Chunk> chunks = new ArrayBlockingQueue<>(queuedPages + 1);
+        volatile boolean cancelled;
+
+        Partition(String device, Instant from, Instant to, Format format) {
+            this.device = device;
+            this.from = from;
+            this.to = to;
+            this.format = format;
+        }
+
+        void run() {
+            try {
+                String last = to.minusMillis(1).toString(); // the upper bound is inclusive
+                String afterUtc = from.toString();
+                long afterId = Long.MIN_VALUE; // first page: every row at from
+
+                while (!cancelled) {
+                    List<ReadingDTO> page;
+                    calls.acquire();
+                    try {
+                        page = source.page(device, afterUtc, afterId, last, pageSize);
+                    } finally {
+                        calls.release();
+                    }
+                    if (page == null || page.isEmpty()) break;
+
+                    StringBuilder sb = new StringBuilder(page.size() * 96);
+                    for (ReadingDTO r : page) render(sb, r);
+                    if (!put(new Chunk(sb.toString().getBytes(StandardCharsets.UTF_8), page.size(), null))) return;
+                    if (page.size() < pageSize) break;
+
+                    // next page starts right after the last row, even inside the same millisecond
+                    ReadingDTO tail = page.get(page.size() - 1);
+                    if (tail.createdUtc == null || tail.id == null) {
+                        throw new IllegalStateException("history page without (created_utc, id) to continue from");
+                    }
+                    afterUtc = tail.createdUtc;
+                    afterId = tail.id;
+                }
+                put(END);
+            } catch (Exception e) {
+                put(new Chunk(null, 0, new Exception("export of " + device + " failed: " + e.getMessage(), e)));
+            }
+        }
+
+        /** False once the export was abandoned (the writer stopped taking chunks). */
+        private boolean put(Chunk c) {
+            try {
+                while (!cancelled) {
+                    if (chunks.offer(c, 200, TimeUnit.MILLISECONDS)) return true;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return false;
+        }
+
+        private void render(StringBuilder sb, ReadingDTO r) {
+            if (format == Format.CSV) {
+                sb.append(csv(r.device)).append(',')
+                        .append(r.createdUtc != null ? r.createdUtc : "").append(',')
+                        .append(r.soil != null ? r.soil : "").append(',')
+                        .append(r.waterTank != null ? r.waterTank : "").append(',')
+                        .append(r.raining != null ? r.raining : "").append(',')
+                        .append(r.pump != null ? r.pump : "").append(',')
+                        .append(r.tempC != null ? r.tempC : "").append(',')
+                        .append(r.humidity != null ? r.humidity : "").append('\n');
+            } else {
+                sb.append("{\"device\":\"").append(escape(r.device)).append('"')
+                        .append(",\"soil\":").append(r.soil)
+                        .append(",\"water_tank\":").append(r.waterTank)
+                        .append(",\"raining\":").append(r.raining)
+                        .append(",\"pump\":").append(r.pump)
+                        .append(",\"temp_c\":").append(json(r.tempC))
+                        .append(",\"humidity\":").append(json(r.humidity))
+                        .append(",\"created_utc\":")
+                        .append(r.createdUtc == null ? "null" : "\"" + escape(r.createdUtc) + "\"")
+                        .append("}\n");
+            }
+        }
+    }
+
+    /** JSON has no NaN / Infinity: those are written as null, like a missing value. */
+    static String json(Double v) {
+        return v == null || v.isNaN() || v.isInfinite() ? "null" : v.toString();
+    }
+
+    private static String csv(String s) {
+        if (s == null) return "";
+        if (s.indexOf(',') < 0 && s.indexOf('"') < 0 && s.indexOf('\n') < 0) return s;
+        return "\"" + s.replace("\"", "\"\"") + "\"";
+    }
+
+    private static String escape(String s) {
+        if (s == null) return "";
+        return s.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
@@ -0,0 +1,164 @@
+package core.rmi;
+
+import core.dto.ReadingDTO;
+import core.dto.ReadingList;
+import core.metrics.Metrics;
+
+import java.rmi.RemoteException;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live readings for the registered ReadingListeners (one per dashboard-api instance).
+ *
+ * publish() is called right after pushReading stored the reading and only parks it in each
+ * listener's pending map, so a slow or dead dashboard never delays a pump decision. The map
+ * keeps the latest reading per device (the stream only shows the current state anyway): a
+ * newer reading replaces the one still waiting, so a chatty device cannot push a quiet one
+ * out. At most -Dirrigation.live.queue (4096) devices wait; past that the one waiting longest
+ * is dropped. One "live-feed" thread per listener sends what is pending as one batch (at most
+ * -Dirrigation.live.batch, 500). A failed call drops the listener, which re-registers itself;
+ * a RuntimeException only drops that batch.
+ *
+ * Meters: core_live_listeners, core_live_readings_total, core_live_dropped_total.
+ */
+public class ReadingFeed {
+
+    private final int queueSize;
+    private final int maxBatch;
+
+    private final ConcurrentHashMap<ReadingListener, Sink> sinks = new ConcurrentHashMap<>();
+
+    private static final LongAdder SENT =
+            Metrics.counter("core_live_readings_total", "Readings delivered to live listeners");
+    private static final LongAdder DROPPED =
+            Metrics.counter("core_live_dropped_total", "Live readings superseded by a newer one of the same device, or dropped because a listener fell behind or failed");
+
+    public ReadingFeed(int queueSize, int maxBatch) {
+        this.queueSize = Math.max(16, queueSize);
+        this.maxBatch = Math.max(1, maxBatch);
+        Metrics.gauge("core_live_listeners", "Registered live reading listeners", sinks::size);
+    }
+
+    public static ReadingFeed fromSystemProperties() {
+        return new ReadingFeed(
+                Integer.getInteger("irrigation.live.queue", 4096),
+                Integer.getInteger("irrigation.live.batch", 500));
+    }
+
+    /** Idempotent: a listener renewing its registration keeps its queue. */
+    public void add(ReadingListener listener) {
+        if (listener == null) return;
+        Sink created = new Sink(listener);
+        if (sinks.putIfAbsent(listener, created) == null) {
+            created.thread.start();
+            System.out.println("[LIVE] listener added (" + sinks.size() + " registered)");
+        }
+    }
+
+    public void remove(ReadingListener listener) {
+        if (listener == null) return;
+        Sink s = sinks.remove(listener);
+        if (s != null) s.close();
+    }
+
+    public void publish(ReadingDTO r) {
+        if (r == null || sinks.isEmpty()) return;
+        for (Sink s : sinks.values()) s.offer(r);
+    }
+
+    /** True if a is stamped later than b (unparseable stamps never win). */
+    private static boolean newer(ReadingDTO a, ReadingDTO b) {
+        if (a.createdUtc == null || b.createdUtc == null) return false;
+        try {
+            return Instant.parse(a.createdUtc).isAfter(Instant.parse(b.createdUtc));
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    private final class Sink implements Runnable {
+        final ReadingListener listener;
+        // device -> latest reading not yet sent, oldest waiting first; guarded by this
+        final LinkedHashMap<String, ReadingDTO> pending = new LinkedHashMap<>();
+        final Thread thread;
+        volatile boolean closed;
+
+        Sink(ReadingListener listener) {
+            this.listener = listener;
+            this.thread = new Thread(this, "live-feed");
+            this.thread.setDaemon(true);
+        }
+
+        void close() {
+            closed = true;
+            thread.interrupt();
+        }
+
+        synchronized void offer(ReadingDTO r) {
+            String device = r.device != null ? r.device : "";
+            ReadingDTO waiting = pending.get(device);
+            if (waiting != null) {
+                DROPPED.increment();
+                if (newer(waiting, r)) return; // published out of order: keep the newer one
+                pending.put(device, r);        // replaces in place, keeps its turn
+                return;
+            }
+            if (pending.size() >= queueSize) {
+                Iterator<ReadingDTO> oldest = pending.values().iterator();
+                oldest.next();
+                oldest.remove();
+                DROPPED.increment();
+            }
+            pending.put(device, r);
+            notifyAll();
+        }
+
+        /** Up to maxBatch pending readings, or null if none arrived within a second. */
+        private synchronized ReadingList take() throws InterruptedException {
+            if (pending.isEmpty()) wait(1000);
+            if (pending.isEmpty()) return null;
+
+            ReadingList batch = new ReadingList(Math.min(maxBatch, pending.size()));
+            Iterator<ReadingDTO> it = pending.values().iterator();
+            while (it.hasNext() && batch.size() < maxBatch) {
+                batch.add(it.next());
+                it.remove();
+            }
+            return batch;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!closed) {
+                    ReadingList batch = take();
+                    if (batch == null) continue;
+
+                    try {
+                        listener.onReadings(batch);
+                        SENT.add(batch.size());
+                    } catch (RuntimeException e) {
+                        // a bug on either side must not silently end this thread while the sink stays registered
+                        DROPPED.add(batch.size());
+                        System.out.println("[LIVE] batch of " + batch.size() + " dropped: " + e);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RemoteException e) {
+                System.out.println("[LIVE] listener dropped: " + e.getMessage());
+                sinks.remove(listener, this);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "live feed (" + sinks.size() + " listener(s))";
+    }
+}
@@ -1,6 +1,11 @@
 package core.rmi;
 
+import core.db.Archiver;
 import core.db.IrrigationDao;
+import core.db.JdbcIrrigationDao;
+import core.db.MigrationRunner;
+import core.db.PlanCheck;
+import core.db.RetentionService;
 
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
@@ -9,12 +14,33 @@ import java.rmi.server.ExportException;
 public class RmiServerMain {
 
     public static void main(String[] args) throws Exception {
+        start();
+        System.out.println("Press Ctrl+C to stop.");
+    }
+
+    /**
+     * Create/reuse the registry, export the core and bind it.
+     * Also used by gateway.Main in in-process mode (the dashboard still reaches the core over RMI).
+     */
+    public static IrrigationService start() throws Exception {
 
         // Same-machine testing
         System.setProperty("java.rmi.server.hostname", "127.0.0.1");
 
-        int port = 1099;
-        String name = "IrrigationService";
+        // connection reuse knobs must be set before the RMI transport starts
+        TunedSocketFactory.applyReuseProperties();
+
+        int port = Integer.getInteger("irrigation.rmi.port", 1099);
+        String name = System.getProperty("irrigation.rmi.name", "IrrigationService");
+
+        // shard identity: must match one entry of -Dirrigation.shards (defaults to this registry)
+        String shardId = System.getProperty("irrigation.shardId",
+                System.getProperty("java.rmi.server.hostname") + ":" + port + "/" + name);
+        System.setProperty("irrigation.shardId", shardId);
+        ShardRing ring = ShardRing.fromSystemProperties();
+        if (ring.size() > 1 && !ring.shards().contains(shardId)) {
+            throw new IllegalStateException("irrigation.shardId " + shardId + " is not in irrigation.shards " + ring.shards());
+        }
 
         Registry registry;
         try {
@@ -25,12 +51,39 @@ public class RmiServerMain {
             System.out.println("ℹ️ RMI registry already running on port " + port + " (reusing it)");
         }
 
-        IrrigationDao dao = new IrrigationDao();
-        IrrigationService service = new IrrigationServiceImpl(dao);
+        IrrigationDao dao = IrrigationDao.fromSystemProperties();
+
+        // bring the SQL Server schema up to date before anything reads it, then check the hot plans
+        if (dao instanceof JdbcIrrigationDao) {
+            if (Boolean.parseBoolean(System.getProperty("irrigation.migrate", "true"))) new MigrationRunner().migrate();
+            if (Boolean.parseBoolean(System.getProperty("irrigation.planCheck", "true"))) new PlanCheck().run();
+        }
+
+        TunedSocketFactory sockets = TunedSocketFactory.fromSystemProperties();
+        IrrigationService service = new IrrigationServiceImpl(dao, sockets);
+        System.out.println("✅ Exported with " + sockets);
 
         registry.rebind(name, service);
 
+        // retention jobs are SQL Server only
+        RetentionService retention = null;
+        if (dao instanceof JdbcIrrigationDao) {
+            retention = new RetentionService();
+            retention.start();
+        }
+
+        // aged readings -> compressed day files (-Dirrigation.archive.afterDays), our devices only
+        Archiver archiver = null;
+        if (dao instanceof JdbcIrrigationDao && ((JdbcIrrigationDao) dao).archive() != null) {
+            archiver = new Archiver(((JdbcIrrigationDao) dao).archive(),
+                    d -> ring.size() == 1 || shardId.equals(ring.ownerOf(d)));
+            archiver.start();
+        }
+
         System.out.println("✅ Bound name: " + name);
-        System.out.println("Press Ctrl+C to stop.");
+        if (ring.size() > 1) System.out.println("✅ Shard " + shardId + " of " + ring);
+        System.out.println("✅ Storage " + dao + (retention != null ? ", background " + retention : "")
+                + (archiver != null ? ", " + archiver : ""));
+        return service;
     }
 }
@@ -0,0 +1,169 @@
+package core.rmi;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Consistent-hash ring that maps a device id to the core instance owning it.
+ *
+ * Each shard is placed on the ring at {@code vnodes} points (hash of "id#i"),
+ * a device belongs to the first point clockwise from hash(device).
+ * Adding a shard only moves the devices that now land on its points (~1/N of them),
+ * everything else keeps its owner.
+ *
+ * Shard ids are "host:port/name" (the same string is used by cores and clients),
+ * configured with -Dirrigation.shards=127.0.0.1:1099/IrrigationService,127.0.0.1:1100/IrrigationService
+ *
+ * Immutable: withShard / withoutShard return a new ring.
+ */
+public final class ShardRing {
+
+    public static final String DEFAULT_SHARD = "127.0.0.1:1099/IrrigationService";
+    public static final int DEFAULT_VNODES = 160;
+
+    private final List<String> shards;
+    private final int vnodes;
+    private final long[] points;      // sorted ring positions
+    private final String[] owners;    // owners[i] owns points[i]
+
+    public ShardRing(Collection<String> shardIds, int vnodes) {
+        LinkedHashSet<String> ids = new LinkedHashSet<>();
+        for (String s : shardIds) {
+            if (s != null && !s.isBlank()) ids.add(s.trim());
+        }
+        if (ids.isEmpty()) throw new IllegalArgumentException("ShardRing needs at least one shard");
+
+        this.shards = Collections.unmodifiableList(new ArrayList<>(ids));
+        this.vnodes = Math.max(1, vnodes);
+
+        // TreeMap keeps points sorted; on the (unlikely) collision the smaller id wins so every node agrees
+        TreeMap<Long, String> ring = new TreeMap<>();
+        for (String id : shards) {
+            for (int i = 0; i < this.vnodes; i++) {
+                ring.merge(hash(id + "#" + i), id, (a, b) -> a.compareTo(b) <= 0 ? a : b);
+            }
+        }
+
+        this.points = new long[ring.size()];
+        this.owners = new String[ring.size()];
+        int i = 0;
+        for (Map.Entry<Long, String> e : ring.entrySet()) {
+            points[i] = e.getKey();
+            owners[i] = e.getValue();
+            i++;
+        }
+    }
+
+    /** Ring from -Dirrigation.shards (comma separated) and -Dirrigation.shardVnodes. */
+    public static ShardRing fromSystemProperties() {
+        return new ShardRing(
+                parse(System.getProperty("irrigation.shards", DEFAULT_SHARD)),
+                Integer.getInteger("irrigation.shardVnodes", DEFAULT_VNODES));
+    }
+
+    public static List<String> parse(String spec) {
+        List<String> out = new ArrayList<>();
+        if (spec == null) return out;
+        for (String s : spec.split(",")) {
+            if (!s.isBlank()) out.add(s.trim());
+        }
+        return out;
+    }
+
+    /** Shard id owning this device. Null/blank devices all go to the first shard. */
+    public String ownerOf(String device) {
+        if (device == null || device.isBlank() || shards.size() == 1) return shards.get(0);
+
+        long h = hash(device);
+
+        // first point >= h, wrapping around to index 0
+        int lo = 0, hi = points.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (points[mid] < h) lo = mid + 1;
+            else hi = mid;
+        }
+        return owners[lo == points.length ? 0 : lo];
+    }
+
+    public List<String> shards() {
+        return shards;
+    }
+
+    public int size() {
+        return shards.size();
+    }
+
+    public ShardRing withShard(String id) {
+        List<String> next = new ArrayList<>(shards);
+        next.add(id);
+        return new ShardRing(next, vnodes);
+    }
+
+    public ShardRing withoutShard(String id) {
+        List<String> next = new ArrayList<>(shards);
+        next.remove(id);
+        return new ShardRing(next, vnodes);
+    }
+
+    /** "host:port/name" -> parts; port defaults to 1099 and name to IrrigationService. */
+    public static Address address(String shardId) {
+        String hostPort = shardId;
+        String name = "IrrigationService";
+        int slash = shardId.indexOf('/');
+        if (slash >= 0) {
+            hostPort = shardId.substring(0, slash);
+            name = shardId.substring(slash + 1);
+        }
+
+        String host = hostPort;
+        int port = 1099;
+        int colon = hostPort.lastIndexOf(':');
+        if (colon >= 0) {
+            host = hostPort.substring(0, colon);
+            port = Integer.parseInt(hostPort.substring(colon + 1));
+        }
+        return new Address(host, port, name);
+    }
+
+    public static final class Address {
+        public final String host;
+        public final int port;
+        public final String name;
+
+        Address(String host, int port, String name) {
+            this.host = host;
+            this.port = port;
+            this.name = name;
+        }
+    }
+
+    /**
+     * 64-bit FNV-1a over UTF-8 followed by a murmur3 finalizer.
+     * Must stay identical in the core and both clients (they each compute owners locally).
+     */
+    static long hash(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : s.getBytes(StandardCharsets.UTF_8)) {
+            h ^= (b & 0xff);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        return "ShardRing" + shards + " vnodes=" + vnodes;
+    }
+}
@@ -0,0 +1,328 @@
+package core.rmi;
+
+import core.dto.AlertDTO;
+import core.dto.DeviceStatusDTO;
+import core.dto.DeviceSummaryDTO;
+import core.dto.DeviceSummaryRowDTO;
+import core.dto.ProfileDTO;
+import core.dto.ReadingDTO;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * IrrigationService that routes each call to the shard owning its device.
+ *
+ * - first argument is a device id (getLatest, setMode, getSummary, ...) -> owner of that id
+ * - pushReading(ReadingDTO)                                          -> owner of r.device
+ * - importReadings(List<ReadingDTO>)                                -> split by owner of each r.device, counts summed
+ * - batch calls taking a List of device ids (getSummaries, getLatestMany)
+ *                                                                    -> split by owner, merged back in request order
+ * - fleet calls returning a List (listDevices, listStatus, listSummaries)
+ *                                                                    -> all shards in parallel, merged by device
+ * - setProfile(ProfileDTO): device row -> owner, zone/default row -> every shard (each reloads its cache)
+ * - getMetrics                                                       -> all shards, grouped by family, samples labelled shard="..."
+ * - add/removeReadingListener(listener)                              -> every shard (each feeds its own devices)
+ * - bulkImport(path)                                                 -> first shard (the file is on its host)
+ *
+ * Stubs are looked up through {@code stubs} on every call so a reconnect in the
+ * owning RmiClient is picked up without rebuilding the router.
+ */
+public final class ShardRouter {
+
+    private static final ExecutorService SCATTER = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "shard-scatter");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private ShardRouter() {}
+
+    public static IrrigationService route(ShardRing ring, Function<String, IrrigationService> stubs) {
+        return (IrrigationService) Proxy.newProxyInstance(
+                IrrigationService.class.getClassLoader(),
+                new Class<?>[]{IrrigationService.class},
+                (proxy, method, args) -> {
+                    if (method.getDeclaringClass() == Object.class) {
+                        return method.invoke(stubs.apply(ring.shards().get(0)), args);
+                    }
+
+                    Object first = args == null || args.length == 0 ? null : args[0];
+
+                    if (method.getName().equals("bulkImport")) {
+                        return invoke(stubs.apply(ring.shards().get(0)), method, args);
+                    }
+
+                    if (first instanceof String device) {
+                        return invoke(stubs.apply(ring.ownerOf(device)), method, args);
+                    }
+                    if (first instanceof ReadingDTO r) {
+                        return invoke(stubs.apply(ring.ownerOf(r.device)), method, args);
+                    }
+                    if (first instanceof ProfileDTO p) {
+                        if (p.device != null) return invoke(stubs.apply(ring.ownerOf(p.device)), method, args);
+                        return scatter(ring, stubs, method, args).get(0);
+                    }
+                    if (first instanceof List<?> rs && !rs.isEmpty() && rs.get(0) instanceof ReadingDTO) {
+                        return partitionReadings(ring, stubs, method, args, rs);
+                    }
+                    if (first instanceof List<?> ids && isDeviceList(ids)) {
+                        return partition(ring, stubs, method, args, ids);
+                    }
+                    if (first instanceof ReadingListener) {
+                        scatter(ring, stubs, method, args);
+                        return null;
+                    }
+                    if (method.getName().equals("getMetrics")) {
+                        return mergeMetrics(ring, scatter(ring, stubs, method, args));
+                    }
+                    if (List.class.isAssignableFrom(method.getReturnType())) {
+                        return mergeLists(scatter(ring, stubs, method, args));
+                    }
+
+                    // no device to route by: first shard
+                    return invoke(stubs.apply(ring.shards().get(0)), method, args);
+                });
+    }
+
+    private static Object invoke(IrrigationService stub, Method method, Object[] args) throws Throwable {
+        if (stub == null) throw new RemoteException("shard not connected");
+        try {
+            return method.invoke(stub, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause(); // keep RemoteException visible to RmiClient.call(...)
+        }
+    }
+
+    /** Same call on every shard in parallel; results in ring.shards() order. */
+    private static List<Object> scatter(ShardRing ring, Function<String, IrrigationService> stubs,
+                                        Method method, Object[] args) throws Throwable {
+        List<String> shards = ring.shards();
+        if (shards.size() == 1) {
+            List<Object> one = new ArrayList<>(1);
+            one.add(invoke(stubs.apply(shards.get(0)), method, args));
+            return one;
+        }
+
+        List<Future<Object>> pending = new ArrayList<>(shards.size());
+        for (String id : shards) {
+            IrrigationService stub = stubs.apply(id);
+            pending.add(SCATTER.submit(() -> {
+                try {
+                    return invoke(stub, method, args);
+                } catch (Exception e) {
+                    throw e;
+                } catch (Throwable t) {
+                    throw new RemoteException(method.getName() + " failed on " + id, t);
+                }
+            }));
+        }
+
+        List<Object> out = new ArrayList<>(shards.size());
+        for (Future<Object> f : pending) {
+            try {
+                out.add(f.get());
+            } catch (ExecutionException e) {
+                throw e.getCause();
+            }
+        }
+        return out;
+    }
+
+    private static boolean isDeviceList(List<?> ids) {
+        for (Object o : ids) {
+            if (o != null && !(o instanceof String)) return false;
+        }
+        return true;
+    }
+
+    /** Batch call: each shard gets the ids it owns (in parallel), results re-assembled in request order. */
+    private static Object partition(ShardRing ring, Function<String, IrrigationService> stubs,
+                                    Method method, Object[] args, List<?> ids) throws Throwable {
+        Map<String, List<String>> byShard = new LinkedHashMap<>();
+        for (Object o : ids) {
+            String d = (String) o;
+            byShard.computeIfAbsent(ring.ownerOf(d), k -> new ArrayList<>()).add(d);
+        }
+        if (byShard.size() <= 1) {
+            String owner = byShard.isEmpty() ? ring.shards().get(0) : byShard.keySet().iterator().next();
+            return invoke(stubs.apply(owner), method, args);
+        }
+
+        List<Future<Object>> pending = new ArrayList<>(byShard.size());
+        for (Map.Entry<String, List<String>> e : byShard.entrySet()) {
+            IrrigationService stub = stubs.apply(e.getKey());
+            Object[] shardArgs = args.clone();
+            shardArgs[0] = e.getValue();
+            pending.add(SCATTER.submit(() -> {
+                try {
+                    return invoke(stub, method, shardArgs);
+                } catch (Exception ex) {
+                    throw ex;
+                } catch (Throwable t) {
+                    throw new RemoteException(method.getName() + " failed on " + e.getKey(), t);
+                }
+            }));
+        }
+
+        List<Object> parts = new ArrayList<>(pending.size());
+        for (Future<Object> f : pending) {
+            try {
+                parts.add(f.get());
+            } catch (ExecutionException ex) {
+                throw ex.getCause();
+            }
+        }
+
+        // position of each id in the request, so the merged result reads like a single-shard answer
+        Map<String, Integer> order = new HashMap<>();
+        for (Object o : ids) order.putIfAbsent((String) o, order.size());
+
+        if (Map.class.isAssignableFrom(method.getReturnType())) {
+            Map<Object, Object> all = new HashMap<>();
+            for (Object p : parts) {
+                if (p != null) all.putAll((Map<?, ?>) p);
+            }
+            Map<Object, Object> out = new LinkedHashMap<>();
+            for (Object o : ids) {
+                if (o != null && all.containsKey(o)) out.put(o, all.get(o));
+            }
+            return out;
+        }
+
+        List<Object> out = mergeLists(parts);
+        out.sort(Comparator.comparing(x -> order.getOrDefault(deviceOf(x), Integer.MAX_VALUE)));
+        return out;
+    }
+
+    /**
+     * Reading batch: each shard gets its devices' readings (order kept within a shard); int results summed.
+     * Readings without a device go to the first shard, as with a single core, which skips them: they are
+     * counted in the log here and missing from the returned count, never dropped unseen.
+     */
+    private static Object partitionReadings(ShardRing ring, Function<String, IrrigationService> stubs,
+                                            Method method, Object[] args, List<?> rs) throws Throwable {
+        Map<String, List<ReadingDTO>> byShard = new LinkedHashMap<>();
+        int noDevice = 0;
+        for (Object o : rs) {
+            ReadingDTO r = (ReadingDTO) o;
+            String device = r != null ? r.device : null;
+            if (device == null || device.isBlank()) noDevice++;
+            byShard.computeIfAbsent(ring.ownerOf(device), k -> new ArrayList<>()).add(r);
+        }
+        if (noDevice > 0) {
+            System.err.println("[SHARD] " + method.getName() + ": " + noDevice + " reading(s) without a device, sent to "
+                    + ring.ownerOf(null));
+        }
+        if (byShard.size() <= 1) {
+            String owner = byShard.isEmpty() ? ring.shards().get(0) : byShard.keySet().iterator().next();
+            return invoke(stubs.apply(owner), method, args);
+        }
+
+        int total = 0;
+        for (Map.Entry<String, List<ReadingDTO>> e : byShard.entrySet()) {
+            Object[] shardArgs = args.clone();
+            shardArgs[0] = e.getValue();
+            total += (Integer) invoke(stubs.apply(e.getKey()), method, shardArgs);
+        }
+        return total;
+    }
+
+    private static List<Object> mergeLists(List<Object> parts) {
+        List<Object> out = new ArrayList<>();
+        for (Object p : parts) {
+            if (p != null) out.addAll((List<?>) p);
+        }
+        if (parts.size() > 1) {
+            // each shard answers in device order; keep that order for the merged fleet view
+            out.sort(Comparator.comparing(ShardRouter::deviceOf, Comparator.nullsLast(Comparator.naturalOrder())));
+        }
+        return out;
+    }
+
+    /**
+     * Prometheus text from every shard, grouped by metric family: HELP/TYPE once, then every shard's
+     * samples of that family, each tagged with its shard (a family must not be split across the page).
+     */
+    private static String mergeMetrics(ShardRing ring, List<Object> parts) {
+        if (parts.size() == 1) return (String) parts.get(0);
+
+        // family -> {HELP, TYPE} (first shard's wins) and its samples from every shard, in first-seen order
+        Map<String, String[]> meta = new HashMap<>();
+        Map<String, StringBuilder> samples = new LinkedHashMap<>();
+        for (int i = 0; i < parts.size(); i++) {
+            String text = (String) parts.get(i);
+            if (text == null) continue;
+            String label = "shard=\"" + ring.shards().get(i) + "\"";
+
+            String family = null;
+            for (String line : text.split("\n")) {
+                if (line.isBlank()) continue;
+                if (line.startsWith("# HELP ") || line.startsWith("# TYPE ")) {
+                    String[] f = line.split(" ", 4);
+                    if (f.length < 3) continue;
+                    family = f[2];
+                    String[] m = meta.computeIfAbsent(family, k -> new String[2]);
+                    int slot = f[1].equals("HELP") ? 0 : 1;
+                    if (m[slot] == null) m[slot] = line;
+                    samples.computeIfAbsent(family, k -> new StringBuilder());
+                    continue;
+                }
+                if (line.startsWith("#")) continue;
+
+                int brace = line.indexOf('{');
+                int space = line.indexOf(' ');
+                String name = brace >= 0 && (space < 0 || brace < space) ? line.substring(0, brace)
+                        : space > 0 ? line.substring(0, space) : line;
+                // histogram / summary series (_bucket, _sum, _count) belong to the family declared above them
+                String key = family != null && name.startsWith(family) ? family : name;
+
+                StringBuilder sb = samples.computeIfAbsent(key, k -> new StringBuilder());
+                if (brace >= 0 && (space < 0 || brace < space)) {
+                    sb.append(line, 0, brace + 1).append(label).append(',').append(line, brace + 1, line.length());
+                } else if (space > 0) {
+                    sb.append(line, 0, space).append('{').append(label).append('}').append(line, space, line.length());
+                } else {
+                    sb.append(line);
+                }
+                sb.append('\n');
+            }
+        }
+
+        StringBuilder out = new StringBuilder();
+        for (Map.Entry<String, StringBuilder> e : samples.entrySet()) {
+            String[] m = meta.get(e.getKey());
+            if (m != null) {
+                if (m[0] != null) out.append(m[0]).append('\n');
+                if (m[1] != null) out.append(m[1]).append('\n');
+            }
+            out.append(e.getValue());
+        }
+        return out.toString();
+    }
+
+    private static String deviceOf(Object o) {
+        if (o instanceof String s) return s;
+        if (o instanceof DeviceStatusDTO s) return s.device;
+        if (o instanceof DeviceSummaryRowDTO s) return s.device;
+        if (o instanceof DeviceSummaryDTO s) return s.device;
+        if (o instanceof ReadingDTO r) return r.device;
+        if (o instanceof AlertDTO a) return a.device;
+        return null;
+    }
+}
@@ -0,0 +1,35 @@
+package core.state;
+
+import core.dto.ModeDTO;
+import core.logic.DecisionReason;
+
+import java.io.Serializable;
+
+/**
+ * The open row of dbo.pump_decision_runs for one device: same mode, pump_cmd and reason
+ * since startedMs, runCount decisions so far. Only touched on the device's lane.
+ */
+public class DecisionRun implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public long id;                 // pump_decision_runs.id
+    public ModeDTO mode;
+    public boolean pumpCmd;
+    public DecisionReason reason;   // rule behind every decision of the run
+    public long startedMs;
+
+    public int runCount;
+    public long lastMs;
+
+    // what the DB row currently says (counts are flushed in batches)
+    public int flushedCount;
+    public long flushedAtMs;
+
+    public boolean continues(ModeDTO mode, boolean pumpCmd, DecisionReason reason) {
+        return this.mode == mode && this.pumpCmd == pumpCmd && this.reason == reason;
+    }
+
+    public boolean dirty() {
+        return runCount != flushedCount;
+    }
+}
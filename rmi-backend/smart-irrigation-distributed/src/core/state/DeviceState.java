@@ -1,11 +1,48 @@
 package core.state;
 
 import core.dto.ModeDTO;
+import core.logic.TrendStats;
 
 import java.io.Serializable;
 
+/**
+ * Runtime state of one device.
+ * Written only on the device's lane (see StripedExecutor); volatile so getMode/getManualPump
+ * can read it from any RMI thread without going through the lane.
+ */
 public class DeviceState implements Serializable {
-    public ModeDTO mode = ModeDTO.AUTO;
-    public boolean manualPumpCmd = false; // used only when MANUAL
-    public boolean lastAutoCmd = false;   // hysteresis memory in AUTO
+    public volatile ModeDTO mode = ModeDTO.AUTO;
+    public volatile boolean manualPumpCmd = false; // used only when MANUAL
+    public volatile boolean lastAutoCmd = false;   // hysteresis memory in AUTO
+
+    // TANK_LOW latch: fire once when crossing into low, reset after recovery (not persisted)
+    public boolean tankLowLatched = false;
+    public Integer lastTankSeen = null;
+
+    // streaming analytics (EWMA + slope), rebuilt from the reading stream after a restart
+    public final TrendStats soilTrend = new TrendStats();
+    public final TrendStats tankTrend = new TrendStats();
+
+    // both trends as of the last update, republished by the lane; getAnalytics reads it lane-free
+    public volatile Trends trends = Trends.EMPTY;
+
+    // open run of the change-only decision journal (null until the first decision / after a restart)
+    public DecisionRun decisionRun = null;
+
+    /** Call on the lane after updating soilTrend / tankTrend. */
+    public void publishTrends() {
+        trends = new Trends(soilTrend.snapshot(), tankTrend.snapshot());
+    }
+
+    public static final class Trends implements Serializable {
+        static final Trends EMPTY = new Trends(TrendStats.Snapshot.EMPTY, TrendStats.Snapshot.EMPTY);
+
+        public final TrendStats.Snapshot soil;
+        public final TrendStats.Snapshot tank;
+
+        Trends(TrendStats.Snapshot soil, TrendStats.Snapshot tank) {
+            this.soil = soil;
+            this.tank = tank;
+        }
+    }
 }
@@ -0,0 +1,94 @@
+package core.state;
+
+import core.metrics.Metrics;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * device -> DeviceState, loaded from the DB at most once at a time per device.
+ *
+ * The map holds a future per device: the first caller installs it with putIfAbsent
+ * and runs the load on its own thread, concurrent callers for the same device wait
+ * on that future. No JDBC ever runs inside a map lock, so other devices are never
+ * stalled behind a slow load.
+ *
+ * A failed load is removed again (waiters see the failure), so the next call retries
+ * instead of living forever with a default state.
+ */
+public class DeviceStateCache {
+
+    @FunctionalInterface
+    public interface Loader {
+        DeviceState load(String device) throws Exception;
+    }
+
+    private final ConcurrentHashMap<String, CompletableFuture<DeviceState>> states = new ConcurrentHashMap<>();
+    private final Loader loader;
+
+    private static final LongAdder LOADS =
+            Metrics.counter("core_state_loads_total", "DeviceState loads from the DB (cache misses)");
+    private static final LongAdder LOAD_FAILURES =
+            Metrics.counter("core_state_load_failures_total", "DeviceState loads that failed and will be retried");
+
+    public DeviceStateCache(Loader loader) {
+        this.loader = loader;
+        Metrics.gauge("core_state_cached_devices", "Devices with a DeviceState in memory", states::size);
+    }
+
+    /**
+     * Cached state, loading it if needed (single flight per device).
+     * Throws the loader's exception if this load failed; nothing is cached in that case.
+     */
+    public DeviceState get(String device) throws Exception {
+        CompletableFuture<DeviceState> f = states.get(device);
+
+        if (f == null) {
+            CompletableFuture<DeviceState> mine = new CompletableFuture<>();
+            f = states.putIfAbsent(device, mine);
+            if (f == null) {
+                // we own the load: run it outside any lock
+                f = mine;
+                LOADS.increment();
+                try {
+                    mine.complete(loader.load(device));
+                } catch (Exception e) {
+                    LOAD_FAILURES.increment();
+                    states.remove(device, mine);
+                    mine.completeExceptionally(e);
+                    throw e;
+                }
+            }
+        }
+
+        try {
+            return f.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception ex) throw ex;
+            throw e;
+        }
+    }
+
+    /** State if it is already loaded, else null (never triggers a load). */
+    public DeviceState peek(String device) {
+        CompletableFuture<DeviceState> f = states.get(device);
+        return f != null && f.isDone() && !f.isCompletedExceptionally() ? f.join() : null;
+    }
+
+    /** Seed from a bulk query; entries already present (loaded or in flight) win. */
+    public int preload(Map<String, DeviceState> loaded) {
+        int added = 0;
+        for (Map.Entry<String, DeviceState> e : loaded.entrySet()) {
+            if (states.putIfAbsent(e.getKey(), CompletableFuture.completedFuture(e.getValue())) == null) added++;
+        }
+        return added;
+    }
+
+    public int size() {
+        return states.size();
+    }
+}
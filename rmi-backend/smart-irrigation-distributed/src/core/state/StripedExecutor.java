@@ -0,0 +1,120 @@
+package core.state;
+
+import core.metrics.Metrics;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs work for the same device one task at a time, in submission order.
+ *
+ * N single-thread lanes; a device always maps to the same lane (hash of its id),
+ * so everything touching one DeviceState is serialized without any global lock,
+ * while different devices spread over all lanes (-Dirrigation.stripes, default 2 x cores).
+ *
+ * A task already running on the device's lane calls straight through (no self-deadlock).
+ * Each lane queues at most -Dirrigation.stripeQueue tasks (default 1024); past that a
+ * submit is rejected with RejectedExecutionException instead of piling up behind a slow lane.
+ */
+public class StripedExecutor {
+
+    private final ThreadPoolExecutor[] lanes;
+    private final ThreadLocal<Integer> currentLane = new ThreadLocal<>();
+
+    public StripedExecutor(int stripes, String name) {
+        this(stripes, 1024, name);
+    }
+
+    public StripedExecutor(int stripes, int queuePerLane, String name) {
+        int n = Math.max(1, stripes);
+        this.lanes = new ThreadPoolExecutor[n];
+        LongAdder rejected = Metrics.counter("core_stripe_rejected_total",
+                "Tasks refused because their device lane queue was full", "executor", name);
+
+        for (int i = 0; i < n; i++) {
+            final int lane = i;
+            lanes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(Math.max(1, queuePerLane)), r -> {
+                Thread t = new Thread(() -> {
+                    currentLane.set(lane);
+                    r.run();
+                }, name + "-" + lane);
+                t.setDaemon(true);
+                return t;
+            }, (r, pool) -> {
+                if (pool.isShutdown()) throw new RejectedExecutionException(name + " lane " + lane + " is shut down");
+                rejected.increment();
+                throw new RejectedExecutionException(name + " lane " + lane + " is full (" + pool.getQueue().size() + " queued)");
+            });
+        }
+
+        Metrics.gauge("core_stripe_queue_depth", "Tasks waiting across all device lanes", this::queued, "executor", name);
+    }
+
+    public static StripedExecutor fromSystemProperties(String name) {
+        return new StripedExecutor(
+                Integer.getInteger("irrigation.stripes", 2 * Runtime.getRuntime().availableProcessors()),
+                Integer.getInteger("irrigation.stripeQueue", 1024), name);
+    }
+
+    /**
+     * Run on the device's lane and wait for the result. Exceptions from the task are rethrown as-is;
+     * RejectedExecutionException if the lane is full.
+     */
+    public <T> T call(String device, Callable<T> task) throws Exception {
+        int lane = laneOf(device);
+
+        Integer here = currentLane.get();
+        if (here != null && here == lane) return task.call();
+
+        Future<T> f = lanes[lane].submit(task);
+        try {
+            return f.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception ex) throw ex;
+            if (cause instanceof Error err) throw err;
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            f.cancel(false);
+            throw e;
+        }
+    }
+
+    /** Queue on the device's lane without waiting; RejectedExecutionException if the lane is full. */
+    public void execute(String device, Runnable task) {
+        lanes[laneOf(device)].execute(task);
+    }
+
+    public int stripes() {
+        return lanes.length;
+    }
+
+    public void shutdown() {
+        for (ThreadPoolExecutor lane : lanes) lane.shutdown();
+    }
+
+    /** True if the device's lane has no room left; a submit right now would be rejected. */
+    public boolean full(String device) {
+        return lanes[laneOf(device)].getQueue().remainingCapacity() == 0;
+    }
+
+    private int laneOf(String device) {
+        if (device == null) return 0;
+        int h = device.hashCode();
+        h ^= (h >>> 16); // same spreading as HashMap
+        return Math.floorMod(h, lanes.length);
+    }
+
+    private int queued() {
+        int n = 0;
+        for (ThreadPoolExecutor lane : lanes) n += lane.getQueue().size();
+        return n;
+    }
+}
@@ -0,0 +1,221 @@
+package core.state;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * Hashed timing wheel holding one deadline per key.
+ *
+ * touch(key) is O(1) and lock-free: it only moves the key's deadline forward.
+ * The wheel thread looks at a single bucket per tick, so nodes are visited
+ * about once per timeout period instead of scanning every key each tick.
+ * A node whose deadline moved while it sat in a bucket is simply re-bucketed.
+ *
+ * Expiry and recovery of a node are decided under the node's monitor, so a touch racing with
+ * the expiry either cancels it or reports its recovery only after onExpired has returned.
+ */
+public class TimingWheel<K> {
+
+    public interface Listener<K> {
+        void onExpired(K key);
+    }
+
+    private static final int IDLE = 0;     // never armed
+    private static final int ARMED = 1;    // sitting in a bucket (or pending)
+    private static final int EXPIRED = 2;  // fired, waiting for the next touch
+
+    private static final class Node<K> {
+        final K key;
+        volatile long deadlineNanos;
+        final AtomicInteger state = new AtomicInteger(IDLE);
+        long rounds; // wheel thread only
+
+        Node(K key) { this.key = key; }
+    }
+
+    private final long tickNanos;
+    private final long timeoutNanos;
+    private final int mask;
+    private final ArrayDeque<Node<K>>[] buckets;
+
+    private final ConcurrentHashMap<K, Node<K>> nodes = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Node<K>> pending = new ConcurrentLinkedQueue<>();
+
+    private final Listener<K> listener;
+    private final ScheduledExecutorService ticker;
+
+    private final LongSupplier clock;
+    private final long startNanos;
+    private long tick; // wheel thread only
+
+    public TimingWheel(long timeoutMs, long tickMs, int wheelSize, Listener<K> listener) {
+        this(timeoutMs, tickMs, wheelSize, listener, System::nanoTime);
+    }
+
+    TimingWheel(long timeoutMs, long tickMs, int wheelSize, Listener<K> listener, LongSupplier clock) {
+        if (tickMs <= 0) tickMs = 1000;
+        if (wheelSize <= 0) wheelSize = 64;
+
+        int size = Integer.highestOneBit(wheelSize - 1) << 1; // round up to power of two
+        if (size < 2) size = 2;
+
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMs);
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        this.mask = size - 1;
+        this.buckets = newBuckets(size);
+
+        this.listener = listener;
+        this.clock = clock;
+        this.startNanos = clock.getAsLong();
+        this.ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "timing-wheel");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <K> ArrayDeque<Node<K>>[] newBuckets(int size) {
+        ArrayDeque<Node<K>>[] b = new ArrayDeque[size];
+        for (int i = 0; i < size; i++) b[i] = new ArrayDeque<>();
+        return b;
+    }
+
+    public void start() {
+        ticker.scheduleAtFixedRate(this::advance, tickNanos, tickNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void stop() {
+        ticker.shutdownNow();
+    }
+
+    /**
+     * Re-arm the key's deadline to now + timeout.
+     * @return true if the key had expired before this touch (i.e. it just recovered)
+     */
+    public boolean touch(K key) {
+        return arm(key, clock.getAsLong() + timeoutNanos);
+    }
+
+    /**
+     * Register a key whose last activity happened ageMs ago.
+     * Keys already past their timeout are marked expired without firing the listener,
+     * so the next touch reports a recovery instead of a fresh expiry.
+     */
+    public void seed(K key, long ageMs) {
+        long now = clock.getAsLong();
+        long deadline = now + timeoutNanos - TimeUnit.MILLISECONDS.toNanos(Math.max(0, ageMs));
+        Node<K> n = nodes.computeIfAbsent(key, Node::new);
+        n.deadlineNanos = deadline;
+
+        if (deadline - now <= 0) {
+            n.state.compareAndSet(IDLE, EXPIRED);
+        } else if (n.state.compareAndSet(IDLE, ARMED)) {
+            pending.add(n);
+        }
+    }
+
+    public boolean isExpired(K key) {
+        Node<K> n = nodes.get(key);
+        return n != null && n.state.get() == EXPIRED;
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    private boolean arm(K key, long deadline) {
+        Node<K> n = nodes.computeIfAbsent(key, Node::new);
+        n.deadlineNanos = deadline;
+
+        // fast path: the deadline is written before this read and the wheel reads it after its
+        // ARMED -> EXPIRED CAS, so either we see EXPIRED here or the wheel sees the new deadline
+        if (n.state.get() == ARMED) return false;
+
+        synchronized (n) { // an expiry in progress finishes (and reports) first
+            int s = n.state.get();
+            if (s == ARMED) return false; // wheel thread will see the new deadline
+            n.state.set(ARMED);
+            pending.add(n);
+            return s == EXPIRED;
+        }
+    }
+
+    // ======================================================================
+    // WHEEL THREAD
+    // ======================================================================
+
+    void advance() {
+        try {
+            long now = clock.getAsLong();
+            long target = (now - startNanos) / tickNanos;
+
+            // catch up if the scheduler was late, one bucket per missed tick
+            while (tick <= target) {
+                drainPending();
+                expireBucket(buckets[(int) (tick & mask)], now);
+                tick++;
+            }
+        } catch (Exception e) {
+            System.err.println("[WHEEL] tick failed: " + e.getMessage());
+        }
+    }
+
+    private void drainPending() {
+        Node<K> n;
+        while ((n = pending.poll()) != null) {
+            place(n, tick);
+        }
+    }
+
+    private void place(Node<K> n, long minTick) {
+        long ticks = (n.deadlineNanos - startNanos) / tickNanos;
+        if (ticks < minTick) ticks = minTick; // already due: earliest bucket still to be visited
+
+        // the bucket is next visited at the first tick >= minTick on its slot
+        n.rounds = (ticks - minTick) / buckets.length;
+        buckets[(int) (ticks & mask)].addLast(n);
+    }
+
+    private void expireBucket(ArrayDeque<Node<K>> bucket, long now) {
+        int count = bucket.size();
+
+        for (int i = 0; i < count; i++) {
+            Node<K> n = bucket.pollFirst();
+
+            if (n.rounds > 0) {
+                n.rounds--;
+                bucket.addLast(n);
+                continue;
+            }
+
+            if (n.deadlineNanos - now > 0) {
+                place(n, tick + 1); // touched while waiting: move to its new bucket
+                continue;
+            }
+
+            synchronized (n) {
+                if (!n.state.compareAndSet(ARMED, EXPIRED)) continue;
+
+                // a touch may have landed between the deadline read and the CAS
+                if (n.deadlineNanos - now > 0) {
+                    n.state.set(ARMED);
+                    place(n, tick + 1);
+                    continue;
+                }
+
+                try {
+                    listener.onExpired(n.key);
+                } catch (Exception e) {
+                    System.err.println("[WHEEL] listener failed for key=" + n.key + " : " + e.getMessage());
+                }
+            }
+        }
+    }
+}
@@ -1,49 +1,116 @@
 package gateway.Client;
 
+import core.metrics.Metrics;
 import core.rmi.IrrigationService;
+import core.rmi.ShardRing;
+import core.rmi.ShardRouter;
+import core.rmi.TunedSocketFactory;
 
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
 import java.rmi.RemoteException;
+import java.rmi.ServerException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class RmiClient {
 
-    private final String host;
-    private final int port;
-    private final String name;
+    // which core instance owns which device (a single shard behaves like before)
+    private final ShardRing ring;
 
-    private volatile IrrigationService service;
+    // shard id -> current stub (replaced on reconnect; the router reads it on every call)
+    private final ConcurrentHashMap<String, IrrigationService> stubs = new ConcurrentHashMap<>();
+
+    // shard served by a core running in this JVM (null = all shards remote)
+    private final String localShard;
+
+    private final IrrigationService service;
 
     public RmiClient(String host, int port, String name) throws Exception {
-        this.host = host;
-        this.port = port;
-        this.name = name;
-        connect(); // first connect
+        this(new ShardRing(List.of(host + ":" + port + "/" + name), 1));
+    }
+
+    /** One registry lookup per shard; each call goes to the shard owning its device (see ShardRouter). */
+    public RmiClient(ShardRing ring) throws Exception {
+        this(ring, null, null);
+    }
+
+    /**
+     * In-process mode: calls for {@code localShard} go straight to {@code local}
+     * (a core started in this JVM), no serialization, socket or DGC lease.
+     * Any other shard in the ring is still reached over RMI.
+     */
+    public RmiClient(ShardRing ring, String localShard, IrrigationService local) throws Exception {
+        this.ring = ring;
+        this.localShard = local != null ? localShard : null;
+
+        // client-side connection reuse (socket options come with the stub)
+        TunedSocketFactory.applyReuseProperties();
+
+        if (this.localShard != null) {
+            stubs.put(this.localShard, local);
+            System.out.println("✅ In-process core: " + this.localShard);
+        }
+
+        // first connect: every remote shard must be reachable
+        for (String id : ring.shards()) {
+            if (!id.equals(this.localShard)) connect(id);
+        }
+        this.service = timed(ShardRouter.route(ring, stubs::get));
+    }
+
+    private void connect(String shardId) throws Exception {
+        ShardRing.Address a = ShardRing.address(shardId);
+        Registry registry = LocateRegistry.getRegistry(a.host, a.port);
+        stubs.put(shardId, (IrrigationService) registry.lookup(a.name));
+        System.out.println("✅ Connected to RMI: " + a.name + " @ " + a.host + ":" + a.port);
     }
 
-    private synchronized void connect() throws Exception {
-        Registry registry = LocateRegistry.getRegistry(host, port);
-        this.service = (IrrigationService) registry.lookup(name);
-        System.out.println("✅ Connected to RMI: " + name + " @ " + host + ":" + port);
+    /** Re-lookup every shard; one that is still down keeps its old stub so the others keep working. */
+    private synchronized void reconnect() throws Exception {
+        Exception last = null;
+        for (String id : ring.shards()) {
+            if (id.equals(localShard)) continue;
+            try {
+                connect(id);
+            } catch (Exception e) {
+                System.out.println("⚠️ Shard " + id + " unreachable: " + e.getMessage());
+                last = e;
+            }
+        }
+        if (last != null && ring.size() == 1) throw last;
     }
 
     /**
-     * Execute an RMI call with auto-reconnect and 1 retry.
+     * Execute an RMI call with auto-reconnect and 1 retry (not when the core threw the RemoteException).
+     * A retry may repeat a call the core already ran: pushReading / importReadings are keyed for that.
      */
     public <T> T call(RemoteCall<T> fn) throws Exception {
         try {
             return fn.run(service);
         } catch (RemoteException firstFailure) {
+            // a local core has nothing to reconnect to: its RemoteException is the real error
+            if (localShard != null && ring.size() == 1) throw firstFailure;
+            // the core got the call and failed it itself: a new stub would not help
+            if (firstFailure instanceof ServerException) throw firstFailure;
+
             System.out.println("⚠️ RMI call failed: " + firstFailure.getMessage());
             System.out.println("🔁 Reconnecting to RMI...");
 
-            connect(); // reconnect once
+            reconnect(); // reconnect once
 
             // retry once after reconnect
             return fn.run(service);
         }
     }
 
+    /** True when every shard runs in this JVM (core and gateway then share one metrics registry). */
+    public boolean allLocal() {
+        return localShard != null && ring.size() == 1;
+    }
+
     /**
      * Use this only if you know what you're doing.
      * Prefer call(...) above.
@@ -52,6 +119,36 @@ public class RmiClient {
         return service;
     }
 
+    /**
+     * Wrap the stub so every IrrigationService method records its round trip
+     * into gateway_rmi_seconds{method=...} (lock-free histogram, see core.metrics).
+     */
+    private static IrrigationService timed(IrrigationService stub) {
+        return (IrrigationService) Proxy.newProxyInstance(
+                IrrigationService.class.getClassLoader(),
+                new Class<?>[]{IrrigationService.class},
+                (proxy, method, args) -> {
+                    if (method.getDeclaringClass() == Object.class) return method.invoke(stub, args);
+
+                    long t0 = System.nanoTime();
+                    boolean ok = false;
+                    try {
+                        Object result = method.invoke(stub, args);
+                        ok = true;
+                        return result;
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause(); // keep RemoteException visible to call(...)
+                    } finally {
+                        Metrics.histogram("gateway_rmi_seconds", "RMI round trip per IrrigationService method",
+                                "method", method.getName()).since(t0);
+                        if (!ok) {
+                            Metrics.counter("gateway_rmi_errors_total", "Failed RMI calls per method",
+                                    "method", method.getName()).increment();
+                        }
+                    }
+                });
+    }
+
     @FunctionalInterface
     public interface RemoteCall<T> {
         T run(IrrigationService svc) throws Exception;
@@ -1,8 +1,13 @@
 package gateway;
 
+import core.rmi.IrrigationService;
+import core.rmi.RmiServerMain;
+import core.rmi.ShardRing;
 import gateway.Client.RmiClient;
 import gateway.http.Esp32HttpServer;
 
+import java.util.List;
+
 public class Main {
     public static void main(String[] args) {
         try {
@@ -13,7 +18,22 @@ public class Main {
             int rmiPort = 1099;
             String rmiName = "IrrigationService";
 
-            RmiClient rmiClient = new RmiClient(rmiHost, rmiPort, rmiName);
+            // several cores: -Dirrigation.shards=127.0.0.1:1099/IrrigationService,127.0.0.1:1100/IrrigationService
+            String shards = System.getProperty("irrigation.shards", rmiHost + ":" + rmiPort + "/" + rmiName);
+            ShardRing ring = new ShardRing(ShardRing.parse(shards),
+                    Integer.getInteger("irrigation.shardVnodes", ShardRing.DEFAULT_VNODES));
+
+            // -Dirrigation.transport=inprocess: run the core in this JVM and call it directly
+            // (it is still bound in the registry, so dashboard-api connects as usual)
+            RmiClient rmiClient;
+            if ("inprocess".equalsIgnoreCase(System.getProperty("irrigation.transport", "rmi"))) {
+                IrrigationService core = RmiServerMain.start();
+                String self = System.getProperty("irrigation.shardId");
+                if (ring.size() == 1) ring = new ShardRing(List.of(self), 1);
+                rmiClient = new RmiClient(ring, self, core);
+            } else {
+                rmiClient = new RmiClient(ring);
+            }
 
             Esp32HttpServer.setRmiClient(rmiClient);
             Esp32HttpServer.start(httpPort);
@@ -7,9 +7,13 @@ import com.sun.net.httpserver.HttpServer;
 
 import core.dto.AlertDTO;
 import core.dto.ModeDTO;
-import core.dto.PumpDecisionDTO;
 import core.dto.ReadingDTO;
+import core.metrics.LatencyHistogram;
+import core.metrics.Metrics;
+import core.rmi.HistoryExport;
+import core.rmi.ReadingStream;
 import gateway.Client.RmiClient;
+import gateway.ingest.IngestStage;
 import gateway.model.SensorReading;
 
 import java.io.IOException;
@@ -20,13 +24,32 @@ import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
 
 public class Esp32HttpServer {
 
     private static RmiClient rmiClient = null;
 
+    // bounded queue + breaker between ESP32 requests and the core
+    private static IngestStage ingest = null;
+
+    // fleet-wide CSV / NDJSON history export (partitions fetched in parallel, streamed in order)
+    private static HistoryExport export = null;
+
+    // open /readings/live connections; ReadingsHandler offers every reading the core stored
+    private static final Set<ReadingStream> LIVE = ConcurrentHashMap.newKeySet();
+
+    private static final LatencyHistogram PARSE_TIME =
+            Metrics.histogram("gateway_http_parse_seconds", "Time to read and parse an ESP32 reading body");
+
     public static void setRmiClient(RmiClient client) {
         rmiClient = client;
     }
@@ -42,11 +65,31 @@ public class Esp32HttpServer {
         // Read APIs for mobile/dashboard
         server.createContext("/readings/latest", new LatestHandler());
         server.createContext("/readings/history", new HistoryHandler());
+        server.createContext("/readings/export", new ExportHandler());
 
         // Alerts SSE
         server.createContext("/alerts/stream", new AlertsSseHandler());
 
-        server.setExecutor(null);
+        // Live readings SSE (snapshot, then changed fields only)
+        server.createContext("/readings/live", new LiveReadingsHandler());
+
+        // Prometheus scrape (gateway + core metrics)
+        server.createContext("/metrics", new MetricsHandler());
+
+        // handlers wait on the ingest stage, so they need more than the single dispatcher thread
+        server.setExecutor(Executors.newFixedThreadPool(Integer.getInteger("gateway.http.threads", 32)));
+
+        if (rmiClient != null) {
+            ingest = IngestStage.fromSystemProperties(rmiClient);
+            export = new HistoryExport(
+                    (device, afterUtc, afterId, to, limit) ->
+                            rmiClient.call(svc -> svc.getHistoryAfter(device, afterUtc, afterId, to, limit)),
+                    Integer.getInteger("gateway.export.parallel", 4),
+                    Integer.getInteger("gateway.export.maxCalls", 4),
+                    Integer.getInteger("gateway.export.max", 2),
+                    Integer.getInteger("gateway.export.pageSize", 5000),
+                    Integer.getInteger("gateway.export.sliceHours", 24));
+        }
 
         System.out.println("✅ Java HTTP Gateway running");
         System.out.println("   POST http://0.0.0.0:" + port + "/api/readings");
@@ -55,7 +98,10 @@ public class Esp32HttpServer {
         System.out.println("   POST http://0.0.0.0:" + port + "/control/pump");
         System.out.println("   GET  http://0.0.0.0:" + port + "/readings/latest?device=esp32-01");
         System.out.println("   GET  http://0.0.0.0:" + port + "/readings/history?device=esp32-01&from=...&to=...&limit=...");
+        System.out.println("   GET  http://0.0.0.0:" + port + "/readings/export?from=...&to=...&format=csv|ndjson[&devices=a,b]");
         System.out.println("   GET  http://0.0.0.0:" + port + "/alerts/stream?device=esp32-01&since=2025-12-19T15:00:00Z");
+        System.out.println("   GET  http://0.0.0.0:" + port + "/readings/live?devices=esp32-01,esp32-02");
+        System.out.println("   GET  http://0.0.0.0:" + port + "/metrics");
         System.out.println("   RMI forwarding: " + (rmiClient != null ? "ON" : "OFF"));
 
         server.start();
@@ -75,25 +121,36 @@ public class Esp32HttpServer {
                 return;
             }
 
+            long parseStart = System.nanoTime();
             String body = readAll(exchange.getRequestBody());
             SensorReading r = parseSensorReading(body);
+            PARSE_TIME.since(parseStart);
 
             printLikeTerminal(r);
 
             boolean pumpCmd = false; // FAIL-SAFE
 
-            if (rmiClient != null) {
-                try {
-                    ReadingDTO dto = toDto(r);
-
-                    PumpDecisionDTO decision = rmiClient.call(svc -> svc.pushReading(dto)); // reconnect+retry
-                    pumpCmd = decision.pumpCmd;
-
-                    System.out.println("[GW→RMI] pump_cmd=" + pumpCmd + " reason=" + decision.reason);
-
-                } catch (Exception e) {
-                    System.out.println("[GW→RMI] ERROR: " + e.getMessage());
-                    pumpCmd = false;
+            if (ingest != null) {
+                ReadingDTO dto = toDto(r);
+                IngestStage.Result res = ingest.submit(dto);
+
+                switch (res.status) {
+                    case OK:
+                        pumpCmd = res.decision.pumpCmd;
+                        System.out.println("[GW→RMI] pump_cmd=" + pumpCmd + " reason=" + res.decision.reason);
+                        publishLive(dto, res.decision.createdUtc);
+                        break;
+                    case QUEUE_FULL:
+                        System.out.println("[GW→RMI] SHED (queue full) -> pump_cmd=false");
+                        send(exchange, 429, "{\"status\":\"shed\",\"pump_cmd\":false,\"error\":\"" + escape(res.error) + "\"}");
+                        return;
+                    case BREAKER_OPEN:
+                        System.out.println("[GW→RMI] SHED (breaker open) -> pump_cmd=false");
+                        send(exchange, 503, "{\"status\":\"unavailable\",\"pump_cmd\":false,\"error\":\"" + escape(res.error) + "\"}");
+                        return;
+                    default:
+                        System.out.println("[GW→RMI] ERROR: " + res.error);
+                        pumpCmd = false;
                 }
             } else {
                 System.out.println("[GW→RMI] RMI OFF -> pump_cmd=false");
@@ -187,6 +244,88 @@ public class Esp32HttpServer {
         }
     }
 
+    // GET /readings/export?from=2025-03-01T00:00:00Z&to=2025-09-01T00:00:00Z&format=csv&devices=esp32-01,esp32-02
+    // every reading in [from, to) of the listed devices (all devices if omitted), chunked response
+    static class ExportHandler implements HttpHandler {
+        private static final LongAdder ROWS =
+                Metrics.counter("gateway_export_rows_total", "Readings written by /readings/export");
+        private static final LatencyHistogram TIME =
+                Metrics.histogram("gateway_export_seconds", "Duration of one /readings/export");
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (handleCorsPreflight(exchange)) return;
+
+            if (export == null) {
+                send(exchange, 503, "{\"error\":\"RMI not configured\"}");
+                return;
+            }
+            if (!exchange.getRequestMethod().equalsIgnoreCase("GET")) {
+                send(exchange, 405, "{\"error\":\"Only GET allowed\"}");
+                return;
+            }
+
+            Instant from;
+            Instant to;
+            HistoryExport.Format format;
+            try {
+                from = OffsetDateTime.parse(queryParam(exchange, "from")).toInstant();
+                to = OffsetDateTime.parse(queryParam(exchange, "to")).toInstant();
+                format = HistoryExport.Format.parse(queryParam(exchange, "format"));
+            } catch (Exception e) {
+                send(exchange, 400, "{\"error\":\"Required: from, to (ISO-8601 with offset), format=csv|ndjson\"}");
+                return;
+            }
+            if (!from.isBefore(to)) {
+                send(exchange, 400, "{\"error\":\"from must be before to\"}");
+                return;
+            }
+
+            if (!export.tryBegin()) {
+                send(exchange, 429, "{\"error\":\"Too many exports running, retry later\"}");
+                return;
+            }
+            long t0 = System.nanoTime();
+            try {
+                List<String> devices;
+                String devicesParam = queryParam(exchange, "devices");
+                if (devicesParam != null && !devicesParam.isBlank()) {
+                    devices = new ArrayList<>();
+                    for (String d : devicesParam.split(",")) if (!d.isBlank()) devices.add(d.trim());
+                } else {
+                    try {
+                        devices = rmiClient.call(svc -> svc.listDevices());
+                    } catch (Exception e) {
+                        send(exchange, 500, "{\"error\":\"" + escape(e.getMessage()) + "\"}");
+                        return;
+                    }
+                }
+
+                addCorsHeaders(exchange);
+                Headers h = exchange.getResponseHeaders();
+                h.set("Content-Type", format.contentType);
+                h.set("Content-Disposition", "attachment; filename=\"readings." + format.extension + "\"");
+                exchange.sendResponseHeaders(200, 0); // chunked
+
+                // closed only on success: a failed export throws instead, so the server drops the
+                // connection without the final chunk and the client sees a truncated download
+                OutputStream os = exchange.getResponseBody();
+                try {
+                    HistoryExport.Stats stats = export.export(devices, from, to, format, os);
+                    ROWS.add(stats.rows);
+                    System.out.println("[EXPORT] " + devices.size() + " device(s) " + from + " .. " + to + ": " + stats);
+                } catch (Exception e) {
+                    System.out.println("[EXPORT] aborted: " + e.getMessage());
+                    throw e instanceof IOException io ? io : new IOException("export aborted: " + e.getMessage(), e);
+                }
+                os.close();
+            } finally {
+                TIME.since(t0);
+                export.end();
+            }
+        }
+    }
+
     static class ControlModeHandler implements HttpHandler {
         @Override
         public void handle(HttpExchange exchange) throws IOException {
@@ -365,10 +504,181 @@ public class Esp32HttpServer {
         }
     }
 
+    // GET /readings/live?devices=esp32-01,esp32-02  (all devices if omitted)
+    // SSE: "snapshot" per device (latest reading), then "delta" events with only the changed fields
+    // as the core stores readings. At most one batch per gateway.live.minIntervalMs per connection;
+    // readings arriving faster (or while the client is slow to read) are coalesced to the newest.
+    static class LiveReadingsHandler implements HttpHandler {
+        private static final int MAX_STREAMS = Integer.getInteger("gateway.live.max", 8);
+        private static final long MIN_INTERVAL_MS = Long.getLong("gateway.live.minIntervalMs", 1000);
+        private static final long HEARTBEAT_MS = Long.getLong("gateway.live.heartbeatMs", 15000);
+
+        private static final LongAdder EVENTS =
+                Metrics.counter("gateway_live_events_total", "Snapshot / delta events written to /readings/live clients");
+        private static final LongAdder COALESCED =
+                Metrics.counter("gateway_live_coalesced_total", "Live readings replaced by a newer one before they were sent");
+
+        static {
+            Metrics.gauge("gateway_live_streams", "Open /readings/live connections", LIVE::size);
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (handleCorsPreflight(exchange)) return;
+
+            if (rmiClient == null) {
+                send(exchange, 503, "{\"error\":\"RMI not configured\"}");
+                return;
+            }
+            if (!exchange.getRequestMethod().equalsIgnoreCase("GET")) {
+                send(exchange, 405, "{\"error\":\"Only GET allowed\"}");
+                return;
+            }
+            // every stream holds one of the gateway.http.threads, keep most of them for the ESP32s
+            if (LIVE.size() >= MAX_STREAMS) {
+                send(exchange, 429, "{\"error\":\"Too many live streams, retry later\"}");
+                return;
+            }
+
+            List<String> devices = new ArrayList<>();
+            String devicesParam = queryParam(exchange, "devices");
+            if (devicesParam == null) devicesParam = queryParam(exchange, "device");
+            if (devicesParam != null) {
+                for (String d : devicesParam.split(",")) if (!d.isBlank()) devices.add(d.trim());
+            }
+
+            ReadingStream stream = new ReadingStream(devices, MIN_INTERVAL_MS);
+            LIVE.add(stream);
+            try {
+                // first snapshot from the core, so the gauges fill before the next reading arrives
+                try {
+                    List<String> ids = devices.isEmpty() ? rmiClient.call(svc -> svc.listDevices()) : devices;
+                    for (ReadingDTO r : rmiClient.call(svc -> svc.getLatestMany(ids)).values()) stream.offer(r);
+                } catch (Exception e) {
+                    System.out.println("[SSE] live snapshot failed: " + e.getMessage());
+                }
+
+                Headers h = exchange.getResponseHeaders();
+                addCorsHeaders(exchange);
+                h.set("Content-Type", "text/event-stream; charset=utf-8");
+                h.set("Cache-Control", "no-cache");
+                h.set("Connection", "keep-alive");
+                exchange.sendResponseHeaders(200, 0);
+
+                try (OutputStream os = exchange.getResponseBody()) {
+                    os.write((": connected\n\n").getBytes(StandardCharsets.UTF_8));
+                    os.flush();
+
+                    while (true) {
+                        List<ReadingStream.Event> events = stream.poll(HEARTBEAT_MS);
+                        if (events.isEmpty()) {
+                            os.write(": hb\n\n".getBytes(StandardCharsets.UTF_8));
+                        } else {
+                            StringBuilder sb = new StringBuilder(events.size() * 96);
+                            for (ReadingStream.Event e : events) sb.append(e.sse());
+                            os.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+                            EVENTS.add(events.size());
+                        }
+                        os.flush(); // blocks while the client is slow; offers coalesce meanwhile
+                        COALESCED.add(stream.takeCoalesced());
+                    }
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                } catch (Exception e) {
+                    System.out.println("[SSE] live stream closed: " + e.getMessage());
+                }
+            } finally {
+                LIVE.remove(stream);
+                COALESCED.add(stream.takeCoalesced());
+            }
+        }
+    }
+
+    static class MetricsHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!exchange.getRequestMethod().equalsIgnoreCase("GET")) {
+                send(exchange, 405, "{\"error\":\"Only GET allowed\"}");
+                return;
+            }
+
+            StringBuilder sb = new StringBuilder(8192);
+            Metrics.writePrometheus(sb);
+
+            // core JVM metrics (DAO statements, decision time) come over RMI;
+            // an in-process core already wrote its families into this registry
+            if (rmiClient != null && !rmiClient.allLocal()) {
+                try {
+                    String core = rmiClient.call(svc -> svc.getMetrics());
+                    appendNewFamilies(sb, core);
+                } catch (Exception e) {
+                    sb.append("# core metrics unavailable: ")
+                            .append(String.valueOf(e.getMessage()).replace('\n', ' ')).append('\n');
+                }
+            }
+
+            sendText(exchange, 200, sb.toString(), "text/plain; version=0.0.4; charset=utf-8");
+        }
+
+        /**
+         * Appends the families of {@code text} not already in {@code sb} (Prometheus rejects a
+         * family that appears twice). A family is a "# TYPE" line and the lines up to the next one.
+         */
+        static void appendNewFamilies(StringBuilder sb, String text) {
+            if (text == null || text.isEmpty()) return;
+
+            Set<String> present = new HashSet<>();
+            for (String line : sb.toString().split("\n")) {
+                String f = typeFamily(line);
+                if (f != null) present.add(f);
+            }
+
+            // # HELP precedes its # TYPE, so lines are held until the family is known
+            StringBuilder help = new StringBuilder();
+            boolean skip = false;
+            for (String line : text.split("\n")) {
+                if (line.isBlank()) continue;
+                if (line.startsWith("# HELP ")) {
+                    help.append(line).append('\n');
+                    continue;
+                }
+                String f = typeFamily(line);
+                if (f != null) skip = !present.add(f);
+                if (!skip) sb.append(help).append(line).append('\n');
+                help.setLength(0);
+            }
+        }
+
+        private static String typeFamily(String line) {
+            if (!line.startsWith("# TYPE ")) return null;
+            int end = line.indexOf(' ', 7);
+            return end < 0 ? line.substring(7) : line.substring(7, end);
+        }
+    }
+
     // ======================================================================
     // TRANSLATION (Gateway model -> Core DTO)
     // ======================================================================
 
+    /**
+     * A reading the core stored, stamped with its created_utc, to every live stream that wants
+     * its device. No storedUtc in the decision (skipped, or an older core): not shown.
+     */
+    private static void publishLive(ReadingDTO dto, String storedUtc) {
+        if (LIVE.isEmpty() || dto == null || dto.device == null || storedUtc == null) return;
+
+        ReadingDTO r = new ReadingDTO();
+        r.device = dto.device;
+        r.soil = dto.soil;
+        r.waterTank = dto.waterTank;
+        r.raining = dto.raining;
+        r.pump = dto.pump;
+        r.tempC = dto.tempC;
+        r.humidity = dto.humidity;
+        r.createdUtc = storedUtc;
+        for (ReadingStream s : LIVE) s.offer(r);
+    }
+
     private static ReadingDTO toDto(SensorReading r) {
         ReadingDTO dto = new ReadingDTO();
         dto.device = r.device;
@@ -469,6 +779,15 @@ public class Esp32HttpServer {
         }
     }
 
+    private static void sendText(HttpExchange ex, int code, String text, String contentType) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", contentType);
+        ex.sendResponseHeaders(code, bytes.length);
+        try (OutputStream os = ex.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
     private static String readAll(InputStream is) throws IOException {
         return new String(is.readAllBytes(), StandardCharsets.UTF_8);
     }
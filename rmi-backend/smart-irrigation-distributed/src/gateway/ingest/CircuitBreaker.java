@@ -0,0 +1,151 @@
+package gateway.ingest;
+
+import java.util.Arrays;
+
+/**
+ * Count-based circuit breaker for calls toward the core.
+ *
+ * CLOSED    : calls flow; the last `window` outcomes are kept in a ring.
+ *             Opens when failures or slow calls reach their rate threshold.
+ * OPEN      : calls are refused until openMs has elapsed.
+ * HALF_OPEN : up to `probes` trial calls; all succeed -> CLOSED, any failure -> OPEN.
+ *
+ * Every state change starts a new generation and a permit carries the generation it was
+ * admitted in: a result that comes back after the state moved on (a slow call admitted while
+ * CLOSED that finishes during HALF_OPEN) is ignored instead of counting as a probe.
+ */
+public class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    /** tryAcquire() refused the call. */
+    public static final long NO_PERMIT = -1;
+
+    private final int window;
+    private final double failureRate;
+    private final double slowRate;
+    private final long slowNanos;
+    private final long openNanos;
+    private final int probes;
+
+    // ring of recent outcomes (CLOSED state only)
+    private final boolean[] failed;
+    private final boolean[] slow;
+    private int pos;
+    private int filled;
+    private int failedCount;
+    private int slowCount;
+
+    private State state = State.CLOSED;
+    private long generation;
+    private long openedAt;
+    private int probesInFlight;
+    private int probeSuccesses;
+
+    public CircuitBreaker(int window, double failureRate, double slowRate, long slowMs, long openMs, int probes) {
+        this.window = Math.max(1, window);
+        this.failureRate = failureRate;
+        this.slowRate = slowRate;
+        this.slowNanos = slowMs * 1_000_000L;
+        this.openNanos = openMs * 1_000_000L;
+        this.probes = Math.max(1, probes);
+        this.failed = new boolean[this.window];
+        this.slow = new boolean[this.window];
+    }
+
+    public static CircuitBreaker fromSystemProperties() {
+        return new CircuitBreaker(
+                Integer.getInteger("gateway.breaker.window", 20),
+                Double.parseDouble(System.getProperty("gateway.breaker.failureRate", "0.5")),
+                Double.parseDouble(System.getProperty("gateway.breaker.slowRate", "0.5")),
+                Long.getLong("gateway.breaker.slowMs", 2000),
+                Long.getLong("gateway.breaker.openMs", 10_000),
+                Integer.getInteger("gateway.breaker.probes", 3)
+        );
+    }
+
+    /**
+     * @return a permit to hand back to onResult()/release(), or NO_PERMIT if the call may not go
+     * through now (counts as a probe when HALF_OPEN).
+     */
+    public synchronized long tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return generation;
+            case OPEN:
+                if (System.nanoTime() - openedAt < openNanos) return NO_PERMIT;
+                state = State.HALF_OPEN;
+                generation++;
+                probesInFlight = 0;
+                probeSuccesses = 0;
+                // fall through
+            case HALF_OPEN:
+            default:
+                if (probesInFlight >= probes) return NO_PERMIT;
+                probesInFlight++;
+                return generation;
+        }
+    }
+
+    /** A permit from tryAcquire() was not used (e.g. the call was never queued). */
+    public synchronized void release(long permit) {
+        if (permit == generation && state == State.HALF_OPEN && probesInFlight > 0) probesInFlight--;
+    }
+
+    public synchronized void onResult(long permit, boolean success, long latencyNanos) {
+        if (permit != generation) return; // admitted before the last state change
+
+        boolean isSlow = latencyNanos >= slowNanos;
+
+        if (state == State.HALF_OPEN) {
+            if (!success || isSlow) {
+                open();
+            } else if (++probeSuccesses >= probes) {
+                close();
+            }
+            return;
+        }
+
+        if (filled == window) {
+            if (failed[pos]) failedCount--;
+            if (slow[pos]) slowCount--;
+        } else {
+            filled++;
+        }
+        failed[pos] = !success;
+        slow[pos] = isSlow;
+        if (!success) failedCount++;
+        if (isSlow) slowCount++;
+        pos = (pos + 1) % window;
+
+        if (filled == window
+                && (failedCount >= failureRate * window || slowCount >= slowRate * window)) {
+            open();
+        }
+    }
+
+    public synchronized State state() {
+        return state;
+    }
+
+    private void open() {
+        if (state != State.OPEN) {
+            System.out.println("[BREAKER] OPEN (failed=" + failedCount + " slow=" + slowCount + "/" + filled + ")");
+        }
+        state = State.OPEN;
+        generation++;
+        openedAt = System.nanoTime();
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        generation++;
+        pos = 0;
+        filled = 0;
+        failedCount = 0;
+        slowCount = 0;
+        Arrays.fill(failed, false);
+        Arrays.fill(slow, false);
+        System.out.println("[BREAKER] CLOSED");
+    }
+}
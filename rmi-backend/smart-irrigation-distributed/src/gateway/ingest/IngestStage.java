@@ -0,0 +1,201 @@
+package gateway.ingest;
+
+import core.dto.PumpDecisionDTO;
+import core.dto.ReadingDTO;
+import core.metrics.Metrics;
+import gateway.Client.RmiClient;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded hand-off between the HTTP threads and the core.
+ *
+ * Readings go into a fixed-size queue drained by a small worker pool that calls
+ * pushReading. The HTTP thread waits at most timeoutMs for the decision.
+ * Nothing here blocks unboundedly: a full queue is rejected (429) and an open
+ * breaker fails fast (503), both answered with the fail-safe pump_cmd=false.
+ * Readings refused that way, or whose call failed (a core that could not store the
+ * reading fails the call too), go to the ReadingSpool (when configured) and reach the core later through the SpoolReplayer.
+ * Each reading is stamped with its receive time, which the core stores it under and keys it by,
+ * so one that reaches the core twice (a retry after the core stored it, then the spool) is stored once.
+ */
+public class IngestStage {
+
+    public enum Status { OK, QUEUE_FULL, BREAKER_OPEN, TIMEOUT, ERROR }
+
+    public static final class Result {
+        public final Status status;
+        public final PumpDecisionDTO decision; // only for OK
+        public final String error;
+
+        private Result(Status status, PumpDecisionDTO decision, String error) {
+            this.status = status;
+            this.decision = decision;
+            this.error = error;
+        }
+    }
+
+    private final RmiClient rmiClient;
+    private final CircuitBreaker breaker;
+    private final ThreadPoolExecutor workers;
+    private final int capacity;
+    private final long timeoutMs;
+
+    // null = no spool: refused readings are lost (the pre-spool behaviour)
+    private final ReadingSpool spool;
+    private final SpoolReplayer replayer;
+
+    private final LongAdder shedQueueFull;
+    private final LongAdder shedBreaker;
+    private final LongAdder timeouts;
+    private final LongAdder spooled;
+    private final LongAdder spoolFull;
+
+    public IngestStage(RmiClient rmiClient, CircuitBreaker breaker, int workerCount, int capacity, long timeoutMs) {
+        this(rmiClient, breaker, workerCount, capacity, timeoutMs, null);
+    }
+
+    public IngestStage(RmiClient rmiClient, CircuitBreaker breaker, int workerCount, int capacity, long timeoutMs,
+                       ReadingSpool spool) {
+        this.rmiClient = rmiClient;
+        this.breaker = breaker;
+        this.capacity = Math.max(1, capacity);
+        this.timeoutMs = timeoutMs > 0 ? timeoutMs : 3000;
+
+        AtomicInteger seq = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(
+                Math.max(1, workerCount), Math.max(1, workerCount),
+                60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(this.capacity),
+                r -> {
+                    Thread t = new Thread(r, "ingest-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+
+        this.shedQueueFull = Metrics.counter("gateway_ingest_shed_total", "Readings refused by the ingest stage", "reason", "queue_full");
+        this.shedBreaker = Metrics.counter("gateway_ingest_shed_total", "Readings refused by the ingest stage", "reason", "breaker_open");
+        this.timeouts = Metrics.counter("gateway_ingest_timeouts_total", "Readings whose decision did not arrive in time");
+
+        Metrics.gauge("gateway_ingest_queue_depth", "Readings waiting for a worker", () -> workers.getQueue().size());
+        Metrics.gauge("gateway_ingest_queue_capacity", "Ingest queue capacity", () -> this.capacity);
+        Metrics.gauge("gateway_ingest_active_workers", "Workers currently calling the core", workers::getActiveCount);
+        Metrics.gauge("gateway_breaker_state", "Circuit breaker toward the core (0=closed, 1=open, 2=half-open)",
+                () -> breaker.state() == CircuitBreaker.State.CLOSED ? 0
+                        : breaker.state() == CircuitBreaker.State.OPEN ? 1 : 2);
+
+        this.spool = spool;
+        this.spooled = Metrics.counter("gateway_spool_appended_total", "Readings written to the spool instead of the core");
+        this.spoolFull = Metrics.counter("gateway_spool_dropped_total", "Readings lost by the spool", "reason", "full");
+        if (spool != null) {
+            Metrics.gauge("gateway_spool_depth", "Readings waiting in the spool", spool::records);
+            Metrics.gauge("gateway_spool_bytes", "Bytes used in the spool", spool::bytes);
+            Metrics.gauge("gateway_spool_capacity_bytes", "Spool capacity", spool::capacity);
+            Metrics.gauge("gateway_spool_oldest_age_seconds", "Age of the oldest spooled reading (0 when empty)", () -> {
+                long oldest = spool.oldestMs();
+                return oldest < 0 ? 0.0 : (System.currentTimeMillis() - oldest) / 1000.0;
+            });
+
+            // live readings first: replay waits while the queue is more than half full
+            this.replayer = SpoolReplayer.fromSystemProperties(spool, rmiClient, breaker,
+                    () -> workers.getQueue().size() * 2 >= this.capacity);
+            replayer.start();
+            System.out.println("[SPOOL] " + spool + ": " + spool.records() + " reading(s) to replay"
+                    + (spool.cutBytes() > 0 ? " (" + spool.cutBytes() + " torn bytes cut off)" : ""));
+        } else {
+            this.replayer = null;
+        }
+    }
+
+    /** -Dgateway.spool.mb=0 turns the spool off (see ReadingSpool / SpoolReplayer for the other knobs). */
+    public static IngestStage fromSystemProperties(RmiClient rmiClient) throws IOException {
+        return new IngestStage(
+                rmiClient,
+                CircuitBreaker.fromSystemProperties(),
+                Integer.getInteger("gateway.ingest.workers", 8),
+                Integer.getInteger("gateway.ingest.queue", 256),
+                Long.getLong("gateway.ingest.timeoutMs", 3000),
+                ReadingSpool.fromSystemProperties()
+        );
+    }
+
+    public Result submit(ReadingDTO dto) {
+        long receivedMs = System.currentTimeMillis();
+        // the reading's time and key at the core: a retried call or a spool replay of it is stored once
+        if (dto != null && dto.createdUtc == null) dto.createdUtc = Instant.ofEpochMilli(receivedMs).toString();
+
+        long permit = breaker.tryAcquire();
+        if (permit == CircuitBreaker.NO_PERMIT) {
+            shedBreaker.increment();
+            spool(dto, receivedMs);
+            return new Result(Status.BREAKER_OPEN, null, "core unavailable (circuit open)");
+        }
+
+        Future<PumpDecisionDTO> f;
+        try {
+            f = workers.submit(() -> forward(dto, receivedMs, permit));
+        } catch (RejectedExecutionException full) {
+            breaker.release(permit);
+            shedQueueFull.increment();
+            spool(dto, receivedMs);
+            return new Result(Status.QUEUE_FULL, null, "ingest queue full");
+        }
+
+        try {
+            return new Result(Status.OK, f.get(timeoutMs, TimeUnit.MILLISECONDS), null);
+        } catch (TimeoutException e) {
+            // the worker keeps going: the reading still gets stored, only the answer is late
+            timeouts.increment();
+            return new Result(Status.TIMEOUT, null, "no decision within " + timeoutMs + "ms");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            return new Result(Status.ERROR, null, cause.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new Result(Status.ERROR, null, "interrupted");
+        }
+    }
+
+    private PumpDecisionDTO forward(ReadingDTO dto, long receivedMs, long permit) throws Exception {
+        long t0 = System.nanoTime();
+        boolean ok = false;
+        try {
+            PumpDecisionDTO d = rmiClient.call(svc -> svc.pushReading(dto)); // reconnect+retry
+            ok = true;
+            return d;
+        } finally {
+            breaker.onResult(permit, ok, System.nanoTime() - t0);
+            // also covers calls that failed after the HTTP thread gave up waiting (TIMEOUT)
+            if (!ok) spool(dto, receivedMs);
+        }
+    }
+
+    /** Keep a reading the core did not get, stamped with the time the gateway received it. */
+    private void spool(ReadingDTO dto, long receivedMs) {
+        if (spool == null || dto == null || dto.device == null || dto.device.isBlank()) return;
+
+        boolean wasEmpty = spool.records() == 0;
+        if (spool.append(dto, receivedMs)) {
+            spooled.increment();
+            if (wasEmpty) System.out.println("[SPOOL] core unavailable, spooling readings to " + spool);
+        } else {
+            spoolFull.increment();
+        }
+    }
+
+    public void shutdown() {
+        workers.shutdown();
+        if (replayer != null) replayer.stop();
+    }
+}
@@ -0,0 +1,303 @@
+package gateway.ingest;
+
+import core.dto.ReadingDTO;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Bounded FIFO of readings the gateway could not hand to the core, in one memory-mapped file.
+ *
+ * Layout: 32-byte header [magic][version][head][tail], then a ring of records
+ * [int length][int crc32c][payload] that may wrap around the end. head / tail are byte
+ * positions that only grow (the ring index is pos % capacity). A record is written first and
+ * tail moves after it, so a crash of the gateway loses nothing already appended; after a power
+ * loss the records between head and tail are re-checked on open and cut at the first bad CRC.
+ *
+ * When the ring is full the new reading is dropped (the older ones keep their order).
+ * Replay is at-least-once: entries are only removed (commit) after the core stored them.
+ */
+public final class ReadingSpool implements Closeable {
+
+    /** One spooled reading and where the record after it starts. */
+    public static final class Entry {
+        public final ReadingDTO reading;
+        public final long receivedMs;
+        final long next;
+
+        Entry(ReadingDTO reading, long receivedMs, long next) {
+            this.reading = reading;
+            this.receivedMs = receivedMs;
+            this.next = next;
+        }
+    }
+
+    private static final int MAGIC = 0x53504c31; // "SPL1"
+    private static final int VERSION = 1;
+    private static final int HEADER = 32;
+    private static final int REC_HEADER = 8;
+
+    private static final int H_HEAD = 8;
+    private static final int H_TAIL = 16;
+
+    // payload flags
+    private static final int F_SOIL = 1;
+    private static final int F_TANK = 1 << 1;
+    private static final int F_RAIN_SET = 1 << 2;
+    private static final int F_RAIN = 1 << 3;
+    private static final int F_PUMP_SET = 1 << 4;
+    private static final int F_PUMP = 1 << 5;
+    private static final int F_TEMP = 1 << 6;
+    private static final int F_HUMIDITY = 1 << 7;
+
+    private final Path file;
+    private final MappedByteBuffer buf;
+    private final long capacity;
+
+    private long head;
+    private long tail;
+    private long records;
+    private long cutBytes; // invalid tail cut off on open
+
+    private ReadingSpool(Path file, MappedByteBuffer buf, long capacity) {
+        this.file = file;
+        this.buf = buf;
+        this.capacity = capacity;
+    }
+
+    public static ReadingSpool open(Path file, int bytes) throws IOException {
+        if (file.getParent() != null) Files.createDirectories(file.getParent());
+
+        MappedByteBuffer buf;
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw");
+             FileChannel ch = raf.getChannel()) {
+            if (raf.length() != bytes) {
+                if (raf.length() > 0) System.out.println("[SPOOL] " + file + " has another size, starting empty");
+                raf.setLength(0);
+                raf.setLength(bytes);
+            }
+            // the mapping stays valid after the channel is closed
+            buf = ch.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+        }
+
+        ReadingSpool s = new ReadingSpool(file, buf, bytes - HEADER);
+        if (buf.getInt(0) != MAGIC || buf.getInt(4) != VERSION) {
+            buf.putInt(0, MAGIC);
+            buf.putInt(4, VERSION);
+            s.writePositions();
+        } else {
+            s.head = buf.getLong(H_HEAD);
+            s.tail = buf.getLong(H_TAIL);
+            s.recover();
+        }
+        return s;
+    }
+
+    public static ReadingSpool fromSystemProperties() throws IOException {
+        int mb = Integer.getInteger("gateway.spool.mb", 16);
+        if (mb <= 0) return null;
+        return open(Path.of(System.getProperty("gateway.spool.file", "spool/readings.spool")), mb * 1024 * 1024);
+    }
+
+    /** Count the valid records between head and tail; anything after the first bad one is cut. */
+    private void recover() {
+        if (head < 0 || tail < head || tail - head > capacity) {
+            System.out.println("[SPOOL] " + file + " header out of range, starting empty");
+            head = tail = 0;
+            writePositions();
+            return;
+        }
+
+        long p = head;
+        while (p < tail) {
+            Entry e = tail - p >= REC_HEADER ? readAt(p) : null;
+            if (e == null) {
+                cutBytes = tail - p;
+                tail = p;
+                writePositions();
+                break;
+            }
+            records++;
+            p = e.next;
+        }
+    }
+
+    /** @return false if the spool is full (the reading is dropped). */
+    public synchronized boolean append(ReadingDTO r, long receivedMs) {
+        byte[] payload = encode(r, receivedMs);
+        long size = REC_HEADER + payload.length;
+        if (tail - head + size > capacity) return false;
+
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+
+        ByteBuffer hdr = ByteBuffer.allocate(REC_HEADER).putInt(payload.length).putInt((int) crc.getValue());
+        put(tail, hdr.array());
+        put(tail + REC_HEADER, payload);
+
+        tail += size;
+        records++;
+        buf.putLong(H_TAIL, tail); // last: the record is complete before it becomes visible
+        return true;
+    }
+
+    /** Up to max oldest entries, in append order; they stay spooled until commit. */
+    public synchronized List<Entry> peek(int max) {
+        List<Entry> out = new ArrayList<>(Math.min(max, (int) Math.min(records, 1024)));
+        long p = head;
+        while (p < tail && out.size() < max) {
+            Entry e = readAt(p);
+            if (e == null) break; // only possible if the file was changed underneath us
+            out.add(e);
+            p = e.next;
+        }
+        return out;
+    }
+
+    /** Drop the peeked entries up to and including last. */
+    public synchronized void commit(List<Entry> batch) {
+        if (batch.isEmpty()) return;
+        head = batch.get(batch.size() - 1).next;
+        records = Math.max(0, records - batch.size());
+        buf.putLong(H_HEAD, head);
+    }
+
+    /** receivedMs of the oldest entry, or -1 when empty. */
+    public synchronized long oldestMs() {
+        if (head >= tail) return -1;
+        return getLong(head + REC_HEADER);
+    }
+
+    public synchronized long records() {
+        return records;
+    }
+
+    public synchronized long bytes() {
+        return tail - head;
+    }
+
+    public long capacity() {
+        return capacity;
+    }
+
+    public long cutBytes() {
+        return cutBytes;
+    }
+
+    public synchronized void force() {
+        buf.force();
+    }
+
+    @Override
+    public void close() {
+        force();
+    }
+
+    @Override
+    public String toString() {
+        return "spool " + file.toAbsolutePath() + " (" + (capacity + HEADER) / (1024 * 1024) + " MB)";
+    }
+
+    // =========================
+    // RECORDS
+    // =========================
+
+    private Entry readAt(long p) {
+        byte[] hdr = new byte[REC_HEADER];
+        get(p, hdr);
+        ByteBuffer h = ByteBuffer.wrap(hdr);
+        int len = h.getInt();
+        int crcValue = h.getInt();
+        if (len <= 0 || p + REC_HEADER + len > tail) return null;
+
+        byte[] payload = new byte[len];
+        get(p + REC_HEADER, payload);
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        if ((int) crc.getValue() != crcValue) return null;
+
+        ByteBuffer b = ByteBuffer.wrap(payload);
+        long receivedMs = b.getLong();
+        return new Entry(decode(b, receivedMs), receivedMs, p + REC_HEADER + len);
+    }
+
+    private static byte[] encode(ReadingDTO r, long receivedMs) {
+        byte[] device = r.device != null ? r.device.getBytes(StandardCharsets.UTF_8) : new byte[0];
+
+        int flags = 0;
+        if (r.soil != null) flags |= F_SOIL;
+        if (r.waterTank != null) flags |= F_TANK;
+        if (r.raining != null) flags |= F_RAIN_SET | (r.raining ? F_RAIN : 0);
+        if (r.pump != null) flags |= F_PUMP_SET | (r.pump ? F_PUMP : 0);
+        if (r.tempC != null) flags |= F_TEMP;
+        if (r.humidity != null) flags |= F_HUMIDITY;
+
+        ByteBuffer b = ByteBuffer.allocate(8 + 2 + device.length + 1 + 4 + 4 + 8 + 8);
+        b.putLong(receivedMs).putShort((short) device.length).put(device).put((byte) flags);
+        if (r.soil != null) b.putInt(r.soil);
+        if (r.waterTank != null) b.putInt(r.waterTank);
+        if (r.tempC != null) b.putDouble(r.tempC);
+        if (r.humidity != null) b.putDouble(r.humidity);
+
+        byte[] out = new byte[b.position()];
+        b.flip().get(out);
+        return out;
+    }
+
+    private static ReadingDTO decode(ByteBuffer b, long receivedMs) {
+        byte[] device = new byte[b.getShort()];
+        b.get(device);
+        int flags = b.get() & 0xFF;
+
+        ReadingDTO r = new ReadingDTO();
+        r.device = new String(device, StandardCharsets.UTF_8);
+        r.soil = (flags & F_SOIL) != 0 ? b.getInt() : null;
+        r.waterTank = (flags & F_TANK) != 0 ? b.getInt() : null;
+        r.raining = (flags & F_RAIN_SET) != 0 ? (flags & F_RAIN) != 0 : null;
+        r.pump = (flags & F_PUMP_SET) != 0 ? (flags & F_PUMP) != 0 : null;
+        r.tempC = (flags & F_TEMP) != 0 ? b.getDouble() : null;
+        r.humidity = (flags & F_HUMIDITY) != 0 ? b.getDouble() : null;
+        r.createdUtc = Instant.ofEpochMilli(receivedMs).toString();
+        return r;
+    }
+
+    // =========================
+    // RING ACCESS (wraps at capacity)
+    // =========================
+
+    private void put(long pos, byte[] src) {
+        int at = (int) (pos % capacity);
+        int first = (int) Math.min(src.length, capacity - at);
+        buf.put(HEADER + at, src, 0, first);
+        if (first < src.length) buf.put(HEADER, src, first, src.length - first);
+    }
+
+    private void get(long pos, byte[] dst) {
+        int at = (int) (pos % capacity);
+        int first = (int) Math.min(dst.length, capacity - at);
+        buf.get(HEADER + at, dst, 0, first);
+        if (first < dst.length) buf.get(HEADER, dst, first, dst.length - first);
+    }
+
+    private long getLong(long pos) {
+        byte[] b = new byte[8];
+        get(pos, b);
+        return ByteBuffer.wrap(b).getLong();
+    }
+
+    private void writePositions() {
+        buf.putLong(H_HEAD, head);
+        buf.putLong(H_TAIL, tail);
+    }
+}
@@ -0,0 +1,144 @@
+package gateway.ingest;
+
+import core.dto.ReadingDTO;
+import core.metrics.LatencyHistogram;
+import core.metrics.Metrics;
+import gateway.Client.RmiClient;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Drains the ReadingSpool back into the core with importReadings, oldest first.
+ *
+ * Every tickMs it sends at most one batch, paced by a token bucket of ratePerSec readings
+ * (burst = one batch), and only when the breaker lets a call through and live ingest is
+ * not busy: a recovering core serves fresh readings first and the backlog gets what is left.
+ * A batch is removed from the spool only after the core stored it. A batch the core keeps
+ * rejecting while it is otherwise healthy (breaker closed) is dropped after maxAttempts.
+ *
+ * Throughput = rate(gateway_spool_replayed_total); batch round trip in gateway_spool_replay_seconds.
+ */
+public class SpoolReplayer {
+
+    private final ReadingSpool spool;
+    private final RmiClient rmiClient;
+    private final CircuitBreaker breaker;
+    private final BooleanSupplier liveBusy;
+
+    private final int batch;
+    private final double ratePerSec;
+    private final long tickMs;
+    private final long forceMs;
+    private final int maxAttempts;
+
+    private final ScheduledExecutorService exec = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "spool-replay");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // token bucket (replay thread only)
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+    private int attempts;
+
+    private final LongAdder replayed;
+    private final LongAdder dropped;
+    private final LatencyHistogram batchTime;
+
+    public SpoolReplayer(ReadingSpool spool, RmiClient rmiClient, CircuitBreaker breaker, BooleanSupplier liveBusy,
+                         int batch, double ratePerSec, long tickMs, long forceMs, int maxAttempts) {
+        this.spool = spool;
+        this.rmiClient = rmiClient;
+        this.breaker = breaker;
+        this.liveBusy = liveBusy;
+        this.batch = Math.max(1, batch);
+        this.ratePerSec = ratePerSec > 0 ? ratePerSec : 200;
+        this.tickMs = tickMs > 0 ? tickMs : 250;
+        this.forceMs = forceMs;
+        this.maxAttempts = Math.max(1, maxAttempts);
+
+        this.replayed = Metrics.counter("gateway_spool_replayed_total", "Spooled readings stored by the core on replay");
+        this.dropped = Metrics.counter("gateway_spool_dropped_total", "Readings lost by the spool", "reason", "rejected");
+        this.batchTime = Metrics.histogram("gateway_spool_replay_seconds", "importReadings round trip per replay batch");
+    }
+
+    public static SpoolReplayer fromSystemProperties(ReadingSpool spool, RmiClient rmiClient, CircuitBreaker breaker,
+                                                     BooleanSupplier liveBusy) {
+        return new SpoolReplayer(
+                spool, rmiClient, breaker, liveBusy,
+                Integer.getInteger("gateway.spool.batch", 100),
+                Double.parseDouble(System.getProperty("gateway.spool.replayRate", "200")),
+                Long.getLong("gateway.spool.tickMs", 250),
+                Long.getLong("gateway.spool.forceMs", 1000),
+                Integer.getInteger("gateway.spool.maxAttempts", 20)
+        );
+    }
+
+    public void start() {
+        exec.scheduleWithFixedDelay(this::tick, tickMs, tickMs, TimeUnit.MILLISECONDS);
+        if (forceMs > 0) exec.scheduleWithFixedDelay(spool::force, forceMs, forceMs, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        exec.shutdownNow();
+        spool.close();
+    }
+
+    private void tick() {
+        try {
+            long now = System.nanoTime();
+            tokens = Math.min(batch, tokens + (now - lastRefill) / 1e9 * ratePerSec);
+            lastRefill = now;
+
+            if (spool.records() == 0 || tokens < 1 || liveBusy.getAsBoolean()) return;
+            long permit = breaker.tryAcquire();
+            if (permit == CircuitBreaker.NO_PERMIT) return;
+
+            List<ReadingSpool.Entry> entries = spool.peek((int) tokens);
+            if (entries.isEmpty()) {
+                breaker.release(permit);
+                return;
+            }
+
+            List<ReadingDTO> readings = new ArrayList<>(entries.size());
+            for (ReadingSpool.Entry e : entries) readings.add(e.reading);
+
+            long t0 = System.nanoTime();
+            boolean ok = false;
+            try {
+                rmiClient.call(svc -> svc.importReadings(readings));
+                ok = true;
+            } catch (Exception e) {
+                attempts++;
+                if (attempts == 1 || attempts % 10 == 0) {
+                    System.out.println("[SPOOL] replay failed (" + attempts + "x, " + spool.records() + " waiting): " + e.getMessage());
+                }
+            } finally {
+                breaker.onResult(permit, ok, System.nanoTime() - t0);
+                batchTime.since(t0);
+            }
+
+            if (ok) {
+                spool.commit(entries);
+                replayed.add(entries.size());
+                tokens -= entries.size();
+                attempts = 0;
+                if (spool.records() == 0) System.out.println("[SPOOL] drained");
+            } else if (attempts >= maxAttempts && breaker.state() == CircuitBreaker.State.CLOSED) {
+                System.out.println("[SPOOL] dropping " + entries.size() + " reading(s) the core keeps rejecting");
+                spool.commit(entries);
+                dropped.add(entries.size());
+                attempts = 0;
+            }
+        } catch (Exception e) {
+            System.out.println("[SPOOL] replay tick failed: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package core.db.archive;
+
+import core.dto.ReadingDTO;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ArchiveCodecTest {
+
+    private static final long T0 = Instant.parse("2026-10-01T00:00:00Z").toEpochMilli();
+
+    private static ReadingDTO row(long ms, Integer soil, Integer tank, Boolean rain, Boolean pump, Double temp, Double hum) {
+        ReadingDTO r = new ReadingDTO();
+        r.device = "esp32-01";
+        r.soil = soil;
+        r.waterTank = tank;
+        r.raining = rain;
+        r.pump = pump;
+        r.tempC = temp;
+        r.humidity = hum;
+        r.createdUtc = Instant.ofEpochMilli(ms).toString();
+        return r;
+    }
+
+    private static List<ReadingDTO> roundTrip(List<ReadingDTO> rows) {
+        long[] millis = new long[rows.size()];
+        for (int i = 0; i < millis.length; i++) millis[i] = Instant.parse(rows.get(i).createdUtc).toEpochMilli();
+        return ArchiveCodec.decodeAll(ArchiveCodec.encode(rows, millis), rows.size(), "esp32-01");
+    }
+
+    private static void assertSameRows(List<ReadingDTO> expected, List<ReadingDTO> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            ReadingDTO e = expected.get(i);
+            ReadingDTO a = actual.get(i);
+            String at = "row " + i;
+            assertEquals(e.device, a.device, at);
+            assertEquals(e.createdUtc, a.createdUtc, at);
+            assertEquals(e.soil, a.soil, at);
+            assertEquals(e.waterTank, a.waterTank, at);
+            assertEquals(e.raining, a.raining, at);
+            assertEquals(e.pump, a.pump, at);
+            assertEquals(e.tempC, a.tempC, at);
+            assertEquals(e.humidity, a.humidity, at);
+        }
+    }
+
+    @Test
+    void centiValuesJitterAndNullsRoundTrip() {
+        List<ReadingDTO> rows = new ArrayList<>();
+        long t = T0;
+        Random rnd = new Random(42);
+        for (int i = 0; i < 500; i++) {
+            t += 5000 + rnd.nextInt(40) - 20; // 5 s with jitter
+            if (i == 200) t += 3_600_000;     // an hour offline
+            boolean gap = i % 37 == 0;
+            rows.add(row(t,
+                    gap ? null : 20 + rnd.nextInt(60),
+                    gap ? null : 100 - i / 10,
+                    i % 11 == 0 ? null : i % 3 == 0,
+                    i % 13 == 0 ? null : i % 2 == 0,
+                    gap ? null : Math.round((18 + rnd.nextDouble() * 10) * 100) / 100.0,
+                    i % 5 == 0 ? null : Math.round((40 + rnd.nextDouble() * 30) * 10) / 10.0));
+        }
+        assertSameRows(rows, roundTrip(rows));
+    }
+
+    @Test
+    void arbitraryDoublesAndExtremeValuesRoundTrip() {
+        List<ReadingDTO> rows = List.of(
+                row(T0, Integer.MIN_VALUE, Integer.MAX_VALUE, true, false, 21.123456789, -0.0),
+                row(T0, 0, 0, false, true, Double.MAX_VALUE, Double.MIN_VALUE),
+                row(T0 + 1, -5, 1000, null, null, Math.PI, 1e-9),
+                row(T0 + 86_399_999, null, null, null, null, null, null),
+                row(T0 + 86_399_999, 100, 0, true, true, -40.0, 100.0));
+        assertSameRows(rows, roundTrip(rows));
+    }
+
+    @Test
+    void singleRowAndRangeFilter() {
+        assertSameRows(List.of(row(T0, 1, 2, true, null, 3.5, null)), roundTrip(List.of(row(T0, 1, 2, true, null, 3.5, null))));
+
+        List<ReadingDTO> rows = new ArrayList<>();
+        for (int i = 0; i < 10; i++) rows.add(row(T0 + i * 1000L, i, null, null, null, null, null));
+        long[] millis = new long[rows.size()];
+        for (int i = 0; i < millis.length; i++) millis[i] = T0 + i * 1000L;
+
+        List<ReadingDTO> out = new ArrayList<>();
+        ArchiveCodec.decode(ArchiveCodec.encode(rows, millis), rows.size(), "esp32-01", T0 + 3000, T0 + 5000, out);
+        assertSameRows(rows.subList(3, 6), out);
+    }
+}
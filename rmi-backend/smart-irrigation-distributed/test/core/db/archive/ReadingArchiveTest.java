@@ -0,0 +1,74 @@
+package core.db.archive;
+
+import core.dto.ReadingDTO;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReadingArchiveTest {
+
+    private static final LocalDate DAY = LocalDate.parse("2026-10-01");
+    private static final Instant T0 = Instant.parse("2026-10-01T00:00:00Z");
+
+    @TempDir
+    Path dir;
+
+    private static ReadingDTO row(Instant at, int soil) {
+        ReadingDTO r = new ReadingDTO();
+        r.device = "esp32-01";
+        r.soil = soil;
+        r.createdUtc = at.toString();
+        return r;
+    }
+
+    private static List<Integer> soils(List<ReadingDTO> rs) {
+        List<Integer> out = new ArrayList<>();
+        for (ReadingDTO r : rs) out.add(r.soil);
+        return out;
+    }
+
+    @Test
+    void dayFilesRoundTripAcrossBlocksAndMerge() throws Exception {
+        ReadingArchive a = new ReadingArchive(dir, 7, 0);
+
+        List<ReadingDTO> rows = new ArrayList<>();
+        for (int i = 0; i < ReadingArchive.BLOCK_ROWS * 2 + 10; i++) rows.add(row(T0.plusSeconds(i * 5L), i % 100));
+        a.writeDay("esp32-01", DAY, rows);
+
+        List<ReadingDTO> all = a.read("esp32-01", T0, T0.plusSeconds(86_399), 100_000);
+        assertEquals(soils(rows), soils(all));
+        assertEquals(T0, a.oldest("esp32-01"));
+
+        // a late import into the same day: merged in time order, exact duplicates dropped
+        a.writeDay("esp32-01", DAY, List.of(row(T0.plusMillis(2), 77), rows.get(0)));
+        List<ReadingDTO> merged = a.read("esp32-01", T0, T0.plusSeconds(10), 100);
+        assertEquals(List.of(0, 77, 1, 2), soils(merged));
+    }
+
+    @Test
+    void keysetSkipsWithinAMillisecond() throws Exception {
+        ReadingArchive a = new ReadingArchive(dir, 7, 0);
+        List<ReadingDTO> rows = new ArrayList<>();
+        for (int i = 0; i < 5; i++) rows.add(row(T0.plusMillis(10), i));
+        rows.add(row(T0.plusMillis(11), 9));
+        a.writeDay("esp32-01", DAY, rows);
+
+        List<ReadingDTO> page = a.readAfter("esp32-01", T0, Long.MIN_VALUE, T0.plusSeconds(1), 3);
+        assertEquals(List.of(0, 1, 2), soils(page));
+        assertEquals(ReadingArchive.ARCHIVE_ID + 2, page.get(2).id);
+
+        ReadingDTO last = page.get(2);
+        List<ReadingDTO> next = a.readAfter("esp32-01", Instant.parse(last.createdUtc), last.id, T0.plusSeconds(1), 3);
+        assertEquals(List.of(3, 4, 9), soils(next));
+
+        // a dbo.readings id at that millisecond is past every archived row of it
+        assertEquals(List.of(9), soils(a.readAfter("esp32-01", T0.plusMillis(10), 1, T0.plusSeconds(1), 10)));
+    }
+}
@@ -0,0 +1,50 @@
+package core.db.bulk;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BulkImportTest {
+
+    @TempDir
+    Path tmp;
+
+    @Test
+    void acceptsFilesAndDirectoriesInsideTheImportDirectory() throws Exception {
+        Path root = Files.createDirectories(tmp.resolve("import"));
+        Path day = Files.createDirectories(root.resolve("2026-10"));
+        Files.writeString(day.resolve("b.csv"), "");
+        Files.writeString(day.resolve("a.ndjson.gz"), "");
+        Files.writeString(day.resolve("notes.txt"), "");
+
+        assertEquals(List.of(day.toRealPath().resolve("a.ndjson.gz"), day.toRealPath().resolve("b.csv")),
+                BulkImport.within(root, "2026-10"));
+        assertEquals(List.of(day.toRealPath().resolve("b.csv")), BulkImport.within(root, "2026-10/../2026-10/b.csv"));
+    }
+
+    @Test
+    void rejectsPathsOutsideTheImportDirectory() throws Exception {
+        Path root = Files.createDirectories(tmp.resolve("import"));
+        Path secret = Files.writeString(tmp.resolve("secret.csv"), "");
+
+        assertThrows(IllegalArgumentException.class, () -> BulkImport.within(root, "../secret.csv"));
+        assertThrows(IllegalArgumentException.class, () -> BulkImport.within(root, secret.toString()));
+        assertThrows(IllegalArgumentException.class, () -> BulkImport.within(root, "missing.csv"));
+        assertThrows(IllegalArgumentException.class, () -> BulkImport.within(tmp.resolve("nope"), "a.csv"));
+    }
+
+    @Test
+    void rejectsLinksOutOfTheImportDirectory() throws Exception {
+        Path root = Files.createDirectories(tmp.resolve("import"));
+        Path secret = Files.writeString(tmp.resolve("secret.csv"), "");
+        Files.createSymbolicLink(root.resolve("link.csv"), secret);
+
+        assertThrows(IllegalArgumentException.class, () -> BulkImport.within(root, "link.csv"));
+        assertThrows(IllegalArgumentException.class, () -> BulkImport.within(root, "."));
+    }
+}
@@ -0,0 +1,126 @@
+package core.db.segment;
+
+import core.dto.ReadingDTO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SegmentIrrigationDaoTest {
+
+    @TempDir
+    Path dir;
+
+    private SegmentIrrigationDao dao;
+
+    @AfterEach
+    void close() {
+        if (dao != null) dao.close();
+    }
+
+    private static ReadingDTO reading(int soil, long atMs) {
+        ReadingDTO r = new ReadingDTO();
+        r.device = "esp32-01";
+        r.soil = soil;
+        r.createdUtc = atMs < 0 ? null : Instant.ofEpochMilli(atMs).toString();
+        return r;
+    }
+
+    private List<ReadingDTO> history(long from, long to, int limit) throws Exception {
+        return dao.getHistory("esp32-01", new Timestamp(from), new Timestamp(to), limit);
+    }
+
+    private static List<Integer> soils(List<ReadingDTO> rs) {
+        List<Integer> out = new ArrayList<>();
+        for (ReadingDTO r : rs) out.add(r.soil);
+        return out;
+    }
+
+    @Test
+    void replayedOldReadingsKeepTheirTimestamps() throws Exception {
+        dao = SegmentIrrigationDao.open(dir);
+        long now = System.currentTimeMillis();
+
+        dao.insertReading(reading(50, -1));
+        // the spool replays an outage an hour ago, oldest first, after live traffic resumed
+        dao.importReadings(List.of(reading(10, now - 3_600_000), reading(11, now - 3_000_000), reading(12, now - 2_400_000)));
+
+        List<ReadingDTO> all = history(0, now + 60_000, 100);
+        assertEquals(List.of(10, 11, 12, 50), soils(all));
+        assertEquals(Instant.ofEpochMilli(now - 3_600_000).toString(), all.get(0).createdUtc);
+        assertEquals(50, dao.getLatest("esp32-01").soil);
+
+        // a window that holds only the replayed readings
+        assertEquals(List.of(11, 12), soils(history(now - 3_000_000, now - 2_000_000, 100)));
+    }
+
+    @Test
+    void lateAndChainedReadingsMergeByTimeUnderTheLimit() throws Exception {
+        dao = SegmentIrrigationDao.open(dir);
+
+        dao.importReadings(List.of(reading(1, 1_000), reading(3, 3_000), reading(5, 5_000)));
+        // older than the last one: late, and not in arrival order among themselves
+        dao.importReadings(List.of(reading(4, 4_000), reading(2, 2_000), reading(0, 500)));
+
+        assertEquals(List.of(0, 1, 2, 3, 4, 5), soils(history(0, 10_000, 100)));
+        assertEquals(List.of(0, 1, 2), soils(history(0, 10_000, 3)));
+        assertEquals(List.of(2, 3, 4), soils(history(2_000, 4_000, 100)));
+    }
+
+    @Test
+    void lateReadingsSurviveAReopen() throws Exception {
+        dao = SegmentIrrigationDao.open(dir);
+        dao.importReadings(List.of(reading(3, 3_000), reading(1, 1_000), reading(2, 2_000)));
+        dao.close();
+
+        dao = SegmentIrrigationDao.open(dir);
+        assertEquals(List.of(1, 2, 3), soils(history(0, 10_000, 100)));
+        assertEquals(3, dao.getLatest("esp32-01").soil);
+    }
+
+    @Test
+    void keysetPagesWalkThroughOneBusyMillisecond() throws Exception {
+        dao = SegmentIrrigationDao.open(dir);
+
+        // 150 chained readings at t=1000, then 30 late ones at the same millisecond
+        // (unkeyed, like core-clock inserts: keyed ones would be one reading)
+        for (int i = 0; i < 150; i++) dao.appendReading(reading(i, -1), 1_000, false);
+        dao.appendReading(reading(999, -1), 2_000, false);
+        for (int i = 150; i < 180; i++) dao.appendReading(reading(i, -1), 1_000, false);
+
+        List<Integer> seen = new ArrayList<>();
+        Timestamp after = new Timestamp(0);
+        long afterId = Long.MIN_VALUE;
+        for (List<ReadingDTO> page; !(page = dao.getHistoryAfter("esp32-01", after, afterId, new Timestamp(10_000), 40)).isEmpty(); ) {
+            seen.addAll(soils(page));
+            ReadingDTO last = page.get(page.size() - 1);
+            after = Timestamp.from(Instant.parse(last.createdUtc));
+            afterId = last.id;
+        }
+
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 180; i++) expected.add(i);
+        expected.add(999);
+        assertEquals(expected, seen);
+    }
+
+    @Test
+    void aReadingThatArrivesTwiceIsStoredOnce() throws Exception {
+        dao = SegmentIrrigationDao.open(dir);
+
+        // pushed, the answer lost, retried, then spooled and replayed; an older one replayed twice
+        assertEquals(new Timestamp(5_000), dao.insertReading(reading(50, 5_000)));
+        assertEquals(new Timestamp(5_000), dao.insertReading(reading(50, 5_000)));
+        assertEquals(1, dao.importReadings(List.of(reading(50, 5_000), reading(40, 4_000))));
+        assertEquals(0, dao.importReadings(List.of(reading(40, 4_000))));
+
+        assertEquals(List.of(40, 50), soils(history(0, 10_000, 100)));
+    }
+}
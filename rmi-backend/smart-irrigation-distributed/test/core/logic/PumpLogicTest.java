@@ -0,0 +1,99 @@
+package core.logic;
+
+import core.dto.ProfileDTO;
+import core.dto.ReadingDTO;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PumpLogicTest {
+
+    private static ReadingDTO reading(Integer soil, Integer tank, Boolean raining) {
+        ReadingDTO r = new ReadingDTO();
+        r.device = "esp32-01";
+        r.soil = soil;
+        r.waterTank = tank;
+        r.raining = raining;
+        return r;
+    }
+
+    @Test
+    void builtinHysteresis() {
+        // ON below 30, OFF above 40, hold in between
+        assertTrue(PumpLogic.decidePumpCmd(reading(29, 80, false), false));
+        assertFalse(PumpLogic.decidePumpCmd(reading(30, 80, false), false));
+        assertTrue(PumpLogic.decidePumpCmd(reading(35, 80, false), true));
+        assertTrue(PumpLogic.decidePumpCmd(reading(40, 80, false), true));
+        assertFalse(PumpLogic.decidePumpCmd(reading(41, 80, false), true));
+    }
+
+    @Test
+    void profileThresholdsReplaceTheBuiltins() {
+        Profile p = new Profile(50, 70, 20, 30, 0, "DEVICE");
+
+        assertEquals(DecisionReason.SOIL_DRY, PumpLogic.decide(reading(45, 80, false), false, p, null));
+        assertEquals(DecisionReason.HOLD, PumpLogic.decide(reading(65, 80, false), true, p, null));
+        assertEquals(DecisionReason.SOIL_WET, PumpLogic.decide(reading(71, 80, false), true, p, null));
+
+        // 45% would not start the built-in profile
+        assertEquals(DecisionReason.HOLD, PumpLogic.decide(reading(45, 80, false), false, Profile.BUILTIN, null));
+    }
+
+    @Test
+    void tankLowUsesTheProfileLimit() {
+        Profile p = new Profile(50, 70, 20, 30, 0, "DEVICE");
+
+        assertEquals(DecisionReason.TANK_LOW, PumpLogic.decide(reading(10, 20, false), false, p, null));
+        assertEquals(DecisionReason.SOIL_DRY, PumpLogic.decide(reading(10, 21, false), false, p, null));
+        assertEquals(DecisionReason.SOIL_DRY, PumpLogic.decide(reading(10, 20, false), false, Profile.BUILTIN, null));
+    }
+
+    @Test
+    void hardStopsAndMissingInputsFailSafeOff() {
+        Profile p = Profile.BUILTIN;
+
+        assertEquals(DecisionReason.RAINING, PumpLogic.decide(reading(5, 80, true), true, p, null));
+        assertEquals(DecisionReason.MISSING_INPUT, PumpLogic.decide(reading(null, 80, false), true, p, null));
+        assertEquals(DecisionReason.MISSING_INPUT, PumpLogic.decide(reading(5, null, false), true, p, null));
+        assertEquals(DecisionReason.MISSING_INPUT, PumpLogic.decide(null, true, p, null));
+
+        assertFalse(PumpLogic.decidePumpCmd(reading(5, 80, true), true, p));
+        assertFalse(PumpLogic.decidePumpCmd(reading(null, 80, false), true, p));
+    }
+
+    @Test
+    void lookaheadStartsOnAFallingTrend() {
+        Profile p = new Profile(30, 40, 10, 15, 60, "DEVICE");
+
+        // 2% per 10 min: 34% now, below 30% within the hour
+        TrendStats soil = new TrendStats();
+        long t = 0;
+        for (int v = 44; v >= 34; v -= 2) {
+            soil.add(t, v);
+            t += 10 * 60_000L;
+        }
+
+        assertEquals(DecisionReason.SOIL_TREND, PumpLogic.decide(reading(34, 80, false), false, p, soil));
+        assertEquals(DecisionReason.HOLD, PumpLogic.decide(reading(34, 80, false), false, Profile.BUILTIN, soil));
+        assertEquals(DecisionReason.HOLD, PumpLogic.decide(reading(34, 80, false), false, p, null));
+    }
+
+    @Test
+    void overlayKeepsUnsetFields() {
+        ProfileDTO zone = new ProfileDTO();
+        zone.moistureOn = 45;
+        zone.moistureOff = 60;
+
+        ProfileDTO device = new ProfileDTO();
+        device.tankLow = 25;
+
+        Profile p = Profile.BUILTIN.overlaidBy(zone, "ZONE:north").overlaidBy(device, "DEVICE");
+        assertEquals(45, p.moistureOn);
+        assertEquals(60, p.moistureOff);
+        assertEquals(25, p.tankLow);
+        assertEquals(15, p.tankRecover);
+        assertEquals("DEVICE,ZONE:north,BUILTIN", p.source);
+
+        assertSame(p, p.overlaidBy(new ProfileDTO(), "DEVICE"));
+    }
+}
@@ -0,0 +1,112 @@
+package core.rmi;
+
+import core.dto.ReadingDTO;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HistoryExportTest {
+
+    private static final Instant T0 = Instant.parse("2026-10-01T00:00:00Z");
+
+    private final List<ReadingDTO> rows = new ArrayList<>();
+    private int calls;
+
+    private void add(String device, Instant at, int soil) {
+        ReadingDTO r = new ReadingDTO();
+        r.device = device;
+        r.soil = soil;
+        r.createdUtc = at.toString();
+        r.id = (long) rows.size() + 1;
+        rows.add(r);
+    }
+
+    /** The core's keyset contract over the rows above (added in (time, id) order). */
+    private List<ReadingDTO> page(String device, String afterUtc, long afterId, String toUtc, int limit) {
+        calls++;
+        Instant after = Instant.parse(afterUtc);
+        Instant to = Instant.parse(toUtc);
+        List<ReadingDTO> out = new ArrayList<>();
+        for (ReadingDTO r : rows) {
+            Instant t = Instant.parse(r.createdUtc);
+            if (!r.device.equals(device) || t.isAfter(to)) continue;
+            if (t.isBefore(after) || t.equals(after) && r.id <= afterId) continue;
+            if (out.size() == limit) break;
+            out.add(r);
+        }
+        return out;
+    }
+
+    private List<String> export(List<String> devices, Instant from, Instant to, int pageSize) throws Exception {
+        HistoryExport x = new HistoryExport(this::page, 2, 2, 1, pageSize, 24);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        HistoryExport.Stats stats = x.export(devices, from, to, HistoryExport.Format.CSV, out);
+
+        List<String> lines = new ArrayList<>(List.of(out.toString(StandardCharsets.UTF_8).split("\n")));
+        lines.remove(0); // header
+        assertEquals(lines.size(), stats.rows);
+        return lines;
+    }
+
+    @Test
+    void pagesThatShareOneMillisecondLoseAndRepeatNothing() throws Exception {
+        // 250 rows in one millisecond with 100-row pages, then rows on both sides of it
+        add("a", T0, -1);
+        for (int i = 0; i < 250; i++) add("a", T0.plusMillis(5), i);
+        add("a", T0.plusMillis(6), 1000);
+
+        List<String> lines = export(List.of("a"), T0, T0.plusSeconds(3600), 100);
+
+        assertEquals(252, lines.size());
+        assertTrue(lines.get(0).endsWith(",-1,,,,,"));
+        for (int i = 0; i < 250; i++) {
+            assertEquals("a," + T0.plusMillis(5) + "," + i + ",,,,,", lines.get(i + 1));
+        }
+        assertTrue(lines.get(251).contains(",1000,"));
+        assertEquals(3, calls); // 100 + 100 + 52: the short page ends the partition
+    }
+
+    @Test
+    void devicesAndSlicesComeOutInOrder() throws Exception {
+        for (int h = 0; h < 48; h += 6) {
+            add("a", T0.plusSeconds(h * 3600L), h);
+            add("b", T0.plusSeconds(h * 3600L), 100 + h);
+        }
+
+        List<String> lines = export(List.of("a", "b"), T0, T0.plusSeconds(48 * 3600L), 100);
+
+        assertEquals(16, lines.size());
+        for (int k = 0; k < 8; k++) {
+            assertTrue(lines.get(k).startsWith("a," + T0.plusSeconds(k * 6 * 3600L)));
+            assertTrue(lines.get(8 + k).startsWith("b," + T0.plusSeconds(k * 6 * 3600L)));
+        }
+    }
+
+    @Test
+    void toIsExclusive() throws Exception {
+        add("a", T0, 1);
+        add("a", T0.plusSeconds(60), 2);
+
+        assertEquals(1, export(List.of("a"), T0, T0.plusSeconds(60), 100).size());
+    }
+
+    @Test
+    void ndjsonWritesNullForNonFiniteNumbers() throws Exception {
+        add("a", T0, 1);
+        rows.get(0).tempC = Double.NaN;
+        rows.get(0).humidity = Double.POSITIVE_INFINITY;
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new HistoryExport(this::page, 1, 1, 1, 100, 24)
+                .export(List.of("a"), T0, T0.plusSeconds(60), HistoryExport.Format.NDJSON, out);
+
+        String line = out.toString(StandardCharsets.UTF_8);
+        assertTrue(line.contains("\"temp_c\":null,\"humidity\":null"), line);
+    }
+}
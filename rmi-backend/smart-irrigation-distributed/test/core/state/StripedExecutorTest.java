@@ -0,0 +1,46 @@
+package core.state;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StripedExecutorTest {
+
+    @Test
+    void aFullLaneRejectsInsteadOfQueueing() throws Exception {
+        StripedExecutor lanes = new StripedExecutor(1, 2, "test");
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            lanes.execute("a", () -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            lanes.execute("a", () -> {});
+            assertFalse(lanes.full("a"));
+            lanes.execute("a", () -> {});
+            assertTrue(lanes.full("a"));
+
+            assertThrows(RejectedExecutionException.class, () -> lanes.execute("a", () -> {}));
+            assertThrows(RejectedExecutionException.class, () -> lanes.call("a", () -> 1));
+
+            release.countDown();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (lanes.full("a") && System.nanoTime() < deadline) Thread.sleep(1);
+            assertEquals(7, lanes.call("a", () -> 7));
+        } finally {
+            release.countDown();
+            lanes.shutdown();
+        }
+    }
+}
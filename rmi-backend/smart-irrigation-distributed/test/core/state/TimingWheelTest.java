@@ -0,0 +1,130 @@
+package core.state;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimingWheelTest {
+
+    private final AtomicLong clock = new AtomicLong();
+    private final List<String> fired = new CopyOnWriteArrayList<>();
+
+    private TimingWheel<String> wheel(long timeoutSec, int size) {
+        return new TimingWheel<>(timeoutSec * 1000, 1000, size, fired::add, clock::get);
+    }
+
+    /** Moves the clock to {@code sec} and runs every tick up to it. */
+    private void at(TimingWheel<String> w, long sec) {
+        clock.set(TimeUnit.SECONDS.toNanos(sec));
+        w.advance();
+    }
+
+    @Test
+    void expiresOnceAtTheDeadline() {
+        TimingWheel<String> w = wheel(3, 4);
+        w.touch("a");
+
+        for (int s = 1; s <= 2; s++) at(w, s);
+        assertTrue(fired.isEmpty());
+
+        at(w, 3);
+        assertEquals(List.of("a"), fired);
+        assertTrue(w.isExpired("a"));
+
+        for (int s = 4; s <= 12; s++) at(w, s);
+        assertEquals(1, fired.size());
+    }
+
+    @Test
+    void timeoutLongerThanTheWheelFiresOnTime() {
+        TimingWheel<String> w = wheel(10, 4);
+        w.touch("a");
+        for (int s = 1; s <= 9; s++) at(w, s);
+        assertTrue(fired.isEmpty());
+        at(w, 10);
+        assertEquals(List.of("a"), fired);
+    }
+
+    @Test
+    void rearmedDeadlineOneRotationAheadIsNotLate() {
+        TimingWheel<String> w = wheel(10, 4);
+        w.touch("a");          // deadline 10
+        at(w, 4);
+        w.touch("a");          // deadline 14: re-bucketed when tick 10 finds it, exactly 4 ticks ahead
+
+        for (int s = 5; s <= 13; s++) at(w, s);
+        assertTrue(fired.isEmpty());
+        at(w, 14);
+        assertEquals(List.of("a"), fired);
+    }
+
+    @Test
+    void touchAfterExpiryReportsRecovery() {
+        TimingWheel<String> w = wheel(2, 4);
+        assertFalse(w.touch("a"));
+        at(w, 1);
+        assertFalse(w.touch("a")); // still armed, deadline moves to 3
+        at(w, 2);
+        assertTrue(fired.isEmpty());
+        at(w, 3);
+        assertEquals(List.of("a"), fired);
+
+        assertTrue(w.touch("a"));
+        assertFalse(w.isExpired("a"));
+        assertFalse(w.touch("a"));
+    }
+
+    @Test
+    void seedPastTimeoutIsExpiredWithoutFiring() {
+        TimingWheel<String> w = wheel(5, 4);
+        w.seed("old", 60_000);
+        w.seed("fresh", 1_000);
+        assertTrue(w.isExpired("old"));
+
+        for (int s = 1; s <= 3; s++) at(w, s);
+        assertTrue(fired.isEmpty());
+        at(w, 4);
+        assertEquals(List.of("fresh"), fired);
+
+        assertTrue(w.touch("old"));
+    }
+
+    @Test
+    void touchRacingWithExpiryReportsRecoveryAfterTheExpiry() throws Exception {
+        List<String> events = new CopyOnWriteArrayList<>();
+        AtomicBoolean recovered = new AtomicBoolean();
+        Thread[] toucher = new Thread[1];
+
+        AtomicReference<TimingWheel<String>> ref = new AtomicReference<>();
+        ref.set(new TimingWheel<>(2000, 1000, 4, key -> {
+            // a reading arrives while the expiry is being reported
+            toucher[0] = new Thread(() -> {
+                if (ref.get().touch(key)) {
+                    recovered.set(true);
+                    events.add("ONLINE");
+                }
+            });
+            toucher[0].start();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException ignored) {
+            }
+            events.add("OFFLINE");
+        }, clock::get));
+
+        ref.get().touch("a");
+        at(ref.get(), 2);
+        toucher[0].join(5000);
+
+        assertTrue(recovered.get());
+        assertEquals(List.of("OFFLINE", "ONLINE"), events);
+        assertFalse(ref.get().isExpired("a"));
+    }
+}
@@ -0,0 +1,45 @@
+package gateway.ingest;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CircuitBreakerTest {
+
+    // window 2, trips at 50% failures, never slow, retries at once, one probe
+    private final CircuitBreaker breaker = new CircuitBreaker(2, 0.5, 2.0, 60_000, 0, 1);
+
+    @Test
+    void aCallFromBeforeTheTripIsNotAProbe() {
+        long slow = breaker.tryAcquire(); // admitted while CLOSED, still running
+
+        long a = breaker.tryAcquire();
+        breaker.onResult(a, false, 0);
+        long b = breaker.tryAcquire();
+        breaker.onResult(b, false, 0);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+
+        long probe = breaker.tryAcquire();
+        assertNotEquals(CircuitBreaker.NO_PERMIT, probe);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+        assertEquals(CircuitBreaker.NO_PERMIT, breaker.tryAcquire());
+
+        // the old call succeeds now: it must not close the breaker
+        breaker.onResult(slow, true, 0);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+
+        breaker.onResult(probe, true, 0);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+    }
+
+    @Test
+    void anUnusedProbeIsReturned() {
+        breaker.onResult(breaker.tryAcquire(), false, 0);
+        breaker.onResult(breaker.tryAcquire(), false, 0);
+
+        long probe = breaker.tryAcquire();
+        assertEquals(CircuitBreaker.NO_PERMIT, breaker.tryAcquire());
+        breaker.release(probe);
+        assertNotEquals(CircuitBreaker.NO_PERMIT, breaker.tryAcquire());
+    }
+}